@@ -0,0 +1,226 @@
+import java.nio.CharBuffer;
+import java.text.Normalizer;
+import java.util.*;
+
+/**
+ * Turns text into the terms that are indexed and searched for.  The same
+ * analyzer must be used to build an index and to query it, so an index
+ * records the analyzer it was built with and WebQueryEngine analyzes
+ * queries with the analyzer of its index.
+ *
+ * Text is split into runs of letters, which are lower-cased.  The other
+ * stages are optional, and run in this order:
+ * <ul>
+ * <li>nfkc: text is put in Unicode normalization form NFKC before it is
+ * split, so that compatibility forms such as ligatures, full-width letters
+ * and composed accents are indexed as their plain equivalents.</li>
+ * <li>stop: common English words are dropped.  The words after a dropped
+ * word take its position, so a phrase query matches across stopwords it
+ * leaves out.</li>
+ * <li>stem: plurals are reduced to their singular with the rules of
+ * Harman's S-stemmer, which removes little more than a trailing "s".</li>
+ * </ul>
+ * An analyzer is described by the names of its stages, separated by
+ * commas, such as "nfkc,stop,stem"; "standard" is the analyzer with none
+ * of them, which indexes exactly what WebIndex has always indexed.
+ *
+ * Subclasses may override isWordCharacter() to split text differently;
+ * they should override toString() too, since the description is what an
+ * index file records.
+ */
+public class Analyzer {
+	/**
+	 * The analyzer with no optional stages.
+	 */
+	public static final Analyzer STANDARD = new Analyzer(false, false, false);
+
+	/**
+	 * The words dropped by the stop stage.
+	 */
+	public static final String[] STOPWORDS = {
+		"a", "an", "and", "are", "as", "at", "be", "but", "by", "for", "if",
+		"in", "into", "is", "it", "no", "not", "of", "on", "or", "such",
+		"that", "the", "their", "then", "there", "these", "they", "this",
+		"to", "was", "will", "with"
+	};
+
+	private boolean normalize;
+	private boolean stem;
+	/**
+	 * The stopwords, or null if none are dropped.  A TermDictionary lets
+	 * the tokenizer look a word up without making a String of it.
+	 */
+	private TermDictionary stopwords;
+
+	/**
+	 * @param normalize Whether text is put in NFKC form.
+	 * @param stop Whether STOPWORDS are dropped.
+	 * @param stem Whether plurals are stemmed.
+	 */
+	public Analyzer(boolean normalize, boolean stop, boolean stem)
+	{
+		this.normalize = normalize;
+		this.stem = stem;
+		if (stop)
+		{
+			stopwords = new TermDictionary();
+			for (String word : STOPWORDS)
+				stopwords.intern(word.toCharArray(), 0, word.length());
+		}
+	}
+
+	/**
+	 * Returns the analyzer described by a list of stages, as returned by
+	 * toString().
+	 * @throws IllegalArgumentException if a stage is unknown
+	 */
+	public static Analyzer parse(String spec)
+	{
+		boolean normalize = false;
+		boolean stop = false;
+		boolean stem = false;
+		for (String stage : spec.split(","))
+		{
+			stage = stage.trim();
+			if (stage.equals("nfkc"))
+				normalize = true;
+			else if (stage.equals("stop"))
+				stop = true;
+			else if (stage.equals("stem"))
+				stem = true;
+			else if (!stage.equals("standard") && stage.length() > 0)
+				throw new IllegalArgumentException("Unknown analysis stage " + stage);
+		}
+		return new Analyzer(normalize, stop, stem);
+	}
+
+	/**
+	 * Returns a tokenizer applying this analyzer.
+	 * @param dictionary Interns the terms found.
+	 */
+	public Tokenizer newTokenizer(TermDictionary dictionary)
+	{
+		return new Tokenizer(dictionary, this);
+	}
+
+	/**
+	 * Returns whether a char may be part of a word.
+	 */
+	public boolean isWordCharacter(char c)
+	{
+		return Character.isLetter(c);
+	}
+
+	/**
+	 * Returns text in the form words are split from: NFKC if this analyzer
+	 * normalizes, and unchanged otherwise.
+	 */
+	public String normalize(String text)
+	{
+		if (!normalize || isAscii(text))
+			return text;
+		return Normalizer.normalize(text, Normalizer.Form.NFKC);
+	}
+
+	/**
+	 * Returns a slice of text in the form words are split from, as a new
+	 * array, or null if the slice is already in that form.
+	 */
+	char[] normalize(char[] text, int offset, int length)
+	{
+		if (!normalize)
+			return null;
+		boolean ascii = true;
+		for (int i = offset; i < offset + length && ascii; i++)
+			ascii = text[i] < 0x80;
+		if (ascii)
+			return null;
+		CharBuffer slice = CharBuffer.wrap(text, offset, length);
+		if (Normalizer.isNormalized(slice, Normalizer.Form.NFKC))
+			return null;
+		return Normalizer.normalize(slice, Normalizer.Form.NFKC).toCharArray();
+	}
+
+	private static boolean isAscii(String text)
+	{
+		for (int i = 0; i < text.length(); i++)
+			if (text.charAt(i) >= 0x80)
+				return false;
+		return true;
+	}
+
+	/**
+	 * Returns the term a word is indexed as, or null if the word is dropped.
+	 * The word should be in normal form already.
+	 */
+	public String analyze(String word)
+	{
+		char[] chars = word.toCharArray();
+		for (int i = 0; i < chars.length; i++)
+			chars[i] = Character.toLowerCase(chars[i]);
+		if (isStopword(chars, 0, chars.length))
+			return null;
+		return new String(chars, 0, stem(chars, chars.length));
+	}
+
+	/**
+	 * Returns whether a lower-cased word is dropped.
+	 */
+	boolean isStopword(char[] word, int offset, int length)
+	{
+		return stopwords != null && stopwords.get(word, offset, length) != null;
+	}
+
+	/**
+	 * Stems a lower-cased word in place, if this analyzer stems.  Only the
+	 * first rule whose ending the word has is applied, so a word ending in
+	 * one of the exceptions to a rule keeps its "s".
+	 * @return the length of the stem
+	 */
+	int stem(char[] word, int length)
+	{
+		if (!stem || length < 3 || word[length - 1] != 's')
+			return length;
+		char c2 = word[length - 2];
+		if (c2 == 'u' || c2 == 's')
+			return length; // "s" -> "", but not "us" or "ss"
+		if (c2 == 'e')
+		{
+			char c3 = word[length - 3];
+			if (c3 == 'i' && length > 3 && word[length - 4] != 'e' && word[length - 4] != 'a')
+			{
+				// "ies" -> "y", but not "eies" or "aies".
+				word[length - 3] = 'y';
+				return length - 2;
+			}
+			if (c3 == 'i' || c3 == 'a' || c3 == 'e' || c3 == 'o')
+				return length; // "es" -> "e", but not "aes", "ees" or "oes"
+		}
+		return length - 1;
+	}
+
+	public boolean equals(Object o)
+	{
+		return o instanceof Analyzer && toString().equals(o.toString());
+	}
+
+	public int hashCode()
+	{
+		return toString().hashCode();
+	}
+
+	/**
+	 * Returns the stages of this analyzer, in the form parse() reads.
+	 */
+	public String toString()
+	{
+		StringBuffer spec = new StringBuffer();
+		if (normalize)
+			spec.append("nfkc,");
+		if (stopwords != null)
+			spec.append("stop,");
+		if (stem)
+			spec.append("stem,");
+		return spec.length() == 0 ? "standard" : spec.substring(0, spec.length() - 1);
+	}
+}
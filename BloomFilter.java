@@ -0,0 +1,72 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A Bloom filter over 64-bit hashes: a set that may answer that it
+ * contains a hash it was never given, but never that it lacks one it was.
+ * With 8 bits per hash and 6 probes, about 2% of absent hashes are
+ * reported present.
+ *
+ * The bits are kept in an AtomicLongArray, so hashes may be added and
+ * looked up from any number of threads without locking.
+ */
+public class BloomFilter {
+	/**
+	 * The number of bits probed per hash.
+	 */
+	public static final int PROBES = 6;
+
+	private AtomicLongArray bits;
+	private int mask;
+
+	/**
+	 * @param size The number of bits, rounded up to a power of two.
+	 */
+	public BloomFilter(int size)
+	{
+		int words = Integer.highestOneBit(Math.max(64, size - 1) >> 6) << 1;
+		bits = new AtomicLongArray(words);
+		mask = words * 64 - 1;
+	}
+
+	/**
+	 * Adds a hash.  Its bits must be mixed well; the two halves of the hash
+	 * are used as two independent hashes.
+	 */
+	public void add(long hash)
+	{
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32) | 1;
+		for (int i = 0; i < PROBES; i++)
+		{
+			int bit = (h1 + i * h2) & mask;
+			long word = 1L << bit;
+			long old;
+			while (((old = bits.get(bit >>> 6)) & word) == 0 && !bits.compareAndSet(bit >>> 6, old, old | word))
+				;
+		}
+	}
+
+	/**
+	 * Returns false if a hash was never added, and true if it probably was.
+	 */
+	public boolean mightContain(long hash)
+	{
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32) | 1;
+		for (int i = 0; i < PROBES; i++)
+		{
+			int bit = (h1 + i * h2) & mask;
+			if ((bits.get(bit >>> 6) & (1L << bit)) == 0)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the memory used by the bits, in bytes.
+	 */
+	public long sizeInBytes()
+	{
+		return 8L * bits.length();
+	}
+}
@@ -0,0 +1,143 @@
+/**
+ * The shared queue of URLs waiting to be parsed by the workers of a
+ * parallel crawl.  The queue holds at most a fixed number of URLs; a worker
+ * whose discoveries do not fit keeps them and parses them itself, so a full
+ * frontier slows producers down instead of blocking them.
+ *
+ * The frontier also counts every URL that has been added but not yet
+ * finished, wherever it is held, so that idle workers can tell when the
+ * crawl has run out of work, and so that the crawl can be paused at a
+ * point where every unfinished URL is back in the queue.
+ *
+ * A frontier may be given a CrawlScheduler, which orders its queue and
+ * limits what is crawled.  Once the scheduler stops the crawl, take()
+ * returns null even though URLs remain.
+ */
+public class CrawlFrontier {
+	private UrlQueue queue;
+	private CrawlScheduler scheduler;
+	private int capacity;
+	private int pending;
+	private boolean paused;
+
+	/**
+	 * @param capacity	the largest number of URLs held in the queue
+	 */
+	public CrawlFrontier(int capacity)
+	{
+		queue = CrawlScheduler.newQueue(CrawlScheduler.BFS);
+		this.capacity = capacity;
+		pending = 0;
+	}
+
+	/**
+	 * Creates a frontier over a queue that is never full, such as a
+	 * DiskQueue.  URLs already in the queue are part of the crawl.
+	 *
+	 * @param queue	the queue
+	 * @param scheduler	the limits of the crawl, or null if it has none
+	 */
+	public CrawlFrontier(UrlQueue queue, CrawlScheduler scheduler)
+	{
+		this.queue = queue;
+		this.scheduler = scheduler;
+		capacity = Integer.MAX_VALUE;
+		pending = queue.size();
+	}
+
+	/**
+	 * Adds a URL to the crawl.  Every URL added must eventually be matched
+	 * by a call to done().
+	 *
+	 * @param url	the URL to add
+	 * @param depth	the number of links followed to reach the URL
+	 * @return true if the URL was queued for any worker, or left out by the
+	 * scheduler, false if the queue is full and the caller must parse the
+	 * URL itself
+	 */
+	public synchronized boolean add(String url, int depth)
+	{
+		if (scheduler != null && !scheduler.admit(url, depth))
+			return true;
+		if (queue.size() >= capacity)
+		{
+			pending++;
+			return false;
+		}
+		if (queue.add(new QueuedUrl(url, depth)))
+		{
+			pending++;
+			notifyAll();
+		}
+		return true;
+	}
+
+	/**
+	 * Removes the next queued URL, waiting while the queue is empty but
+	 * other URLs are still being parsed, or while the frontier is paused.
+	 *
+	 * @return the next URL, or null once every added URL is done or the
+	 * scheduler has stopped the crawl
+	 */
+	public synchronized QueuedUrl take() throws InterruptedException
+	{
+		while (true)
+		{
+			while (paused || queue.size() == 0)
+			{
+				if (!paused && (pending == 0 || isStopped()))
+					return null;
+				wait();
+			}
+			if (isStopped())
+				return null;
+			QueuedUrl next = queue.poll();
+			if (scheduler == null || scheduler.allow(next.url))
+				return next;
+			// Already reached or over its quota, so done without being parsed.
+			done();
+		}
+	}
+
+	private boolean isStopped()
+	{
+		return scheduler != null && scheduler.isStopped();
+	}
+
+	/**
+	 * Marks one added URL as finished.
+	 */
+	public synchronized void done()
+	{
+		pending--;
+		if (pending == 0 || paused)
+			notifyAll();
+	}
+
+	/**
+	 * Stops handing out URLs and waits until every URL taken so far is
+	 * done, so that all unfinished URLs are in the queue.  Must be followed
+	 * by resume(), and must not be called by a thread that has taken a URL
+	 * it has not finished.
+	 */
+	public synchronized void pause() throws InterruptedException
+	{
+		paused = true;
+		try {
+			while (pending != queue.size())
+				wait();
+		} catch (InterruptedException e) {
+			resume();
+			throw e;
+		}
+	}
+
+	/**
+	 * Lets workers take URLs again after pause().
+	 */
+	public synchronized void resume()
+	{
+		paused = false;
+		notifyAll();
+	}
+}
@@ -0,0 +1,209 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * What a crawl learned about each document, kept next to the index so the
+ * next crawl can tell which files changed: the file's modification time
+ * and size, a hash of its contents, and the links found in it.  A crawl
+ * that detects duplicates also records the fingerprints of each document's
+ * text, and, for a duplicate, the URL of the copy that was indexed.
+ *
+ * The file starts with MAGIC and VERSION, followed by the number of
+ * documents and, for each document, its URL, modification time, size, hash
+ * and links, then its content hash, SimHash and the URL it duplicates, or
+ * the empty string.  Version 1 files, written before duplicates were
+ * detected, lack the last three fields.
+ */
+public class CrawlMetadata {
+	/**
+	 * The first four bytes of a metadata file: "WQMD".
+	 */
+	public static final int MAGIC = 0x57514d44;
+	/**
+	 * The version of the format written by save().
+	 */
+	public static final int VERSION = 2;
+
+	/**
+	 * The metadata of one document.
+	 */
+	public static class Document
+	{
+		/**
+		 * The modification time of the file, in milliseconds since the epoch.
+		 */
+		public long lastModified;
+
+		/**
+		 * The length of the file in bytes.
+		 */
+		public long size;
+
+		/**
+		 * A hash of the contents of the file.
+		 */
+		public long hash;
+
+		/**
+		 * The URLs linked to from the document.
+		 */
+		public List<String> links;
+
+		/**
+		 * The DocumentBuffer content hash and SimHash of the text, or 0 if
+		 * they were not computed.
+		 */
+		public long contentHash;
+		public long simHash;
+
+		/**
+		 * The URL of the document this one duplicates, which was indexed in
+		 * its place, or null if this document was indexed itself.
+		 */
+		public String duplicateOf;
+
+		public Document(long lastModified, long size, long hash, List<String> links)
+		{
+			this(lastModified, size, hash, links, 0, 0, null);
+		}
+
+		public Document(long lastModified, long size, long hash, List<String> links,
+				long contentHash, long simHash, String duplicateOf)
+		{
+			this.lastModified = lastModified;
+			this.size = size;
+			this.hash = hash;
+			this.links = links;
+			this.contentHash = contentHash;
+			this.simHash = simHash;
+			this.duplicateOf = duplicateOf;
+		}
+	}
+
+	private ConcurrentHashMap<String, Document> documents;
+
+	public CrawlMetadata()
+	{
+		documents = new ConcurrentHashMap<String, Document>();
+	}
+
+	/**
+	 * Returns the metadata of a document, or null if it has none.
+	 */
+	public Document get(String url)
+	{
+		return documents.get(url);
+	}
+
+	/**
+	 * Records the metadata of a document.
+	 */
+	public void put(String url, Document document)
+	{
+		documents.put(url, document);
+	}
+
+	/**
+	 * Forgets a document.
+	 */
+	public void remove(String url)
+	{
+		documents.remove(url);
+	}
+
+	/**
+	 * Returns the URLs of every document with metadata.
+	 */
+	public Set<String> getUrls()
+	{
+		return documents.keySet();
+	}
+
+	/**
+	 * Returns the documents recorded as duplicates, each with the URL of the
+	 * document indexed in its place.
+	 */
+	public Map<String, String> getDuplicates()
+	{
+		TreeMap<String, String> duplicates = new TreeMap<String, String>();
+		for (Map.Entry<String, Document> entry : documents.entrySet())
+			if (entry.getValue().duplicateOf != null)
+				duplicates.put(entry.getKey(), entry.getValue().duplicateOf);
+		return duplicates;
+	}
+
+	/**
+	 * Loads metadata saved by save().  A file that does not exist holds no
+	 * metadata.
+	 * @param filename The file to read.
+	 */
+	public static CrawlMetadata load(String filename) throws IOException
+	{
+		CrawlMetadata metadata = new CrawlMetadata();
+		if (!new File(filename).exists())
+			return metadata;
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filename)));
+		try {
+			if (in.readInt() != MAGIC)
+				throw new IOException("Not a metadata file");
+			int version = in.readInt();
+			if (version != 1 && version != VERSION)
+				throw new IOException("Unsupported metadata version " + version);
+			for (int count = in.readInt(); count > 0; count--)
+			{
+				String url = in.readUTF();
+				long lastModified = in.readLong();
+				long size = in.readLong();
+				long hash = in.readLong();
+				int linkCount = in.readInt();
+				ArrayList<String> links = new ArrayList<String>(linkCount);
+				for (int i = 0; i < linkCount; i++)
+					links.add(in.readUTF());
+				Document document = new Document(lastModified, size, hash, links);
+				if (version >= 2)
+				{
+					document.contentHash = in.readLong();
+					document.simHash = in.readLong();
+					String duplicateOf = in.readUTF();
+					document.duplicateOf = duplicateOf.length() == 0 ? null : duplicateOf;
+				}
+				metadata.put(url, document);
+			}
+		} finally {
+			in.close();
+		}
+		return metadata;
+	}
+
+	/**
+	 * Saves the metadata.
+	 * @param filename The file to write.
+	 */
+	public void save(String filename) throws IOException
+	{
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			Map<String, Document> snapshot = new HashMap<String, Document>(documents);
+			out.writeInt(snapshot.size());
+			for (Map.Entry<String, Document> entry : snapshot.entrySet())
+			{
+				Document document = entry.getValue();
+				out.writeUTF(entry.getKey());
+				out.writeLong(document.lastModified);
+				out.writeLong(document.size);
+				out.writeLong(document.hash);
+				out.writeInt(document.links.size());
+				for (String link : document.links)
+					out.writeUTF(link);
+				out.writeLong(document.contentHash);
+				out.writeLong(document.simHash);
+				out.writeUTF(document.duplicateOf == null ? "" : document.duplicateOf);
+			}
+		} finally {
+			out.close();
+		}
+	}
+}
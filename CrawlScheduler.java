@@ -0,0 +1,245 @@
+import java.util.*;
+
+/**
+ * Decides which URLs a crawl parses, and in what order.  The order is one
+ * of:
+ * <ul>
+ * <li>bfs: breadth-first, the order the URLs were found in;</li>
+ * <li>dfs: depth-first, the URL found last first;</li>
+ * <li>indegree: the URLs linked to most often first;</li>
+ * <li>directory: the URLs in the highest directories first.</li>
+ * </ul>
+ * The crawl can also be limited:
+ * <ul>
+ * <li>URLs more than a maximum number of links from a starting URL are not
+ * crawled;</li>
+ * <li>at most a given number of URLs are handed out, in total, per host
+ * and per directory;</li>
+ * <li>no URLs are handed out once a time budget is spent.</li>
+ * </ul>
+ * Pages being parsed when a limit is reached are finished.  The limits
+ * count from the start of this run, so a resumed crawl starts them again.
+ *
+ * A scheduler is used by one CrawlFrontier, which calls it with its lock
+ * held.
+ */
+public class CrawlScheduler {
+	public static final String BFS = "bfs";
+	public static final String DFS = "dfs";
+	public static final String IN_DEGREE = "indegree";
+	public static final String DIRECTORY = "directory";
+
+	private String order;
+	private int maxDepth;
+	private int maxPages;
+	private int hostQuota;
+	private int directoryQuota;
+	/**
+	 * The System.nanoTime() after which no URLs are handed out, if
+	 * hasDeadline.
+	 */
+	private long deadline;
+	private boolean hasDeadline;
+	private int taken;
+	private HashMap<String, Integer> perHost;
+	private HashMap<String, Integer> perDirectory;
+	/**
+	 * The URLs the crawl has reached, or null if not known.
+	 */
+	private VisitedSet reached;
+
+	/**
+	 * Creates a scheduler with no limits.
+	 * @param order The order URLs are crawled in.
+	 * @throws IllegalArgumentException if the order is unknown
+	 */
+	public CrawlScheduler(String order)
+	{
+		newQueue(order);
+		this.order = order;
+		maxDepth = Integer.MAX_VALUE;
+		maxPages = Integer.MAX_VALUE;
+		hostQuota = Integer.MAX_VALUE;
+		directoryQuota = Integer.MAX_VALUE;
+		hasDeadline = false;
+		taken = 0;
+		perHost = new HashMap<String, Integer>();
+		perDirectory = new HashMap<String, Integer>();
+	}
+
+	/**
+	 * Returns an empty queue handing out URLs in an order.
+	 * @throws IllegalArgumentException if the order is unknown
+	 */
+	public static UrlQueue newQueue(String order)
+	{
+		if (order.equals(BFS) || order.equals(DFS))
+		{
+			final boolean lifo = order.equals(DFS);
+			return new UrlQueue() {
+				private ArrayDeque<QueuedUrl> urls = new ArrayDeque<QueuedUrl>();
+
+				public boolean add(QueuedUrl url) {
+					urls.add(url);
+					return true;
+				}
+
+				public QueuedUrl poll() {
+					return lifo ? urls.pollLast() : urls.pollFirst();
+				}
+
+				public int size() {
+					return urls.size();
+				}
+			};
+		}
+		if (order.equals(IN_DEGREE))
+			return new PriorityUrlQueue(true);
+		if (order.equals(DIRECTORY))
+			return new PriorityUrlQueue(false);
+		throw new IllegalArgumentException("Unknown crawl order " + order + "; expected bfs, dfs, indegree or directory");
+	}
+
+	/**
+	 * Returns an empty queue in this scheduler's order.
+	 */
+	public UrlQueue newQueue()
+	{
+		return newQueue(order);
+	}
+
+	public String getOrder()
+	{
+		return order;
+	}
+
+	/**
+	 * Sets the most links followed from a starting URL.
+	 */
+	public void setMaxDepth(int maxDepth)
+	{
+		this.maxDepth = maxDepth;
+	}
+
+	/**
+	 * Sets the most URLs handed out.
+	 */
+	public void setMaxPages(int maxPages)
+	{
+		this.maxPages = maxPages;
+	}
+
+	/**
+	 * Sets the most URLs handed out per host.  All file: URLs are on the
+	 * same, empty, host.
+	 */
+	public void setHostQuota(int hostQuota)
+	{
+		this.hostQuota = hostQuota;
+	}
+
+	/**
+	 * Sets the most URLs handed out per directory.  Subdirectories have
+	 * quotas of their own.
+	 */
+	public void setDirectoryQuota(int directoryQuota)
+	{
+		this.directoryQuota = directoryQuota;
+	}
+
+	/**
+	 * Stops handing out URLs a number of milliseconds from now.
+	 */
+	public void setTimeBudget(long millis)
+	{
+		deadline = System.nanoTime() + millis * 1000000;
+		hasDeadline = true;
+	}
+
+	/**
+	 * Sets the URLs the crawl has reached.  A URL queued more than once is
+	 * then only counted against the limits the first time it is taken.
+	 */
+	public void setReached(VisitedSet reached)
+	{
+		this.reached = reached;
+	}
+
+	/**
+	 * Returns the number of URLs handed out.
+	 */
+	public int getPagesTaken()
+	{
+		return taken;
+	}
+
+	/**
+	 * Returns whether a URL found at a depth should be queued.
+	 */
+	boolean admit(String url, int depth)
+	{
+		return depth <= maxDepth;
+	}
+
+	/**
+	 * Returns whether a URL taken from the queue should be crawled, counting
+	 * it against the limits if so.  URLs already reached and URLs over their
+	 * quotas are not.
+	 */
+	boolean allow(String url)
+	{
+		if (reached != null && reached.contains(url))
+			return false;
+		String host = hostQuota == Integer.MAX_VALUE ? null : host(url);
+		String directory = directoryQuota == Integer.MAX_VALUE ? null : directory(url);
+		if (host != null && count(perHost, host) >= hostQuota)
+			return false;
+		if (directory != null && count(perDirectory, directory) >= directoryQuota)
+			return false;
+		if (host != null)
+			perHost.put(host, count(perHost, host) + 1);
+		if (directory != null)
+			perDirectory.put(directory, count(perDirectory, directory) + 1);
+		taken++;
+		return true;
+	}
+
+	/**
+	 * Returns whether no more URLs should be handed out.
+	 */
+	boolean isStopped()
+	{
+		return taken >= maxPages || (hasDeadline && System.nanoTime() - deadline >= 0);
+	}
+
+	private static int count(HashMap<String, Integer> counts, String key)
+	{
+		Integer count = counts.get(key);
+		return count == null ? 0 : count;
+	}
+
+	/**
+	 * Returns the host of a URL, or the empty string if it has none.
+	 */
+	static String host(String url)
+	{
+		int start = url.indexOf("://");
+		if (start < 0)
+			return "";
+		start += 3;
+		int end = start;
+		while (end < url.length() && url.charAt(end) != '/' && url.charAt(end) != '?')
+			end++;
+		return url.substring(start, end);
+	}
+
+	/**
+	 * Returns a URL up to the last '/' of its path.
+	 */
+	static String directory(String url)
+	{
+		int query = url.indexOf('?');
+		int slash = url.lastIndexOf('/', query < 0 ? url.length() - 1 : query - 1);
+		return slash < 0 ? url : url.substring(0, slash + 1);
+	}
+}
@@ -0,0 +1,130 @@
+import java.io.*;
+import java.nio.file.*;
+
+/**
+ * What a crawl needs to resume where it stopped: its frontier and the URLs
+ * it has reached, kept in a directory.  The directory holds:
+ * <pre>
+ *   state         the last checkpoint, replaced atomically
+ *   frontier.N    the segments of the frontier, see DiskQueue
+ *   visited       the log of the URLs reached, see VisitedSet
+ * </pre>
+ * The state file's lines are "frontier HEAD READ NEXT", the position of
+ * the frontier, and "visited LENGTH", the length of the log.  Anything
+ * written after the last checkpoint is discarded when the state is opened
+ * again, so the frontier and the URLs reached always match each other,
+ * and the index segments written at the same checkpoint.
+ */
+public class CrawlState {
+	/**
+	 * The name of the state file.
+	 */
+	public static final String STATE = "state";
+	/**
+	 * The name of the log of URLs reached.
+	 */
+	public static final String VISITED = "visited";
+
+	private File directory;
+	private DiskQueue frontier;
+	private VisitedSet visited;
+	private boolean resumed;
+
+	/**
+	 * Opens the state of a crawl.
+	 * @param directory The directory, which is created if it does not exist.
+	 * @param resume Whether to resume from the last checkpoint in the
+	 * directory, if there is one, rather than start a new crawl.
+	 */
+	public CrawlState(File directory, boolean resume) throws IOException
+	{
+		this.directory = directory;
+		if (!resume)
+			delete();
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("Unable to create " + directory);
+		int head = 0;
+		int headRead = 0;
+		int next = 0;
+		long visitedLength = 0;
+		File state = new File(directory, STATE);
+		resumed = state.exists();
+		if (resumed)
+		{
+			BufferedReader in = new BufferedReader(new FileReader(state));
+			try {
+				String line;
+				while ((line = in.readLine()) != null)
+				{
+					String[] fields = line.trim().split(" ");
+					if (fields[0].equals("frontier") && fields.length == 4)
+					{
+						head = Integer.parseInt(fields[1]);
+						headRead = Integer.parseInt(fields[2]);
+						next = Integer.parseInt(fields[3]);
+					}
+					else if (fields[0].equals("visited") && fields.length == 2)
+						visitedLength = Long.parseLong(fields[1]);
+				}
+			} finally {
+				in.close();
+			}
+		}
+		frontier = new DiskQueue(directory, head, headRead, next);
+		visited = new VisitedSet(new File(directory, VISITED), visitedLength);
+	}
+
+	/**
+	 * Returns whether a checkpoint was found to resume from.
+	 */
+	public boolean isResumed()
+	{
+		return resumed;
+	}
+
+	public DiskQueue getFrontier()
+	{
+		return frontier;
+	}
+
+	public VisitedSet getVisited()
+	{
+		return visited;
+	}
+
+	/**
+	 * Records the frontier and the URLs reached as they are now.  The crawl
+	 * must not change them until this returns.
+	 */
+	public void checkpoint() throws IOException
+	{
+		frontier.checkpoint();
+		long visitedLength = visited.checkpoint();
+		File tmp = new File(directory, STATE + ".tmp");
+		FileOutputStream file = new FileOutputStream(tmp);
+		try {
+			PrintWriter out = new PrintWriter(new OutputStreamWriter(file));
+			out.println("frontier " + frontier.getHead() + " " + frontier.getHeadRead() + " " + frontier.getNext());
+			out.println("visited " + visitedLength);
+			out.flush();
+			file.getFD().sync();
+		} finally {
+			file.close();
+		}
+		Files.move(tmp.toPath(), new File(directory, STATE).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		frontier.deleteRead();
+	}
+
+	/**
+	 * Deletes the state, once the crawl has finished.
+	 */
+	public void delete()
+	{
+		File[] files = directory.listFiles();
+		if (files == null)
+			return;
+		for (File f : files)
+			f.delete();
+		directory.delete();
+	}
+}
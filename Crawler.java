@@ -3,6 +3,7 @@ import io.github.pixee.security.Urls;
 import java.io.*;
 import java.net.*;
 import java.util.*;
+import java.util.concurrent.*;
 import javax.swing.text.*;
 import javax.swing.text.html.*;
 import javax.swing.text.html.parser.*;
@@ -10,6 +11,38 @@ import javax.swing.text.html.parser.*;
 public abstract class Crawler extends HTMLEditorKit.ParserCallback {
 	protected HTMLEditorKit.Parser parser = new ParserDelegator();
 
+	/**
+	 * The most idle PageReaders kept for reuse.
+	 */
+	public static final int POOLED_READERS = 64;
+	private ArrayBlockingQueue<PageReader> readers = new ArrayBlockingQueue<PageReader>(POOLED_READERS);
+
+	/**
+	 * Returns the HTML parser with the given name: "swing" for the Swing
+	 * parser, which builds every element of a document, or "scanner" for
+	 * HtmlScanner, which only finds the text and links the crawler needs.
+	 *
+	 * @param name	the name of the parser
+	 * @return	a new parser
+	 */
+	public static HTMLEditorKit.Parser newParser(String name) {
+		if (name.equals("swing"))
+			return new ParserDelegator();
+		else if (name.equals("scanner"))
+			return new HtmlScanner();
+		throw new IllegalArgumentException("Unknown parser " + name + "; expected swing or scanner");
+	}
+
+	/**
+	 * Selects the parser documents are parsed with.  The Swing parser is
+	 * used unless another is set.
+	 *
+	 * @param parser	the parser
+	 */
+	public void setParser(HTMLEditorKit.Parser parser) {
+		this.parser = parser;
+	}
+
 	/**
 	 * Returns the WebIndex object built by this Crawler.
 	 *
@@ -26,21 +59,115 @@ public abstract class Crawler extends HTMLEditorKit.ParserCallback {
 	 */
 	public List parse(String url) throws MalformedURLException, IOException {
 		System.out.println("STARTED PARSING " + url + " ...");
+		return parse(url, this);
+	}
+
+	/**
+	 * Parses an HTML document, driving the callback methods of the given
+	 * callback instead of this Crawler's own.  Crawls that parse several
+	 * documents at once give each document its own callback, so that no
+	 * per-document state is shared between threads.
+	 *
+	 * @param url	URL of the HTML document to parse
+	 * @param callback	the callback receiving the parser events
+	 * @return	an empty List
+	 */
+	public List parse(String url, HTMLEditorKit.ParserCallback callback) throws MalformedURLException, IOException {
+		return parse(url, openStream(url), callback);
+	}
+
+	/**
+	 * Parses an HTML document that has already been opened.  The stream is
+	 * closed when parsing finishes.
+	 *
+	 * @param url	URL of the HTML document to parse
+	 * @param stream	the contents of the document
+	 * @param callback	the callback receiving the parser events
+	 * @return	an empty List
+	 */
+	public List parse(String url, InputStream stream, HTMLEditorKit.ParserCallback callback) throws IOException {
 		Reader in = null;
 		try {
-			in = new BufferedReader(new InputStreamReader(Urls.create(url, Urls.HTTP_PROTOCOLS, HostValidator.DENY_COMMON_INFRASTRUCTURE_TARGETS).openStream()));
-			parser.parse(in, this, true);
-			flush();
+			in = new BufferedReader(new InputStreamReader(stream));
+			parse(url, in, callback);
 		} finally {
 			try {
 				if (in != null)
 					in.close();
+				else
+					stream.close();
 			} catch (IOException e) {
 			}
 		}
 		return new LinkedList();
 	}
 
+	/**
+	 * Parses an HTML document that has already been decoded.  The reader is
+	 * not closed.  The callback's flush() is called once the document has
+	 * been parsed.
+	 *
+	 * @param url	URL of the HTML document to parse
+	 * @param in	the contents of the document
+	 * @param callback	the callback receiving the parser events
+	 * @return	an empty List
+	 */
+	public List parse(String url, Reader in, HTMLEditorKit.ParserCallback callback) throws IOException {
+		parser.parse(in, callback, true);
+		try {
+			callback.flush();
+		} catch (BadLocationException e) {
+			throw new IOException(e);
+		}
+		return new LinkedList();
+	}
+
+	/**
+	 * Returns a PageReader for reading a local page, reusing one released
+	 * by an earlier page if there is one.
+	 */
+	protected PageReader acquireReader() {
+		PageReader reader = readers.poll();
+		return reader == null ? new PageReader() : reader;
+	}
+
+	/**
+	 * Returns a PageReader to the pool once its page has been parsed.
+	 */
+	protected void releaseReader(PageReader reader) {
+		reader.trim();
+		readers.offer(reader);
+	}
+
+	/**
+	 * Opens a stream reading the document at url.
+	 *
+	 * @param url	URL of the document
+	 * @return	the stream
+	 */
+	protected InputStream openStream(String url) throws MalformedURLException, IOException {
+		return createUrl(null, url).openStream();
+	}
+
+	/**
+	 * Creates the URL of a document.  file: URLs, which name pages on the
+	 * local disk the crawler was pointed at, are allowed; any other URL must
+	 * be http or https and must not name common infrastructure.
+	 *
+	 * @param context	the URL a relative url is resolved against, or null
+	 * @param url	the URL, possibly relative to context
+	 * @return	the URL
+	 * @throws SecurityException	if the URL is not allowed
+	 */
+	protected static URL createUrl(URL context, String url) throws MalformedURLException {
+		URL resolved = context == null ? new URL(url) : new URL(context, url);
+		if (resolved.getProtocol().equals("file"))
+			return resolved;
+		if (context == null)
+			return Urls.create(url, Urls.HTTP_PROTOCOLS, HostValidator.DENY_COMMON_INFRASTRUCTURE_TARGETS);
+		return Urls.create(context, url, Urls.HTTP_PROTOCOLS, HostValidator.DENY_COMMON_INFRASTRUCTURE_TARGETS);
+	}
+
 	/**
 	 * Called when the opening/starting instance of a two-part tag is
 	 * encountered, such as <code>&lt;a&gt;</code> or
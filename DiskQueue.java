@@ -0,0 +1,240 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * A first-in, first-out queue of URLs kept on disk, so that the frontier of
+ * a crawl is bounded by the disk rather than the heap and survives the
+ * crawl's process.
+ *
+ * URLs are added to a tail kept in memory.  Once the tail holds
+ * SEGMENT_URLS URLs, or when the queue is checkpointed, it is written out
+ * as a new segment file and never changed again.  URLs are read from the
+ * oldest segment first, one at a time, then from the tail once every
+ * segment has been read.  Only the tail and a buffer of the segment being
+ * read are held in memory.
+ *
+ * The directory holds segments named <code>frontier.N</code>, numbered in
+ * the order they were written.  Each holds the number of URLs in it,
+ * followed by each URL as its depth, its length in bytes and its bytes in
+ * UTF-8.  Which segments are
+ * still needed, and how far the oldest of them has been read, is recorded
+ * by the caller at each checkpoint; see CrawlState.
+ */
+public class DiskQueue implements UrlQueue {
+	/**
+	 * The number of URLs in a segment written because the tail filled up.
+	 */
+	public static final int SEGMENT_URLS = 16384;
+
+	private static final String PREFIX = "frontier.";
+
+	private File directory;
+	/**
+	 * The number of the segment being read, and how many of its URLs have
+	 * been read.  The segment is open only while it has URLs left.
+	 */
+	private int head;
+	private int headRead;
+	private int headCount;
+	private DataInputStream headIn;
+	/**
+	 * The number of the next segment to be written.
+	 */
+	private int next;
+	private ArrayDeque<QueuedUrl> tail;
+	private int size;
+
+	/**
+	 * Opens a queue in a directory, as it was at a checkpoint.  Segments the
+	 * checkpoint does not cover, because they had already been read or were
+	 * written after it, are deleted.
+	 * @param directory The directory, which must exist.
+	 * @param head The first segment not yet read to its end.
+	 * @param headRead The number of URLs read from that segment.
+	 * @param next The number of the next segment to be written.
+	 */
+	public DiskQueue(File directory, int head, int headRead, int next) throws IOException
+	{
+		this.directory = directory;
+		this.head = head;
+		this.headRead = 0;
+		this.next = next;
+		tail = new ArrayDeque<QueuedUrl>();
+		size = 0;
+		for (File file : directory.listFiles())
+		{
+			int n = segmentNumber(file);
+			if ((n >= 0 && (n < head || n >= next)) || file.getName().endsWith(".tmp"))
+				file.delete();
+		}
+		for (int n = head; n < next; n++)
+		{
+			DataInputStream in = new DataInputStream(new FileInputStream(segment(n)));
+			try {
+				size += in.readInt();
+			} finally {
+				in.close();
+			}
+		}
+		if (head < next)
+		{
+			open();
+			while (this.headRead < headRead)
+				poll();
+		}
+	}
+
+	private File segment(int n)
+	{
+		return new File(directory, PREFIX + n);
+	}
+
+	/**
+	 * Returns the number of a segment file, or -1 if it is not one.
+	 */
+	private static int segmentNumber(File file)
+	{
+		String name = file.getName();
+		if (!name.startsWith(PREFIX))
+			return -1;
+		try {
+			return Integer.parseInt(name.substring(PREFIX.length()));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	public synchronized boolean add(QueuedUrl url)
+	{
+		tail.add(url);
+		size++;
+		if (tail.size() >= SEGMENT_URLS)
+			try {
+				writeTail();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		return true;
+	}
+
+	public synchronized QueuedUrl poll()
+	{
+		try {
+			while (headIn == null && head < next)
+				open();
+			if (headIn != null)
+			{
+				int depth = headIn.readInt();
+				byte[] bytes = new byte[headIn.readInt()];
+				headIn.readFully(bytes);
+				QueuedUrl url = new QueuedUrl(new String(bytes, StandardCharsets.UTF_8), depth);
+				size--;
+				if (++headRead == headCount)
+				{
+					headIn.close();
+					headIn = null;
+					head++;
+					headRead = 0;
+				}
+				return url;
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		QueuedUrl url = tail.poll();
+		if (url != null)
+			size--;
+		return url;
+	}
+
+	/**
+	 * Opens the head segment, or moves past it if it is empty.
+	 */
+	private void open() throws IOException
+	{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment(head)), 1 << 16));
+		headCount = in.readInt();
+		headRead = 0;
+		if (headCount > 0)
+			headIn = in;
+		else
+		{
+			in.close();
+			head++;
+		}
+	}
+
+	public synchronized int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Writes the tail out as a segment, forcing it to disk.
+	 */
+	private void writeTail() throws IOException
+	{
+		File tmp = new File(directory, PREFIX + next + ".tmp");
+		FileOutputStream file = new FileOutputStream(tmp);
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16));
+			out.writeInt(tail.size());
+			for (QueuedUrl url : tail)
+			{
+				byte[] bytes = url.url.getBytes(StandardCharsets.UTF_8);
+				out.writeInt(url.depth);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			}
+			out.flush();
+			file.getFD().sync();
+		} finally {
+			file.close();
+		}
+		Files.move(tmp.toPath(), segment(next).toPath(), StandardCopyOption.ATOMIC_MOVE);
+		next++;
+		tail.clear();
+	}
+
+	/**
+	 * Writes any URLs in the tail out as a segment, so that every URL in
+	 * the queue is on disk.  The position of the queue is then given by
+	 * getHead(), getHeadRead() and getNext().
+	 */
+	public synchronized void checkpoint() throws IOException
+	{
+		if (!tail.isEmpty())
+			writeTail();
+	}
+
+	public synchronized int getHead()
+	{
+		return head;
+	}
+
+	public synchronized int getHeadRead()
+	{
+		return headRead;
+	}
+
+	public synchronized int getNext()
+	{
+		return next;
+	}
+
+	/**
+	 * Deletes the segments that have been read to their end.  Should only be
+	 * called once a checkpoint after them has been recorded.
+	 */
+	public synchronized void deleteRead()
+	{
+		for (File file : directory.listFiles())
+		{
+			int n = segmentNumber(file);
+			if (n >= 0 && n < head)
+				file.delete();
+		}
+	}
+}
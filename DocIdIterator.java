@@ -0,0 +1,243 @@
+import java.util.*;
+
+/**
+ * Iterates over a set of document ids in increasing order.  Besides
+ * stepping to the next document, an iterator can skip ahead to the first
+ * document at or after a target, which is what lets a conjunction jump
+ * over long runs of documents that cannot match instead of visiting them.
+ *
+ * The nested classes combine iterators into the boolean operators used by
+ * QueryPlan.  None of them collects its input; each result is produced as
+ * the iterator is advanced.
+ */
+public abstract class DocIdIterator {
+	/**
+	 * The document id returned once an iterator is exhausted.  It is larger
+	 * than every real document id.
+	 */
+	public static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+	/**
+	 * Returns the current document id: -1 before the first call to
+	 * nextDoc() or advance(), NO_MORE_DOCS once the iterator is exhausted.
+	 */
+	public abstract int docId();
+
+	/**
+	 * Moves to the next document.
+	 * @return the new current document id, or NO_MORE_DOCS
+	 */
+	public abstract int nextDoc();
+
+	/**
+	 * Moves to the first document whose id is at least target.  The target
+	 * must be greater than the current document id.
+	 * @return the new current document id, or NO_MORE_DOCS
+	 */
+	public abstract int advance(int target);
+
+	/**
+	 * Returns an upper bound on the number of documents left to iterate.
+	 */
+	public abstract long cost();
+
+	/**
+	 * Returns an iterator over no documents.
+	 */
+	public static DocIdIterator empty()
+	{
+		return new Empty();
+	}
+
+	private static class Empty extends DocIdIterator
+	{
+		private int doc = -1;
+
+		public int docId()
+		{
+			return doc;
+		}
+
+		public int nextDoc()
+		{
+			return doc = NO_MORE_DOCS;
+		}
+
+		public int advance(int target)
+		{
+			return doc = NO_MORE_DOCS;
+		}
+
+		public long cost()
+		{
+			return 0;
+		}
+	}
+
+	/**
+	 * Iterates over the documents that every operand contains, by
+	 * leapfrogging: the rarest operand proposes a candidate, each other
+	 * operand advances to it, and the first one to overshoot proposes the
+	 * next candidate.
+	 */
+	public static class Conjunction extends DocIdIterator
+	{
+		private DocIdIterator[] operands;
+		private int doc = -1;
+
+		/**
+		 * @param operands The operands, which are sorted by cost here.
+		 */
+		public Conjunction(List<DocIdIterator> operands)
+		{
+			this.operands = operands.toArray(new DocIdIterator[0]);
+			Arrays.sort(this.operands, new Comparator<DocIdIterator>() {
+				public int compare(DocIdIterator a, DocIdIterator b) {
+					return Long.compare(a.cost(), b.cost());
+				}
+			});
+		}
+
+		public int docId()
+		{
+			return doc;
+		}
+
+		public int nextDoc()
+		{
+			return doc = leapfrog(operands[0].nextDoc());
+		}
+
+		public int advance(int target)
+		{
+			return doc = leapfrog(operands[0].advance(target));
+		}
+
+		private int leapfrog(int target)
+		{
+			candidates:
+			while (target != NO_MORE_DOCS)
+			{
+				for (int i = 1; i < operands.length; i++)
+				{
+					int other = operands[i].docId();
+					if (other < target)
+						other = operands[i].advance(target);
+					if (other > target)
+					{
+						target = operands[0].advance(other);
+						continue candidates;
+					}
+				}
+				return target;
+			}
+			return NO_MORE_DOCS;
+		}
+
+		public long cost()
+		{
+			return operands[0].cost();
+		}
+	}
+
+	/**
+	 * Iterates over the documents that any operand contains.  Queries have
+	 * few operands, so the smallest current document is found by a linear
+	 * scan rather than a heap.
+	 */
+	public static class Disjunction extends DocIdIterator
+	{
+		private DocIdIterator[] operands;
+		private int doc = -1;
+
+		public Disjunction(List<DocIdIterator> operands)
+		{
+			this.operands = operands.toArray(new DocIdIterator[0]);
+		}
+
+		public int docId()
+		{
+			return doc;
+		}
+
+		public int nextDoc()
+		{
+			if (doc == NO_MORE_DOCS)
+				return doc;
+			return advance(doc + 1);
+		}
+
+		public int advance(int target)
+		{
+			int min = NO_MORE_DOCS;
+			for (DocIdIterator operand : operands)
+			{
+				int other = operand.docId();
+				if (other < target)
+					other = operand.advance(target);
+				if (other < min)
+					min = other;
+			}
+			return doc = min;
+		}
+
+		public long cost()
+		{
+			long sum = 0;
+			for (DocIdIterator operand : operands)
+				sum += operand.cost();
+			return sum;
+		}
+	}
+
+	/**
+	 * Iterates over the documents one iterator contains and another does
+	 * not.  The excluded iterator is only advanced to candidates of the
+	 * required one, so it is never walked in full.
+	 */
+	public static class Exclusion extends DocIdIterator
+	{
+		private DocIdIterator required;
+		private DocIdIterator excluded;
+
+		public Exclusion(DocIdIterator required, DocIdIterator excluded)
+		{
+			this.required = required;
+			this.excluded = excluded;
+		}
+
+		public int docId()
+		{
+			return required.docId();
+		}
+
+		public int nextDoc()
+		{
+			return skipExcluded(required.nextDoc());
+		}
+
+		public int advance(int target)
+		{
+			return skipExcluded(required.advance(target));
+		}
+
+		private int skipExcluded(int doc)
+		{
+			while (doc != NO_MORE_DOCS)
+			{
+				int other = excluded.docId();
+				if (other < doc)
+					other = excluded.advance(doc);
+				if (other != doc)
+					return doc;
+				doc = required.nextDoc();
+			}
+			return NO_MORE_DOCS;
+		}
+
+		public long cost()
+		{
+			return required.cost();
+		}
+	}
+}
@@ -0,0 +1,186 @@
+import java.util.*;
+
+/**
+ * The words of one document, collected privately by the thread parsing it
+ * before they are merged into a shared WebIndex with
+ * WebIndex.addDocument().  Building the buffer touches no shared state, so
+ * any number of threads can tokenize documents at once; only the merge
+ * takes locks.
+ */
+public class DocumentBuffer {
+	/**
+	 * The number of words in the shingles getSimHash() hashes.
+	 */
+	public static final int SHINGLE = 3;
+
+	/**
+	 * The positions of one word in the document.
+	 */
+	static class Occurrences
+	{
+		int[] positions = new int[2];
+		int count;
+
+		void add(int position)
+		{
+			if (count == positions.length)
+				positions = Arrays.copyOf(positions, count * 2);
+			positions[count++] = position;
+		}
+	}
+
+	private HashMap<String, Occurrences> words;
+	private int wordCount;
+	private Tokenizer tokenizer;
+
+	/**
+	 * Creates a buffer splitting phrases with its own tokenizer.
+	 */
+	public DocumentBuffer()
+	{
+		this(new Tokenizer(new TermDictionary()));
+	}
+
+	/**
+	 * @param tokenizer Splits the phrases added into words.
+	 */
+	public DocumentBuffer(Tokenizer tokenizer)
+	{
+		words = new HashMap<String, Occurrences>();
+		wordCount = 0;
+		this.tokenizer = tokenizer;
+	}
+
+	/**
+	 * Adds the words of a phrase to the document, after the words already
+	 * added.
+	 * @param phrase the char[] containing the phrase.
+	 */
+	public void addPhrase(char[] phrase)
+	{
+		addPhrase(phrase, 0, phrase.length);
+	}
+
+	/**
+	 * Adds the words of a slice of a phrase to the document, after the words
+	 * already added.
+	 */
+	public void addPhrase(char[] phrase, int offset, int length)
+	{
+		tokenizer.reset(phrase, offset, length);
+		for (String word = tokenizer.next(); word != null; word = tokenizer.next())
+			addWord(word);
+	}
+
+	/**
+	 * Adds a word to the document, after the words already added.  The first
+	 * word of a document is at position 1.
+	 */
+	public void addWord(String word)
+	{
+		Occurrences occurrences = words.get(word);
+		if (occurrences == null)
+		{
+			occurrences = new Occurrences();
+			words.put(word, occurrences);
+		}
+		occurrences.add(++wordCount);
+	}
+
+	/**
+	 * Returns the number of words added.
+	 */
+	public int getWordCount()
+	{
+		return wordCount;
+	}
+
+	/**
+	 * Returns the distinct words added.
+	 */
+	public Set<String> getWords()
+	{
+		return words.keySet();
+	}
+
+	/**
+	 * Returns the positions of a word.  Only the first getFrequency(word)
+	 * entries of the array are meaningful.
+	 */
+	public int[] getPositions(String word)
+	{
+		return words.get(word).positions;
+	}
+
+	/**
+	 * Returns the number of times a word was added.
+	 */
+	public int getFrequency(String word)
+	{
+		Occurrences occurrences = words.get(word);
+		return occurrences == null ? 0 : occurrences.count;
+	}
+
+	/**
+	 * Returns a 64-bit hash of the sequence of words added.  Documents that
+	 * differ only in markup, whitespace or case, or in anything else the
+	 * analyzer drops, have the same hash.
+	 */
+	public long getContentHash()
+	{
+		long hash = wordCount;
+		for (Map.Entry<String, Occurrences> entry : words.entrySet())
+		{
+			long word = VisitedSet.fingerprint(entry.getKey());
+			Occurrences occurrences = entry.getValue();
+			// A sum, so that the order the words are visited in does not matter.
+			for (int i = 0; i < occurrences.count; i++)
+				hash += mix(word + occurrences.positions[i] * 0x9E3779B97F4A7C15L);
+		}
+		return hash;
+	}
+
+	private static long mix(long h)
+	{
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * Returns the SimHash of the document's shingles, the runs of SHINGLE
+	 * consecutive words in it: bit i is set if more shingles have a hash
+	 * with bit i set than not.  Documents that share most of their shingles,
+	 * that is, most of their text in the same order, have SimHashes that
+	 * differ in few bits.
+	 */
+	public long getSimHash()
+	{
+		long[] sequence = new long[wordCount + 1];
+		for (Map.Entry<String, Occurrences> entry : words.entrySet())
+		{
+			long word = VisitedSet.fingerprint(entry.getKey());
+			Occurrences occurrences = entry.getValue();
+			for (int i = 0; i < occurrences.count; i++)
+				sequence[occurrences.positions[i]] = word;
+		}
+		int length = Math.min(SHINGLE, wordCount);
+		int[] weights = new int[64];
+		for (int start = 1; start + length - 1 <= wordCount; start++)
+		{
+			long shingle = sequence[start];
+			for (int i = 1; i < length; i++)
+				shingle = mix(shingle * 0x9E3779B97F4A7C15L + sequence[start + i]);
+			for (int bit = 0; bit < 64; bit++)
+				weights[bit] += (shingle >>> bit & 1) != 0 ? 1 : -1;
+		}
+		long simHash = 0;
+		for (int bit = 0; bit < 64; bit++)
+			if (weights[bit] > 0)
+				simHash |= 1L << bit;
+		return simHash;
+	}
+}
@@ -0,0 +1,164 @@
+import java.util.*;
+
+/**
+ * Finds documents whose text was already indexed under another URL, such
+ * as mirrors, copied documentation trees and the same files reached
+ * through symbolic links.  A crawl checks each document against the
+ * documents indexed so far; a duplicate is recorded as an alias of the
+ * first copy instead of being indexed again.
+ *
+ * A document is an exact duplicate if its DocumentBuffer content hash
+ * matches, and a near duplicate if it has at least NEAR_MIN_WORDS words and
+ * its SimHash differs in at most NEAR_DISTANCE bits.  Near duplicates are
+ * found without comparing every pair, as in Manku et al., "Detecting
+ * Near-Duplicates for Web Crawling": the SimHash is cut into NEAR_DISTANCE
+ * + 1 bands, and two SimHashes that close must agree on at least one band,
+ * so only the documents sharing a band are compared.
+ *
+ * All methods are synchronized, so one detector may serve every worker of
+ * a crawl.
+ */
+public class DuplicateDetector {
+	/**
+	 * The most bits in which the SimHashes of near duplicates differ.
+	 */
+	public static final int NEAR_DISTANCE = 3;
+	/**
+	 * The fewest words a document needs to be compared by SimHash.  The
+	 * SimHashes of short documents say too little about their text.
+	 */
+	public static final int NEAR_MIN_WORDS = 20;
+
+	private static final int BANDS = NEAR_DISTANCE + 1;
+	private static final int BAND_BITS = 64 / BANDS;
+
+	/**
+	 * The fingerprints of one indexed document.
+	 */
+	private static class Entry
+	{
+		String url;
+		long contentHash;
+		long simHash;
+
+		Entry(String url, long contentHash, long simHash)
+		{
+			this.url = url;
+			this.contentHash = contentHash;
+			this.simHash = simHash;
+		}
+	}
+
+	private HashMap<String, Entry> byUrl;
+	private HashMap<Long, Entry> byContent;
+	/**
+	 * For each band, the documents compared by SimHash, by the value of
+	 * their SimHash in that band.
+	 */
+	private ArrayList<HashMap<Integer, ArrayList<Entry>>> bands;
+
+	public DuplicateDetector()
+	{
+		byUrl = new HashMap<String, Entry>();
+		byContent = new HashMap<Long, Entry>();
+		bands = new ArrayList<HashMap<Integer, ArrayList<Entry>>>(BANDS);
+		for (int i = 0; i < BANDS; i++)
+			bands.add(new HashMap<Integer, ArrayList<Entry>>());
+	}
+
+	/**
+	 * Returns the SimHash a document is compared by, or 0 if it is too short
+	 * to be compared by SimHash.
+	 */
+	public static long simHash(DocumentBuffer words)
+	{
+		return words.getWordCount() >= NEAR_MIN_WORDS ? words.getSimHash() : 0;
+	}
+
+	/**
+	 * Checks a document against those added so far, and adds it if it is not
+	 * a duplicate of one of them.
+	 * @param url The URL of the document.
+	 * @param contentHash The DocumentBuffer content hash of the document.
+	 * @param simHash The SimHash of the document, as returned by simHash().
+	 * @return the URL of the document it duplicates, or null if it is not a
+	 * duplicate and was added
+	 */
+	public synchronized String check(String url, long contentHash, long simHash)
+	{
+		remove(url);
+		Entry same = byContent.get(contentHash);
+		if (same != null)
+			return same.url;
+		if (simHash != 0)
+			for (int band = 0; band < BANDS; band++)
+			{
+				ArrayList<Entry> candidates = bands.get(band).get(band(simHash, band));
+				if (candidates != null)
+					for (Entry candidate : candidates)
+						if (Long.bitCount(candidate.simHash ^ simHash) <= NEAR_DISTANCE)
+							return candidate.url;
+			}
+		add(url, contentHash, simHash);
+		return null;
+	}
+
+	/**
+	 * Adds a document indexed earlier, such as one recorded in the metadata
+	 * of an earlier crawl.
+	 * @param simHash The SimHash of the document, as returned by simHash().
+	 */
+	public synchronized void add(String url, long contentHash, long simHash)
+	{
+		remove(url);
+		Entry entry = new Entry(url, contentHash, simHash);
+		byUrl.put(url, entry);
+		if (!byContent.containsKey(contentHash))
+			byContent.put(contentHash, entry);
+		if (simHash != 0)
+			for (int band = 0; band < BANDS; band++)
+			{
+				ArrayList<Entry> members = bands.get(band).get(band(simHash, band));
+				if (members == null)
+				{
+					members = new ArrayList<Entry>(1);
+					bands.get(band).put(band(simHash, band), members);
+				}
+				members.add(entry);
+			}
+	}
+
+	/**
+	 * Forgets a document, if it was added, so that it is no longer found as
+	 * the original of others.
+	 */
+	public synchronized void remove(String url)
+	{
+		Entry entry = byUrl.remove(url);
+		if (entry == null)
+			return;
+		if (byContent.get(entry.contentHash) == entry)
+			byContent.remove(entry.contentHash);
+		if (entry.simHash != 0)
+			for (int band = 0; band < BANDS; band++)
+			{
+				ArrayList<Entry> members = bands.get(band).get(band(entry.simHash, band));
+				members.remove(entry);
+				if (members.isEmpty())
+					bands.get(band).remove(band(entry.simHash, band));
+			}
+	}
+
+	/**
+	 * Returns the number of documents added.
+	 */
+	public synchronized int size()
+	{
+		return byUrl.size();
+	}
+
+	private static int band(long simHash, int band)
+	{
+		return (int) (simHash >>> (band * BAND_BITS)) & ((1 << BAND_BITS) - 1);
+	}
+}
@@ -0,0 +1,84 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * An InputStream that computes a 64-bit FNV-1a hash of everything read
+ * through it.  The hash is only meaningful once the stream has been read to
+ * the end.
+ */
+public class HashingInputStream extends FilterInputStream {
+	private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long PRIME = 0x100000001b3L;
+
+	private long hash;
+
+	public HashingInputStream(InputStream in)
+	{
+		super(in);
+		hash = OFFSET_BASIS;
+	}
+
+	public int read() throws IOException
+	{
+		int b = in.read();
+		if (b >= 0)
+			hash = (hash ^ b) * PRIME;
+		return b;
+	}
+
+	public int read(byte[] b, int off, int len) throws IOException
+	{
+		int n = in.read(b, off, len);
+		for (int i = 0; i < n; i++)
+			hash = (hash ^ (b[off + i] & 0xFF)) * PRIME;
+		return n;
+	}
+
+	public long skip(long n) throws IOException
+	{
+		byte[] b = new byte[(int) Math.min(n, 8192)];
+		long skipped = 0;
+		while (skipped < n)
+		{
+			int r = read(b, 0, (int) Math.min(b.length, n - skipped));
+			if (r < 0)
+				break;
+			skipped += r;
+		}
+		return skipped;
+	}
+
+	public boolean markSupported()
+	{
+		return false;
+	}
+
+	/**
+	 * Returns the hash of the bytes read so far.
+	 */
+	public long getHash()
+	{
+		return hash;
+	}
+
+	/**
+	 * Returns the hash of the bytes remaining in a buffer, which is the hash
+	 * a HashingInputStream would give after reading the same bytes.  The
+	 * buffer's position is not changed.
+	 */
+	public static long hash(ByteBuffer bytes)
+	{
+		long h = OFFSET_BASIS;
+		if (bytes.hasArray())
+		{
+			byte[] b = bytes.array();
+			int end = bytes.arrayOffset() + bytes.limit();
+			for (int i = bytes.arrayOffset() + bytes.position(); i < end; i++)
+				h = (h ^ (b[i] & 0xFF)) * PRIME;
+		}
+		else
+			for (int i = bytes.position(); i < bytes.limit(); i++)
+				h = (h ^ (bytes.get(i) & 0xFF)) * PRIME;
+		return h;
+	}
+}
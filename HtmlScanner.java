@@ -0,0 +1,420 @@
+import java.io.*;
+import java.util.*;
+import javax.swing.text.*;
+import javax.swing.text.html.*;
+
+/**
+ * A fast HTML parser that only reports what the crawler indexes: the text
+ * of a document and the start of its <code>&lt;a&gt;</code> tags, with
+ * their href.  Instead of building elements from a DTD like the Swing
+ * parser, it scans the characters once through a fixed-size buffer,
+ * keeping only the tag or entity being read, so pages are parsed in time
+ * and memory proportional to their size.
+ *
+ * Text is reported with handleText() in runs broken by every tag, as the
+ * Swing parser does, with character references decoded and runs that are
+ * only whitespace left out.  The contents of comments, declarations and
+ * script and style elements are skipped.  Only <code>&lt;a&gt;</code> is
+ * reported to handleStartTag(), with its href as HTML.Attribute.HREF.
+ *
+ * A scanner keeps no state between documents, so one scanner may parse
+ * documents on any number of threads at once.
+ */
+public class HtmlScanner extends HTMLEditorKit.Parser {
+	/**
+	 * The number of chars first read from a document at a time.  The buffer
+	 * only grows when a tag does not fit in it.
+	 */
+	public static final int BUFFER_SIZE = 1024;
+
+	/**
+	 * The named character references decoded, by name.
+	 */
+	private static final HashMap<String, Character> ENTITIES = new HashMap<String, Character>();
+	static {
+		// The HTML 4 Latin-1 entities, in order from U+00A0.
+		String[] latin1 = {
+			"nbsp", "iexcl", "cent", "pound", "curren", "yen", "brvbar", "sect",
+			"uml", "copy", "ordf", "laquo", "not", "shy", "reg", "macr",
+			"deg", "plusmn", "sup2", "sup3", "acute", "micro", "para", "middot",
+			"cedil", "sup1", "ordm", "raquo", "frac14", "frac12", "frac34", "iquest",
+			"Agrave", "Aacute", "Acirc", "Atilde", "Auml", "Aring", "AElig", "Ccedil",
+			"Egrave", "Eacute", "Ecirc", "Euml", "Igrave", "Iacute", "Icirc", "Iuml",
+			"ETH", "Ntilde", "Ograve", "Oacute", "Ocirc", "Otilde", "Ouml", "times",
+			"Oslash", "Ugrave", "Uacute", "Ucirc", "Uuml", "Yacute", "THORN", "szlig",
+			"agrave", "aacute", "acirc", "atilde", "auml", "aring", "aelig", "ccedil",
+			"egrave", "eacute", "ecirc", "euml", "igrave", "iacute", "icirc", "iuml",
+			"eth", "ntilde", "ograve", "oacute", "ocirc", "otilde", "ouml", "divide",
+			"oslash", "ugrave", "uacute", "ucirc", "uuml", "yacute", "thorn", "yuml"
+		};
+		for (int i = 0; i < latin1.length; i++)
+			ENTITIES.put(latin1[i], (char) (0xA0 + i));
+		ENTITIES.put("quot", '"');
+		ENTITIES.put("amp", '&');
+		ENTITIES.put("apos", '\'');
+		ENTITIES.put("lt", '<');
+		ENTITIES.put("gt", '>');
+	}
+
+	/**
+	 * Parses a document, driving the callback.
+	 * @param in The document.
+	 * @param callback Receives the text and links of the document.
+	 * @param ignoreCharSet Unused; the reader has already decoded the document.
+	 */
+	public void parse(Reader in, HTMLEditorKit.ParserCallback callback, boolean ignoreCharSet) throws IOException
+	{
+		new Scan(in, callback).run();
+	}
+
+	/**
+	 * The state of one document being scanned.
+	 */
+	private static class Scan
+	{
+		private Reader in;
+		private HTMLEditorKit.ParserCallback callback;
+		private char[] buffer = new char[BUFFER_SIZE];
+		/**
+		 * The next char to scan, and the end of the chars read.
+		 */
+		private int pos;
+		private int limit;
+		/**
+		 * The offset in the document of buffer[0].
+		 */
+		private int base;
+		private boolean eof;
+		/**
+		 * The text of the current run, decoded.
+		 */
+		private char[] text = new char[128];
+		private int textLength;
+		private int textStart;
+		private boolean textBlank = true;
+
+		Scan(Reader in, HTMLEditorKit.ParserCallback callback)
+		{
+			this.in = in;
+			this.callback = callback;
+		}
+
+		/**
+		 * Returns the char at offset from pos, reading more of the document
+		 * if needed, or -1 if the document ends first.  The chars from pos on
+		 * are kept in the buffer, so a construct can be looked at as a whole
+		 * before it is consumed.
+		 */
+		private int peek(int offset) throws IOException
+		{
+			while (pos + offset >= limit)
+			{
+				if (eof)
+					return -1;
+				if (pos > 0)
+				{
+					System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+					base += pos;
+					limit -= pos;
+					pos = 0;
+				}
+				if (limit == buffer.length)
+					buffer = Arrays.copyOf(buffer, buffer.length * 2);
+				int n = in.read(buffer, limit, buffer.length - limit);
+				if (n < 0)
+					eof = true;
+				else
+					limit += n;
+			}
+			return buffer[pos + offset];
+		}
+
+		void run() throws IOException
+		{
+			for (int c = peek(0); c >= 0; c = peek(0))
+			{
+				// Copy the plain text up to the next markup or reference at once.
+				int start = pos;
+				while (pos < limit && buffer[pos] != '<' && buffer[pos] != '&')
+					pos++;
+				if (pos > start)
+				{
+					append(buffer, start, pos - start, base + start);
+					continue;
+				}
+				if (c == '<' && markup())
+					continue;
+				if (c == '&')
+					entity();
+				else
+				{
+					append(buffer, pos, 1, base + pos);
+					pos++;
+				}
+			}
+			endText();
+		}
+
+		/**
+		 * Appends chars to the current run of text.
+		 * @param position The offset in the document of the first char.
+		 */
+		private void append(char[] chars, int offset, int length, int position)
+		{
+			if (textLength == 0)
+				textStart = position;
+			if (textLength + length > text.length)
+				text = Arrays.copyOf(text, Math.max(text.length * 2, textLength + length));
+			System.arraycopy(chars, offset, text, textLength, length);
+			textLength += length;
+			for (int i = offset; textBlank && i < offset + length; i++)
+				if (!Character.isWhitespace(chars[i]) && chars[i] != '\u00A0')
+					textBlank = false;
+		}
+
+		/**
+		 * Reports the current run of text, unless it is blank.
+		 */
+		private void endText()
+		{
+			if (!textBlank)
+				callback.handleText(Arrays.copyOf(text, textLength), textStart);
+			textLength = 0;
+			textBlank = true;
+		}
+
+		/**
+		 * Consumes the markup starting at pos, if the '<' there starts any.
+		 * @return false if the '<' is just text
+		 */
+		private boolean markup() throws IOException
+		{
+			int c = peek(1);
+			if (c == '!')
+			{
+				endText();
+				if (peek(2) == '-' && peek(3) == '-')
+				{
+					pos += 4;
+					skipPast("-->");
+				}
+				else
+					skipPast(">");
+			}
+			else if (c == '?')
+			{
+				endText();
+				skipPast(">");
+			}
+			else if (c == '/' && isNameStart(peek(2)))
+			{
+				endText();
+				skipPast(">");
+			}
+			else if (isNameStart(c))
+			{
+				endText();
+				startTag();
+			}
+			else
+				return false;
+			return true;
+		}
+
+		private static boolean isNameStart(int c)
+		{
+			return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+		}
+
+		private static boolean isNameChar(int c)
+		{
+			return c > ' ' && c != '>' && c != '/' && c != '=';
+		}
+
+		/**
+		 * Consumes everything up to and including the next occurrence of a
+		 * lower-case terminator, ignoring case.
+		 */
+		private void skipPast(String terminator) throws IOException
+		{
+			int n = terminator.length();
+			while (true)
+			{
+				int i = 0;
+				int c = 0;
+				while (i < n && (c = peek(i)) >= 0 && Character.toLowerCase((char) c) == terminator.charAt(i))
+					i++;
+				if (i == n)
+				{
+					pos += n;
+					return;
+				}
+				if (c < 0 && peek(0) < 0)
+					return;
+				pos++;
+			}
+		}
+
+		/**
+		 * Consumes a start tag, reporting it if it is an <code>&lt;a&gt;</code>.
+		 */
+		private void startTag() throws IOException
+		{
+			int position = base + pos;
+			int i = 1;
+			while (isNameChar(peek(i)))
+				i++;
+			String name = new String(buffer, pos + 1, i - 1).toLowerCase(Locale.ROOT);
+			boolean link = name.equals("a");
+			String href = null;
+			while (true)
+			{
+				int c = peek(i);
+				while (c >= 0 && (c <= ' ' || c == '/'))
+					c = peek(++i);
+				if (c < 0 || c == '>')
+					break;
+				int nameStart = i;
+				while (isNameChar(peek(i)))
+					i++;
+				if (i == nameStart)
+				{
+					// A stray '='.
+					i++;
+					continue;
+				}
+				int nameEnd = i;
+				while ((c = peek(i)) >= 0 && c <= ' ')
+					i++;
+				if (c != '=')
+					continue;
+				c = peek(++i);
+				while (c >= 0 && c <= ' ')
+					c = peek(++i);
+				int valueStart;
+				int valueEnd;
+				if (c == '"' || c == '\'')
+				{
+					valueStart = ++i;
+					int d;
+					while ((d = peek(i)) >= 0 && d != c)
+						i++;
+					valueEnd = i;
+					if (d >= 0)
+						i++;
+				}
+				else
+				{
+					valueStart = i;
+					while ((c = peek(i)) > ' ' && c != '>')
+						i++;
+					valueEnd = i;
+				}
+				if (link && href == null && nameEnd - nameStart == 4
+						&& new String(buffer, pos + nameStart, 4).equalsIgnoreCase("href"))
+					href = decode(buffer, pos + valueStart, valueEnd - valueStart);
+			}
+			pos += peek(i) < 0 ? i : i + 1;
+			if (link)
+			{
+				SimpleAttributeSet attributes = new SimpleAttributeSet();
+				if (href != null)
+					attributes.addAttribute(HTML.Attribute.HREF, href);
+				callback.handleStartTag(HTML.Tag.A, attributes, position);
+			}
+			else if (name.equals("script") || name.equals("style"))
+			{
+				skipPast("</" + name);
+				skipPast(">");
+			}
+		}
+
+		/**
+		 * Consumes a character reference at pos, appending what it stands
+		 * for to the text, or just the '&' if it is not one.
+		 */
+		private void entity() throws IOException
+		{
+			int i = 1;
+			int c;
+			while (i < 12 && ((c = peek(i)) == '#' || Character.isLetterOrDigit(c)))
+				i++;
+			int decoded = reference(buffer, pos + 1, i - 1);
+			if (decoded < 0)
+			{
+				append(buffer, pos, 1, base + pos);
+				pos++;
+				return;
+			}
+			if (peek(i) == ';')
+				i++;
+			int position = base + pos;
+			pos += i;
+			char[] chars = Character.toChars(decoded);
+			append(chars, 0, chars.length, position);
+		}
+	}
+
+	/**
+	 * Returns the code point a character reference stands for, given the
+	 * chars between its '&' and ';', or -1 if it is not a reference.
+	 */
+	static int reference(char[] chars, int offset, int length)
+	{
+		if (length < 2)
+			return -1;
+		if (chars[offset] == '#')
+		{
+			int radix = 10;
+			int start = offset + 1;
+			if (chars[start] == 'x' || chars[start] == 'X')
+			{
+				radix = 16;
+				start++;
+			}
+			int value = 0;
+			if (start == offset + length)
+				return -1;
+			for (int i = start; i < offset + length; i++)
+			{
+				int digit = Character.digit(chars[i], radix);
+				if (digit < 0)
+					return -1;
+				value = value * radix + digit;
+				if (value > Character.MAX_CODE_POINT)
+					return -1;
+			}
+			return value == 0 ? -1 : value;
+		}
+		Character c = ENTITIES.get(new String(chars, offset, length));
+		return c == null ? -1 : c;
+	}
+
+	/**
+	 * Returns an attribute value with its character references decoded.
+	 */
+	static String decode(char[] chars, int offset, int length)
+	{
+		StringBuffer value = new StringBuffer(length);
+		int end = offset + length;
+		for (int i = offset; i < end; i++)
+		{
+			char c = chars[i];
+			if (c == '&')
+			{
+				int j = i + 1;
+				while (j < end && j - i < 12 && (chars[j] == '#' || Character.isLetterOrDigit(chars[j])))
+					j++;
+				int decoded = reference(chars, i + 1, j - i - 1);
+				if (decoded >= 0)
+				{
+					value.appendCodePoint(decoded);
+					i = j < end && chars[j] == ';' ? j : j - 1;
+					continue;
+				}
+			}
+			value.append(c);
+		}
+		return value.toString();
+	}
+}
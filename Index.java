@@ -1,14 +1,36 @@
 import java.io.*;
 
 public class Index implements Serializable {
+	/**
+	 * The value computed for the first version, which did not declare one,
+	 * so that the indexes it serialized still load.
+	 */
+	private static final long serialVersionUID = -2254717295794153630L;
+
+	/**
+	 * Loads an index from a file.  Files starting with IndexWriter.MAGIC are
+	 * read with IndexReader; anything else is taken to be a serialized Index
+	 * written by an older version.
+	 *
+	 * @param filename	the file to read
+	 * @return	the index, or null if it could not be loaded
+	 */
 	public static Index load(String filename) {
 		FileInputStream fin = null;
 		ObjectInputStream oin = null;
 		Index result = null;
 		try {
 			fin = new FileInputStream(filename);
-			oin = new ObjectInputStream(fin);
-			result = (Index)oin.readObject();
+			BufferedInputStream bin = new BufferedInputStream(fin);
+			bin.mark(4);
+			int magic = new DataInputStream(bin).readInt();
+			bin.reset();
+			if (magic == IndexWriter.MAGIC)
+				result = new IndexReader(bin).read();
+			else {
+				oin = new ObjectInputStream(bin);
+				result = (Index)oin.readObject();
+			}
 		} catch (IOException e) {
 			System.out.println(e);
 		} catch (ClassNotFoundException e) {
@@ -28,6 +50,16 @@ public class Index implements Serializable {
 	}
 
 	public void save(String filename) throws IOException {
+		saveSerialized(filename);
+	}
+
+	/**
+	 * Saves this index with Java serialization, the format used before
+	 * IndexWriter existed.
+	 *
+	 * @param filename	the file to write
+	 */
+	public void saveSerialized(String filename) throws IOException {
 		FileOutputStream fout = null;
 		ObjectOutputStream oout = null;
 		try {
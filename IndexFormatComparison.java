@@ -0,0 +1,51 @@
+import java.io.*;
+
+/**
+ * Compares the binary index format with Java serialization on the same
+ * index: the size of each file and the average time to load it.
+ *
+ * Usage: java IndexFormatComparison index.db [rounds]
+ */
+public class IndexFormatComparison {
+	public static void main(String... args) throws Exception {
+		if (args.length == 0) {
+			System.out.println("No index specified.");
+			System.exit(0);
+		}
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		WebIndex index = (WebIndex)Index.load(args[0]);
+		if (index == null) {
+			System.out.println("Unable to load " + args[0]);
+			System.exit(1);
+		}
+
+		File serialized = File.createTempFile("index", ".ser");
+		File binary = File.createTempFile("index", ".db");
+		try {
+			long start = System.nanoTime();
+			index.saveSerialized(serialized.getPath());
+			long serializedSave = System.nanoTime() - start;
+			start = System.nanoTime();
+			index.save(binary.getPath());
+			long binarySave = System.nanoTime() - start;
+
+			report("serialized", serialized, serializedSave, rounds);
+			report("binary", binary, binarySave, rounds);
+		} finally {
+			serialized.delete();
+			binary.delete();
+		}
+	}
+
+	private static void report(String format, File file, long saveNanos, int rounds)
+	{
+		// The first load warms up the classes involved and is not counted.
+		Index.load(file.getPath());
+		long start = System.nanoTime();
+		for (int i = 0; i < rounds; i++)
+			Index.load(file.getPath());
+		double loadMillis = (System.nanoTime() - start) / 1e6 / rounds;
+		System.out.println(format + ": " + file.length() + " bytes, saved in "
+				+ saveNanos / 1000000 + " ms, loaded in " + loadMillis + " ms");
+	}
+}
@@ -0,0 +1,104 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads a WebIndex written by IndexWriter, front to back, without seeking.
+ * See IndexWriter for a description of the format.
+ */
+public class IndexReader {
+	private DataInputStream in;
+
+	/**
+	 * @param in	the stream to read from; it is not closed by this class
+	 */
+	public IndexReader(InputStream in)
+	{
+		this.in = new DataInputStream(new BufferedInputStream(in, 1 << 16));
+	}
+
+	/**
+	 * Reads the whole index.
+	 * @return the index
+	 * @throws IOException if the stream is not an index of a supported version
+	 */
+	public WebIndex read() throws IOException
+	{
+		if (in.readInt() != IndexWriter.MAGIC)
+			throw new IOException("Not an index file");
+		int version = in.readInt();
+		if (version != 1 && version != IndexWriter.VERSION)
+			throw new IOException("Unsupported index version " + version);
+		int docCount = in.readInt();
+		int wordCount = in.readInt();
+
+		WebIndex index = new WebIndex();
+		if (version > 1)
+			index.setAnalyzer(readAnalyzer(readString()));
+		for (int doc = 0; doc < docCount; doc++)
+		{
+			String url = readString();
+			index.putDocument(url, VarInt.read(in));
+		}
+
+		byte[] buffer = new byte[1024];
+		for (int i = 0; i < wordCount; i++)
+		{
+			String word = readString();
+			int length = VarInt.read(in);
+			if (length > buffer.length)
+				buffer = new byte[Math.max(length, buffer.length * 2)];
+			in.readFully(buffer, 0, length);
+			index.putPostings(word, decode(ByteBuffer.wrap(buffer, 0, length)));
+		}
+		return index;
+	}
+
+	/**
+	 * Returns the analyzer recorded in an index file.
+	 * @throws IOException if the analyzer is unknown
+	 */
+	static Analyzer readAnalyzer(String spec) throws IOException
+	{
+		try {
+			return Analyzer.parse(spec);
+		} catch (IllegalArgumentException e) {
+			throw new IOException(e.getMessage());
+		}
+	}
+
+	private String readString() throws IOException
+	{
+		byte[] b = new byte[VarInt.read(in)];
+		in.readFully(b);
+		return new String(b, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Decodes the postings of one word, starting at the buffer's position.
+	 */
+	public static PostingsList decode(ByteBuffer buffer)
+	{
+		int size = VarInt.read(buffer);
+		int[] docs = new int[size];
+		int[] freqs = new int[size];
+		int[][] positions = new int[size][];
+		int doc = 0;
+		for (int i = 0; i < size; i++)
+		{
+			doc += VarInt.read(buffer);
+			docs[i] = doc;
+			int freq = VarInt.read(buffer);
+			freqs[i] = freq;
+			int[] p = new int[freq];
+			int position = 0;
+			for (int j = 0; j < freq; j++)
+			{
+				position += VarInt.read(buffer);
+				p[j] = position;
+			}
+			positions[i] = p;
+		}
+		return new PostingsList(docs, freqs, positions);
+	}
+}
@@ -0,0 +1,415 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * A directory of immutable index segments that grows one crawl at a time.
+ * Each call to addSegment() writes the documents of a crawl as a new
+ * segment and tombstones any older copies of the same URLs, so the cost of
+ * an update depends on how much changed rather than on the size of the
+ * whole index.  Small segments are merged together in the background.
+ *
+ * The directory holds:
+ * <pre>
+ *   segments             the manifest, replaced atomically on every change
+ *   seg_N.db             a segment, in the format written by IndexWriter
+ *   seg_N.db.G.del       generation G of the tombstones of seg_N.db
+ * </pre>
+ * The manifest's first line is "generation N", the number of the next
+ * segment to be written; each further line names a segment and its
+ * tombstone generation, 0 meaning the segment has no tombstones.
+ */
+public class IndexSegments {
+	/**
+	 * The name of the manifest file.
+	 */
+	public static final String MANIFEST = "segments";
+	/**
+	 * The number of segments of about the same size that are merged at a time.
+	 */
+	public static final int MERGE_FACTOR = 10;
+
+	private File directory;
+	private int generation;
+	private ArrayList<Segment> segments;
+	private HashSet<Segment> merging;
+	/**
+	 * Runs the background merges; started by the first merge, so views
+	 * opened only to be read never start one.
+	 */
+	private ExecutorService merger;
+	private boolean closed;
+	/**
+	 * Files to delete once the manifest no longer refers to them.
+	 */
+	private ArrayList<File> obsolete;
+
+	/**
+	 * One segment of the index and its tombstones.
+	 */
+	private static class Segment {
+		String name;
+		int delGen;
+		WebIndex index;
+		BitSet deleted;
+
+		Segment(String name, int delGen, WebIndex index, BitSet deleted)
+		{
+			this.name = name;
+			this.delGen = delGen;
+			this.index = index;
+			this.deleted = deleted;
+		}
+
+		int liveDocs()
+		{
+			return index.getDocumentCount() - deleted.cardinality();
+		}
+	}
+
+	/**
+	 * Opens a segment directory, creating it if it does not exist.
+	 * @param directory The directory.
+	 */
+	public IndexSegments(String directory) throws IOException
+	{
+		this(createDirectory(directory));
+	}
+
+	private static File createDirectory(String directory) throws IOException
+	{
+		File dir = new File(directory);
+		if (!dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("Unable to create " + directory);
+		return dir;
+	}
+
+	/**
+	 * Returns a read-only view of the index in a segment directory, as
+	 * getWebIndex() would, without creating the directory or starting a
+	 * merge thread.  Readers that reopen the directory whenever it changes,
+	 * such as WebQueryServer, use this.
+	 * @param directory The directory, which must exist.
+	 */
+	public static SegmentedWebIndex open(String directory) throws IOException
+	{
+		File dir = new File(directory);
+		if (!dir.isDirectory())
+			throw new IOException(directory + " is not a segment directory");
+		return new IndexSegments(dir).getWebIndex();
+	}
+
+	private IndexSegments(File directory) throws IOException
+	{
+		this.directory = directory;
+		generation = 0;
+		segments = new ArrayList<Segment>();
+		merging = new HashSet<Segment>();
+		obsolete = new ArrayList<File>();
+
+		File manifest = new File(this.directory, MANIFEST);
+		if (!manifest.exists())
+			return;
+		BufferedReader in = new BufferedReader(new FileReader(manifest));
+		try {
+			String line = in.readLine();
+			if (line == null || !line.startsWith("generation "))
+				throw new IOException("Malformed manifest " + manifest);
+			generation = Integer.parseInt(line.substring("generation ".length()));
+			while ((line = in.readLine()) != null)
+			{
+				String[] fields = line.trim().split(" ");
+				if (fields.length != 2)
+					continue;
+				int delGen = Integer.parseInt(fields[1]);
+				segments.add(new Segment(fields[0], delGen,
+						new MappedWebIndex(file(fields[0]).getPath()),
+						delGen == 0 ? new BitSet() : readTombstones(file(fields[0] + "." + delGen + ".del"))));
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	private File file(String name)
+	{
+		return new File(directory, name);
+	}
+
+	/**
+	 * Adds a crawl to the index as a new segment.  Older copies of every
+	 * document in the crawl are tombstoned, as are older copies of the
+	 * replaced URLs, which lets a crawl delete documents that no longer
+	 * exist.  The crawl must have been analyzed like the existing segments.
+	 * @param index The documents of the crawl.
+	 * @param replaced URLs whose older copies should be deleted.
+	 */
+	public void addSegment(WebIndex index, Collection<String> replaced) throws IOException
+	{
+		synchronized (this) {
+			if (!segments.isEmpty() && !index.getAnalyzer().equals(segments.get(0).index.getAnalyzer()))
+				throw new IllegalArgumentException("The segments were analyzed with " + segments.get(0).index.getAnalyzer()
+						+ ", not " + index.getAnalyzer());
+			HashSet<String> urls = new HashSet<String>(replaced);
+			for (int doc = 0; doc < index.getDocumentCount(); doc++)
+				urls.add(index.getUrl(doc));
+			for (Segment segment : segments)
+			{
+				BitSet deleted = (BitSet) segment.deleted.clone();
+				for (String url : urls)
+				{
+					int doc = segment.index.getDocumentId(url);
+					if (doc >= 0)
+						deleted.set(doc);
+				}
+				if (!deleted.equals(segment.deleted))
+					updateTombstones(segment, deleted);
+			}
+			if (index.getDocumentCount() > 0)
+			{
+				String name = "seg_" + generation++ + ".db";
+				index.save(file(name).getPath());
+				segments.add(new Segment(name, 0, new MappedWebIndex(file(name).getPath()), new BitSet()));
+			}
+			writeManifest();
+		}
+		maybeMerge();
+	}
+
+	/**
+	 * Returns a read-only view of the index as it is now.  Later changes to
+	 * the directory do not affect the view.
+	 */
+	public synchronized SegmentedWebIndex getWebIndex()
+	{
+		WebIndex[] indexes = new WebIndex[segments.size()];
+		BitSet[] deleted = new BitSet[segments.size()];
+		for (int i = 0; i < segments.size(); i++)
+		{
+			indexes[i] = segments.get(i).index;
+			deleted[i] = (BitSet) segments.get(i).deleted.clone();
+		}
+		return new SegmentedWebIndex(indexes, deleted);
+	}
+
+	/**
+	 * Returns the number of segments in the index.
+	 */
+	public synchronized int getSegmentCount()
+	{
+		return segments.size();
+	}
+
+	/**
+	 * Waits for any running merges to finish and stops the merge thread.
+	 */
+	public void close() throws InterruptedException
+	{
+		ExecutorService merger;
+		synchronized (this) {
+			closed = true;
+			merger = this.merger;
+		}
+		if (merger == null)
+			return;
+		merger.shutdown();
+		merger.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Starts a background merge if MERGE_FACTOR segments that are not already
+	 * being merged fall in the same size tier.  Tiers are powers of
+	 * MERGE_FACTOR in live document count, so every document is merged about
+	 * log(index size) times over the life of the index.
+	 */
+	public synchronized void maybeMerge()
+	{
+		if (closed)
+			return;
+		TreeMap<Integer, ArrayList<Segment>> tiers = new TreeMap<Integer, ArrayList<Segment>>();
+		for (Segment segment : segments)
+		{
+			if (merging.contains(segment))
+				continue;
+			int tier = 0;
+			for (int live = segment.liveDocs(); live >= MERGE_FACTOR; live /= MERGE_FACTOR)
+				tier++;
+			ArrayList<Segment> members = tiers.get(tier);
+			if (members == null)
+			{
+				members = new ArrayList<Segment>();
+				tiers.put(tier, members);
+			}
+			members.add(segment);
+		}
+		for (ArrayList<Segment> members : tiers.values())
+		{
+			if (members.size() < MERGE_FACTOR)
+				continue;
+			final List<Segment> toMerge = new ArrayList<Segment>(members.subList(0, MERGE_FACTOR));
+			final BitSet[] snapshot = new BitSet[toMerge.size()];
+			for (int i = 0; i < toMerge.size(); i++)
+				snapshot[i] = (BitSet) toMerge.get(i).deleted.clone();
+			merging.addAll(toMerge);
+			if (merger == null)
+				merger = Executors.newSingleThreadExecutor();
+			try {
+				merger.execute(new Runnable() {
+					public void run() {
+						merge(toMerge, snapshot);
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				// Closed; leave the segments as they are.
+				merging.removeAll(toMerge);
+			}
+			return;
+		}
+	}
+
+	/**
+	 * Merges the live documents of some segments into a new segment, then
+	 * swaps the new segment in for the old ones.
+	 * @param toMerge The segments to merge.
+	 * @param snapshot The tombstones of each segment when the merge started.
+	 */
+	private void merge(List<Segment> toMerge, BitSet[] snapshot)
+	{
+		try {
+			WebIndex merged = new WebIndex();
+			merged.setAnalyzer(toMerge.get(0).index.getAnalyzer());
+			int[][] docMap = new int[toMerge.size()][];
+			TreeSet<String> words = new TreeSet<String>();
+			for (int i = 0; i < toMerge.size(); i++)
+			{
+				WebIndex index = toMerge.get(i).index;
+				docMap[i] = new int[index.getDocumentCount()];
+				for (int doc = 0; doc < docMap[i].length; doc++)
+				{
+					if (snapshot[i].get(doc))
+						docMap[i][doc] = -1;
+					else
+					{
+						docMap[i][doc] = merged.getDocumentCount();
+						merged.putDocument(index.getUrl(doc), index.getWordCount(doc));
+					}
+				}
+				words.addAll(index.getWords());
+			}
+			for (String word : words)
+			{
+				PostingsList postings = new PostingsList();
+				for (int i = 0; i < toMerge.size(); i++)
+				{
+					PostingsList part = toMerge.get(i).index.getPostings(word);
+					if (part == null)
+						continue;
+					for (int j = 0; j < part.size(); j++)
+					{
+						int doc = docMap[i][part.getDoc(j)];
+						if (doc >= 0)
+							postings.append(doc, part.getPositions(j), part.getFrequency(j));
+					}
+				}
+				if (postings.size() > 0)
+					merged.putPostings(word, postings);
+			}
+
+			String name;
+			synchronized (this) {
+				name = "seg_" + generation++ + ".db";
+			}
+			merged.save(file(name).getPath());
+			Segment segment = new Segment(name, 0, new MappedWebIndex(file(name).getPath()), new BitSet());
+
+			synchronized (this) {
+				// Carry over documents deleted while the merge was running.
+				for (int i = 0; i < toMerge.size(); i++)
+				{
+					BitSet late = (BitSet) toMerge.get(i).deleted.clone();
+					late.andNot(snapshot[i]);
+					for (int doc = late.nextSetBit(0); doc >= 0; doc = late.nextSetBit(doc + 1))
+						if (docMap[i][doc] >= 0)
+							segment.deleted.set(docMap[i][doc]);
+				}
+				if (!segment.deleted.isEmpty())
+					updateTombstones(segment, (BitSet) segment.deleted.clone());
+				segments.removeAll(toMerge);
+				segments.add(segment);
+				for (Segment old : toMerge)
+				{
+					obsolete.add(file(old.name));
+					if (old.delGen > 0)
+						obsolete.add(file(old.name + "." + old.delGen + ".del"));
+				}
+				writeManifest();
+				merging.removeAll(toMerge);
+			}
+			maybeMerge();
+		} catch (IOException e) {
+			System.out.println(e);
+			synchronized (this) {
+				merging.removeAll(toMerge);
+			}
+		}
+	}
+
+	/**
+	 * Writes the next generation of a segment's tombstones.  The manifest
+	 * must be written afterwards for the change to take effect; the previous
+	 * generation is deleted then.
+	 */
+	private void updateTombstones(Segment segment, BitSet deleted) throws IOException
+	{
+		int delGen = segment.delGen + 1;
+		File out = file(segment.name + "." + delGen + ".del");
+		DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(out)));
+		try {
+			dout.writeInt(deleted.cardinality());
+			for (int doc = deleted.nextSetBit(0); doc >= 0; doc = deleted.nextSetBit(doc + 1))
+				dout.writeInt(doc);
+		} finally {
+			dout.close();
+		}
+		if (segment.delGen > 0)
+			obsolete.add(file(segment.name + "." + segment.delGen + ".del"));
+		segment.delGen = delGen;
+		segment.deleted = deleted;
+	}
+
+	private static BitSet readTombstones(File in) throws IOException
+	{
+		DataInputStream din = new DataInputStream(new BufferedInputStream(new FileInputStream(in)));
+		try {
+			BitSet deleted = new BitSet();
+			for (int count = din.readInt(); count > 0; count--)
+				deleted.set(din.readInt());
+			return deleted;
+		} finally {
+			din.close();
+		}
+	}
+
+	/**
+	 * Replaces the manifest with one listing the current segments, then
+	 * deletes the files it no longer refers to.  Views opened before the
+	 * change keep their mappings of deleted segment files.
+	 */
+	private void writeManifest() throws IOException
+	{
+		File tmp = file(MANIFEST + ".tmp");
+		PrintWriter out = new PrintWriter(new FileWriter(tmp));
+		try {
+			out.println("generation " + generation);
+			for (Segment segment : segments)
+				out.println(segment.name + " " + segment.delGen);
+		} finally {
+			out.close();
+		}
+		Files.move(tmp.toPath(), file(MANIFEST).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		for (File f : obsolete)
+			f.delete();
+		obsolete.clear();
+	}
+}
@@ -0,0 +1,170 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Writes a WebIndex in the binary index format, one section at a time, so
+ * that nothing larger than the postings of a single word is buffered.
+ *
+ * The format is laid out as follows.  Fixed-width numbers are big-endian;
+ * "vint" is a VarInt.
+ * <pre>
+ *   header     int MAGIC, int VERSION, int document count, int word count,
+ *              vint analyzer length, analyzer (UTF-8)
+ *   documents  for each document, in id order:
+ *                vint URL length, URL (UTF-8), vint word count
+ *   words      for each word, in sorted order:
+ *                vint word length, word (UTF-8), vint postings length, postings
+ *   postings   vint document count, then for each document:
+ *                vint id gap, vint frequency, frequency x vint position gap
+ *   offsets    long offset of each document entry,
+ *              long offset of each word entry
+ *   trailer    long offset of the document offsets,
+ *              long offset of the word offsets, int MAGIC
+ * </pre>
+ * Gaps are taken from the previous document id or position, starting
+ * from zero.  The offset tables let a reader find a document or, by
+ * binary search, a word without reading the whole file.
+ *
+ * The analyzer is the Analyzer.toString() of the analyzer the words were
+ * found with.  Version 1 files have no analyzer and were built with
+ * Analyzer.STANDARD.
+ */
+public class IndexWriter {
+	/**
+	 * The first four bytes of an index file: "WQIX".
+	 */
+	public static final int MAGIC = 0x57514958;
+	/**
+	 * The version of the format written by this class.
+	 */
+	public static final int VERSION = 2;
+	/**
+	 * The length of the trailer at the end of the file.
+	 */
+	public static final int TRAILER_LENGTH = 20;
+
+	private DataOutputStream out;
+	private long offset;
+	private byte[] buffer;
+	private byte[] scratch;
+
+	/**
+	 * @param out	the stream to write to; it is not closed by this class
+	 */
+	public IndexWriter(OutputStream out)
+	{
+		this.out = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+		offset = 0;
+		buffer = new byte[1024];
+		scratch = new byte[5];
+	}
+
+	/**
+	 * Writes the whole index.
+	 * @param index	the index to write
+	 */
+	public void write(WebIndex index) throws IOException
+	{
+		String[] words = index.getWords().toArray(new String[0]);
+		Arrays.sort(words);
+		int docCount = index.getDocumentCount();
+
+		writeInt(MAGIC);
+		writeInt(VERSION);
+		writeInt(docCount);
+		writeInt(words.length);
+		writeString(index.getAnalyzer().toString());
+
+		long[] docOffsets = new long[docCount];
+		for (int doc = 0; doc < docCount; doc++)
+		{
+			docOffsets[doc] = offset;
+			writeString(index.getUrl(doc));
+			writeVInt(index.getWordCount(doc));
+		}
+
+		long[] wordOffsets = new long[words.length];
+		for (int i = 0; i < words.length; i++)
+		{
+			wordOffsets[i] = offset;
+			writeString(words[i]);
+			int length = encode(index.getPostings(words[i]));
+			writeVInt(length);
+			out.write(buffer, 0, length);
+			offset += length;
+		}
+
+		long docOffsetsStart = offset;
+		for (long o : docOffsets)
+			writeLong(o);
+		long wordOffsetsStart = offset;
+		for (long o : wordOffsets)
+			writeLong(o);
+		writeLong(docOffsetsStart);
+		writeLong(wordOffsetsStart);
+		writeInt(MAGIC);
+		out.flush();
+	}
+
+	/**
+	 * Encodes postings into buffer, growing it as needed.
+	 * @return the number of bytes used
+	 */
+	private int encode(PostingsList postings)
+	{
+		int length = VarInt.write(ensureCapacity(0, 5), 0, postings.size());
+		int lastDoc = 0;
+		for (int i = 0; i < postings.size(); i++)
+		{
+			int doc = postings.getDoc(i);
+			int freq = postings.getFrequency(i);
+			int[] positions = postings.getPositions(i);
+			ensureCapacity(length, 5 * (freq + 2));
+			length = VarInt.write(buffer, length, doc - lastDoc);
+			length = VarInt.write(buffer, length, freq);
+			int lastPosition = 0;
+			for (int j = 0; j < freq; j++)
+			{
+				length = VarInt.write(buffer, length, positions[j] - lastPosition);
+				lastPosition = positions[j];
+			}
+			lastDoc = doc;
+		}
+		return length;
+	}
+
+	private byte[] ensureCapacity(int used, int needed)
+	{
+		if (used + needed > buffer.length)
+			buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, used + needed));
+		return buffer;
+	}
+
+	private void writeInt(int value) throws IOException
+	{
+		out.writeInt(value);
+		offset += 4;
+	}
+
+	private void writeLong(long value) throws IOException
+	{
+		out.writeLong(value);
+		offset += 8;
+	}
+
+	private void writeVInt(int value) throws IOException
+	{
+		int length = VarInt.write(scratch, 0, value);
+		out.write(scratch, 0, length);
+		offset += length;
+	}
+
+	private void writeString(String s) throws IOException
+	{
+		byte[] b = s.getBytes(StandardCharsets.UTF_8);
+		writeVInt(b.length);
+		out.write(b);
+		offset += b.length;
+	}
+}
@@ -0,0 +1,119 @@
+import java.util.*;
+
+/**
+ * A cache bounded by the total weight of its entries, usually their size
+ * in bytes, that evicts the least recently used entries first.  Every
+ * lookup is counted as a hit or a miss, so the effectiveness of the cache
+ * can be checked while it runs.
+ *
+ * All methods are synchronized, so a cache may be shared between threads.
+ */
+public class LruCache<K, V> {
+	/**
+	 * Measures an entry.
+	 */
+	public interface Weigher<K, V>
+	{
+		long weigh(K key, V value);
+	}
+
+	private LinkedHashMap<K, V> map;
+	private Weigher<K, V> weigher;
+	private long maxWeight;
+	private long weight;
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/**
+	 * @param maxWeight The largest total weight of the entries.
+	 * @param weigher Measures each entry.
+	 */
+	public LruCache(long maxWeight, Weigher<K, V> weigher)
+	{
+		this.maxWeight = maxWeight;
+		this.weigher = weigher;
+		map = new LinkedHashMap<K, V>(16, 0.75f, true);
+	}
+
+	/**
+	 * Returns the value cached for a key, or null if there is none, and
+	 * marks the entry as the most recently used.
+	 */
+	public synchronized V get(K key)
+	{
+		V value = map.get(key);
+		if (value == null)
+			misses++;
+		else
+			hits++;
+		return value;
+	}
+
+	/**
+	 * Caches a value, evicting the least recently used entries until the
+	 * cache fits in its weight again.  A value heavier than the whole cache
+	 * is not cached, and any older value for its key is dropped.
+	 */
+	public synchronized void put(K key, V value)
+	{
+		long w = weigher.weigh(key, value);
+		V old = w > maxWeight ? map.remove(key) : map.put(key, value);
+		if (old != null)
+			weight -= weigher.weigh(key, old);
+		if (w > maxWeight)
+			return;
+		weight += w;
+		Iterator<Map.Entry<K, V>> eldest = map.entrySet().iterator();
+		while (weight > maxWeight)
+		{
+			Map.Entry<K, V> entry = eldest.next();
+			weight -= weigher.weigh(entry.getKey(), entry.getValue());
+			eldest.remove();
+			evictions++;
+		}
+	}
+
+	/**
+	 * Removes every entry.  The counters are kept.
+	 */
+	public synchronized void clear()
+	{
+		map.clear();
+		weight = 0;
+	}
+
+	public synchronized int size()
+	{
+		return map.size();
+	}
+
+	/**
+	 * Returns the total weight of the entries.
+	 */
+	public synchronized long getWeight()
+	{
+		return weight;
+	}
+
+	public synchronized long getHits()
+	{
+		return hits;
+	}
+
+	public synchronized long getMisses()
+	{
+		return misses;
+	}
+
+	public synchronized long getEvictions()
+	{
+		return evictions;
+	}
+
+	public synchronized String toString()
+	{
+		return map.size() + " entries, " + weight + "/" + maxWeight + " weight, "
+				+ hits + " hits, " + misses + " misses, " + evictions + " evictions";
+	}
+}
@@ -0,0 +1,202 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * A read-only WebIndex backed by a memory-mapped index file written by
+ * IndexWriter.  Opening the index only reads the header and trailer; the
+ * postings of a word are decoded when a query asks for them and kept in a
+ * bounded cache of the most recently used words, and the rest of the file
+ * is left to the operating system's page cache, where it can be shared by
+ * every process reading the same index.
+ *
+ * Index files must be smaller than 2GB to be mapped.
+ */
+public class MappedWebIndex extends WebIndex {
+	private static final long serialVersionUID = 1L;
+	private transient ByteBuffer buffer;
+	private int docCount;
+	private int wordCount;
+	private long docOffsets;
+	private long wordOffsets;
+	private Analyzer analyzer;
+	/**
+	 * Recently decoded postings, by word.
+	 */
+	private transient LruCache<String, PostingsList> decoded;
+	/**
+	 * Mapping from URLs to document ids, built the first time it is needed.
+	 */
+	private transient HashMap<String, Integer> documentIds;
+
+	/**
+	 * Maps an index file.
+	 * @param filename The file written by IndexWriter.
+	 * @throws IOException if the file cannot be mapped or is not an index of a supported version
+	 */
+	public MappedWebIndex(String filename) throws IOException
+	{
+		RandomAccessFile file = new RandomAccessFile(filename, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new IOException(filename + " is too large to map");
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			file.close();
+		}
+		if (buffer.capacity() < 16 + IndexWriter.TRAILER_LENGTH
+				|| buffer.getInt(0) != IndexWriter.MAGIC
+				|| buffer.getInt(buffer.capacity() - 4) != IndexWriter.MAGIC)
+			throw new IOException("Not an index file");
+		int version = buffer.getInt(4);
+		if (version != 1 && version != IndexWriter.VERSION)
+			throw new IOException("Unsupported index version " + version);
+		docCount = buffer.getInt(8);
+		wordCount = buffer.getInt(12);
+		analyzer = version > 1 ? IndexReader.readAnalyzer(readString(at(16))) : Analyzer.STANDARD;
+		docOffsets = buffer.getLong(buffer.capacity() - IndexWriter.TRAILER_LENGTH);
+		wordOffsets = buffer.getLong(buffer.capacity() - IndexWriter.TRAILER_LENGTH + 8);
+		decoded = newPostingsCache();
+	}
+
+	/**
+	 * Returns a buffer positioned at offset.  Each caller gets its own view
+	 * of the mapping, so lookups may run on several threads at once.
+	 */
+	private ByteBuffer at(long offset)
+	{
+		ByteBuffer view = buffer.duplicate();
+		view.position((int) offset);
+		return view;
+	}
+
+	private static String readString(ByteBuffer in)
+	{
+		byte[] b = new byte[VarInt.read(in)];
+		in.get(b);
+		return new String(b, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Returns a buffer positioned at the i'th word entry.
+	 */
+	private ByteBuffer word(int i)
+	{
+		return at(buffer.getLong((int) (wordOffsets + 8L * i)));
+	}
+
+	/**
+	 * Returns a buffer positioned at the document table entry of doc.
+	 */
+	private ByteBuffer document(int doc)
+	{
+		return at(buffer.getLong((int) (docOffsets + 8L * doc)));
+	}
+
+	public int getDocumentCount()
+	{
+		return docCount;
+	}
+
+	public String getUrl(int doc)
+	{
+		return readString(document(doc));
+	}
+
+	public int getWordCount(int doc)
+	{
+		ByteBuffer in = document(doc);
+		int length = VarInt.read(in);
+		in.position(in.position() + length);
+		return VarInt.read(in);
+	}
+
+	public Analyzer getAnalyzer()
+	{
+		return analyzer;
+	}
+
+	public void setAnalyzer(Analyzer analyzer)
+	{
+		throw new UnsupportedOperationException("MappedWebIndex is read-only");
+	}
+
+	public synchronized int getDocumentId(String file)
+	{
+		if (documentIds == null)
+		{
+			documentIds = new HashMap<String, Integer>();
+			for (int doc = 0; doc < docCount; doc++)
+				documentIds.put(getUrl(doc), doc);
+		}
+		Integer doc = documentIds.get(file);
+		return doc == null ? -1 : doc;
+	}
+
+	/**
+	 * Returns every word in the index, in sorted order.  This reads the
+	 * whole word list and is meant for tools, not queries.
+	 */
+	public Collection<String> getWords()
+	{
+		ArrayList<String> words = new ArrayList<String>(wordCount);
+		for (int i = 0; i < wordCount; i++)
+			words.add(readString(word(i)));
+		return words;
+	}
+
+	/**
+	 * Returns the postings of a word, decoding them from the file unless
+	 * they were decoded recently.  The word is found by binary search over
+	 * the sorted word entries.
+	 */
+	public PostingsList getPostings(String word)
+	{
+		PostingsList postings = decoded.get(word);
+		if (postings != null)
+			return postings;
+		int low = 0;
+		int high = wordCount - 1;
+		while (low <= high)
+		{
+			int mid = (low + high) >>> 1;
+			ByteBuffer in = word(mid);
+			int cmp = readString(in).compareTo(word);
+			if (cmp < 0)
+				low = mid + 1;
+			else if (cmp > 0)
+				high = mid - 1;
+			else
+			{
+				VarInt.read(in);
+				postings = IndexReader.decode(in);
+				decoded.put(word, postings);
+				return postings;
+			}
+		}
+		return null;
+	}
+
+	public void addPhraseToFile(String file, char[] phrase)
+	{
+		throw new UnsupportedOperationException("MappedWebIndex is read-only");
+	}
+
+	public void addDocument(String file, DocumentBuffer words)
+	{
+		throw new UnsupportedOperationException("MappedWebIndex is read-only");
+	}
+
+	public void putDocument(String file, int wordCount)
+	{
+		throw new UnsupportedOperationException("MappedWebIndex is read-only");
+	}
+
+	public void putPostings(String word, PostingsList postings)
+	{
+		throw new UnsupportedOperationException("MappedWebIndex is read-only");
+	}
+}
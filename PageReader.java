@@ -0,0 +1,255 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.util.*;
+
+/**
+ * Reads local pages for the crawler through a FileChannel instead of a
+ * chain of streams and readers.  Small files are read into a buffer the
+ * reader keeps; files of MAP_THRESHOLD bytes or more are memory-mapped.
+ * The bytes are then decoded in one pass into a CharBuffer the reader also
+ * keeps, so a page costs two system calls to read and one copy to decode.
+ *
+ * The charset of a page is taken from its byte order mark, else from a
+ * <code>&lt;meta charset&gt;</code> or <code>&lt;meta http-equiv
+ * content&gt;</code> in its first CHARSET_SCAN bytes, else the platform's
+ * default charset is used, as for pages read from a stream.
+ *
+ * A reader is reused from page to page and must only be used by one thread
+ * at a time.  Crawlers keep a pool of them, so each worker reuses buffers
+ * that have already grown to fit its pages.
+ */
+public class PageReader {
+	/**
+	 * The size from which files are memory-mapped rather than read.
+	 */
+	public static final int MAP_THRESHOLD = 1 << 16;
+	/**
+	 * The number of bytes at the start of a page searched for a meta charset.
+	 */
+	public static final int CHARSET_SCAN = 1024;
+	/**
+	 * The most chars a pooled reader keeps buffered between pages; a reader
+	 * that grew past this for a large page lets its buffers go.
+	 */
+	public static final int MAX_RETAINED_CHARS = 1 << 20;
+
+	private ByteBuffer bytes;
+	private CharBuffer chars;
+	private HashMap<Charset, CharsetDecoder> decoders;
+	private long hash;
+	private Charset charset;
+
+	public PageReader()
+	{
+		bytes = ByteBuffer.allocate(8192);
+		chars = CharBuffer.allocate(8192);
+		decoders = new HashMap<Charset, CharsetDecoder>();
+	}
+
+	/**
+	 * Reads and decodes a file.  The reader returned reads from this
+	 * PageReader's buffer, so it is only valid until the next page is read.
+	 * @param file The file.
+	 * @return A reader of the decoded page.
+	 */
+	public Reader read(File file) throws IOException
+	{
+		ByteBuffer in;
+		FileInputStream stream = new FileInputStream(file);
+		try {
+			FileChannel channel = stream.getChannel();
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE)
+				throw new IOException(file + " is too large to read");
+			if (size >= MAP_THRESHOLD)
+				in = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			else
+			{
+				if (bytes.capacity() < size + 1)
+					bytes = ByteBuffer.allocate((int) size + 1);
+				bytes.clear();
+				// Read until end of file, in case the file grew since it was measured.
+				while (channel.read(bytes) >= 0)
+					if (!bytes.hasRemaining())
+						bytes = grow(bytes);
+				bytes.flip();
+				in = bytes;
+			}
+		} finally {
+			stream.close();
+		}
+		hash = HashingInputStream.hash(in);
+		decode(in);
+		return new CharArrayReader(chars.array(), 0, chars.limit());
+	}
+
+	private static ByteBuffer grow(ByteBuffer buffer)
+	{
+		buffer.flip();
+		return ByteBuffer.allocate(buffer.capacity() * 2).put(buffer);
+	}
+
+	/**
+	 * Returns the hash of the bytes of the last page read, as computed by
+	 * HashingInputStream.
+	 */
+	public long getHash()
+	{
+		return hash;
+	}
+
+	/**
+	 * Returns the charset the last page read was decoded with.
+	 */
+	public Charset getCharset()
+	{
+		return charset;
+	}
+
+	/**
+	 * Decodes a page into chars.
+	 */
+	private void decode(ByteBuffer in)
+	{
+		charset = detectCharset(in, Charset.defaultCharset());
+		CharsetDecoder decoder = decoders.get(charset);
+		if (decoder == null)
+		{
+			decoder = charset.newDecoder()
+					.onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			decoders.put(charset, decoder);
+		}
+		decoder.reset();
+		int needed = (int) Math.min(Integer.MAX_VALUE, (long) (in.remaining() * (double) decoder.maxCharsPerByte()) + 16);
+		if (chars.capacity() < needed)
+			chars = CharBuffer.allocate(needed);
+		chars.clear();
+		while (true)
+		{
+			CoderResult result = decoder.decode(in, chars, true);
+			if (result.isOverflow())
+			{
+				chars = grow(chars);
+				continue;
+			}
+			result = decoder.flush(chars);
+			if (result.isOverflow())
+			{
+				chars = grow(chars);
+				continue;
+			}
+			break;
+		}
+		chars.flip();
+	}
+
+	private static CharBuffer grow(CharBuffer buffer)
+	{
+		buffer.flip();
+		return CharBuffer.allocate(buffer.capacity() * 2).put(buffer);
+	}
+
+	/**
+	 * Returns the charset of a page and skips its byte order mark, if any.
+	 * @param in The bytes of the page; on return, positioned after the mark.
+	 * @param fallback The charset of a page that does not declare one.
+	 */
+	static Charset detectCharset(ByteBuffer in, Charset fallback)
+	{
+		int p = in.position();
+		int n = in.remaining();
+		if (n >= 3 && (in.get(p) & 0xFF) == 0xEF && (in.get(p + 1) & 0xFF) == 0xBB && (in.get(p + 2) & 0xFF) == 0xBF)
+		{
+			in.position(p + 3);
+			return StandardCharsets.UTF_8;
+		}
+		if (n >= 2 && (in.get(p) & 0xFF) == 0xFE && (in.get(p + 1) & 0xFF) == 0xFF)
+		{
+			in.position(p + 2);
+			return StandardCharsets.UTF_16BE;
+		}
+		if (n >= 2 && (in.get(p) & 0xFF) == 0xFF && (in.get(p + 1) & 0xFF) == 0xFE)
+		{
+			in.position(p + 2);
+			return StandardCharsets.UTF_16LE;
+		}
+		String declared = metaCharset(in);
+		if (declared == null)
+			return fallback;
+		try {
+			Charset charset = Charset.forName(declared);
+			// A page read as ASCII to find its meta tag is not UTF-16.
+			if (charset.name().startsWith("UTF-16"))
+				return StandardCharsets.UTF_8;
+			return charset;
+		} catch (IllegalCharsetNameException e) {
+			return fallback;
+		} catch (UnsupportedCharsetException e) {
+			return fallback;
+		}
+	}
+
+	/**
+	 * Returns the charset named by a meta tag near the start of a page, or
+	 * null if there is none.  The bytes are searched in place, as ASCII.
+	 */
+	private static String metaCharset(ByteBuffer in)
+	{
+		int end = in.position() + Math.min(in.remaining(), CHARSET_SCAN);
+		for (int meta = find(in, in.position(), end, "<meta"); meta >= 0; meta = find(in, meta + 5, end, "<meta"))
+		{
+			int close = find(in, meta, end, ">");
+			if (close < 0)
+				close = end;
+			int at = find(in, meta, close, "charset");
+			if (at < 0)
+				continue;
+			int i = at + "charset".length();
+			while (i < close && (in.get(i) <= ' ' || in.get(i) == '=' || in.get(i) == '"' || in.get(i) == '\''))
+				i++;
+			int start = i;
+			while (i < close && in.get(i) > ' ' && in.get(i) != '"' && in.get(i) != '\'' && in.get(i) != ';' && in.get(i) != '/')
+				i++;
+			if (i > start)
+			{
+				char[] name = new char[i - start];
+				for (int j = start; j < i; j++)
+					name[j - start] = (char) in.get(j);
+				return new String(name);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the index of the first occurrence of a lower-case ASCII string
+	 * in a range of bytes, ignoring case, or -1 if there is none.
+	 */
+	private static int find(ByteBuffer in, int from, int to, String s)
+	{
+		for (int i = from; i + s.length() <= to; i++)
+		{
+			int j = 0;
+			while (j < s.length() && Character.toLowerCase((char) (in.get(i + j) & 0xFF)) == s.charAt(j))
+				j++;
+			if (j == s.length())
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Lets go of buffers that grew past MAX_RETAINED_CHARS, before the
+	 * reader is pooled.
+	 */
+	public void trim()
+	{
+		if (chars.capacity() > MAX_RETAINED_CHARS)
+			chars = CharBuffer.allocate(8192);
+		if (bytes.capacity() > MAX_RETAINED_CHARS)
+			bytes = ByteBuffer.allocate(8192);
+	}
+}
@@ -0,0 +1,122 @@
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+import javax.swing.text.*;
+import javax.swing.text.html.*;
+
+/**
+ * Compares the HTML parsers the crawler can use on the same pages: how
+ * fast each parses them, how much memory each allocates doing so, and
+ * what each finds.  The pages are read into memory first, so only parsing
+ * is measured.
+ *
+ * Usage: java ParserComparison directory [rounds]
+ */
+public class ParserComparison {
+	public static void main(String... args) throws Exception {
+		if (args.length == 0) {
+			System.out.println("No directory specified.");
+			System.exit(0);
+		}
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		ArrayList<String> pages = new ArrayList<String>();
+		read(new File(args[0]), pages);
+		if (pages.isEmpty()) {
+			System.out.println("No HTML files in " + args[0]);
+			System.exit(1);
+		}
+		long chars = 0;
+		for (String page : pages)
+			chars += page.length();
+		System.out.println(pages.size() + " pages, " + chars + " chars");
+
+		report("swing", pages, chars, rounds);
+		report("scanner", pages, chars, rounds);
+	}
+
+	/**
+	 * Reads every HTML file under a file or directory.
+	 */
+	private static void read(File file, List<String> pages) throws IOException
+	{
+		if (file.isDirectory()) {
+			File[] files = file.listFiles();
+			Arrays.sort(files);
+			for (File f : files)
+				read(f, pages);
+			return;
+		}
+		String name = file.getName().toLowerCase(Locale.ROOT);
+		if (!name.endsWith(".html") && !name.endsWith(".htm"))
+			return;
+		// Decoded the way Crawler decodes pages.
+		Reader in = new InputStreamReader(new FileInputStream(file));
+		try {
+			StringBuffer page = new StringBuffer();
+			char[] buffer = new char[8192];
+			for (int n = in.read(buffer); n >= 0; n = in.read(buffer))
+				page.append(buffer, 0, n);
+			pages.add(page.toString());
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Counts what a parser reports.
+	 */
+	private static class Counter extends HTMLEditorKit.ParserCallback
+	{
+		long runs;
+		long textChars;
+		long links;
+
+		public void handleText(char[] data, int pos) {
+			runs++;
+			textChars += data.length;
+		}
+
+		public void handleStartTag(HTML.Tag t, MutableAttributeSet a, int pos) {
+			if (t == HTML.Tag.A && a.getAttribute(HTML.Attribute.HREF) != null)
+				links++;
+		}
+	}
+
+	private static void report(String name, List<String> pages, long chars, int rounds) throws IOException
+	{
+		HTMLEditorKit.Parser parser = Crawler.newParser(name);
+		// The first round warms up the classes involved and is not counted.
+		Counter counter = parseAll(parser, pages);
+		long before = allocatedBytes();
+		long start = System.nanoTime();
+		for (int i = 0; i < rounds; i++)
+			parseAll(parser, pages);
+		double seconds = (System.nanoTime() - start) / 1e9;
+		long allocated = allocatedBytes() - before;
+		long parsed = (long) pages.size() * rounds;
+		System.out.println(name + ": " + (int) (parsed / seconds) + " pages/s, "
+				+ (int) (chars * rounds / seconds / 1e6) + " M chars/s, "
+				+ (before < 0 ? "?" : String.valueOf(allocated / parsed)) + " bytes allocated per page; found "
+				+ counter.runs + " text runs, " + counter.textChars + " text chars, " + counter.links + " links");
+	}
+
+	private static Counter parseAll(HTMLEditorKit.Parser parser, List<String> pages) throws IOException
+	{
+		Counter counter = new Counter();
+		for (String page : pages)
+			parser.parse(new StringReader(page), counter, true);
+		return counter;
+	}
+
+	/**
+	 * Returns the bytes allocated by this thread so far, or -1 if the JVM
+	 * does not count them.
+	 */
+	private static long allocatedBytes()
+	{
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean)
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		return -1;
+	}
+}
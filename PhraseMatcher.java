@@ -0,0 +1,176 @@
+import java.util.*;
+
+/**
+ * Decides whether one document contains a phrase, given the sorted
+ * positions of each word of the phrase in the document.  A matcher is
+ * reused from document to document: set() the positions of every word,
+ * then call matches().
+ *
+ * An exact phrase is matched by walking the positions of the rarest word
+ * and checking the other words from the next rarest outward, each through
+ * a cursor that only moves forward, so a document costs at most the total
+ * number of positions of its words and the search stops at the first
+ * match.
+ *
+ * With a slop of n, the words may be up to n positions away from where the
+ * exact phrase would put them, in total, as in "a b"~3.  Each position is
+ * shifted back by the word's offset in the phrase, which makes an exact
+ * match a run of equal shifted positions; a sloppy match is a set of one
+ * shifted position per word spanning at most n, found by sliding a window
+ * across the merged lists.
+ */
+public class PhraseMatcher {
+	private String[] words;
+	private int slop;
+	private int[][] positions;
+	private int[] freqs;
+	private int[] cursors;
+	private Integer[] order;
+	private Comparator<Integer> byFrequency = new Comparator<Integer>() {
+		public int compare(Integer a, Integer b) {
+			return freqs[a] - freqs[b];
+		}
+	};
+
+	/**
+	 * @param words The words of the phrase, in order.
+	 * @param slop How far in total the words may be from their exact places.
+	 */
+	public PhraseMatcher(List<String> words, int slop)
+	{
+		this.words = words.toArray(new String[0]);
+		this.slop = slop;
+		positions = new int[this.words.length][];
+		freqs = new int[this.words.length];
+		cursors = new int[this.words.length];
+		order = new Integer[this.words.length];
+	}
+
+	/**
+	 * Returns the number of words in the phrase.
+	 */
+	public int length()
+	{
+		return words.length;
+	}
+
+	/**
+	 * Sets the positions of a word of the phrase in the next document.
+	 * @param word The offset of the word in the phrase.
+	 * @param positions The positions of the word, in increasing order.
+	 * @param freq The number of positions to use.
+	 */
+	public void set(int word, int[] positions, int freq)
+	{
+		this.positions[word] = positions;
+		freqs[word] = freq;
+	}
+
+	/**
+	 * Determines if the positions set for every word contain the phrase.
+	 */
+	public boolean matches()
+	{
+		for (int i = 0; i < words.length; i++)
+		{
+			if (freqs[i] == 0)
+				return false;
+			cursors[i] = 0;
+		}
+		return slop == 0 ? matchesExactly() : matchesSloppily();
+	}
+
+	private boolean matchesExactly()
+	{
+		for (int i = 0; i < words.length; i++)
+			order[i] = i;
+		Arrays.sort(order, byFrequency);
+		int rarest = order[0];
+		candidates:
+		for (int r = 0; r < freqs[rarest]; r++)
+		{
+			int start = positions[rarest][r] - rarest;
+			for (int k = 1; k < words.length; k++)
+			{
+				int i = order[k];
+				int target = start + i;
+				int[] p = positions[i];
+				int c = cursors[i];
+				while (c < freqs[i] && p[c] < target)
+					c++;
+				cursors[i] = c;
+				if (c == freqs[i])
+					return false;
+				if (p[c] != target)
+					continue candidates;
+			}
+			return true;
+		}
+		return false;
+	}
+
+	private boolean matchesSloppily()
+	{
+		while (true)
+		{
+			int min = 0;
+			int max = 0;
+			for (int i = 1; i < words.length; i++)
+			{
+				if (shifted(i) < shifted(min))
+					min = i;
+				if (shifted(i) > shifted(max))
+					max = i;
+			}
+			int advance = min;
+			if (shifted(max) - shifted(min) <= slop)
+			{
+				advance = collision();
+				if (advance < 0)
+					return true;
+			}
+			if (++cursors[advance] == freqs[advance])
+				return false;
+		}
+	}
+
+	/**
+	 * Returns the current position of a word, shifted back by its offset in
+	 * the phrase.
+	 */
+	private int shifted(int word)
+	{
+		return positions[word][cursors[word]] - word;
+	}
+
+	/**
+	 * Finds two occurrences of the same word in the phrase that are currently
+	 * at the same position.
+	 * @return the later of the two, which should move on, or -1 if there is
+	 * no such pair
+	 */
+	private int collision()
+	{
+		for (int i = 0; i < words.length; i++)
+			for (int j = i + 1; j < words.length; j++)
+				if (words[i].equals(words[j])
+						&& positions[i][cursors[i]] == positions[j][cursors[j]])
+					return j;
+		return -1;
+	}
+
+	public String toString()
+	{
+		StringBuilder str = new StringBuilder("\"");
+		for (String word : words)
+		{
+			if (str.length() > 1)
+				str.append(' ');
+			str.append(word);
+		}
+		str.append('"');
+		if (slop > 0)
+			str.append('~').append(slop);
+		return str.toString();
+	}
+}
@@ -0,0 +1,80 @@
+/**
+ * Iterates over the documents of a PostingsList.  advance() gallops: it
+ * probes 1, 2, 4, ... documents ahead until it passes the target, then
+ * binary searches the last step, so skipping n documents costs O(log n).
+ */
+public class PostingsIterator extends DocIdIterator {
+	private PostingsList postings;
+	private int slot;
+	private int doc;
+
+	public PostingsIterator(PostingsList postings)
+	{
+		this.postings = postings;
+		slot = -1;
+		doc = -1;
+	}
+
+	public int docId()
+	{
+		return doc;
+	}
+
+	public int nextDoc()
+	{
+		if (++slot >= postings.size())
+			return doc = NO_MORE_DOCS;
+		return doc = postings.getDoc(slot);
+	}
+
+	public int advance(int target)
+	{
+		int size = postings.size();
+		int low = slot + 1;
+		int step = 1;
+		int high = low;
+		while (high < size && postings.getDoc(high) < target)
+		{
+			low = high + 1;
+			high += step;
+			step <<= 1;
+		}
+		if (high >= size)
+			high = size - 1;
+		// The first slot holding a document >= target is in [low, high + 1].
+		while (low <= high)
+		{
+			int mid = (low + high) >>> 1;
+			if (postings.getDoc(mid) < target)
+				low = mid + 1;
+			else
+				high = mid - 1;
+		}
+		slot = low;
+		if (slot >= size)
+			return doc = NO_MORE_DOCS;
+		return doc = postings.getDoc(slot);
+	}
+
+	public long cost()
+	{
+		return postings.size();
+	}
+
+	/**
+	 * Returns the slot of the current document in the PostingsList, for
+	 * reading its frequency and positions.
+	 */
+	public int slot()
+	{
+		return slot;
+	}
+
+	/**
+	 * Returns the PostingsList being iterated over.
+	 */
+	public PostingsList getPostings()
+	{
+		return postings;
+	}
+}
@@ -0,0 +1,202 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * The postings of one word: the ids of the documents containing the word,
+ * in increasing order, and for each of those documents the positions at
+ * which the word occurs, also in increasing order.  Everything is held in
+ * growable int arrays, so adding an occurrence normally allocates nothing.
+ */
+public class PostingsList implements Serializable {
+	private static final long serialVersionUID = 1L;
+	/**
+	 * The document ids, sorted.  Only the first size entries are used.
+	 */
+	private int[] docs;
+	/**
+	 * The number of positions recorded for each document.
+	 */
+	private int[] freqs;
+	/**
+	 * The positions of the word in each document.  Only the first freqs[i]
+	 * entries of positions[i] are used.
+	 */
+	private int[][] positions;
+	/**
+	 * The number of documents.
+	 */
+	private int size;
+
+	public PostingsList()
+	{
+		docs = new int[4];
+		freqs = new int[4];
+		positions = new int[4][];
+		size = 0;
+	}
+
+	/**
+	 * Builds a PostingsList around existing arrays, such as those decoded
+	 * from an index file.  The arrays must already be sorted and are not
+	 * copied.
+	 */
+	public PostingsList(int[] docs, int[] freqs, int[][] positions)
+	{
+		this.docs = docs;
+		this.freqs = freqs;
+		this.positions = positions;
+		size = docs.length;
+	}
+
+	/**
+	 * Records an occurrence of the word.  Positions within a document must
+	 * be added in increasing order; documents may be added in any order,
+	 * although adding them in increasing order is cheapest.
+	 * @param doc The document id.
+	 * @param position The position of the word in the document.
+	 */
+	public void add(int doc, int position)
+	{
+		int i = slotFor(doc);
+		int[] p = positions[i];
+		if (freqs[i] == p.length)
+			positions[i] = p = Arrays.copyOf(p, Math.max(2, p.length * 2));
+		p[freqs[i]++] = position;
+	}
+
+	/**
+	 * Records several occurrences of the word in a document at once.  The
+	 * document may be anywhere in the list, but the positions must come
+	 * after any already recorded for it.
+	 * @param doc The document id.
+	 * @param positions The sorted positions of the word.
+	 * @param freq The number of positions to use.
+	 * @param offset Added to each position.
+	 */
+	public void add(int doc, int[] positions, int freq, int offset)
+	{
+		int i = slotFor(doc);
+		int[] p = this.positions[i];
+		int n = freqs[i];
+		if (n + freq > p.length)
+			this.positions[i] = p = Arrays.copyOf(p, Math.max(n + freq, p.length * 2));
+		for (int j = 0; j < freq; j++)
+			p[n + j] = positions[j] + offset;
+		freqs[i] = n + freq;
+	}
+
+	/**
+	 * Returns the slot of a document, inserting it if it is not in the list.
+	 */
+	private int slotFor(int doc)
+	{
+		if (size > 0 && docs[size - 1] == doc)
+			return size - 1;
+		if (size == 0 || docs[size - 1] < doc)
+			return insertDocument(size, doc);
+		int i = Arrays.binarySearch(docs, 0, size, doc);
+		return i < 0 ? insertDocument(-i - 1, doc) : i;
+	}
+
+	/**
+	 * Adds all the occurrences of the word in a document at once.  The
+	 * document must come after every document already in the list.
+	 * @param doc The document id.
+	 * @param positions The sorted positions of the word in the document.
+	 * @param freq The number of positions to use.
+	 */
+	public void append(int doc, int[] positions, int freq)
+	{
+		if (size > 0 && docs[size - 1] >= doc)
+			throw new IllegalArgumentException("Document " + doc + " is out of order");
+		int i = insertDocument(size, doc);
+		this.positions[i] = Arrays.copyOf(positions, freq);
+		freqs[i] = freq;
+	}
+
+	/**
+	 * Makes room for a new document at slot i.
+	 */
+	private int insertDocument(int i, int doc)
+	{
+		if (size == docs.length)
+		{
+			int capacity = Math.max(4, size * 2);
+			docs = Arrays.copyOf(docs, capacity);
+			freqs = Arrays.copyOf(freqs, capacity);
+			positions = Arrays.copyOf(positions, capacity);
+		}
+		System.arraycopy(docs, i, docs, i + 1, size - i);
+		System.arraycopy(freqs, i, freqs, i + 1, size - i);
+		System.arraycopy(positions, i, positions, i + 1, size - i);
+		docs[i] = doc;
+		freqs[i] = 0;
+		positions[i] = new int[2];
+		size++;
+		return i;
+	}
+
+	/**
+	 * Returns the number of documents containing the word.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Returns an estimate of the memory used by the list, in bytes.
+	 */
+	public long sizeInBytes()
+	{
+		long bytes = 64 + docs.length * 16L;
+		for (int i = 0; i < size; i++)
+			bytes += 16 + positions[i].length * 4L;
+		return bytes;
+	}
+
+	/**
+	 * Returns the id of the i'th document containing the word.
+	 */
+	public int getDoc(int i)
+	{
+		return docs[i];
+	}
+
+	/**
+	 * Returns the number of times the word occurs in the i'th document.
+	 */
+	public int getFrequency(int i)
+	{
+		return freqs[i];
+	}
+
+	/**
+	 * Returns the positions of the word in the i'th document.  The array is
+	 * shared with this PostingsList and only its first getFrequency(i)
+	 * entries are meaningful.
+	 */
+	public int[] getPositions(int i)
+	{
+		return positions[i];
+	}
+
+	/**
+	 * Finds a document in the list.
+	 * @param doc The document id.
+	 * @return The slot of the document, or -1 if the word does not occur in it.
+	 */
+	public int indexOf(int doc)
+	{
+		int i = Arrays.binarySearch(docs, 0, size, doc);
+		return i < 0 ? -1 : i;
+	}
+
+	/**
+	 * Determines if the word occurs at a position of the i'th document.
+	 */
+	public boolean hasPosition(int i, int position)
+	{
+		return Arrays.binarySearch(positions[i], 0, freqs[i], position) >= 0;
+	}
+}
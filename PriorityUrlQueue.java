@@ -0,0 +1,138 @@
+import java.util.*;
+
+/**
+ * A queue that hands out the URLs that look most important first, so that
+ * a crawl stopped early by its limits has covered the important parts of a
+ * tree.  Each URL is queued once; adding a URL already queued merges the
+ * two entries, keeping the smaller depth.  URLs of equal priority are
+ * handed out in the order they were first added.  Two priorities are
+ * supported:
+ * <ul>
+ * <li>in-degree: URLs linked to from more of the pages parsed so far come
+ * first, as in the backlink-count ordering of Cho, Garcia-Molina and Page,
+ * "Efficient Crawling Through URL Ordering";</li>
+ * <li>directory: URLs with fewer path segments come first, so a tree is
+ * crawled from its top-level directories down.</li>
+ * </ul>
+ *
+ * The heap is updated lazily: when the in-degree of a queued URL rises, a
+ * new heap entry is pushed and the old one is skipped when it reaches the
+ * top.  The heap is rebuilt once it holds more stale entries than live
+ * ones.
+ */
+public class PriorityUrlQueue implements UrlQueue {
+	/**
+	 * A queued URL.
+	 */
+	private static class Node
+	{
+		QueuedUrl entry;
+		int inDegree;
+		long sequence;
+	}
+
+	/**
+	 * A heap entry: a node, with its priority when it was pushed.
+	 */
+	private static class Ticket
+	{
+		Node node;
+		int priority;
+
+		Ticket(Node node, int priority)
+		{
+			this.node = node;
+			this.priority = priority;
+		}
+	}
+
+	private boolean byInDegree;
+	private HashMap<String, Node> queued;
+	private PriorityQueue<Ticket> heap;
+	private long sequence;
+
+	/**
+	 * @param byInDegree Whether URLs are ordered by in-degree rather than by
+	 * directory.
+	 */
+	public PriorityUrlQueue(boolean byInDegree)
+	{
+		this.byInDegree = byInDegree;
+		queued = new HashMap<String, Node>();
+		heap = new PriorityQueue<Ticket>(64, new Comparator<Ticket>() {
+			public int compare(Ticket a, Ticket b) {
+				if (a.priority != b.priority)
+					return a.priority > b.priority ? -1 : 1;
+				return Long.compare(a.node.sequence, b.node.sequence);
+			}
+		});
+		sequence = 0;
+	}
+
+	private int priority(Node node)
+	{
+		return byInDegree ? node.inDegree : -segments(node.entry.url);
+	}
+
+	/**
+	 * Returns the number of path segments of a URL.
+	 */
+	private static int segments(String url)
+	{
+		int count = 0;
+		for (int i = 0; i < url.length() && url.charAt(i) != '?'; i++)
+			if (url.charAt(i) == '/')
+				count++;
+		return count;
+	}
+
+	public boolean add(QueuedUrl url)
+	{
+		Node node = queued.get(url.url);
+		if (node != null)
+		{
+			node.entry.depth = Math.min(node.entry.depth, url.depth);
+			node.inDegree++;
+			if (byInDegree)
+				push(node);
+			return false;
+		}
+		node = new Node();
+		node.entry = url;
+		node.inDegree = 1;
+		node.sequence = sequence++;
+		queued.put(url.url, node);
+		push(node);
+		return true;
+	}
+
+	private void push(Node node)
+	{
+		heap.add(new Ticket(node, priority(node)));
+		if (heap.size() > 64 && heap.size() > 2 * queued.size())
+		{
+			heap.clear();
+			for (Node live : queued.values())
+				heap.add(new Ticket(live, priority(live)));
+		}
+	}
+
+	public QueuedUrl poll()
+	{
+		Ticket ticket;
+		while ((ticket = heap.poll()) != null)
+		{
+			Node node = ticket.node;
+			if (queued.get(node.entry.url) != node || ticket.priority != priority(node))
+				continue;
+			queued.remove(node.entry.url);
+			return node.entry;
+		}
+		return null;
+	}
+
+	public int size()
+	{
+		return queued.size();
+	}
+}
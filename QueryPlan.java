@@ -0,0 +1,516 @@
+import java.util.*;
+
+/**
+ * A query compiled from a parse tree into the operations that evaluate it.
+ * Compiling flattens nested conjunctions and disjunctions, orders the
+ * operands of a conjunction from rarest to most common, and turns negated
+ * operands of a conjunction into set differences, so the cost of a
+ * conjunctive query follows its rarest term rather than the size of the
+ * corpus.  Only a query with no positive operand at all is evaluated as a
+ * complement.
+ *
+ * A plan is evaluated by combining DocIdIterators over the postings of
+ * its words, so no intermediate result is collected.  The exception is
+ * operators whose operands all match a large fraction of the corpus, and
+ * complements, which are evaluated on compressed bitmaps instead: there
+ * stepping through documents one at a time costs more than combining
+ * the bitmaps 64 documents at a time.
+ */
+public abstract class QueryPlan {
+	protected WebIndex index;
+	private long cost = -1;
+
+	protected QueryPlan(WebIndex index)
+	{
+		this.index = index;
+	}
+
+	/**
+	 * Returns an upper bound on the number of documents this plan matches,
+	 * computed once from the document frequencies of its words.  A plan
+	 * whose cost is 0 matches nothing.
+	 */
+	public long cost()
+	{
+		if (cost < 0)
+			cost = estimateCost();
+		return cost;
+	}
+
+	protected abstract long estimateCost();
+
+	/**
+	 * Returns an iterator over the ids of the documents matching this plan.
+	 * Each call starts a new iteration.
+	 */
+	public abstract DocIdIterator iterator();
+
+	/**
+	 * Returns the documents matching this plan as a compressed bitmap.
+	 * Bitmaps are kept in the index's document set cache under the text of
+	 * the plan, so a subexpression shared by several queries is evaluated
+	 * once.
+	 */
+	public RoaringDocSet bitmap()
+	{
+		LruCache<String, RoaringDocSet> cache = index.getDocSetCache();
+		String key = toString();
+		RoaringDocSet docs = cache.get(key);
+		if (docs == null)
+		{
+			docs = computeBitmap();
+			cache.put(key, docs);
+		}
+		return docs;
+	}
+
+	/**
+	 * Evaluates this plan to a bitmap, without looking in the cache.
+	 */
+	protected RoaringDocSet computeBitmap()
+	{
+		return RoaringDocSet.of(iterator());
+	}
+
+	/**
+	 * Determines if this plan may match enough documents that it is better
+	 * evaluated as a bitmap.
+	 */
+	protected boolean isDense()
+	{
+		return index.isDense(cost());
+	}
+
+	/**
+	 * Returns the set of ids of the documents matching this plan.
+	 */
+	public BitSet evaluate()
+	{
+		BitSet docs = new BitSet(index.getDocumentCount());
+		DocIdIterator it = iterator();
+		for (int doc = it.nextDoc(); doc != DocIdIterator.NO_MORE_DOCS; doc = it.nextDoc())
+			docs.set(doc);
+		return docs;
+	}
+
+	/**
+	 * Compiles a parse tree.
+	 * @param tree The tree returned by WebQueryEngine.parse().
+	 * @param index The index the plan will run against.
+	 */
+	public static QueryPlan compile(WebQueryEngine.Tree tree, WebIndex index)
+	{
+		QueryPlan plan;
+		if (tree.data.token == WebQueryEngine.AND_TOKEN || tree.data.token == WebQueryEngine.OR_TOKEN)
+		{
+			ArrayList<QueryPlan> operands = new ArrayList<QueryPlan>();
+			flatten(tree.left, tree.data.token, index, operands);
+			flatten(tree.right, tree.data.token, index, operands);
+			plan = tree.data.token == WebQueryEngine.AND_TOKEN ? and(operands, index) : or(operands, index);
+		}
+		else if (tree.data.otherTokens == null)
+			plan = new Term(tree.data.token.repr, index);
+		else
+		{
+			ArrayList<String> words = new ArrayList<String>();
+			words.add(tree.data.token.repr);
+			for (WebQueryEngine.Token t : tree.data.otherTokens)
+				words.add(t.repr);
+			if (tree.isPhrase)
+				plan = new Phrase(words, tree.slop, index);
+			else
+			{
+				ArrayList<QueryPlan> operands = new ArrayList<QueryPlan>();
+				for (String word : words)
+					operands.add(new Term(word, index));
+				plan = and(operands, index);
+			}
+		}
+		return tree.negated ? not(plan, index) : plan;
+	}
+
+	/**
+	 * Collects the operands of a chain of the same operator.
+	 */
+	private static void flatten(WebQueryEngine.Tree tree, WebQueryEngine.Token op, WebIndex index, List<QueryPlan> operands)
+	{
+		if (tree.data.token == op && !tree.negated)
+		{
+			flatten(tree.left, op, index, operands);
+			flatten(tree.right, op, index, operands);
+		}
+		else
+			operands.add(compile(tree, index));
+	}
+
+	private static QueryPlan not(QueryPlan plan, WebIndex index)
+	{
+		if (plan instanceof Not)
+			return ((Not) plan).operand;
+		return new Not(plan, index);
+	}
+
+	/**
+	 * Builds a conjunction, splitting its operands into those that must
+	 * match and those that must not.
+	 */
+	private static QueryPlan and(List<QueryPlan> operands, WebIndex index)
+	{
+		ArrayList<QueryPlan> required = new ArrayList<QueryPlan>();
+		ArrayList<QueryPlan> excluded = new ArrayList<QueryPlan>();
+		for (QueryPlan operand : operands)
+		{
+			if (operand instanceof Not)
+				excluded.add(((Not) operand).operand);
+			else if (operand instanceof And)
+				required.addAll(((And) operand).operands);
+			else
+				required.add(operand);
+		}
+		if (required.isEmpty())
+			return new Not(or(excluded, index), index);
+		QueryPlan plan = required.size() == 1 ? required.get(0) : new And(required, index);
+		if (excluded.isEmpty())
+			return plan;
+		return new AndNot(plan, or(excluded, index), index);
+	}
+
+	private static QueryPlan or(List<QueryPlan> operands, WebIndex index)
+	{
+		if (operands.size() == 1)
+			return operands.get(0);
+		return new Or(operands, index);
+	}
+
+	/**
+	 * Matches the documents containing a word.
+	 */
+	public static class Term extends QueryPlan
+	{
+		String word;
+		private PostingsList postings;
+
+		public Term(String word, WebIndex index)
+		{
+			super(index);
+			this.word = word;
+			postings = index.getPostings(word);
+		}
+
+		protected long estimateCost()
+		{
+			return postings == null ? 0 : postings.size();
+		}
+
+		public DocIdIterator iterator()
+		{
+			if (postings == null)
+				return DocIdIterator.empty();
+			return new PostingsIterator(postings);
+		}
+
+		public RoaringDocSet bitmap()
+		{
+			return index.getBitmap(word);
+		}
+
+		public String toString()
+		{
+			return word;
+		}
+	}
+
+	/**
+	 * Matches the documents containing a sequence of words.  Candidates are
+	 * the documents containing every word, and each candidate's positions
+	 * are checked by a PhraseMatcher.
+	 */
+	public static class Phrase extends QueryPlan
+	{
+		List<String> words;
+		int slop;
+		private PostingsList[] postings;
+
+		public Phrase(List<String> words, WebIndex index)
+		{
+			this(words, 0, index);
+		}
+
+		/**
+		 * @param slop How far in total the words may be from their exact places.
+		 */
+		public Phrase(List<String> words, int slop, WebIndex index)
+		{
+			super(index);
+			this.words = new ArrayList<String>(words);
+			this.slop = slop;
+			postings = new PostingsList[words.size()];
+			for (int i = 0; i < postings.length; i++)
+				postings[i] = index.getPostings(words.get(i));
+		}
+
+		protected long estimateCost()
+		{
+			long cost = Long.MAX_VALUE;
+			for (PostingsList p : postings)
+				cost = Math.min(cost, p == null ? 0 : p.size());
+			return cost;
+		}
+
+		public DocIdIterator iterator()
+		{
+			if (cost() == 0)
+				return DocIdIterator.empty();
+			final PostingsIterator[] terms = new PostingsIterator[postings.length];
+			for (int i = 0; i < terms.length; i++)
+				terms[i] = new PostingsIterator(postings[i]);
+			final DocIdIterator candidates = new DocIdIterator.Conjunction(Arrays.<DocIdIterator>asList(terms));
+			final PhraseMatcher matcher = new PhraseMatcher(words, slop);
+			return new DocIdIterator() {
+				public int docId() {
+					return candidates.docId();
+				}
+
+				public int nextDoc() {
+					return check(candidates.nextDoc());
+				}
+
+				public int advance(int target) {
+					return check(candidates.advance(target));
+				}
+
+				private int check(int doc) {
+					while (doc != NO_MORE_DOCS && !matches())
+						doc = candidates.nextDoc();
+					return doc;
+				}
+
+				private boolean matches() {
+					for (int i = 0; i < terms.length; i++)
+					{
+						int slot = terms[i].slot();
+						matcher.set(i, postings[i].getPositions(slot), postings[i].getFrequency(slot));
+					}
+					return matcher.matches();
+				}
+
+				public long cost() {
+					return candidates.cost();
+				}
+			};
+		}
+
+		public String toString()
+		{
+			return new PhraseMatcher(words, slop).toString();
+		}
+	}
+
+	/**
+	 * Matches the documents matching every operand.  The operands are
+	 * leapfrogged from the cheapest up, unless even the cheapest is dense.
+	 */
+	public static class And extends QueryPlan
+	{
+		List<QueryPlan> operands;
+
+		public And(List<QueryPlan> operands, WebIndex index)
+		{
+			super(index);
+			this.operands = new ArrayList<QueryPlan>(operands);
+			Collections.sort(this.operands, new Comparator<QueryPlan>() {
+				public int compare(QueryPlan a, QueryPlan b) {
+					return Long.compare(a.cost(), b.cost());
+				}
+			});
+		}
+
+		protected long estimateCost()
+		{
+			return operands.get(0).cost();
+		}
+
+		public DocIdIterator iterator()
+		{
+			if (cost() == 0)
+				return DocIdIterator.empty();
+			if (isDense())
+				return bitmap().iterator();
+			ArrayList<DocIdIterator> iterators = new ArrayList<DocIdIterator>();
+			for (QueryPlan operand : operands)
+				iterators.add(operand.iterator());
+			return new DocIdIterator.Conjunction(iterators);
+		}
+
+		protected RoaringDocSet computeBitmap()
+		{
+			if (!isDense())
+				return super.computeBitmap();
+			RoaringDocSet docs = operands.get(0).bitmap();
+			for (int i = 1; i < operands.size(); i++)
+				docs = docs.and(operands.get(i).bitmap());
+			return docs;
+		}
+
+		public String toString()
+		{
+			return join(" & ", operands);
+		}
+	}
+
+	/**
+	 * Matches the documents matching any operand.
+	 */
+	public static class Or extends QueryPlan
+	{
+		List<QueryPlan> operands;
+
+		public Or(List<QueryPlan> operands, WebIndex index)
+		{
+			super(index);
+			this.operands = new ArrayList<QueryPlan>(operands);
+		}
+
+		protected long estimateCost()
+		{
+			long sum = 0;
+			for (QueryPlan operand : operands)
+				sum += operand.cost();
+			return Math.min(sum, index.getDocumentCount());
+		}
+
+		/**
+		 * Determines if every operand that can match anything is dense.
+		 */
+		private boolean operandsDense()
+		{
+			for (QueryPlan operand : operands)
+				if (operand.cost() > 0 && !operand.isDense())
+					return false;
+			return true;
+		}
+
+		public DocIdIterator iterator()
+		{
+			if (cost() > 0 && operandsDense())
+				return bitmap().iterator();
+			ArrayList<DocIdIterator> iterators = new ArrayList<DocIdIterator>();
+			for (QueryPlan operand : operands)
+				if (operand.cost() > 0)
+					iterators.add(operand.iterator());
+			if (iterators.isEmpty())
+				return DocIdIterator.empty();
+			if (iterators.size() == 1)
+				return iterators.get(0);
+			return new DocIdIterator.Disjunction(iterators);
+		}
+
+		protected RoaringDocSet computeBitmap()
+		{
+			RoaringDocSet docs = RoaringDocSet.empty();
+			for (QueryPlan operand : operands)
+				if (operand.cost() > 0)
+					docs = docs.or(operand.bitmap());
+			return docs;
+		}
+
+		public String toString()
+		{
+			return join(" | ", operands);
+		}
+	}
+
+	/**
+	 * Matches the documents matching one plan but not another, without
+	 * building the complement of the second.
+	 */
+	public static class AndNot extends QueryPlan
+	{
+		QueryPlan required;
+		QueryPlan excluded;
+
+		public AndNot(QueryPlan required, QueryPlan excluded, WebIndex index)
+		{
+			super(index);
+			this.required = required;
+			this.excluded = excluded;
+		}
+
+		protected long estimateCost()
+		{
+			return required.cost();
+		}
+
+		public DocIdIterator iterator()
+		{
+			if (excluded.cost() == 0)
+				return required.iterator();
+			if (required.isDense() && excluded.isDense())
+				return bitmap().iterator();
+			return new DocIdIterator.Exclusion(required.iterator(), excluded.iterator());
+		}
+
+		protected RoaringDocSet computeBitmap()
+		{
+			if (excluded.cost() == 0)
+				return required.bitmap();
+			return required.bitmap().andNot(excluded.bitmap());
+		}
+
+		public String toString()
+		{
+			return "(" + required + " - " + excluded + ")";
+		}
+	}
+
+	/**
+	 * Matches the live documents not matching a plan.  Only used when a
+	 * query has nothing positive to start from.  The complement is taken
+	 * on bitmaps, a word of documents at a time.
+	 */
+	public static class Not extends QueryPlan
+	{
+		QueryPlan operand;
+
+		public Not(QueryPlan operand, WebIndex index)
+		{
+			super(index);
+			this.operand = operand;
+		}
+
+		protected long estimateCost()
+		{
+			return index.getDocumentCount();
+		}
+
+		public DocIdIterator iterator()
+		{
+			return bitmap().iterator();
+		}
+
+		protected RoaringDocSet computeBitmap()
+		{
+			RoaringDocSet live = index.getLiveBitmap();
+			if (operand.cost() == 0)
+				return live;
+			return live.andNot(operand.bitmap());
+		}
+
+		public String toString()
+		{
+			return "!" + operand;
+		}
+	}
+
+	private static String join(String separator, List<QueryPlan> operands)
+	{
+		StringBuilder str = new StringBuilder("(");
+		for (int i = 0; i < operands.size(); i++)
+		{
+			if (i > 0)
+				str.append(separator);
+			str.append(operands.get(i));
+		}
+		return str.append(')').toString();
+	}
+}
@@ -0,0 +1,17 @@
+/**
+ * A URL waiting in a crawl frontier.
+ */
+public class QueuedUrl {
+	public String url;
+	/**
+	 * The number of links followed to reach the URL from a starting URL,
+	 * which are at depth 0.
+	 */
+	public int depth;
+
+	public QueuedUrl(String url, int depth)
+	{
+		this.url = url;
+		this.depth = depth;
+	}
+}
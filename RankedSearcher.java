@@ -0,0 +1,247 @@
+import java.util.*;
+
+/**
+ * Finds the k documents matching a query that score highest under BM25.
+ * Only the words of a query that are not negated are scored; the boolean
+ * query still decides which documents may be returned.
+ *
+ * Candidates are found with WAND: each word has an upper bound on what it
+ * can add to a score, the word cursors are kept sorted by document, and
+ * the first document at which the bounds of the cursors at or before it
+ * could beat the k-th best score so far is the only one scored.  Cursors
+ * before it skip straight to it, so once the heap of the best k fills up,
+ * documents holding only common, low-scoring words are passed over without
+ * being scored or even visited.
+ *
+ * The average document length is computed when the searcher is created, so
+ * a searcher should not outlive changes to its index.
+ */
+public class RankedSearcher {
+	/**
+	 * How quickly the score of a word saturates as it repeats.
+	 */
+	public static final double K1 = 1.2;
+	/**
+	 * How strongly scores are normalized by document length.
+	 */
+	public static final double B = 0.75;
+
+	/**
+	 * A document and its score.
+	 */
+	public static class Result
+	{
+		public int doc;
+		public String url;
+		public double score;
+
+		public Result(int doc, String url, double score)
+		{
+			this.doc = doc;
+			this.url = url;
+			this.score = score;
+		}
+
+		public String toString()
+		{
+			return url + " " + score;
+		}
+	}
+
+	/**
+	 * Orders results from worst to best: by score, then preferring lower
+	 * document ids, so equal scores come out in a stable order.
+	 */
+	private static final Comparator<Result> WORST_FIRST = new Comparator<Result>() {
+		public int compare(Result a, Result b) {
+			int c = Double.compare(a.score, b.score);
+			return c != 0 ? c : Integer.compare(b.doc, a.doc);
+		}
+	};
+
+	private WebIndex index;
+	private double averageLength;
+
+	public RankedSearcher(WebIndex index)
+	{
+		this.index = index;
+		long total = 0;
+		int count = index.getDocumentCount();
+		for (int doc = 0; doc < count; doc++)
+			total += index.getWordCount(doc);
+		averageLength = count == 0 ? 1 : Math.max(1.0, (double) total / count);
+	}
+
+	/**
+	 * Returns the inverse document frequency of a word found in df documents.
+	 */
+	public double idf(int df)
+	{
+		int n = index.getDocumentCount();
+		return Math.log(1 + (n - df + 0.5) / (df + 0.5));
+	}
+
+	/**
+	 * Returns the score a word adds to a document.
+	 * @param idf The inverse document frequency of the word.
+	 * @param tf The number of times the word is in the document.
+	 * @param doc The document id.
+	 */
+	public double score(double idf, int tf, int doc)
+	{
+		double norm = K1 * (1 - B + B * index.getWordCount(doc) / averageLength);
+		return idf * tf * (K1 + 1) / (tf + norm);
+	}
+
+	/**
+	 * One scored word, positioned on a document of its postings.
+	 */
+	private class Cursor
+	{
+		PostingsIterator docs;
+		double idf;
+		/**
+		 * The most the word can add to any score, which BM25 reaches as the
+		 * word's frequency grows without bound.
+		 */
+		double maxScore;
+
+		Cursor(PostingsList postings)
+		{
+			docs = new PostingsIterator(postings);
+			idf = idf(postings.size());
+			maxScore = idf * (K1 + 1);
+			docs.nextDoc();
+		}
+
+		int doc()
+		{
+			return docs.docId();
+		}
+
+		double score()
+		{
+			return RankedSearcher.this.score(idf, docs.getPostings().getFrequency(docs.slot()), docs.docId());
+		}
+	}
+
+	/**
+	 * Returns the k best documents among those a plan matches, best first.
+	 * @param plan The boolean query, deciding which documents may match.
+	 * @param words The words to score documents by.
+	 * @param k The number of documents to return.
+	 */
+	public List<Result> search(QueryPlan plan, Collection<String> words, int k)
+	{
+		PriorityQueue<Result> best = new PriorityQueue<Result>(Math.max(1, k), WORST_FIRST);
+		if (k <= 0)
+			return new ArrayList<Result>();
+		DocIdIterator filter = plan.iterator();
+		ArrayList<Cursor> list = new ArrayList<Cursor>();
+		for (String word : words)
+		{
+			PostingsList postings = index.getPostings(word);
+			if (postings != null && postings.size() > 0)
+				list.add(new Cursor(postings));
+		}
+		if (list.isEmpty())
+		{
+			// Nothing to score by; every match scores 0.
+			for (int doc = filter.nextDoc(); doc != DocIdIterator.NO_MORE_DOCS && best.size() < k; doc = filter.nextDoc())
+				best.add(new Result(doc, index.getUrl(doc), 0));
+			return sorted(best);
+		}
+		Cursor[] cursors = list.toArray(new Cursor[0]);
+		filter.nextDoc();
+		while (filter.docId() != DocIdIterator.NO_MORE_DOCS)
+		{
+			sortByDoc(cursors);
+			double threshold = best.size() < k ? -1 : best.peek().score;
+			int pivot = -1;
+			double bound = 0;
+			for (int i = 0; i < cursors.length && cursors[i].doc() != DocIdIterator.NO_MORE_DOCS; i++)
+			{
+				bound += cursors[i].maxScore;
+				if (bound > threshold)
+				{
+					pivot = i;
+					break;
+				}
+			}
+			if (pivot < 0)
+				break;
+			int target = cursors[pivot].doc();
+			// Skip to the next document the boolean query matches, too.
+			if (filter.docId() < target)
+				filter.advance(target);
+			target = filter.docId();
+			if (target == DocIdIterator.NO_MORE_DOCS)
+				break;
+			if (target == cursors[pivot].doc() && cursors[0].doc() == target)
+			{
+				double score = 0;
+				for (Cursor cursor : cursors)
+					if (cursor.doc() == target)
+						score += cursor.score();
+				if (best.size() < k)
+					best.add(new Result(target, null, score));
+				else if (score > threshold)
+				{
+					best.poll();
+					best.add(new Result(target, null, score));
+				}
+				for (Cursor cursor : cursors)
+					if (cursor.doc() == target)
+						cursor.docs.nextDoc();
+			}
+			else
+			{
+				// Every cursor before the pivot is behind it; move them up.
+				for (Cursor cursor : cursors)
+					if (cursor.doc() < target)
+						cursor.docs.advance(target);
+			}
+		}
+		if (best.size() < k)
+		{
+			// Every match containing a scored word is already in the heap; the
+			// rest of the matches score 0.
+			HashSet<Integer> found = new HashSet<Integer>();
+			for (Result result : best)
+				found.add(result.doc);
+			filter = plan.iterator();
+			for (int doc = filter.nextDoc(); doc != DocIdIterator.NO_MORE_DOCS && best.size() < k; doc = filter.nextDoc())
+				if (!found.contains(doc))
+					best.add(new Result(doc, null, 0));
+		}
+		for (Result result : best)
+			result.url = index.getUrl(result.doc);
+		return sorted(best);
+	}
+
+	/**
+	 * Insertion sorts the cursors by current document; they are nearly in
+	 * order after each step.
+	 */
+	private static void sortByDoc(Cursor[] cursors)
+	{
+		for (int i = 1; i < cursors.length; i++)
+		{
+			Cursor c = cursors[i];
+			int j = i - 1;
+			while (j >= 0 && cursors[j].doc() > c.doc())
+			{
+				cursors[j + 1] = cursors[j];
+				j--;
+			}
+			cursors[j + 1] = c;
+		}
+	}
+
+	private static List<Result> sorted(PriorityQueue<Result> best)
+	{
+		ArrayList<Result> results = new ArrayList<Result>(best);
+		Collections.sort(results, Collections.reverseOrder(WORST_FIRST));
+		return results;
+	}
+}
@@ -0,0 +1,562 @@
+import java.util.*;
+
+/**
+ * An immutable, compressed set of document ids in the style of a Roaring
+ * bitmap.  Ids are split by their high 16 bits into chunks of 65536; a
+ * chunk holding few ids stores them as a sorted array, and a chunk holding
+ * more than ARRAY_LIMIT stores a plain bitmap.  Sparse sets therefore cost
+ * two bytes per id, dense sets one bit per id, and and, or and andNot on
+ * dense chunks run 64 ids at a time.
+ *
+ * Sets are built in increasing id order with a Builder, or by the static
+ * factory methods.  Chunks are never modified once built, so results of
+ * set operations share them freely.
+ */
+public class RoaringDocSet {
+	/**
+	 * The most ids an array chunk holds; beyond this a bitmap is smaller.
+	 */
+	static final int ARRAY_LIMIT = 4096;
+
+	private char[] keys;
+	private Container[] containers;
+	private int size;
+
+	private RoaringDocSet(int capacity)
+	{
+		keys = new char[Math.max(1, capacity)];
+		containers = new Container[Math.max(1, capacity)];
+		size = 0;
+	}
+
+	private void append(char key, Container container)
+	{
+		if (container.cardinality() == 0)
+			return;
+		if (size == keys.length)
+		{
+			keys = Arrays.copyOf(keys, size * 2);
+			containers = Arrays.copyOf(containers, size * 2);
+		}
+		keys[size] = key;
+		containers[size++] = container;
+	}
+
+	/**
+	 * Returns an empty set.
+	 */
+	public static RoaringDocSet empty()
+	{
+		return new RoaringDocSet(1);
+	}
+
+	/**
+	 * Returns the set of every id from start, inclusive, to end, exclusive.
+	 */
+	public static RoaringDocSet range(int start, int end)
+	{
+		RoaringDocSet set = new RoaringDocSet(((end - 1) >>> 16) - (start >>> 16) + 1);
+		for (int chunk = start >>> 16; start < end; chunk++)
+		{
+			int chunkEnd = Math.min(end, (chunk + 1) << 16);
+			long[] words = new long[1024];
+			int low = start & 0xFFFF;
+			int high = chunkEnd - (chunk << 16);
+			for (int bit = low; bit < high; bit++)
+				words[bit >>> 6] |= 1L << bit;
+			set.append((char) chunk, BitmapContainer.normalize(words, high - low));
+			start = chunkEnd;
+		}
+		return set;
+	}
+
+	/**
+	 * Returns the set of documents in a PostingsList.
+	 */
+	public static RoaringDocSet of(PostingsList postings)
+	{
+		Builder builder = new Builder();
+		for (int i = 0; i < postings.size(); i++)
+			builder.add(postings.getDoc(i));
+		return builder.build();
+	}
+
+	/**
+	 * Returns the set of documents an iterator visits.
+	 */
+	public static RoaringDocSet of(DocIdIterator docs)
+	{
+		Builder builder = new Builder();
+		for (int doc = docs.nextDoc(); doc != DocIdIterator.NO_MORE_DOCS; doc = docs.nextDoc())
+			builder.add(doc);
+		return builder.build();
+	}
+
+	/**
+	 * Returns the set of bits set in a BitSet.
+	 */
+	public static RoaringDocSet of(BitSet docs)
+	{
+		Builder builder = new Builder();
+		for (int doc = docs.nextSetBit(0); doc >= 0; doc = docs.nextSetBit(doc + 1))
+			builder.add(doc);
+		return builder.build();
+	}
+
+	/**
+	 * Returns the number of ids in the set.
+	 */
+	public int cardinality()
+	{
+		int cardinality = 0;
+		for (int i = 0; i < size; i++)
+			cardinality += containers[i].cardinality();
+		return cardinality;
+	}
+
+	/**
+	 * Returns an estimate of the memory used by the set, in bytes.
+	 */
+	public long sizeInBytes()
+	{
+		long bytes = 32 + keys.length * 2L + containers.length * 8L;
+		for (int i = 0; i < size; i++)
+			bytes += containers[i].sizeInBytes();
+		return bytes;
+	}
+
+	/**
+	 * Determines if the set contains an id.
+	 */
+	public boolean contains(int doc)
+	{
+		int i = find((char) (doc >>> 16));
+		return i >= 0 && containers[i].contains(doc & 0xFFFF);
+	}
+
+	private int find(char key)
+	{
+		return Arrays.binarySearch(keys, 0, size, key);
+	}
+
+	/**
+	 * Returns the ids in both this set and other.
+	 */
+	public RoaringDocSet and(RoaringDocSet other)
+	{
+		RoaringDocSet result = new RoaringDocSet(Math.min(size, other.size));
+		int i = 0;
+		int j = 0;
+		while (i < size && j < other.size)
+		{
+			if (keys[i] < other.keys[j])
+				i++;
+			else if (keys[i] > other.keys[j])
+				j++;
+			else
+			{
+				result.append(keys[i], containers[i].and(other.containers[j]));
+				i++;
+				j++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the ids in this set or other.
+	 */
+	public RoaringDocSet or(RoaringDocSet other)
+	{
+		RoaringDocSet result = new RoaringDocSet(size + other.size);
+		int i = 0;
+		int j = 0;
+		while (i < size || j < other.size)
+		{
+			if (j == other.size || (i < size && keys[i] < other.keys[j]))
+			{
+				result.append(keys[i], containers[i]);
+				i++;
+			}
+			else if (i == size || keys[i] > other.keys[j])
+			{
+				result.append(other.keys[j], other.containers[j]);
+				j++;
+			}
+			else
+			{
+				result.append(keys[i], containers[i].or(other.containers[j]));
+				i++;
+				j++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the ids in this set but not in other.
+	 */
+	public RoaringDocSet andNot(RoaringDocSet other)
+	{
+		RoaringDocSet result = new RoaringDocSet(size);
+		int j = 0;
+		for (int i = 0; i < size; i++)
+		{
+			while (j < other.size && other.keys[j] < keys[i])
+				j++;
+			if (j < other.size && other.keys[j] == keys[i])
+				result.append(keys[i], containers[i].andNot(other.containers[j]));
+			else
+				result.append(keys[i], containers[i]);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns an iterator over the ids in the set.
+	 */
+	public DocIdIterator iterator()
+	{
+		return new DocIdIterator() {
+			private int chunk = 0;
+			private int doc = -1;
+
+			public int docId()
+			{
+				return doc;
+			}
+
+			public int nextDoc()
+			{
+				if (doc == NO_MORE_DOCS)
+					return doc;
+				return advance(doc + 1);
+			}
+
+			public int advance(int target)
+			{
+				char key = (char) (target >>> 16);
+				while (chunk < size && keys[chunk] < key)
+					chunk++;
+				while (chunk < size)
+				{
+					int low = keys[chunk] == key ? target & 0xFFFF : 0;
+					int next = containers[chunk].nextValue(low);
+					if (next >= 0)
+						return doc = (keys[chunk] << 16) | next;
+					chunk++;
+				}
+				return doc = NO_MORE_DOCS;
+			}
+
+			public long cost()
+			{
+				return cardinality();
+			}
+		};
+	}
+
+	/**
+	 * Builds a set from ids added in increasing order.
+	 */
+	public static class Builder
+	{
+		private RoaringDocSet set = new RoaringDocSet(4);
+		private int key = -1;
+		private char[] values = new char[16];
+		private long[] words;
+		private int cardinality;
+
+		/**
+		 * Adds an id, which must be larger than every id added before.
+		 */
+		public void add(int doc)
+		{
+			int high = doc >>> 16;
+			if (high != key)
+			{
+				flush();
+				key = high;
+			}
+			int low = doc & 0xFFFF;
+			if (words != null)
+				words[low >>> 6] |= 1L << low;
+			else if (cardinality < ARRAY_LIMIT)
+			{
+				if (cardinality == values.length)
+					values = Arrays.copyOf(values, cardinality * 2);
+				values[cardinality] = (char) low;
+			}
+			else
+			{
+				words = new long[1024];
+				for (int i = 0; i < cardinality; i++)
+					words[values[i] >>> 6] |= 1L << values[i];
+				words[low >>> 6] |= 1L << low;
+			}
+			cardinality++;
+		}
+
+		private void flush()
+		{
+			if (cardinality > 0)
+			{
+				if (words != null)
+					set.append((char) key, new BitmapContainer(words, cardinality));
+				else
+					set.append((char) key, new ArrayContainer(Arrays.copyOf(values, cardinality)));
+			}
+			words = null;
+			cardinality = 0;
+		}
+
+		/**
+		 * Returns the set built so far.  The builder must not be used
+		 * afterwards.
+		 */
+		public RoaringDocSet build()
+		{
+			flush();
+			return set;
+		}
+	}
+
+	/**
+	 * The ids of one chunk, by their low 16 bits.
+	 */
+	private abstract static class Container
+	{
+		abstract int cardinality();
+
+		abstract boolean contains(int low);
+
+		/**
+		 * Returns the smallest id in the chunk that is at least low, or -1.
+		 */
+		abstract int nextValue(int low);
+
+		abstract Container and(Container other);
+
+		abstract Container or(Container other);
+
+		abstract Container andNot(Container other);
+
+		abstract long sizeInBytes();
+	}
+
+	private static class ArrayContainer extends Container
+	{
+		private char[] values;
+
+		ArrayContainer(char[] values)
+		{
+			this.values = values;
+		}
+
+		int cardinality()
+		{
+			return values.length;
+		}
+
+		boolean contains(int low)
+		{
+			return Arrays.binarySearch(values, (char) low) >= 0;
+		}
+
+		int nextValue(int low)
+		{
+			int i = Arrays.binarySearch(values, (char) low);
+			if (i < 0)
+				i = -i - 1;
+			return i < values.length ? values[i] : -1;
+		}
+
+		Container and(Container other)
+		{
+			if (other instanceof BitmapContainer)
+				return other.and(this);
+			char[] others = ((ArrayContainer) other).values;
+			char[] result = new char[Math.min(values.length, others.length)];
+			int n = 0;
+			for (int i = 0, j = 0; i < values.length && j < others.length; )
+			{
+				if (values[i] < others[j])
+					i++;
+				else if (values[i] > others[j])
+					j++;
+				else
+				{
+					result[n++] = values[i];
+					i++;
+					j++;
+				}
+			}
+			return new ArrayContainer(Arrays.copyOf(result, n));
+		}
+
+		Container or(Container other)
+		{
+			if (other instanceof BitmapContainer)
+				return other.or(this);
+			char[] others = ((ArrayContainer) other).values;
+			if (values.length + others.length > ARRAY_LIMIT)
+				return BitmapContainer.of(this).or(other);
+			char[] result = new char[values.length + others.length];
+			int n = 0;
+			int i = 0;
+			int j = 0;
+			while (i < values.length || j < others.length)
+			{
+				if (j == others.length || (i < values.length && values[i] < others[j]))
+					result[n++] = values[i++];
+				else if (i == values.length || values[i] > others[j])
+					result[n++] = others[j++];
+				else
+				{
+					result[n++] = values[i++];
+					j++;
+				}
+			}
+			return new ArrayContainer(Arrays.copyOf(result, n));
+		}
+
+		Container andNot(Container other)
+		{
+			char[] result = new char[values.length];
+			int n = 0;
+			for (char value : values)
+				if (!other.contains(value))
+					result[n++] = value;
+			return new ArrayContainer(Arrays.copyOf(result, n));
+		}
+
+		long sizeInBytes()
+		{
+			return 16 + values.length * 2L;
+		}
+	}
+
+	private static class BitmapContainer extends Container
+	{
+		private long[] words;
+		private int cardinality;
+
+		BitmapContainer(long[] words, int cardinality)
+		{
+			this.words = words;
+			this.cardinality = cardinality;
+		}
+
+		static BitmapContainer of(ArrayContainer array)
+		{
+			long[] words = new long[1024];
+			for (char value : array.values)
+				words[value >>> 6] |= 1L << value;
+			return new BitmapContainer(words, array.values.length);
+		}
+
+		/**
+		 * Wraps the result of an operation in the smaller kind of container.
+		 */
+		static Container normalize(long[] words, int cardinality)
+		{
+			if (cardinality > ARRAY_LIMIT)
+				return new BitmapContainer(words, cardinality);
+			char[] values = new char[cardinality];
+			int n = 0;
+			for (int i = 0; i < words.length; i++)
+				for (long w = words[i]; w != 0; w &= w - 1)
+					values[n++] = (char) ((i << 6) + Long.numberOfTrailingZeros(w));
+			return new ArrayContainer(values);
+		}
+
+		int cardinality()
+		{
+			return cardinality;
+		}
+
+		boolean contains(int low)
+		{
+			return (words[low >>> 6] & (1L << low)) != 0;
+		}
+
+		int nextValue(int low)
+		{
+			int i = low >>> 6;
+			long w = words[i] & (-1L << low);
+			while (true)
+			{
+				if (w != 0)
+					return (i << 6) + Long.numberOfTrailingZeros(w);
+				if (++i == words.length)
+					return -1;
+				w = words[i];
+			}
+		}
+
+		Container and(Container other)
+		{
+			if (other instanceof ArrayContainer)
+			{
+				char[] values = ((ArrayContainer) other).values;
+				char[] result = new char[values.length];
+				int n = 0;
+				for (char value : values)
+					if (contains(value))
+						result[n++] = value;
+				return new ArrayContainer(Arrays.copyOf(result, n));
+			}
+			long[] others = ((BitmapContainer) other).words;
+			long[] result = new long[1024];
+			int cardinality = 0;
+			for (int i = 0; i < 1024; i++)
+				cardinality += Long.bitCount(result[i] = words[i] & others[i]);
+			return normalize(result, cardinality);
+		}
+
+		Container or(Container other)
+		{
+			long[] result = words.clone();
+			int cardinality = 0;
+			if (other instanceof ArrayContainer)
+			{
+				for (char value : ((ArrayContainer) other).values)
+					result[value >>> 6] |= 1L << value;
+			}
+			else
+			{
+				long[] others = ((BitmapContainer) other).words;
+				for (int i = 0; i < 1024; i++)
+					result[i] |= others[i];
+			}
+			for (long w : result)
+				cardinality += Long.bitCount(w);
+			return new BitmapContainer(result, cardinality);
+		}
+
+		Container andNot(Container other)
+		{
+			long[] result = words.clone();
+			if (other instanceof ArrayContainer)
+			{
+				for (char value : ((ArrayContainer) other).values)
+					result[value >>> 6] &= ~(1L << value);
+			}
+			else
+			{
+				long[] others = ((BitmapContainer) other).words;
+				for (int i = 0; i < 1024; i++)
+					result[i] &= ~others[i];
+			}
+			int cardinality = 0;
+			for (long w : result)
+				cardinality += Long.bitCount(w);
+			return normalize(result, cardinality);
+		}
+
+		long sizeInBytes()
+		{
+			return 16 + words.length * 8L;
+		}
+	}
+}
@@ -0,0 +1,180 @@
+import java.util.*;
+
+/**
+ * A read-only WebIndex presenting several index segments as one.  Each
+ * segment is an immutable index file; documents that were deleted or
+ * re-indexed into a newer segment are hidden by the segment's tombstones.
+ *
+ * Document ids are assigned segment by segment: the documents of the
+ * first segment come first, then those of the second, and so on.  Postings
+ * are fanned out to every segment and joined when a word is looked up, and
+ * the joined postings of recently used words are cached.
+ *
+ * Every segment must have been built with the same analyzer.
+ */
+public class SegmentedWebIndex extends WebIndex {
+	private static final long serialVersionUID = 1L;
+	private WebIndex[] segments;
+	/**
+	 * The id of the first document of each segment.
+	 */
+	private int[] bases;
+	/**
+	 * The tombstones of each segment, by id within the segment.
+	 */
+	private BitSet[] deleted;
+	private int docCount;
+	/**
+	 * Recently joined postings, by word.
+	 */
+	private transient LruCache<String, PostingsList> joined;
+	/**
+	 * The live documents as a bitmap, built on first use.
+	 */
+	private transient volatile RoaringDocSet liveBitmap;
+
+	/**
+	 * @param segments The segments, oldest first.
+	 * @param deleted The tombstones of each segment.
+	 */
+	public SegmentedWebIndex(WebIndex[] segments, BitSet[] deleted)
+	{
+		this.segments = segments;
+		this.deleted = deleted;
+		bases = new int[segments.length];
+		docCount = 0;
+		for (int i = 0; i < segments.length; i++)
+		{
+			bases[i] = docCount;
+			docCount += segments[i].getDocumentCount();
+		}
+		joined = newPostingsCache();
+	}
+
+	/**
+	 * Returns the segment holding a document.
+	 */
+	private int segmentOf(int doc)
+	{
+		int i = Arrays.binarySearch(bases, doc);
+		if (i < 0)
+			return -i - 2;
+		// Skip empty segments sharing the same base.
+		while (i + 1 < bases.length && bases[i + 1] == doc)
+			i++;
+		return i;
+	}
+
+	public int getDocumentCount()
+	{
+		return docCount;
+	}
+
+	public Analyzer getAnalyzer()
+	{
+		return segments.length == 0 ? Analyzer.STANDARD : segments[0].getAnalyzer();
+	}
+
+	public void setAnalyzer(Analyzer analyzer)
+	{
+		throw new UnsupportedOperationException("SegmentedWebIndex is read-only");
+	}
+
+	public String getUrl(int doc)
+	{
+		int i = segmentOf(doc);
+		return segments[i].getUrl(doc - bases[i]);
+	}
+
+	public int getWordCount(int doc)
+	{
+		int i = segmentOf(doc);
+		return segments[i].getWordCount(doc - bases[i]);
+	}
+
+	/**
+	 * Returns the id of the live document with the given URL.
+	 */
+	public int getDocumentId(String file)
+	{
+		for (int i = segments.length - 1; i >= 0; i--)
+		{
+			int doc = segments[i].getDocumentId(file);
+			if (doc >= 0 && !deleted[i].get(doc))
+				return bases[i] + doc;
+		}
+		return -1;
+	}
+
+	public BitSet getLiveDocs()
+	{
+		BitSet live = new BitSet(docCount);
+		live.set(0, docCount);
+		for (int i = 0; i < segments.length; i++)
+			for (int doc = deleted[i].nextSetBit(0); doc >= 0; doc = deleted[i].nextSetBit(doc + 1))
+				live.clear(bases[i] + doc);
+		return live;
+	}
+
+	public RoaringDocSet getLiveBitmap()
+	{
+		RoaringDocSet live = liveBitmap;
+		if (live == null)
+			liveBitmap = live = RoaringDocSet.of(getLiveDocs());
+		return live;
+	}
+
+	public Collection<String> getWords()
+	{
+		TreeSet<String> words = new TreeSet<String>();
+		for (WebIndex segment : segments)
+			words.addAll(segment.getWords());
+		return words;
+	}
+
+	/**
+	 * Returns the postings of a word across all segments, leaving out
+	 * deleted documents.
+	 */
+	public PostingsList getPostings(String word)
+	{
+		PostingsList postings = joined.get(word);
+		if (postings != null)
+			return postings;
+		for (int i = 0; i < segments.length; i++)
+		{
+			PostingsList part = segments[i].getPostings(word);
+			if (part == null)
+				continue;
+			if (postings == null)
+				postings = new PostingsList();
+			for (int j = 0; j < part.size(); j++)
+				if (!deleted[i].get(part.getDoc(j)))
+					postings.append(bases[i] + part.getDoc(j), part.getPositions(j), part.getFrequency(j));
+		}
+		if (postings == null)
+			return null;
+		joined.put(word, postings);
+		return postings;
+	}
+
+	public void addPhraseToFile(String file, char[] phrase)
+	{
+		throw new UnsupportedOperationException("SegmentedWebIndex is read-only");
+	}
+
+	public void addDocument(String file, DocumentBuffer words)
+	{
+		throw new UnsupportedOperationException("SegmentedWebIndex is read-only");
+	}
+
+	public void putDocument(String file, int wordCount)
+	{
+		throw new UnsupportedOperationException("SegmentedWebIndex is read-only");
+	}
+
+	public void putPostings(String word, PostingsList postings)
+	{
+		throw new UnsupportedOperationException("SegmentedWebIndex is read-only");
+	}
+}
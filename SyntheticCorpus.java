@@ -0,0 +1,213 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * A made-up web site, generated from a seed, for benchmarks and test
+ * crawls.  Its words come from an invented vocabulary whose frequencies
+ * follow Zipf's law, as the words of real text do, with the most frequent
+ * words the shortest.
+ * The pages are grouped DIRECTORY_PAGES to a directory and link to pages
+ * anywhere in the site.
+ *
+ * Only java.util.Random, whose sequence is fixed by its specification, and
+ * StrictMath are used, so a seed gives the same site on every JVM.  Each
+ * page is generated from its own seed, so any page can be generated alone.
+ *
+ * Usage: java SyntheticCorpus directory [pages] [seed]
+ */
+public class SyntheticCorpus {
+	public static final int DEFAULT_PAGES = 1000;
+	public static final long DEFAULT_SEED = 42;
+	/**
+	 * The number of distinct words in the vocabulary.
+	 */
+	public static final int VOCABULARY = 20000;
+	/**
+	 * The exponent of the Zipf distribution: the word of rank r is used in
+	 * proportion to 1 / r^ZIPF_EXPONENT.
+	 */
+	public static final double ZIPF_EXPONENT = 1.0;
+	/**
+	 * The number of pages in each directory.
+	 */
+	public static final int DIRECTORY_PAGES = 50;
+
+	private static final String[] SYLLABLES = {
+		"ba", "be", "bi", "bo", "da", "de", "di", "do", "fa", "fe", "ka", "ki",
+		"ko", "la", "le", "li", "lo", "lu", "ma", "me", "mi", "mo", "na", "ne",
+		"ni", "no", "pa", "pe", "po", "ra", "re", "ri", "ro", "ru", "sa", "se",
+		"si", "so", "ta", "te", "ti", "to", "tu", "va", "ve", "vi", "za", "zo",
+		"an", "en", "in", "on", "ar", "er", "or", "al", "el", "il", "st", "th"
+	};
+
+	private int pages;
+	private long seed;
+	/**
+	 * The words of the vocabulary, most frequent first.
+	 */
+	private String[] words;
+	/**
+	 * The sum of the weights of the words up to and including each rank.
+	 */
+	private double[] cumulative;
+
+	public SyntheticCorpus(int pages, long seed)
+	{
+		this.pages = pages;
+		this.seed = seed;
+		Random random = new Random(seed);
+		LinkedHashSet<String> vocabulary = new LinkedHashSet<String>();
+		StringBuffer word = new StringBuffer();
+		while (vocabulary.size() < VOCABULARY)
+		{
+			word.setLength(0);
+			int syllables = 1 + random.nextInt(4);
+			for (int i = 0; i < syllables; i++)
+				word.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+			vocabulary.add(word.toString());
+		}
+		words = vocabulary.toArray(new String[0]);
+		// A stable sort, so words of the same length keep the order drawn.
+		Arrays.sort(words, new Comparator<String>() {
+			public int compare(String a, String b) {
+				return a.length() - b.length();
+			}
+		});
+		cumulative = new double[VOCABULARY];
+		double sum = 0;
+		for (int rank = 0; rank < VOCABULARY; rank++)
+		{
+			sum += 1 / StrictMath.pow(rank + 1, ZIPF_EXPONENT);
+			cumulative[rank] = sum;
+		}
+	}
+
+	public int getPageCount()
+	{
+		return pages;
+	}
+
+	/**
+	 * Returns the path of a page, relative to the top of the site.
+	 */
+	public String getPath(int page)
+	{
+		return "d" + page / DIRECTORY_PAGES + "/p" + page + ".html";
+	}
+
+	/**
+	 * Returns the word of a rank, 0 being the most frequent.
+	 */
+	public String getWord(int rank)
+	{
+		return words[rank];
+	}
+
+	/**
+	 * Draws the rank of a word from the Zipf distribution.
+	 */
+	public int nextRank(Random random)
+	{
+		double target = random.nextDouble() * cumulative[VOCABULARY - 1];
+		int i = Arrays.binarySearch(cumulative, target);
+		return i >= 0 ? i : Math.min(-i - 1, VOCABULARY - 1);
+	}
+
+	/**
+	 * Draws a word from the Zipf distribution.
+	 */
+	public String nextWord(Random random)
+	{
+		return words[nextRank(random)];
+	}
+
+	/**
+	 * Generates the HTML of a page: a title, then paragraphs of sentences
+	 * with a link every few dozen words.
+	 */
+	public String generatePage(int page)
+	{
+		Random random = new Random(seed ^ (page + 1) * 0x9E3779B97F4A7C15L);
+		StringBuffer html = new StringBuffer(8192);
+		String title = sentence(random, 2 + random.nextInt(5), false);
+		html.append("<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"utf-8\">\n<title>")
+			.append(title).append("</title>\n</head>\n<body>\n<h1>").append(title).append("</h1>\n");
+		int paragraphs = 2 + random.nextInt(7);
+		for (int p = 0; p < paragraphs; p++)
+		{
+			html.append("<p>");
+			int sentences = 2 + random.nextInt(6);
+			for (int s = 0; s < sentences; s++)
+			{
+				if (s > 0)
+					html.append(' ');
+				if (random.nextInt(4) == 0)
+				{
+					int target = random.nextInt(pages);
+					html.append("<a href=\"../").append(getPath(target)).append("\">")
+						.append(sentence(random, 1 + random.nextInt(3), false)).append("</a> ");
+				}
+				html.append(sentence(random, 5 + random.nextInt(20), true));
+			}
+			html.append("</p>\n");
+		}
+		html.append("</body>\n</html>\n");
+		return html.toString();
+	}
+
+	private String sentence(Random random, int length, boolean punctuated)
+	{
+		StringBuffer text = new StringBuffer();
+		for (int i = 0; i < length; i++)
+		{
+			if (i > 0)
+				text.append(random.nextInt(12) == 0 && punctuated ? ", " : " ");
+			String word = nextWord(random);
+			if (i == 0 && punctuated)
+				word = Character.toUpperCase(word.charAt(0)) + word.substring(1);
+			text.append(word);
+		}
+		if (punctuated)
+			text.append(random.nextInt(10) == 0 ? " &amp; more." : ".");
+		return text.toString();
+	}
+
+	/**
+	 * Writes every page of the site under a directory, along with an
+	 * index.html linking to the first page of each directory.
+	 */
+	public void write(File dir) throws IOException
+	{
+		StringBuffer index = new StringBuffer("<html>\n<body>\n");
+		for (int page = 0; page < pages; page++)
+		{
+			File file = new File(dir, getPath(page));
+			file.getParentFile().mkdirs();
+			Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+			try {
+				out.write(generatePage(page));
+			} finally {
+				out.close();
+			}
+			if (page % DIRECTORY_PAGES == 0)
+				index.append("<a href=\"").append(getPath(page)).append("\">").append(getPath(page)).append("</a>\n");
+		}
+		index.append("</body>\n</html>\n");
+		Writer out = new OutputStreamWriter(new FileOutputStream(new File(dir, "index.html")), "UTF-8");
+		try {
+			out.write(index.toString());
+		} finally {
+			out.close();
+		}
+	}
+
+	public static void main(String... args) throws IOException {
+		if (args.length == 0) {
+			System.out.println("Usage: java SyntheticCorpus directory [pages] [seed]");
+			System.exit(0);
+		}
+		int pages = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PAGES;
+		long seed = args.length > 2 ? Long.parseLong(args[2]) : DEFAULT_SEED;
+		new SyntheticCorpus(pages, seed).write(new File(args[0]));
+	}
+}
@@ -0,0 +1,135 @@
+/**
+ * Interns terms looked up by a slice of a char[], so a term seen before is
+ * found without allocating a String for it.  Every thread tokenizing into
+ * the same index shares one dictionary: lookups of known terms take no
+ * lock, and only a term seen for the first time locks the dictionary to be
+ * added.
+ *
+ * The table is open addressed and hashed like String.hashCode(), so the
+ * interned Strings have their hash codes cached when they are used as keys
+ * elsewhere.
+ */
+public class TermDictionary {
+	/**
+	 * The interned terms.  Slots are only ever filled, never emptied, and
+	 * a full table is replaced by a larger copy, so a reader needs no lock:
+	 * the worst a concurrent insert can do is make it miss a term and take
+	 * the locked path.
+	 */
+	private volatile String[] table;
+	private int size;
+
+	public TermDictionary()
+	{
+		table = new String[1024];
+		size = 0;
+	}
+
+	/**
+	 * Returns the term spelled by the chars, adding it if it is new.
+	 * @param chars The chars of the term.
+	 * @param offset The first char of the term.
+	 * @param length The number of chars in the term.
+	 */
+	public String intern(char[] chars, int offset, int length)
+	{
+		int hash = hash(chars, offset, length);
+		String term = find(table, hash, chars, offset, length);
+		if (term != null)
+			return term;
+		synchronized (this) {
+			String[] t = table;
+			term = find(t, hash, chars, offset, length);
+			if (term != null)
+				return term;
+			term = new String(chars, offset, length);
+			if (2 * (size + 1) > t.length)
+			{
+				t = grow(t);
+				insert(t, term);
+				table = t;
+			}
+			else
+				insert(t, term);
+			size++;
+			return term;
+		}
+	}
+
+	/**
+	 * Returns the term spelled by the chars, or null if it was never
+	 * interned.
+	 */
+	public String get(char[] chars, int offset, int length)
+	{
+		return find(table, hash(chars, offset, length), chars, offset, length);
+	}
+
+	/**
+	 * Returns the number of terms interned.
+	 */
+	public synchronized int size()
+	{
+		return size;
+	}
+
+	private static int hash(char[] chars, int offset, int length)
+	{
+		int h = 0;
+		for (int i = offset; i < offset + length; i++)
+			h = 31 * h + chars[i];
+		return h;
+	}
+
+	/**
+	 * Returns the first slot to probe for a hash.  String hashes of similar
+	 * words are close together, which linear probing turns into long runs,
+	 * so the hash is scrambled first.
+	 */
+	private static int slot(int hash, int mask)
+	{
+		int h = hash * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	private static String find(String[] t, int hash, char[] chars, int offset, int length)
+	{
+		int mask = t.length - 1;
+		for (int i = slot(hash, mask); ; i = (i + 1) & mask)
+		{
+			String term = t[i];
+			if (term == null)
+				return null;
+			if (term.hashCode() == hash && equals(term, chars, offset, length))
+				return term;
+		}
+	}
+
+	private static boolean equals(String term, char[] chars, int offset, int length)
+	{
+		if (term.length() != length)
+			return false;
+		for (int i = 0; i < length; i++)
+			if (term.charAt(i) != chars[offset + i])
+				return false;
+		return true;
+	}
+
+	private static void insert(String[] t, String term)
+	{
+		int mask = t.length - 1;
+		int i = slot(term.hashCode(), mask);
+		while (t[i] != null)
+			i = (i + 1) & mask;
+		t[i] = term;
+	}
+
+	private static String[] grow(String[] t)
+	{
+		String[] bigger = new String[t.length * 2];
+		for (String term : t)
+			if (term != null)
+				insert(bigger, term);
+		return bigger;
+	}
+}
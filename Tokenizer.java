@@ -0,0 +1,88 @@
+import java.util.*;
+
+/**
+ * Splits text into terms, working on the char[] the parser hands over.
+ * Each word is lower-cased and stemmed into a buffer the tokenizer reuses
+ * and looked up in a TermDictionary, so a word seen before costs no
+ * allocation at all.  What makes a word, and which words are dropped or
+ * stemmed, is decided by an Analyzer.
+ *
+ * A tokenizer keeps state between calls and must only be used by one
+ * thread at a time; create one per document or per worker, sharing the
+ * dictionary.
+ *
+ * Usage:
+ * <pre>
+ *	tokenizer.reset(text, 0, text.length);
+ *	for (String word = tokenizer.next(); word != null; word = tokenizer.next())
+ *		...
+ * </pre>
+ */
+public class Tokenizer {
+	private TermDictionary dictionary;
+	private Analyzer analyzer;
+	private char[] buffer;
+	private char[] text;
+	private int position;
+	private int end;
+
+	/**
+	 * Creates a tokenizer applying Analyzer.STANDARD.
+	 * @param dictionary Interns the words found.
+	 */
+	public Tokenizer(TermDictionary dictionary)
+	{
+		this(dictionary, Analyzer.STANDARD);
+	}
+
+	/**
+	 * @param dictionary Interns the terms found.
+	 * @param analyzer Decides how text is split into terms.
+	 */
+	public Tokenizer(TermDictionary dictionary, Analyzer analyzer)
+	{
+		this.dictionary = dictionary;
+		this.analyzer = analyzer;
+		buffer = new char[32];
+	}
+
+	/**
+	 * Starts tokenizing a slice of text.  The chars are read as next() is
+	 * called and must not change until then.
+	 */
+	public void reset(char[] text, int offset, int length)
+	{
+		char[] normalized = analyzer.normalize(text, offset, length);
+		if (normalized != null)
+		{
+			text = normalized;
+			offset = 0;
+			length = normalized.length;
+		}
+		this.text = text;
+		position = offset;
+		end = offset + length;
+	}
+
+	/**
+	 * Returns the next term of the text, or null once there are none left.
+	 */
+	public String next()
+	{
+		while (position < end)
+		{
+			while (position < end && !analyzer.isWordCharacter(text[position]))
+				position++;
+			int length = 0;
+			while (position < end && analyzer.isWordCharacter(text[position]))
+			{
+				if (length == buffer.length)
+					buffer = Arrays.copyOf(buffer, length * 2);
+				buffer[length++] = Character.toLowerCase(text[position++]);
+			}
+			if (length > 0 && !analyzer.isStopword(buffer, 0, length))
+				return dictionary.intern(buffer, 0, analyzer.stem(buffer, length));
+		}
+		return null;
+	}
+}
@@ -0,0 +1,215 @@
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Puts URLs in a canonical form, so that the different ways of writing the
+ * same page are crawled and indexed once.  Following RFC 3986, section 6:
+ * <ul>
+ * <li>the fragment is dropped, since it names a part of the same page;</li>
+ * <li>the scheme and host are lower-cased, and a port that is the
+ * default for the scheme is dropped;</li>
+ * <li>percent-encoded unreserved characters are decoded, the hex digits of
+ * other escapes are upper-cased, and characters that may not appear in a
+ * URL, such as spaces and non-ASCII characters, are encoded as UTF-8;</li>
+ * <li>"." and ".." segments are removed from the path, and an empty path
+ * after a host becomes "/".</li>
+ * </ul>
+ * A file: URL with no host, or with host localhost, is written as
+ * java.net.URL writes it, "file:/path".  Relative URLs are returned with
+ * only their fragment dropped, since they can not be resolved here.
+ */
+public class UrlCanonicalizer {
+	private static final String HEX = "0123456789ABCDEF";
+
+	/**
+	 * Returns the canonical form of a URL.
+	 */
+	public static String canonicalize(String url)
+	{
+		int fragment = url.indexOf('#');
+		if (fragment >= 0)
+			url = url.substring(0, fragment);
+		int colon = schemeEnd(url);
+		if (colon < 0)
+			return url;
+		String scheme = url.substring(0, colon).toLowerCase(Locale.ROOT);
+		String rest = url.substring(colon + 1);
+		String authority = null;
+		if (rest.startsWith("//"))
+		{
+			int end = 2;
+			while (end < rest.length() && rest.charAt(end) != '/' && rest.charAt(end) != '?')
+				end++;
+			authority = canonicalAuthority(scheme, rest.substring(2, end));
+			rest = rest.substring(end);
+		}
+		int query = rest.indexOf('?');
+		String path = removeDotSegments(normalizeEscapes(query < 0 ? rest : rest.substring(0, query)));
+
+		StringBuffer canonical = new StringBuffer(url.length() + 8);
+		canonical.append(scheme).append(':');
+		if (authority != null && !(scheme.equals("file") && (authority.length() == 0 || authority.equals("localhost"))))
+		{
+			canonical.append("//").append(authority);
+			if (path.length() == 0 && authority.length() > 0)
+				path = "/";
+		}
+		canonical.append(path);
+		if (query >= 0)
+			canonical.append('?').append(normalizeEscapes(rest.substring(query + 1)));
+		return canonical.toString();
+	}
+
+	/**
+	 * Returns the index of the colon ending the scheme of a URL, or -1 if
+	 * it has none.
+	 */
+	private static int schemeEnd(String url)
+	{
+		for (int i = 0; i < url.length(); i++)
+		{
+			char c = url.charAt(i);
+			if (c == ':')
+				return i > 0 ? i : -1;
+			boolean letter = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+			if (!letter && (i == 0 || !((c >= '0' && c <= '9') || c == '+' || c == '-' || c == '.')))
+				return -1;
+		}
+		return -1;
+	}
+
+	/**
+	 * Lower-cases the host of an authority and drops its port if that is
+	 * the default port of the scheme.
+	 */
+	private static String canonicalAuthority(String scheme, String authority)
+	{
+		int at = authority.lastIndexOf('@');
+		String userInfo = normalizeEscapes(authority.substring(0, at + 1));
+		String host = authority.substring(at + 1);
+		String port = null;
+		int colon = host.lastIndexOf(':');
+		if (colon >= 0 && colon > host.lastIndexOf(']'))
+		{
+			port = host.substring(colon + 1);
+			host = host.substring(0, colon);
+		}
+		host = host.toLowerCase(Locale.ROOT);
+		if (port == null || port.length() == 0 || port.equals(defaultPort(scheme)))
+			return userInfo + host;
+		return userInfo + host + ":" + port;
+	}
+
+	private static String defaultPort(String scheme)
+	{
+		if (scheme.equals("http"))
+			return "80";
+		if (scheme.equals("https"))
+			return "443";
+		if (scheme.equals("ftp"))
+			return "21";
+		return null;
+	}
+
+	/**
+	 * Decodes escaped unreserved characters, upper-cases the hex digits of
+	 * other escapes, and escapes characters a URL may not hold.
+	 */
+	static String normalizeEscapes(String s)
+	{
+		int i = 0;
+		while (i < s.length() && s.charAt(i) != '%' && isAllowed(s.charAt(i)))
+			i++;
+		if (i == s.length())
+			return s;
+		StringBuffer out = new StringBuffer(s.length() + 16);
+		out.append(s, 0, i);
+		for (; i < s.length(); i++)
+		{
+			char c = s.charAt(i);
+			if (c == '%')
+			{
+				int high = i + 2 < s.length() ? Character.digit(s.charAt(i + 1), 16) : -1;
+				int low = high >= 0 ? Character.digit(s.charAt(i + 2), 16) : -1;
+				if (low < 0)
+				{
+					// A stray '%' stands for itself.
+					out.append("%25");
+					continue;
+				}
+				int b = high * 16 + low;
+				if (isUnreserved(b))
+					out.append((char) b);
+				else
+					escape(out, b);
+				i += 2;
+			}
+			else if (isAllowed(c))
+				out.append(c);
+			else
+			{
+				int end = Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1)) ? i + 2 : i + 1;
+				for (byte b : s.substring(i, end).getBytes(StandardCharsets.UTF_8))
+					escape(out, b & 0xFF);
+				i = end - 1;
+			}
+		}
+		return out.toString();
+	}
+
+	private static void escape(StringBuffer out, int b)
+	{
+		out.append('%').append(HEX.charAt(b >> 4)).append(HEX.charAt(b & 15));
+	}
+
+	/**
+	 * Returns whether a char is unreserved, and so never needs escaping.
+	 */
+	private static boolean isUnreserved(int c)
+	{
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+				|| c == '-' || c == '.' || c == '_' || c == '~';
+	}
+
+	/**
+	 * Returns whether a char may appear in a URL unescaped.
+	 */
+	private static boolean isAllowed(char c)
+	{
+		return c > ' ' && c < 0x7F && "\"<>\\^`{|}".indexOf(c) < 0;
+	}
+
+	/**
+	 * Removes the "." and ".." segments of an absolute path, as in RFC 3986,
+	 * section 5.2.4.  A ".." at the root stays at the root.
+	 */
+	static String removeDotSegments(String path)
+	{
+		if (!path.startsWith("/") || !(path.contains("/.")))
+			return path;
+		String[] segments = path.substring(1).split("/", -1);
+		ArrayList<String> kept = new ArrayList<String>(segments.length);
+		for (int i = 0; i < segments.length; i++)
+		{
+			boolean last = i == segments.length - 1;
+			if (segments[i].equals("."))
+			{
+				if (last)
+					kept.add("");
+			}
+			else if (segments[i].equals(".."))
+			{
+				if (!kept.isEmpty())
+					kept.remove(kept.size() - 1);
+				if (last)
+					kept.add("");
+			}
+			else
+				kept.add(segments[i]);
+		}
+		StringBuffer out = new StringBuffer(path.length());
+		for (String segment : kept)
+			out.append('/').append(segment);
+		return out.length() == 0 ? "/" : out.toString();
+	}
+}
@@ -0,0 +1,24 @@
+/**
+ * The order in which a crawl frontier hands out the URLs waiting to be
+ * parsed.  A queue need not be thread-safe; CrawlFrontier only calls it
+ * while holding its own lock.
+ */
+public interface UrlQueue {
+	/**
+	 * Adds a URL to the queue.
+	 * @return true if the queue holds one more URL, false if the URL was
+	 * merged into an entry for the same URL already queued
+	 */
+	boolean add(QueuedUrl url);
+
+	/**
+	 * Removes the next URL.
+	 * @return the next URL, or null if the queue is empty
+	 */
+	QueuedUrl poll();
+
+	/**
+	 * Returns the number of URLs in the queue.
+	 */
+	int size();
+}
@@ -0,0 +1,73 @@
+import java.io.*;
+import java.nio.*;
+
+/**
+ * Variable-byte encoding of non-negative integers: seven bits per byte,
+ * least significant group first, with the high bit set on every byte but
+ * the last.  Small numbers, such as the gaps between sorted document ids
+ * or positions, take a single byte.
+ */
+public class VarInt {
+	/**
+	 * Encodes value into buf at offset.
+	 * @return the offset just past the encoded value
+	 */
+	public static int write(byte[] buf, int offset, int value)
+	{
+		while ((value & ~0x7F) != 0)
+		{
+			buf[offset++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buf[offset++] = (byte) value;
+		return offset;
+	}
+
+	/**
+	 * Returns the number of bytes write() uses to encode value.
+	 */
+	public static int length(int value)
+	{
+		int length = 1;
+		while ((value & ~0x7F) != 0)
+		{
+			length++;
+			value >>>= 7;
+		}
+		return length;
+	}
+
+	/**
+	 * Reads a value from a stream.
+	 */
+	public static int read(InputStream in) throws IOException
+	{
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7)
+		{
+			int b = in.read();
+			if (b < 0)
+				throw new EOFException();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new IOException("Malformed variable-byte integer");
+	}
+
+	/**
+	 * Reads a value from a buffer, advancing its position.
+	 */
+	public static int read(ByteBuffer in)
+	{
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7)
+		{
+			int b = in.get();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new IllegalArgumentException("Malformed variable-byte integer");
+	}
+}
@@ -0,0 +1,34 @@
+import java.util.concurrent.*;
+
+/**
+ * Access to virtual threads on runtimes that have them.  The project still
+ * builds for older runtimes, so the virtual thread executor is looked up
+ * reflectively; without it a cached pool of platform threads is used.
+ */
+public class VirtualThreads {
+	/**
+	 * Returns true if this runtime supports virtual threads.
+	 */
+	public static boolean isSupported()
+	{
+		try {
+			Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Returns an executor that starts a new virtual thread for each task, or
+	 * a cached thread pool if virtual threads are not supported.
+	 */
+	public static ExecutorService newExecutor()
+	{
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool();
+		}
+	}
+}
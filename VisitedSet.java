@@ -0,0 +1,209 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * The URLs a crawl has reached, kept as 64-bit fingerprints in an open
+ * addressed table of longs rather than as Strings in a HashSet, which
+ * takes 12 to 24 bytes per URL, with the filter below, instead of well
+ * over 100.  Two URLs share a
+ * fingerprint with a probability of about 2^-64, so even a crawl of
+ * millions of pages is unlikely to skip a single page because of one.
+ *
+ * A Bloom filter with 8 bits for every slot of the table sits in front of
+ * it.  Looking up a URL that was never added, the usual case for the links
+ * found on a page, only reads the filter and takes no lock; only URLs the
+ * filter may hold are looked up in the table.
+ *
+ * A set may be backed by an append-only log.  The fingerprints added since
+ * the last call to checkpoint() are appended to the log then, and a set
+ * opened on a log reads back every fingerprint checkpointed so far.
+ *
+ * A set may be shared between threads.
+ */
+public class VisitedSet {
+	private long[] table;
+	private int size;
+	/**
+	 * The filter in front of the table, replaced by a larger one whenever
+	 * the table grows.
+	 */
+	private volatile BloomFilter filter;
+	/**
+	 * The log, or null if the set is only kept in memory.
+	 */
+	private File log;
+	/**
+	 * The fingerprints added since the last checkpoint.
+	 */
+	private long[] unsaved;
+	private int unsavedCount;
+
+	/**
+	 * Creates an empty set kept only in memory.
+	 */
+	public VisitedSet()
+	{
+		table = new long[1024];
+		size = 0;
+		filter = new BloomFilter(table.length * 8);
+	}
+
+	/**
+	 * Opens a set backed by a log, reading the fingerprints in the first
+	 * length bytes of the log.  Anything after them was written by a
+	 * checkpoint that did not finish and is discarded.
+	 * @param log The log, which need not exist if length is 0.
+	 * @param length The length of the log at the last finished checkpoint.
+	 */
+	public VisitedSet(File log, long length) throws IOException
+	{
+		this();
+		this.log = log;
+		unsaved = new long[1024];
+		if (!log.exists())
+		{
+			if (length > 0)
+				throw new IOException(log + " is missing");
+			return;
+		}
+		RandomAccessFile file = new RandomAccessFile(log, "rw");
+		try {
+			if (file.length() < length)
+				throw new IOException(log + " is shorter than its last checkpoint");
+			file.setLength(length);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file.getFD()), 1 << 16));
+			for (long i = 0; i < length / 8; i++)
+				insert(in.readLong());
+		} finally {
+			file.close();
+		}
+	}
+
+	/**
+	 * Returns the fingerprint of a URL: a 64-bit FNV-1a hash of its chars,
+	 * mixed so that every bit depends on every char.  Never 0, which marks
+	 * an empty slot.
+	 */
+	public static long fingerprint(String url)
+	{
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < url.length(); i++)
+			h = (h ^ url.charAt(i)) * 0x100000001b3L;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h == 0 ? 1 : h;
+	}
+
+	/**
+	 * Adds a URL.
+	 * @return true if the URL was not in the set
+	 */
+	public synchronized boolean add(String url)
+	{
+		long f = fingerprint(url);
+		if (!insert(f))
+			return false;
+		if (log != null)
+		{
+			if (unsavedCount == unsaved.length)
+				unsaved = Arrays.copyOf(unsaved, unsavedCount * 2);
+			unsaved[unsavedCount++] = f;
+		}
+		return true;
+	}
+
+	public boolean contains(String url)
+	{
+		long f = fingerprint(url);
+		BloomFilter seen = filter;
+		// A URL added after the table grew may only be in the new filter.
+		while (!seen.mightContain(f))
+		{
+			if (seen == filter)
+				return false;
+			seen = filter;
+		}
+		return lookup(f);
+	}
+
+	private synchronized boolean lookup(long f)
+	{
+		int mask = table.length - 1;
+		for (int i = (int) f & mask; table[i] != 0; i = (i + 1) & mask)
+			if (table[i] == f)
+				return true;
+		return false;
+	}
+
+	public synchronized int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Returns the memory used by the table and its filter, in bytes.
+	 */
+	public synchronized long sizeInBytes()
+	{
+		return 8L * table.length + filter.sizeInBytes();
+	}
+
+	private boolean insert(long f)
+	{
+		int mask = table.length - 1;
+		int i = (int) f & mask;
+		for (; table[i] != 0; i = (i + 1) & mask)
+			if (table[i] == f)
+				return false;
+		table[i] = f;
+		filter.add(f);
+		if (++size * 4 > table.length * 3)
+			grow();
+		return true;
+	}
+
+	private void grow()
+	{
+		long[] old = table;
+		table = new long[old.length * 2];
+		BloomFilter larger = new BloomFilter(table.length * 8);
+		int mask = table.length - 1;
+		for (long f : old)
+			if (f != 0)
+			{
+				int i = (int) f & mask;
+				while (table[i] != 0)
+					i = (i + 1) & mask;
+				table[i] = f;
+				larger.add(f);
+			}
+		filter = larger;
+	}
+
+	/**
+	 * Appends the fingerprints added since the last checkpoint to the log
+	 * and forces them to disk.
+	 * @return the length of the log, to be passed to the constructor when
+	 * the set is opened again
+	 */
+	public synchronized long checkpoint() throws IOException
+	{
+		FileOutputStream file = new FileOutputStream(log, true);
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16));
+			for (int i = 0; i < unsavedCount; i++)
+				out.writeLong(unsaved[i]);
+			out.flush();
+			file.getFD().sync();
+			unsavedCount = 0;
+			if (unsaved.length > 1 << 16)
+				unsaved = new long[1024];
+			return file.getChannel().size();
+		} finally {
+			file.close();
+		}
+	}
+}
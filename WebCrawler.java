@@ -1,24 +1,192 @@
-import io.github.pixee.security.HostValidator;
-import io.github.pixee.security.Urls;
 import java.io.*;
 import java.net.*;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 import javax.swing.text.*;
 import javax.swing.text.html.*;
 
 public class WebCrawler extends Crawler {
+	/**
+	 * The number of URLs the frontier of a parallel crawl holds before
+	 * workers start parsing their own discoveries.
+	 */
+	public static final int FRONTIER_CAPACITY = 10000;
+
+	/**
+	 * The number of documents a virtual-thread crawl keeps open at once
+	 * unless told otherwise.
+	 */
+	public static final int DEFAULT_OPEN_STREAMS = 256;
+
+	/**
+	 * The seconds between checkpoints of a resumed crawl that is not told
+	 * otherwise.
+	 */
+	public static final int DEFAULT_CHECKPOINT_INTERVAL = 300;
+
 	public static void main(String... args) throws Exception {
-		if (args.length == 0) {
+		List remaining = new LinkedList();
+		String mode = null;
+		int workers = Runtime.getRuntime().availableProcessors();
+		int streams = DEFAULT_OPEN_STREAMS;
+		String segments = null;
+		boolean follow = true;
+		boolean recrawl = false;
+		Analyzer analyzer = Analyzer.STANDARD;
+		String parser = "swing";
+		int checkpoint = 0;
+		boolean resume = false;
+		boolean dedupe = false;
+		CrawlScheduler scheduler = null;
+		String order = CrawlScheduler.BFS;
+		int maxDepth = -1;
+		int maxPages = -1;
+		int hostQuota = -1;
+		int directoryQuota = -1;
+		int timeBudget = -1;
+		for (int i = 0; i < args.length; i++)
+		{
+			if (args[i].equals("-mode") && i + 1 < args.length)
+				mode = args[++i];
+			else if (args[i].equals("-threads") && i + 1 < args.length)
+			{
+				workers = Integer.parseInt(args[++i]);
+				if (mode == null)
+					mode = "parallel";
+			}
+			else if (args[i].equals("-streams") && i + 1 < args.length)
+				streams = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-segments") && i + 1 < args.length)
+				segments = args[++i];
+			else if (args[i].equals("-nofollow"))
+				follow = false;
+			else if (args[i].equals("-recrawl"))
+				recrawl = true;
+			else if (args[i].equals("-analyzer") && i + 1 < args.length)
+				analyzer = Analyzer.parse(args[++i]);
+			else if (args[i].equals("-parser") && i + 1 < args.length)
+				parser = args[++i];
+			else if (args[i].equals("-checkpoint") && i + 1 < args.length)
+				checkpoint = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-resume"))
+				resume = true;
+			else if (args[i].equals("-dedupe"))
+				dedupe = true;
+			else if (args[i].equals("-order") && i + 1 < args.length)
+				order = args[++i];
+			else if (args[i].equals("-maxdepth") && i + 1 < args.length)
+				maxDepth = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-maxpages") && i + 1 < args.length)
+				maxPages = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-hostquota") && i + 1 < args.length)
+				hostQuota = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-dirquota") && i + 1 < args.length)
+				directoryQuota = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-time") && i + 1 < args.length)
+				timeBudget = Integer.parseInt(args[++i]);
+			else
+				remaining.add(args[i]);
+		}
+		if (remaining.isEmpty()) {
 			System.out.println("No URLs specified.");
 			System.exit(0);
 		}
+		if (mode == null)
+			mode = "serial";
+		if (recrawl && segments == null) {
+			System.out.println("-recrawl needs -segments, since unchanged pages stay in the existing segments.");
+			System.exit(1);
+		}
+		if ((checkpoint > 0 || resume) && segments == null) {
+			System.out.println("-checkpoint and -resume need -segments, where the pages indexed at each checkpoint are written.");
+			System.exit(1);
+		}
+		if (resume && checkpoint == 0)
+			checkpoint = DEFAULT_CHECKPOINT_INTERVAL;
+		if (!order.equals(CrawlScheduler.BFS) || maxDepth >= 0 || maxPages >= 0 || hostQuota >= 0
+				|| directoryQuota >= 0 || timeBudget >= 0) {
+			try {
+				scheduler = new CrawlScheduler(order);
+			} catch (IllegalArgumentException e) {
+				System.out.println(e.getMessage());
+				System.exit(1);
+			}
+			if (checkpoint > 0 && !order.equals(CrawlScheduler.BFS)) {
+				System.out.println("A crawl that checkpoints can only crawl in bfs order.");
+				System.exit(1);
+			}
+			if (maxDepth >= 0)
+				scheduler.setMaxDepth(maxDepth);
+			if (maxPages >= 0)
+				scheduler.setMaxPages(maxPages);
+			if (hostQuota >= 0)
+				scheduler.setHostQuota(hostQuota);
+			if (directoryQuota >= 0)
+				scheduler.setDirectoryQuota(directoryQuota);
+		}
+		String metadataFile = segments == null ? "index.db.meta" : new File(segments, "metadata").getPath();
 
-		List remaining = new LinkedList();
-		for (int i = 0; i < args.length; i++)
-			remaining.add(args[i]);
 		WebCrawler crawler = new WebCrawler();
-		crawler.crawl(remaining);
-		crawler.getWebIndex().save("index.db");
+		crawler.setFollowLinks(follow);
+		crawler.setParser(newParser(parser));
+		crawler.getWebIndex().setAnalyzer(analyzer);
+		if (segments != null)
+			crawler.setMetadata(CrawlMetadata.load(metadataFile), recrawl);
+		if (dedupe)
+			crawler.setDetectDuplicates(true);
+		IndexSegments index = segments == null ? null : new IndexSegments(segments);
+		CrawlState state = null;
+		if (checkpoint > 0) {
+			state = new CrawlState(new File(segments, "crawl"), resume);
+			if (state.isResumed())
+				System.out.println("Resuming with " + state.getFrontier().size() + " URLs queued and "
+						+ state.getVisited().size() + " reached");
+			crawler.setCheckpoints(state, index, metadataFile, checkpoint * 1000L);
+		}
+		if (scheduler != null) {
+			if (timeBudget >= 0)
+				scheduler.setTimeBudget(timeBudget * 1000L);
+			crawler.setScheduler(scheduler);
+		}
+		long start = System.nanoTime();
+		if (mode.equals("serial"))
+			crawler.crawl(remaining);
+		else if (mode.equals("parallel"))
+			crawler.crawl(remaining, workers);
+		else if (mode.equals("virtual"))
+			crawler.crawlVirtual(remaining, streams);
+		else {
+			System.out.println("Unknown crawl mode " + mode + "; expected serial, parallel or virtual.");
+			System.exit(1);
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.println("Crawled " + crawler.getPagesParsed() + " pages in " + seconds + " s ("
+				+ (int) (crawler.getPagesParsed() / seconds) + " pages/s, " + mode + " mode)");
+		if (recrawl)
+			System.out.println("Skipped " + crawler.getUrlsUnchanged().size() + " unchanged pages");
+		if (dedupe)
+			System.out.println("Recorded " + crawler.getDuplicatesFound() + " duplicate pages as aliases");
+		if (state != null && state.getFrontier().size() > 0) {
+			// A limit of the scheduler stopped the crawl with URLs still
+			// queued, so keep them for the crawl to go on from.
+			crawler.checkpoint();
+			index.close();
+			System.out.println(state.getFrontier().size() + " URLs left queued; crawl again with -resume to go on");
+			return;
+		}
+		if (segments == null)
+			crawler.getWebIndex().save("index.db");
+		else {
+			// Every URL reached and not unchanged was either re-indexed or has
+			// disappeared, so its older copies are replaced either way.
+			index.addSegment(crawler.getWebIndex(), crawler.getUrlsChanged());
+			index.close();
+		}
+		crawler.getMetadata().save(metadataFile);
+		if (state != null)
+			state.delete();
 	}
 
 	/**
@@ -26,134 +194,507 @@ public class WebCrawler extends Crawler {
 	 */
 	public void crawl(List remaining)
 	{
+		if (state != null || scheduler != null) {
+			// Checkpoints need the frontier to pause at, and the scheduler
+			// works through it, so crawl with it.
+			try {
+				crawl(remaining, 1);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return;
+		}
 		while (!remaining.isEmpty()) {
+			String url = remaining.remove(0).toString();
 			try {
-				remaining.addAll(parse(remaining.remove(0).toString()));
+				remaining.addAll(parse(url));
 			} catch (MalformedURLException e) {
 				System.out.println(e);
 			} catch (IOException e) {
 				System.out.println(e);
+			} catch (RuntimeException e) {
+				System.out.println(url + ": " + e);
 			}
 		}
 	}
 
-	private HashSet<String> urlsReached;
-	private WebIndex myIndex;
-	private String currentURL;
-	private URL currentContext;
-	private LinkedList urlsToParse;
-	public WebCrawler()
+	/**
+	 * Crawls the pages starting with remaining, parsing up to workers pages
+	 * at a time.  Each page's words are added to the index as a unit, so the
+	 * resulting index is the same as the one built by crawl(remaining).
+	 */
+	public void crawl(List remaining, int workers) throws InterruptedException
 	{
-		urlsReached = new HashSet<String>();
-		myIndex = new WebIndex();
+		final CrawlFrontier frontier = newFrontier();
+		final LinkedList<QueuedUrl> overflow = new LinkedList<QueuedUrl>();
+		for (Object url : remaining)
+			if (!frontier.add(url.toString(), 0))
+				overflow.add(new QueuedUrl(url.toString(), 0));
+		remaining.clear();
+
+		ScheduledExecutorService checkpoints = startCheckpoints(frontier);
+		ExecutorService pool = Executors.newFixedThreadPool(workers);
+		for (int i = 0; i < workers; i++)
+		{
+			final LinkedList<QueuedUrl> mine = new LinkedList<QueuedUrl>();
+			if (i == 0)
+				mine.addAll(overflow);
+			pool.execute(new Runnable() {
+				public void run() {
+					try {
+						crawlFrom(frontier, mine);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
+		}
+		pool.shutdown();
+		pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		stopCheckpoints(checkpoints);
 	}
 
 	/**
-	 * Called to indicate an HTML document should be parsed.  Parsing is performed
-	 * by calling super.parse(url), which drives the callback methods of this class.
-	 *
-	 * @param url	URL of the HTML document to parse
-	 * @return	a List of URLs (in String form) found in the document
+	 * Crawls the pages starting with remaining, parsing each page on its own
+	 * virtual thread.  At most maxOpen pages are parsed at once, which bounds
+	 * the number of open streams; while that many are in flight no further
+	 * URLs are taken from the frontier.
 	 */
-	public List parse(String url) throws IOException, MalformedURLException {
-		if (!url.startsWith("file"))
-			return new LinkedList(); // throw new RuntimeException("NO INTERNET CRAWLING!");
-		if (urlsReached.contains(url))
-			return new LinkedList();
-		urlsReached.add(url);
-		currentURL = url;
-		currentContext = Urls.create(url, Urls.HTTP_PROTOCOLS, HostValidator.DENY_COMMON_INFRASTRUCTURE_TARGETS);
-		urlsToParse = new LinkedList();
-		try { super.parse(url); }
-		catch (IOException e) { /* File does not exist; do nothing */ }
-		return urlsToParse;
+	public void crawlVirtual(List remaining, int maxOpen) throws InterruptedException
+	{
+		final CrawlFrontier frontier = newFrontier();
+		final LinkedList<QueuedUrl> overflow = new LinkedList<QueuedUrl>();
+		for (Object url : remaining)
+			if (!frontier.add(url.toString(), 0))
+				overflow.add(new QueuedUrl(url.toString(), 0));
+		remaining.clear();
+
+		ScheduledExecutorService checkpoints = startCheckpoints(frontier);
+		final Semaphore open = new Semaphore(maxOpen);
+		ExecutorService pool = VirtualThreads.newExecutor();
+		QueuedUrl url;
+		while ((url = overflow.isEmpty() ? frontier.take() : overflow.removeFirst()) != null)
+		{
+			open.acquire();
+			final QueuedUrl next = url;
+			pool.execute(new Runnable() {
+				public void run() {
+					try {
+						LinkedList<QueuedUrl> mine = new LinkedList<QueuedUrl>();
+						crawlPage(next, frontier, mine);
+						while (!mine.isEmpty())
+							crawlPage(mine.removeFirst(), frontier, mine);
+					} finally {
+						open.release();
+					}
+				}
+			});
+		}
+		pool.shutdown();
+		pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		stopCheckpoints(checkpoints);
 	}
 
 	/**
-	 * Returns the WebIndex object built by this Crawler.
-	 *
-	 * @return	a WebIndex object covering all pages crawled by this Crawler.
+	 * Returns the frontier of a parallel or virtual-thread crawl: the crawl
+	 * state's frontier if it checkpoints, else one ordered and limited by
+	 * the scheduler, if there is one.
 	 */
-	public WebIndex getWebIndex() {
-		return myIndex;
+	private CrawlFrontier newFrontier() {
+		if (scheduler != null)
+			scheduler.setReached(urlsReached);
+		if (state != null)
+			return new CrawlFrontier(state.getFrontier(), scheduler);
+		if (scheduler != null)
+			return new CrawlFrontier(scheduler.newQueue(), scheduler);
+		return new CrawlFrontier(FRONTIER_CAPACITY);
 	}
 
 	/**
-	 * Called when the opening/starting instance of a two-part tag is
-	 * encountered, such as <code>&lt;a&gt;</code> or
-	 * <code>&lt;b&gt;</code>.
+	 * Starts checkpointing a crawl every checkpoint interval, if
+	 * setCheckpoints() was called.
 	 *
-	 * @param t	the tag encountered
-	 * @param a	the set of attributes specified with the tag
+	 * @return the executor checkpointing, or null if there is none
 	 */
-	public void handleStartTag(HTML.Tag t, MutableAttributeSet a, int pos) {
-		if (t.equals(HTML.Tag.A))
-		{
-			Object attr = a.getAttribute(HTML.Attribute.HREF);
-			if (attr != null)
+	private ScheduledExecutorService startCheckpoints(final CrawlFrontier frontier) {
+		if (state == null)
+			return null;
+		ScheduledExecutorService checkpoints = Executors.newSingleThreadScheduledExecutor();
+		checkpoints.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
 				try {
-					if (attr instanceof String)
-						urlsToParse.add(Urls.create(currentContext, (String) attr, Urls.HTTP_PROTOCOLS, HostValidator.DENY_COMMON_INFRASTRUCTURE_TARGETS));
-					else if (attr instanceof URL)
-						urlsToParse.add(Urls.create(currentContext, ((URL) attr).toString(), Urls.HTTP_PROTOCOLS, HostValidator.DENY_COMMON_INFRASTRUCTURE_TARGETS));
-				} catch(MalformedURLException e) {
-					// do nothing
+					frontier.pause();
+				} catch (InterruptedException e) {
+					return;
 				}
+				try {
+					checkpoint();
+				} catch (IOException e) {
+					System.out.println(e);
+				} finally {
+					frontier.resume();
+				}
+			}
+		}, checkpointInterval, checkpointInterval, TimeUnit.MILLISECONDS);
+		return checkpoints;
+	}
+
+	/**
+	 * Stops checkpointing, waiting for a checkpoint in progress to finish.
+	 */
+	private static void stopCheckpoints(ScheduledExecutorService checkpoints) throws InterruptedException {
+		if (checkpoints == null)
+			return;
+		checkpoints.shutdown();
+		checkpoints.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Writes a checkpoint.  The pages indexed since the last checkpoint are
+	 * added to the index segments and the crawl goes on with an empty
+	 * WebIndex, then the metadata, the frontier and the URLs reached are
+	 * saved.  The crawl must be paused.  If the crawl dies before the state
+	 * is saved, it resumes from the previous checkpoint and indexes the same
+	 * pages again, which replaces the copies already added.
+	 */
+	private void checkpoint() throws IOException {
+		WebIndex index = myIndex;
+		Set<String> changed = urlsChanged;
+		myIndex = new WebIndex();
+		myIndex.setAnalyzer(index.getAnalyzer());
+		urlsChanged = ConcurrentHashMap.newKeySet();
+		segments.addSegment(index, changed);
+		File tmp = new File(metadataFile + ".tmp");
+		metadata.save(tmp.getPath());
+		Files.move(tmp.toPath(), new File(metadataFile).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		state.checkpoint();
+		System.out.println("Checkpoint: " + index.getDocumentCount() + " pages indexed, "
+				+ state.getFrontier().size() + " URLs queued, " + urlsReached.size() + " reached");
+	}
+
+	/**
+	 * The loop run by each worker of a parallel crawl.  URLs that do not fit
+	 * in the frontier stay in the worker's own list and are parsed first.
+	 */
+	private void crawlFrom(CrawlFrontier frontier, LinkedList<QueuedUrl> mine) throws InterruptedException
+	{
+		QueuedUrl url;
+		while ((url = mine.isEmpty() ? frontier.take() : mine.removeFirst()) != null)
+			crawlPage(url, frontier, mine);
+	}
+
+	/**
+	 * Parses one URL taken from the frontier and adds the URLs found in it,
+	 * keeping those that do not fit in mine.  A page that cannot be parsed,
+	 * whatever the reason, is reported and skipped, so that it neither ends
+	 * the worker nor leaves the URL unfinished.
+	 */
+	private void crawlPage(QueuedUrl url, CrawlFrontier frontier, LinkedList<QueuedUrl> mine)
+	{
+		try {
+			for (Object found : parse(url.url))
+			{
+				String next = found.toString();
+				if (urlsReached.contains(next))
+					continue;
+				if (!frontier.add(next, url.depth + 1))
+					mine.add(new QueuedUrl(next, url.depth + 1));
+			}
+		} catch (MalformedURLException e) {
+			System.out.println(e);
+		} catch (IOException e) {
+			System.out.println(e);
+		} catch (RuntimeException e) {
+			System.out.println(url.url + ": " + e);
+		} finally {
+			frontier.done();
 		}
 	}
 
+	private VisitedSet urlsReached;
+	private Set<String> urlsChanged;
+	private WebIndex myIndex;
+	private AtomicInteger pagesParsed;
+	private boolean followLinks;
+	private CrawlMetadata metadata;
+	private boolean skipUnchanged;
+	private Set<String> urlsUnchanged;
 	/**
-	 * Called when the closing/ending instance of a two-part tag is
-	 * encountered, such as <code>&lt;/a&gt;</code> or
-	 * <code>&lt;/b&gt;</code>.
+	 * The aliases whose original has changed since the earlier crawl, which
+	 * are parsed again even if they have not changed themselves.
+	 */
+	private Set<String> staleAliases;
+	private CrawlState state;
+	private IndexSegments segments;
+	private String metadataFile;
+	private long checkpointInterval;
+	private DuplicateDetector duplicates;
+	private AtomicInteger duplicatesFound;
+	private CrawlScheduler scheduler;
+	public WebCrawler()
+	{
+		urlsReached = new VisitedSet();
+		urlsChanged = ConcurrentHashMap.newKeySet();
+		myIndex = new WebIndex();
+		pagesParsed = new AtomicInteger();
+		followLinks = true;
+		metadata = new CrawlMetadata();
+		skipUnchanged = false;
+		urlsUnchanged = ConcurrentHashMap.newKeySet();
+		staleAliases = new HashSet<String>();
+		duplicatesFound = new AtomicInteger();
+	}
+
+	/**
+	 * Sets the metadata recorded by earlier crawls.  The metadata is updated
+	 * in place as pages are crawled.
+	 *
+	 * A page recorded as a duplicate was never indexed itself, so when the
+	 * page it duplicates has changed or gone, it is parsed again whether or
+	 * not it has changed.
 	 *
-	 * @param t	the tag encountered
+	 * @param metadata	the metadata of earlier crawls
+	 * @param skipUnchanged	whether pages whose file has not changed since the
+	 * earlier crawl are skipped rather than parsed again
 	 */
-	public void handleEndTag(HTML.Tag t, int pos) {
+	public void setMetadata(CrawlMetadata metadata, boolean skipUnchanged) {
+		this.metadata = metadata;
+		this.skipUnchanged = skipUnchanged;
+		staleAliases = new HashSet<String>();
+		for (Map.Entry<String, String> alias : metadata.getDuplicates().entrySet())
+			if (changedSinceRecorded(alias.getValue()))
+				staleAliases.add(alias.getKey());
 	}
 
 	/**
-	 * Called when a one-part tag is encountered, such as
-	 * <code>&lt;hr&gt;</code>.
+	 * Returns whether the file of a page is not as the metadata records it:
+	 * changed, gone, or never recorded.
+	 */
+	private boolean changedSinceRecorded(String url) {
+		CrawlMetadata.Document document = metadata.get(url);
+		File file = toFile(url);
+		if (document == null || file == null)
+			return true;
+		long lastModified = file.lastModified();
+		return lastModified == 0 || lastModified != document.lastModified || file.length() != document.size;
+	}
+
+	/**
+	 * Makes the crawl resumable.  The frontier and the URLs reached are kept
+	 * in state, and every interval the crawl pauses to write a checkpoint:
+	 * the pages indexed since the last one are added to segments, the
+	 * metadata is saved to metadataFile, and state records the crawl's
+	 * progress.  Only the pages indexed since the last checkpoint are then
+	 * held in memory, and getWebIndex() and getUrlsChanged() only cover
+	 * them.
 	 *
-	 * @param t	the tag encountered
-	 * @param a	the set of attributes specified with the tag
+	 * @param state	the state of the crawl, which may be resumed
+	 * @param segments	the index the crawl adds to
+	 * @param metadataFile	the file the metadata is saved to
+	 * @param interval	the milliseconds between checkpoints
 	 */
-	public void handleSimpleTag(HTML.Tag t, MutableAttributeSet a, int pos) {
+	public void setCheckpoints(CrawlState state, IndexSegments segments, String metadataFile, long interval) {
+		this.state = state;
+		this.segments = segments;
+		this.metadataFile = metadataFile;
+		checkpointInterval = interval;
+		urlsReached = state.getVisited();
 	}
 
 	/**
-	 * Called when content text is encountered.
+	 * Sets the order pages are crawled in and the limits of the crawl.
+	 * Without a scheduler, pages are crawled breadth-first with no limits.
+	 * A crawl that checkpoints keeps its frontier on disk, which only
+	 * supports breadth-first order.
 	 *
-	 * @param data	the text encountered
+	 * @param scheduler	the scheduler, or null for none
 	 */
-	public void handleText(char[] data, int pos) {
-		myIndex.addPhraseToFile(currentURL, data);
+	public void setScheduler(CrawlScheduler scheduler) {
+		this.scheduler = scheduler;
 	}
 
 	/**
-	 * Called when comment text is encountered.
+	 * Sets whether pages whose text duplicates a page already indexed are
+	 * indexed too.  When duplicates are detected, a duplicate is not added to
+	 * the index; its metadata records the URL of the page indexed in its
+	 * place instead.  The pages indexed by earlier crawls, as recorded in the
+	 * metadata, count as already indexed unless their file has changed since,
+	 * so setMetadata() should be called first.
 	 *
-	 * @param data	the comment text encountered
+	 * @param detect	whether duplicates are detected
+	 */
+	public void setDetectDuplicates(boolean detect) {
+		if (!detect) {
+			duplicates = null;
+			return;
+		}
+		duplicates = new DuplicateDetector();
+		for (String url : metadata.getUrls()) {
+			CrawlMetadata.Document document = metadata.get(url);
+			if (document != null && document.duplicateOf == null && document.contentHash != 0
+					&& !changedSinceRecorded(url))
+				duplicates.add(url, document.contentHash, document.simHash);
+		}
+	}
+
+	/**
+	 * Returns the number of pages found to duplicate a page already indexed.
+	 */
+	public int getDuplicatesFound() {
+		return duplicatesFound.get();
+	}
+
+	/**
+	 * Returns the metadata of every page crawled so far, and of the pages
+	 * crawled earlier if setMetadata() was called.
+	 */
+	public CrawlMetadata getMetadata() {
+		return metadata;
+	}
+
+	/**
+	 * Returns the URLs that were skipped because they had not changed since
+	 * the earlier crawl.
+	 */
+	public Set<String> getUrlsUnchanged() {
+		return urlsUnchanged;
+	}
+
+	/**
+	 * Returns the URLs that were reached and had changed, or had
+	 * disappeared, since the earlier crawl, or since the last checkpoint.
+	 */
+	public Set<String> getUrlsChanged() {
+		return urlsChanged;
+	}
+
+	/**
+	 * Sets whether the links found in a page are crawled too.  Without
+	 * following links, only the starting URLs are crawled, which is how a
+	 * known set of changed files is re-indexed.
 	 */
-	public void handleComment(char[] data, int pos) {
+	public void setFollowLinks(boolean followLinks) {
+		this.followLinks = followLinks;
 	}
 
 	/**
-	 * Called at the end of parsing to indicate the estimated newline
-	 * character sequence.
+	 * Returns the URLs this Crawler has tried to parse, whether or not they
+	 * could be read.
+	 */
+	public VisitedSet getUrlsReached() {
+		return urlsReached;
+	}
+
+	/**
+	 * Called to indicate an HTML document should be parsed.  Parsing is performed
+	 * by calling super.parse(url, page), which drives the callback methods of a
+	 * PageParser private to this document.
 	 *
-	 * @param eol	the estimated newline character sequence
+	 * The URL and the links found are put in canonical form first, so a page
+	 * is parsed once however it is linked to.
+	 *
+	 * @param url	URL of the HTML document to parse
+	 * @return	a List of URLs (in String form) found in the document
 	 */
-	public void handleEndOfLineString(String eol) {
+	public List parse(String url) throws IOException, MalformedURLException {
+		url = UrlCanonicalizer.canonicalize(url);
+		if (!url.startsWith("file"))
+			return new LinkedList(); // throw new RuntimeException("NO INTERNET CRAWLING!");
+		if (!urlsReached.add(url))
+			return new LinkedList();
+		urlsChanged.add(url);
+
+		// Stat the file before reading it, so a change made while it is being
+		// read is seen by the next crawl.
+		File file = toFile(url);
+		long lastModified = file == null ? 0 : file.lastModified();
+		long size = file == null ? 0 : file.length();
+		CrawlMetadata.Document previous = metadata.get(url);
+		boolean stale = staleAliases.contains(url);
+		if (skipUnchanged && previous != null && !stale && lastModified != 0
+				&& lastModified == previous.lastModified && size == previous.size) {
+			urlsChanged.remove(url);
+			urlsUnchanged.add(url);
+			return followLinks ? new LinkedList(previous.links) : new LinkedList();
+		}
+
+		PageParser page = new PageParser(url);
+		long hash;
+		try {
+			if (file != null && file.isFile()) {
+				// Local pages are read with NIO into buffers reused from page
+				// to page.
+				PageReader reader = acquireReader();
+				try {
+					super.parse(url, reader.read(file), page);
+					hash = reader.getHash();
+				} finally {
+					releaseReader(reader);
+				}
+			} else {
+				HashingInputStream in = new HashingInputStream(openStream(url));
+				super.parse(url, in, page);
+				hash = in.getHash();
+			}
+		} catch (IOException e) {
+			/* File does not exist; forget it */
+			metadata.remove(url);
+			if (duplicates != null)
+				duplicates.remove(url);
+			return new LinkedList();
+		}
+		pagesParsed.incrementAndGet();
+		if (skipUnchanged && previous != null && !stale && previous.hash == hash) {
+			// Touched, but the contents are the same as last time, so it is
+			// still the original of any duplicates found.
+			if (duplicates != null && previous.duplicateOf == null && previous.contentHash != 0)
+				duplicates.add(url, previous.contentHash, previous.simHash);
+			urlsChanged.remove(url);
+			urlsUnchanged.add(url);
+			metadata.put(url, new CrawlMetadata.Document(lastModified, size, previous.hash, previous.links,
+					previous.contentHash, previous.simHash, previous.duplicateOf));
+			return followLinks ? new LinkedList(previous.links) : new LinkedList();
+		}
+		page.addToIndex();
+		ArrayList<String> links = new ArrayList<String>();
+		for (Object link : page.urlsToParse)
+			links.add(link.toString());
+		metadata.put(url, new CrawlMetadata.Document(lastModified, size, hash, links,
+				page.contentHash, page.simHash, page.duplicateOf));
+		return followLinks ? page.urlsToParse : new LinkedList();
+	}
+
+	/**
+	 * Returns the local file a file: URL refers to, or null if it does not
+	 * refer to one.
+	 */
+	private static File toFile(String url) {
+		try {
+			return new File(new URI(url));
+		} catch (URISyntaxException e) {
+		} catch (IllegalArgumentException e) {
+		}
+		try {
+			return new File(new URL(url).getPath());
+		} catch (MalformedURLException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the number of pages this Crawler has parsed so far.
+	 */
+	public int getPagesParsed() {
+		return pagesParsed.get();
 	}
 
 	/**
-	 * Called if an error occurs during parsing.
+	 * Returns the WebIndex object built by this Crawler.
 	 *
-	 * @param errorMsg	a description of the error
+	 * @return	a WebIndex object covering all pages crawled by this Crawler.
 	 */
-	public void handleError(String errorMsg, int pos) {
+	public WebIndex getWebIndex() {
+		return myIndex;
 	}
 
 	/**
@@ -162,4 +703,93 @@ public class WebCrawler extends Crawler {
 	public void flush() {
 		super.flush();
 	}
+
+	/**
+	 * Receives the parser callbacks for a single document.  The text of the
+	 * document is collected as it is parsed and added to the index in one
+	 * step once parsing finishes.
+	 */
+	private class PageParser extends HTMLEditorKit.ParserCallback {
+		private String currentURL;
+		private URL currentContext;
+		private LinkedList urlsToParse;
+		private LinkedList<char[]> text;
+		/**
+		 * The fingerprints of the text, and the URL of the page it
+		 * duplicates, if duplicates are detected.
+		 */
+		private long contentHash;
+		private long simHash;
+		private String duplicateOf;
+
+		public PageParser(String url) throws MalformedURLException
+		{
+			currentURL = url;
+			currentContext = createUrl(null, url);
+			urlsToParse = new LinkedList();
+			text = new LinkedList<char[]>();
+		}
+
+		/**
+		 * Adds the text collected so far to the index.  The words are
+		 * gathered without holding any lock, then merged into the index in
+		 * one step, so pages parsed on different threads are indexed in
+		 * parallel.  A page that duplicates one already indexed is left out.
+		 */
+		public void addToIndex() {
+			if (text.isEmpty())
+				return;
+			DocumentBuffer words = new DocumentBuffer(myIndex.newTokenizer());
+			for (char[] data : text)
+				words.addPhrase(data);
+			if (duplicates != null) {
+				contentHash = words.getContentHash();
+				simHash = DuplicateDetector.simHash(words);
+				duplicateOf = duplicates.check(currentURL, contentHash, simHash);
+				if (duplicateOf != null) {
+					duplicatesFound.incrementAndGet();
+					return;
+				}
+			}
+			myIndex.addDocument(currentURL, words);
+		}
+
+		/**
+		 * Called when the opening/starting instance of a two-part tag is
+		 * encountered, such as <code>&lt;a&gt;</code> or
+		 * <code>&lt;b&gt;</code>.
+		 *
+		 * @param t	the tag encountered
+		 * @param a	the set of attributes specified with the tag
+		 */
+		public void handleStartTag(HTML.Tag t, MutableAttributeSet a, int pos) {
+			if (t.equals(HTML.Tag.A))
+			{
+				Object attr = a.getAttribute(HTML.Attribute.HREF);
+				if (attr != null)
+					try {
+						URL link = null;
+						if (attr instanceof String)
+							link = createUrl(currentContext, (String) attr);
+						else if (attr instanceof URL)
+							link = createUrl(currentContext, ((URL) attr).toString());
+						if (link != null)
+							urlsToParse.add(UrlCanonicalizer.canonicalize(link.toString()));
+					} catch(MalformedURLException e) {
+						// do nothing
+					} catch(SecurityException e) {
+						// A link the crawler may not follow, such as mailto:
+					}
+			}
+		}
+
+		/**
+		 * Called when content text is encountered.
+		 *
+		 * @param data	the text encountered
+		 */
+		public void handleText(char[] data, int pos) {
+			text.add(data);
+		}
+	}
 }
@@ -1,72 +1,461 @@
+import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 public class WebIndex extends Index {
 	/**
-	 * Mapping from words to (mapping from files to LinkedList of the indecies in which that word shows up).
+	 * The value computed for the first version, which did not declare one,
+	 * so that the indexes it serialized still load; see readObject().
 	 */
-	private HashMap<String, HashMap<String, LinkedList<Integer>>> wordsToFiles;
+	private static final long serialVersionUID = -2698818629355300018L;
 	/**
-	 * Mapping from files to the largest index of the words in the file.
+	 * Mapping from words to the documents and indecies in which that word shows up.
 	 */
-	private HashMap<String, Integer> allFiles;
+	private ConcurrentHashMap<String, PostingsList> wordsToFiles;
+	/**
+	 * The URL of each document, indexed by document id.
+	 */
+	private ArrayList<String> documents;
+	/**
+	 * Mapping from URLs to document ids.
+	 */
+	private HashMap<String, Integer> documentIds;
+	/**
+	 * The largest index of the words in each document, indexed by document id.
+	 */
+	private int[] wordCounts;
+	/**
+	 * The number of locks guarding the postings while documents are added.
+	 * The postings of a word are guarded by the lock its hash selects, so
+	 * threads adding documents only contend when their words share a lock.
+	 */
+	public static final int LOCK_STRIPES = 64;
+	private transient Object[] stripes;
+	/**
+	 * Interns the words of the documents added, shared by their tokenizers.
+	 */
+	private transient TermDictionary terms;
+	/**
+	 * How the text of the documents was turned into words; null for
+	 * Analyzer.STANDARD.
+	 */
+	private transient Analyzer analyzer;
+	/**
+	 * A word whose postings cover at least 1/DENSE_FRACTION of the documents
+	 * is frequent enough that its documents are kept as a bitmap.
+	 */
+	public static final int DENSE_FRACTION = 64;
+	/**
+	 * The most memory, in bytes, that cached document sets may use.
+	 */
+	public static final long DOC_SET_CACHE_BYTES = 16L << 20;
+	/**
+	 * The most memory, in bytes, that indexes decoding postings on demand
+	 * may use to keep them.
+	 */
+	public static final long POSTINGS_CACHE_BYTES = 64L << 20;
+	/**
+	 * Document sets of frequent words and of query subexpressions, by word
+	 * or by the text of the subexpression.  Cleared whenever postings change.
+	 */
+	private transient LruCache<String, RoaringDocSet> docSets;
+	/**
+	 * The number of times the index has been changed.
+	 */
+	private transient volatile long version;
 	public WebIndex()
 	{
-		wordsToFiles = new HashMap<String, HashMap<String, LinkedList<Integer>>>();
-		allFiles = new HashMap<String, Integer>();
+		wordsToFiles = new ConcurrentHashMap<String, PostingsList>();
+		documents = new ArrayList<String>();
+		documentIds = new HashMap<String, Integer>();
+		wordCounts = new int[16];
 	}
 
 	/**
-	 * Associates the word with the file at the current index of the file.
-	 * @param word The word to associate
-	 * @param file The file to associate with
+	 * Returns the id of the document with the given URL, adding the document
+	 * to the document table if it is not there yet.
+	 * @param file The URL of the document.
+	 * @return The document id.
 	 */
-	private void addAssociation(String word, String file)
+	private int addDocument(String file)
 	{
-		allFiles.put(file, allFiles.get(file)+1);
-		if (wordsToFiles.containsKey(word))
-		{
-			HashMap<String, LinkedList<Integer>> filesToIndecies = wordsToFiles.get(word);
-			if (filesToIndecies.containsKey(file))
-				filesToIndecies.get(file).add(allFiles.get(file));
-			else
-			{
-				LinkedList<Integer> indecies = new LinkedList<Integer>();
-				indecies.add(allFiles.get(file));
-				filesToIndecies.put(file, indecies);
-			}
-		} else {
-			HashMap<String, LinkedList<Integer>> filesToIndecies = new HashMap<String, LinkedList<Integer>>();
-			LinkedList<Integer> indecies = new LinkedList<Integer>();
-			indecies.add(allFiles.get(file));
-			filesToIndecies.put(file, indecies);
-			wordsToFiles.put(word, filesToIndecies);
+		synchronized (documentIds) {
+			Integer doc = documentIds.get(file);
+			if (doc != null)
+				return doc;
+			int id = documents.size();
+			documents.add(file);
+			documentIds.put(file, id);
+			if (id == wordCounts.length)
+				wordCounts = Arrays.copyOf(wordCounts, id * 2);
+			return id;
+		}
+	}
+
+	/**
+	 * Adds a document with a known word count to the document table.  Used
+	 * when reading an index back from a file.
+	 * @param file The URL of the document.
+	 * @param wordCount The number of words in the document.
+	 */
+	public void putDocument(String file, int wordCount)
+	{
+		synchronized (documentIds) {
+			int doc = addDocument(file);
+			wordCounts[doc] = wordCount;
 		}
+		changed();
+	}
+
+	/**
+	 * Records a change to the index, dropping anything cached about it.
+	 * Called after the change, so a reader that sees the old version caches
+	 * nothing computed from a half-made change.
+	 */
+	private synchronized void changed()
+	{
+		version++;
+		if (docSets != null)
+			docSets.clear();
+	}
+
+	/**
+	 * Returns a number that changes whenever the index does, so that
+	 * results cached by a query engine can be invalidated.  Read-only
+	 * indexes never change.
+	 */
+	public long getVersion()
+	{
+		return version;
+	}
+
+	/**
+	 * Returns a new cache for postings decoded or joined on demand, bounded
+	 * by POSTINGS_CACHE_BYTES.
+	 */
+	protected static LruCache<String, PostingsList> newPostingsCache()
+	{
+		return new LruCache<String, PostingsList>(POSTINGS_CACHE_BYTES,
+				new LruCache.Weigher<String, PostingsList>() {
+					public long weigh(String key, PostingsList postings) {
+						return 40 + key.length() * 2L + postings.sizeInBytes();
+					}
+				});
+	}
+
+	/**
+	 * Returns the cache of document sets used while evaluating queries.
+	 */
+	public synchronized LruCache<String, RoaringDocSet> getDocSetCache()
+	{
+		if (docSets == null)
+			docSets = new LruCache<String, RoaringDocSet>(DOC_SET_CACHE_BYTES,
+					new LruCache.Weigher<String, RoaringDocSet>() {
+						public long weigh(String key, RoaringDocSet docs) {
+							return 40 + key.length() * 2L + docs.sizeInBytes();
+						}
+					});
+		return docSets;
 	}
 
 	/**
-	 * Adds the phrase to the file, by associating step by step each word in the phrase.
+	 * Sets the postings of a word.  Used when reading an index back from a
+	 * file.
+	 * @param word The word.
+	 * @param postings The postings of the word.
+	 */
+	public void putPostings(String word, PostingsList postings)
+	{
+		wordsToFiles.put(word, postings);
+		changed();
+	}
+
+	/**
+	 * Adds the phrase to the file, after any words already added to it.
 	 * @param file the file containing the phrase.
 	 * @param phrase the char[] containing the phrase.
 	 */
 	public void addPhraseToFile(String file, char[] phrase)
 	{
-		if (!allFiles.containsKey(file))
-			allFiles.put(file, 0);
-		int index = 0;
-		while (index + 1 < phrase.length)
+		DocumentBuffer words = new DocumentBuffer(newTokenizer());
+		words.addPhrase(phrase);
+		addDocument(file, words);
+	}
+
+	/**
+	 * Adds the words collected for a document, after any words already added
+	 * to it.  Any number of threads may add documents at once: the document
+	 * table is updated under its own lock and the postings of each word
+	 * under the lock of its stripe, each stripe being locked once per
+	 * document.
+	 * @param file The URL of the document.
+	 * @param words The words of the document.
+	 */
+	public void addDocument(String file, DocumentBuffer words)
+	{
+		int doc;
+		int offset;
+		synchronized (documentIds) {
+			doc = addDocument(file);
+			offset = wordCounts[doc];
+			wordCounts[doc] = offset + words.getWordCount();
+		}
+
+		// Group the words by stripe.
+		String[] terms = words.getWords().toArray(new String[0]);
+		int[] stripeOf = new int[terms.length];
+		int[] start = new int[LOCK_STRIPES + 1];
+		for (int i = 0; i < terms.length; i++)
+			start[(stripeOf[i] = stripe(terms[i])) + 1]++;
+		for (int s = 0; s < LOCK_STRIPES; s++)
+			start[s + 1] += start[s];
+		String[] grouped = new String[terms.length];
+		int[] next = Arrays.copyOf(start, LOCK_STRIPES);
+		for (int i = 0; i < terms.length; i++)
+			grouped[next[stripeOf[i]]++] = terms[i];
+
+		Object[] locks = getStripes();
+		for (int s = 0; s < LOCK_STRIPES; s++)
 		{
-			char c = phrase[index];
-			while (!Character.isLetter(c) && index + 1 < phrase.length)
-				c = phrase[++index];
-			int initialIndex = index;
-			while (Character.isLetter(c) && index + 1 < phrase.length)
-				c = phrase[++index];
-			if (index > initialIndex)
-			{
-				String word = new String(phrase, initialIndex, index-initialIndex).toLowerCase();
-				addAssociation(word, file);
+			if (start[s] == start[s + 1])
+				continue;
+			synchronized (locks[s]) {
+				for (int i = start[s]; i < start[s + 1]; i++)
+				{
+					String word = grouped[i];
+					PostingsList postings = wordsToFiles.get(word);
+					if (postings == null)
+					{
+						postings = new PostingsList();
+						wordsToFiles.put(word, postings);
+					}
+					postings.add(doc, words.getPositions(word), words.getFrequency(word), offset);
+				}
 			}
 		}
+		changed();
+	}
+
+	/**
+	 * Returns a tokenizer for the documents to be added, applying the
+	 * analyzer of the index.  The tokenizers of an index share one
+	 * dictionary, so a word is only allocated the first time any document
+	 * contains it.
+	 */
+	public synchronized Tokenizer newTokenizer()
+	{
+		if (terms == null)
+			terms = new TermDictionary();
+		return getAnalyzer().newTokenizer(terms);
+	}
+
+	/**
+	 * Returns the analyzer the words of the index were found with, which is
+	 * the one its queries must be analyzed with.
+	 */
+	public Analyzer getAnalyzer()
+	{
+		return analyzer == null ? Analyzer.STANDARD : analyzer;
+	}
+
+	/**
+	 * Sets the analyzer that finds the words of the documents.  It must be
+	 * set before any document is added.
+	 */
+	public void setAnalyzer(Analyzer analyzer)
+	{
+		this.analyzer = analyzer;
+	}
+
+	private static int stripe(String word)
+	{
+		int h = word.hashCode();
+		return (h ^ (h >>> 16)) & (LOCK_STRIPES - 1);
+	}
+
+	private synchronized Object[] getStripes()
+	{
+		if (stripes == null)
+		{
+			stripes = new Object[LOCK_STRIPES];
+			for (int i = 0; i < LOCK_STRIPES; i++)
+				stripes[i] = new Object();
+		}
+		return stripes;
+	}
+
+	/**
+	 * Returns the number of documents in the index.  Document ids run from
+	 * 0 up to, but not including, this number.
+	 */
+	public int getDocumentCount()
+	{
+		return documents.size();
+	}
+
+	/**
+	 * Returns the URL of a document.
+	 * @param doc The document id.
+	 */
+	public String getUrl(int doc)
+	{
+		return documents.get(doc);
+	}
+
+	/**
+	 * Returns the id of the document with the given URL.
+	 * @param file The URL of the document.
+	 * @return The document id, or -1 if the document is not in the index.
+	 */
+	public int getDocumentId(String file)
+	{
+		Integer doc = documentIds.get(file);
+		return doc == null ? -1 : doc;
+	}
+
+	/**
+	 * Returns the number of words in a document.
+	 * @param doc The document id.
+	 */
+	public int getWordCount(int doc)
+	{
+		return wordCounts[doc];
+	}
+
+	/**
+	 * Returns every word in the index, in no particular order.
+	 */
+	public Collection<String> getWords()
+	{
+		return wordsToFiles.keySet();
+	}
+
+	/**
+	 * Returns the postings of a word.
+	 * @param word The word to look up.
+	 * @return The postings, or null if the word is not in the index.
+	 */
+	public PostingsList getPostings(String word)
+	{
+		return wordsToFiles.get(word);
+	}
+
+	/**
+	 * Gets the documents that contain word.
+	 * @param word The word to search for.
+	 * @return The set of ids of the documents containing the word.
+	 */
+	public BitSet getDocs(String word)
+	{
+		BitSet docs = new BitSet(getDocumentCount());
+		PostingsList postings = getPostings(word);
+		if (postings != null)
+			for (int i = 0; i < postings.size(); i++)
+				docs.set(postings.getDoc(i));
+		return docs;
+	}
+
+	/**
+	 * Takes the complement of a set of documents.
+	 * @param original The set of document ids to take the complement of.
+	 * @return The complement, as a new set
+	 */
+	public BitSet complementDocs(BitSet original)
+	{
+		BitSet cmplmnt = getLiveDocs();
+		cmplmnt.andNot(original);
+		return cmplmnt;
+	}
+
+	/**
+	 * Returns the ids of the documents that can be returned by a query.
+	 * Every document is live unless a subclass has deleted it.
+	 * @return The set of live document ids, as a new set
+	 */
+	public BitSet getLiveDocs()
+	{
+		BitSet live = new BitSet(getDocumentCount());
+		live.set(0, getDocumentCount());
+		return live;
+	}
+
+	/**
+	 * Determines if a set of documents is large enough that combining it as
+	 * a bitmap is cheaper than stepping through it a document at a time.
+	 * @param size The number of documents in the set.
+	 */
+	public boolean isDense(long size)
+	{
+		return size > 0 && size >= getDocumentCount() / DENSE_FRACTION;
+	}
+
+	/**
+	 * Returns the documents that contain word as a compressed bitmap.  The
+	 * bitmaps of frequent words are cached.
+	 * @param word The word to search for.
+	 */
+	public RoaringDocSet getBitmap(String word)
+	{
+		PostingsList postings = getPostings(word);
+		if (postings == null)
+			return RoaringDocSet.empty();
+		if (!isDense(postings.size()))
+			return RoaringDocSet.of(postings);
+		LruCache<String, RoaringDocSet> cache = getDocSetCache();
+		RoaringDocSet docs = cache.get(word);
+		if (docs == null)
+		{
+			docs = RoaringDocSet.of(postings);
+			cache.put(word, docs);
+		}
+		return docs;
+	}
+
+	/**
+	 * Returns the ids of the documents that can be returned by a query, as
+	 * a compressed bitmap.
+	 */
+	public RoaringDocSet getLiveBitmap()
+	{
+		return RoaringDocSet.range(0, getDocumentCount());
+	}
+
+	/**
+	 * All documents not containing word.
+	 * @param word
+	 */
+	public BitSet getNegatedDocs(String word)
+	{
+		return complementDocs(getDocs(word));
+	}
+
+	/**
+	 * Turns a set of document ids back into the URLs of the documents.
+	 * @param docs The set of document ids.
+	 * @return The collection of URLs.
+	 */
+	public Collection getUrls(BitSet docs)
+	{
+		HashSet<String> files = new HashSet<String>();
+		for (int doc = docs.nextSetBit(0); doc >= 0; doc = docs.nextSetBit(doc + 1))
+			files.add(getUrl(doc));
+		return files;
+	}
+
+	/**
+	 * Turns a collection of URLs into the set of their document ids.  URLs
+	 * that are not in the index are ignored.
+	 */
+	private BitSet getDocs(Collection files)
+	{
+		BitSet docs = new BitSet(getDocumentCount());
+		for (Object file : files)
+		{
+			int doc = getDocumentId((String) file);
+			if (doc >= 0)
+				docs.set(doc);
+		}
+		return docs;
 	}
 
 	/**
@@ -76,15 +465,7 @@ public class WebIndex extends Index {
 	 */
 	public Collection getFiles(String word)
 	{
-		if (wordsToFiles.containsKey(word))
-		{
-			HashSet<String> files = new HashSet<String>();
-			HashMap<String, LinkedList<Integer>> filesToIndecies = wordsToFiles.get(word);
-			for (String file : filesToIndecies.keySet())
-				files.add(file);
-			return files;
-		}
-		return new HashSet(0);
+		return getUrls(getDocs(word));
 	}
 
 	/**
@@ -94,13 +475,7 @@ public class WebIndex extends Index {
 	 */
 	public Collection complement(Collection original)
 	{
-		HashSet<String> cmplmnt = new HashSet<String>();
-		for (String file : allFiles.keySet())
-		{
-			if (!original.contains(file))
-				cmplmnt.add(file);
-		}
-		return cmplmnt;
+		return getUrls(complementDocs(getDocs(original)));
 	}
 
 	/**
@@ -112,6 +487,62 @@ public class WebIndex extends Index {
 		return complement(getFiles(word));
 	}
 
+	/**
+	 * Saves the index in the binary format written by IndexWriter.
+	 * @param filename The file to write.
+	 */
+	public void save(String filename) throws IOException
+	{
+		OutputStream out = new FileOutputStream(filename);
+		try {
+			new IndexWriter(out).write(this);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Reads a serialized index.  An index serialized by the first version,
+	 * which kept the positions of each word in each file in nested maps, is
+	 * read too: the words of each of its files are laid out by position and
+	 * added again as a document.
+	 */
+	@SuppressWarnings("unchecked")
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
+	{
+		ObjectInputStream.GetField fields = in.readFields();
+		if (fields.getObjectStreamClass().getField("documents") != null)
+		{
+			wordsToFiles = (ConcurrentHashMap<String, PostingsList>) fields.get("wordsToFiles", null);
+			documents = (ArrayList<String>) fields.get("documents", null);
+			documentIds = (HashMap<String, Integer>) fields.get("documentIds", null);
+			wordCounts = (int[]) fields.get("wordCounts", null);
+			return;
+		}
+		HashMap<String, HashMap<String, LinkedList<Integer>>> oldWords
+				= (HashMap<String, HashMap<String, LinkedList<Integer>>>) fields.get("wordsToFiles", null);
+		HashMap<String, Integer> oldFiles = (HashMap<String, Integer>) fields.get("allFiles", null);
+		wordsToFiles = new ConcurrentHashMap<String, PostingsList>();
+		documents = new ArrayList<String>();
+		documentIds = new HashMap<String, Integer>();
+		wordCounts = new int[16];
+		HashMap<String, String[]> texts = new HashMap<String, String[]>();
+		for (Map.Entry<String, Integer> file : oldFiles.entrySet())
+			texts.put(file.getKey(), new String[file.getValue() + 1]);
+		for (Map.Entry<String, HashMap<String, LinkedList<Integer>>> word : oldWords.entrySet())
+			for (Map.Entry<String, LinkedList<Integer>> file : word.getValue().entrySet())
+				for (int position : file.getValue())
+					texts.get(file.getKey())[position] = word.getKey();
+		for (String file : new TreeSet<String>(oldFiles.keySet()))
+		{
+			DocumentBuffer words = new DocumentBuffer();
+			for (String word : texts.get(file))
+				if (word != null)
+					words.addWord(word);
+			addDocument(file, words);
+		}
+	}
+
 	/**
 	 * Determines if the file has the phrase.
 	 * @param file
@@ -120,28 +551,41 @@ public class WebIndex extends Index {
 	 */
 	public boolean hasPhrase(String file, LinkedList<String> phrase)
 	{
-		if (phrase.isEmpty()) return true;
-		String word = phrase.removeFirst();
-		LinkedList<Integer> indecies = wordsToFiles.get(word).get(file);
-		for (int i : indecies)
-			if (hasPhraseAtIndex(file, phrase, i+1))
-				return true;
-		return false;
+		int doc = getDocumentId(file);
+		return doc >= 0 && hasPhrase(doc, phrase);
 	}
-	
+
 	/**
-	 * Helper for hasPhrase(). Determines recursively if the file has the phrase at a given location.
-	 * @param file
-	 * @param phrase LinkedList of words
-	 * @param index The index to check
-	 * @return true if the file does contain the phrase at that location, false otherwise.
+	 * Determines if the document has the phrase.
+	 * @param doc The document id.
+	 * @param phrase the LinkedList of words
+	 * @return true if the document does contain the phrase, false otherwise
+	 */
+	public boolean hasPhrase(int doc, LinkedList<String> phrase)
+	{
+		return hasPhrase(doc, phrase, 0);
+	}
+
+	/**
+	 * Determines if the document has the phrase, allowing its words to be up
+	 * to slop positions away from their exact places in total.
+	 * @param doc The document id.
+	 * @param phrase the words of the phrase, in order
+	 * @param slop 0 for an exact phrase
+	 * @return true if the document does contain the phrase, false otherwise
 	 */
-	private boolean hasPhraseAtIndex(String file, LinkedList<String> phrase, int index)
+	public boolean hasPhrase(int doc, List<String> phrase, int slop)
 	{
 		if (phrase.isEmpty()) return true;
-		String word = phrase.removeFirst();
-		boolean ret = wordsToFiles.get(word).get(file).contains(index) && hasPhraseAtIndex(file, phrase, index+1);
-		phrase.addFirst(word);
-		return ret;
+		PhraseMatcher matcher = new PhraseMatcher(phrase, slop);
+		for (int i = 0; i < phrase.size(); i++)
+		{
+			PostingsList postings = getPostings(phrase.get(i));
+			int slot = postings == null ? -1 : postings.indexOf(doc);
+			if (slot < 0)
+				return false;
+			matcher.set(i, postings.getPositions(slot), postings.getFrequency(slot));
+		}
+		return matcher.matches();
 	}
 }
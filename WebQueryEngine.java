@@ -8,16 +8,58 @@ public class WebQueryEngine {
 	 *
 	 * @param index	the WebIndex this WebQueryEngine should use
 	 */
-	public void useWebIndex(WebIndex index) {
+	public synchronized void useWebIndex(WebIndex index) {
 		this.index = index;
+		indexVersion = index.getVersion();
+		searcher = null;
+		results.clear();
+		rankedResults.clear();
 	}
 
+	/**
+	 * The default number of results returned by rankedQuery().
+	 */
+	public static final int DEFAULT_RESULTS = 20;
+	/**
+	 * The most memory, in bytes, that each cache of query results may use.
+	 */
+	public static final long RESULT_CACHE_BYTES = 16L << 20;
+	private RankedSearcher searcher;
+	/**
+	 * The version of the index that the cached results were computed from.
+	 */
+	private long indexVersion;
+	/**
+	 * The documents satisfying recent queries, by the text of their plan.
+	 */
+	private LruCache<String, BitSet> results = new LruCache<String, BitSet>(RESULT_CACHE_BYTES,
+			new LruCache.Weigher<String, BitSet>() {
+				public long weigh(String key, BitSet docs) {
+					return 40 + key.length() * 2L + docs.size() / 8;
+				}
+			});
+	/**
+	 * The best pages of recent ranked queries, by number of pages, words
+	 * scored and the text of their plan.
+	 */
+	private LruCache<String, List<RankedSearcher.Result>> rankedResults = new LruCache<String, List<RankedSearcher.Result>>(RESULT_CACHE_BYTES,
+			new LruCache.Weigher<String, List<RankedSearcher.Result>>() {
+				public long weigh(String key, List<RankedSearcher.Result> pages) {
+					return 40 + key.length() * 2L + pages.size() * 48L;
+				}
+			});
+
 	static final Token AND_TOKEN = new Token(true, "&");
 	static final Token OR_TOKEN = new Token(true, "|");
 	static final Token LEFT_PAREN_TOKEN = new Token(true, "(");
 	static final Token RIGHT_PAREN_TOKEN = new Token(true, ")");
 	static final Token EXCLAIM_TOKEN = new Token(true, "!");
 	static final Token QUOTE_TOKEN = new Token(true, "\"");
+	/**
+	 * Stands for a word the analyzer drops, until removeStopwords() takes
+	 * it out of the tree.
+	 */
+	static final Token STOPWORD_TOKEN = new Token(false, "");
 
 	/**
 	 * Returns a Collection of URLs (as Strings) of web pages satisfying
@@ -27,63 +69,211 @@ public class WebQueryEngine {
 	 * @return	a Collection of URLs of web pages satisfying the query
 	 */
 	public Collection query(String qury) {
-		return query(parseQuery(qury, 0));
+		return index.getUrls(cachedDocs(qury));
 	}
 
 	/**
-	 * Takes a tree, and does query(String)'s work.
+	 * Returns the number of web pages satisfying the query expression.
+	 *
+	 * @param query	a query expression
 	 */
-	public Collection query(Tree qury)
+	public int count(String qury) {
+		return cachedDocs(qury).cardinality();
+	}
+
+	/**
+	 * Returns the ids of the documents satisfying a query, from the cache if
+	 * the query was asked recently.  An empty query matches nothing.
+	 */
+	private BitSet cachedDocs(String qury)
 	{
-		if (qury.data.otherTokens == null) {
-			if (!qury.data.token.isOperator)
-			{
-				return qury.negated ? index.getNegatedFiles(qury.data.token.repr) : index.getFiles(qury.data.token.repr);
-			}
-			else
-			{
-				if (qury.data.token == AND_TOKEN)
-				{
-					Collection left = query(qury.left);
-					Collection right = query(qury.right);
-					Collection intersection = new HashSet();
-					for (Object o : left)
-						if (right.contains(o))
-							intersection.add(o);
-					return intersection;
-				} else if (qury.data.token == OR_TOKEN) {
-					Collection left = query(qury.left);
-					Collection right = query(qury.right);
-					Collection union = new HashSet();
-					union.addAll(left);
-					union.addAll(right);
-					return union;
-				}
-			}
-		} else {
-			Collection intersection = index.getFiles(qury.data.token.repr);
-			for (Token t : qury.data.otherTokens)
-			{
-				intersection.removeAll(index.getNegatedFiles(t.repr));
-			}
-			if (!qury.isPhrase)
-				return qury.negated ? index.complement(intersection) : intersection;
-			else
+		checkVersion();
+		Tree tree = parse(qury);
+		if (tree == null)
+			return new BitSet();
+		QueryPlan plan = compile(tree);
+		String key = plan.toString();
+		BitSet docs = results.get(key);
+		if (docs == null)
+		{
+			docs = plan.evaluate();
+			results.put(key, docs);
+		}
+		return docs;
+	}
+
+	/**
+	 * Parses a query the way the index was analyzed: the query is
+	 * normalized, each word is analyzed into a term, and the words the
+	 * analyzer drops are removed.
+	 * @return the tree, or null if the query has no words left
+	 */
+	public Tree parse(String qury)
+	{
+		return removeStopwords(parseQuery(getAnalyzer().normalize(qury), 0));
+	}
+
+	/**
+	 * Removes the words the analyzer drops from a tree.  A word group or
+	 * phrase left with no words is removed, and an operator left with one
+	 * operand is replaced by it, so a dropped word neither narrows nor
+	 * widens a query.
+	 * @return the tree, or null if nothing is left of it
+	 */
+	private Tree removeStopwords(Tree qury)
+	{
+		if (qury == null)
+			return null;
+		if (qury.data.token.isOperator)
+		{
+			Tree left = removeStopwords(qury.left);
+			Tree right = removeStopwords(qury.right);
+			if (left != null && right != null)
 			{
-				// Phrase search; need to check that the exact phrase exists in the file.
-				LinkedList<String> phrase = new LinkedList<String>();
-				phrase.add(qury.data.token.repr);
-				for (Token t : qury.data.otherTokens)
-					phrase.add(t.repr);
-				Collection toRemove = new HashSet();
-				for (Object file : intersection)
-					if (!index.hasPhrase((String) file, phrase))
-						toRemove.add(file);
-				intersection.removeAll(toRemove);
-				return intersection;
+				qury.left = left;
+				qury.right = right;
+				return qury;
 			}
+			Tree rest = left != null ? left : right;
+			if (rest != null && qury.negated)
+				rest.negated = !rest.negated;
+			return rest;
 		}
-		return new HashSet();
+		if (qury.data.token != STOPWORD_TOKEN && qury.data.otherTokens == null)
+			return qury;
+		LinkedList<Token> words = new LinkedList<Token>();
+		words.add(qury.data.token);
+		if (qury.data.otherTokens != null)
+			words.addAll(qury.data.otherTokens);
+		for (Iterator<Token> i = words.iterator(); i.hasNext(); )
+			if (i.next() == STOPWORD_TOKEN)
+				i.remove();
+		if (words.isEmpty())
+			return null;
+		qury.data.token = words.removeFirst();
+		qury.data.otherTokens = words.isEmpty() ? null : words;
+		qury.data.strForm = null;
+		return qury;
+	}
+
+	private Analyzer getAnalyzer()
+	{
+		return index == null ? Analyzer.STANDARD : index.getAnalyzer();
+	}
+
+	/**
+	 * Drops the cached results if the index has changed since they were
+	 * computed.
+	 */
+	private synchronized void checkVersion()
+	{
+		long version = index.getVersion();
+		if (version != indexVersion)
+		{
+			indexVersion = version;
+			searcher = null;
+			results.clear();
+			rankedResults.clear();
+		}
+	}
+
+	/**
+	 * Returns the cache of the results of query(String).
+	 */
+	public LruCache<String, BitSet> getResultCache()
+	{
+		return results;
+	}
+
+	/**
+	 * Returns the cache of the results of rankedQuery().
+	 */
+	public LruCache<String, List<RankedSearcher.Result>> getRankedResultCache()
+	{
+		return rankedResults;
+	}
+
+	/**
+	 * Takes a tree, and does query(String)'s work.
+	 */
+	public Collection query(Tree qury)
+	{
+		HashSet<String> urls = new HashSet<String>();
+		DocIdIterator docs = compile(qury).iterator();
+		for (int doc = docs.nextDoc(); doc != DocIdIterator.NO_MORE_DOCS; doc = docs.nextDoc())
+			urls.add(index.getUrl(doc));
+		return urls;
+	}
+
+	/**
+	 * Returns the k web pages satisfying the query expression that rank
+	 * highest under BM25, best first.  The words of the query that are not
+	 * negated are the ones scored.
+	 *
+	 * @param query	a query expression
+	 * @param k	the number of pages to return
+	 * @return	the best pages, with their scores
+	 */
+	public List<RankedSearcher.Result> rankedQuery(String qury, int k) {
+		checkVersion();
+		Tree tree = parse(qury);
+		if (tree == null)
+			return Collections.emptyList();
+		LinkedHashSet<String> words = new LinkedHashSet<String>();
+		collectScoredWords(tree, words);
+		QueryPlan plan = compile(tree);
+		String key = k + " " + words + " " + plan;
+		List<RankedSearcher.Result> pages = rankedResults.get(key);
+		if (pages == null)
+		{
+			pages = Collections.unmodifiableList(getSearcher().search(plan, words, k));
+			rankedResults.put(key, pages);
+		}
+		return pages;
+	}
+
+	private synchronized RankedSearcher getSearcher()
+	{
+		if (searcher == null)
+			searcher = new RankedSearcher(index);
+		return searcher;
+	}
+
+	/**
+	 * Collects the words of a tree that are not negated.
+	 */
+	private void collectScoredWords(Tree qury, Collection<String> words)
+	{
+		if (qury == null || qury.negated)
+			return;
+		if (qury.data.token.isOperator)
+		{
+			collectScoredWords(qury.left, words);
+			collectScoredWords(qury.right, words);
+			return;
+		}
+		words.add(qury.data.token.repr);
+		if (qury.data.otherTokens != null)
+			for (Token t : qury.data.otherTokens)
+				words.add(t.repr);
+	}
+
+	/**
+	 * Evaluates a tree to the set of ids of the documents satisfying it.
+	 */
+	public BitSet queryDocs(Tree qury)
+	{
+		return compile(qury).evaluate();
+	}
+
+	/**
+	 * Compiles a tree into the plan that evaluates it against the current
+	 * WebIndex.  The plan's toString() shows the order in which its
+	 * operands will be evaluated.
+	 */
+	public QueryPlan compile(Tree qury)
+	{
+		return QueryPlan.compile(qury, index);
 	}
 
 	/**
@@ -207,6 +397,12 @@ public class WebQueryEngine {
 		 */
 		public boolean isPhrase;
 
+		/**
+		 * For a phrase, how far in total its words may be from their exact
+		 * places, as given by a "~n" after the closing quote.
+		 */
+		public int slop;
+
 		/**
 		 * Convenient constructor method.
 		 */
@@ -246,11 +442,12 @@ public class WebQueryEngine {
 	}
 
 	/**
-	 * Returns true if the character is part of a word, false otherwise.
+	 * Returns true if the character is part of a word, false otherwise, as
+	 * decided by the analyzer of the index.
 	 */
 	public boolean isWordCharacter(char c)
 	{
-		return Character.isLetter(c);
+		return getAnalyzer().isWordCharacter(c);
 	}
 
 	/**
@@ -283,8 +480,16 @@ public class WebQueryEngine {
 			return new QueryToken(QUOTE_TOKEN, index, index+1);
 		else
 		{
+			// Skip characters that are neither words nor operators.
 			while (!isWordCharacter(c))
+			{
 				index++;
+				if (index >= query.length())
+					return null;
+				c = query.charAt(index);
+				if (Character.isWhitespace(c) || "&|()!\"".indexOf(c) >= 0)
+					return getToken(query, index);
+			}
 			int startIndex = index;
 			while (isWordCharacter(c))
 			{
@@ -295,7 +500,9 @@ public class WebQueryEngine {
 					c = ')'; // not a word character
 			}
 			int endIndex = index;
-			String word = (query.substring(startIndex, endIndex)).toLowerCase();
+			String word = getAnalyzer().analyze(query.substring(startIndex, endIndex));
+			if (word == null)
+				return new QueryToken(STOPWORD_TOKEN, startIndex, endIndex);
 			return new QueryToken(word, startIndex, endIndex);
 		}
 	}
@@ -343,6 +550,16 @@ public class WebQueryEngine {
 			if (!"\"".equals(rightQuote.getToken()))
 				throw new IllegalArgumentException("Where'd the right quote go???");
 			index = rightQuote.endIndex;
+			if (index < query.length() && query.charAt(index) == '~')
+			{
+				int digits = index + 1;
+				while (digits < query.length() && Character.isDigit(query.charAt(digits)))
+					digits++;
+				if (digits == index + 1)
+					throw new IllegalArgumentException("Expected a number after ~");
+				phrase.slop = Integer.parseInt(query.substring(index + 1, digits));
+				index = digits;
+			}
 			phrase.startIndex = t.startIndex;
 			phrase.endIndex = index;
 			phrase.isPhrase = true;
@@ -369,10 +586,6 @@ public class WebQueryEngine {
 			return tr;
 		}
 		else
-		{
-			System.err.println("Floating operator!");
-			System.exit(1);
-			return null; // Prevents the compiler from complaining.
-		}
+			throw new IllegalArgumentException("Floating operator!");
 	}
 }
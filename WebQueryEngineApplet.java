@@ -12,21 +12,26 @@ public class WebQueryEngineApplet extends JApplet {
 			if (indexFile.charAt(0) == '/' && indexFile.indexOf('|') > 0)
 				indexFile = indexFile.substring(1);
 			indexFile = indexFile.replaceAll("%20", " ");
-			index = (WebIndex)Index.load(indexFile);
+			try {
+				index = new MappedWebIndex(indexFile);
+			} catch (IOException e) {
+				// Not in the binary format; fall back to reading it into the heap.
+				index = (WebIndex)Index.load(indexFile);
+			}
 			if (index == null)
 				return "<h4>Unable to load index.db</h4>";
 			engine = new WebQueryEngine();
 			engine.useWebIndex(index);
 		}
 
-		Collection c = engine.query(query);
+		List<RankedSearcher.Result> c = engine.rankedQuery(query, WebQueryEngine.DEFAULT_RESULTS);
 		if (c == null)
 			return "<h4>There was an error in the query engine.</h4>";
 
 		StringBuffer result = new StringBuffer();
-		Iterator itr = c.iterator();
+		Iterator<RankedSearcher.Result> itr = c.iterator();
 		while (itr.hasNext()) {
-			String url = (String)itr.next();
+			String url = itr.next().url;
 			result.append("<a href=\"" + url + "\" onClick=\"parent.location='" + url + "'\">" + url + "</a><br>");
 		}
 		return result.toString();
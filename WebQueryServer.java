@@ -0,0 +1,400 @@
+import com.sun.net.httpserver.*;
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * An HTTP front end for WebQueryEngine, built on the JDK's own HTTP server.
+ * The index is opened once at startup and every request runs on its own
+ * virtual thread, so concurrent users share one engine, its caches and the
+ * pages of the mapped index.
+ *
+ * <pre>
+ *   GET  /                          a search form
+ *   GET  /search?q=QUERY            ranked results as HTML
+ *   GET  /search?q=QUERY&amp;format=json  the same results as JSON
+ *   POST /reload                    reopens the index and swaps it in
+ * </pre>
+ * Results come a page at a time: page is 1-based, size is the number of
+ * results per page, at most MAX_PAGE_SIZE.  Each page is written to the
+ * client as it is formatted, in a chunked response.
+ *
+ * A reload builds a new engine around the reopened index and replaces the
+ * old one in a single write, so queries running at the time finish against
+ * the index they started with.  With -poll the index is reloaded
+ * automatically whenever its file, or the manifest of a segment directory,
+ * changes.
+ *
+ * Usage: java WebQueryServer [-port N] [-poll SECONDS] [-segments DIR | INDEX]
+ */
+public class WebQueryServer {
+	/**
+	 * The port listened on unless told otherwise.
+	 */
+	public static final int DEFAULT_PORT = 8080;
+	/**
+	 * The most results a single page may hold.
+	 */
+	public static final int MAX_PAGE_SIZE = 100;
+
+	private String indexFile;
+	private String segmentDirectory;
+	private volatile WebQueryEngine engine;
+	private volatile long loadedModified;
+	private HttpServer server;
+	private ExecutorService executor;
+	private ScheduledExecutorService poller;
+
+	public static void main(String... args) throws IOException {
+		int port = DEFAULT_PORT;
+		int poll = 0;
+		String indexFile = "index.db";
+		String segments = null;
+		for (int i = 0; i < args.length; i++)
+		{
+			if (args[i].equals("-port") && i + 1 < args.length)
+				port = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-poll") && i + 1 < args.length)
+				poll = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-segments") && i + 1 < args.length)
+				segments = args[++i];
+			else
+				indexFile = args[i];
+		}
+		WebQueryServer server = new WebQueryServer(indexFile, segments);
+		server.start(port, poll);
+		System.out.println("Serving " + (segments != null ? segments : indexFile) + " on port " + server.getPort());
+	}
+
+	/**
+	 * Opens the index.
+	 * @param indexFile The index file to serve, used unless segmentDirectory is given.
+	 * @param segmentDirectory A directory of index segments to serve, or null.
+	 */
+	public WebQueryServer(String indexFile, String segmentDirectory) throws IOException
+	{
+		this.indexFile = indexFile;
+		this.segmentDirectory = segmentDirectory;
+		reload();
+	}
+
+	/**
+	 * Starts answering requests.
+	 * @param port The port to listen on, or 0 for any free port.
+	 * @param pollSeconds How often to check the index for changes, or 0 never to.
+	 */
+	public void start(int port, int pollSeconds) throws IOException
+	{
+		server = HttpServer.create(new InetSocketAddress(port), 0);
+		server.createContext("/search", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				search(exchange);
+			}
+		});
+		server.createContext("/reload", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				reload(exchange);
+			}
+		});
+		server.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				home(exchange);
+			}
+		});
+		executor = VirtualThreads.newExecutor();
+		server.setExecutor(executor);
+		server.start();
+		if (pollSeconds > 0)
+		{
+			poller = Executors.newSingleThreadScheduledExecutor();
+			poller.scheduleWithFixedDelay(new Runnable() {
+				public void run() {
+					try {
+						if (sourceModified() != loadedModified)
+							reload();
+					} catch (IOException e) {
+						System.out.println(e);
+					}
+				}
+			}, pollSeconds, pollSeconds, TimeUnit.SECONDS);
+		}
+	}
+
+	/**
+	 * Returns the port the server is listening on.
+	 */
+	public int getPort()
+	{
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Stops the server, letting requests in progress finish.
+	 */
+	public void stop()
+	{
+		if (poller != null)
+			poller.shutdown();
+		server.stop(1);
+		executor.shutdown();
+	}
+
+	/**
+	 * Returns the engine currently answering queries.
+	 */
+	public WebQueryEngine getEngine()
+	{
+		return engine;
+	}
+
+	/**
+	 * Answers queries from a different index from now on.
+	 */
+	public void swapIndex(WebIndex index)
+	{
+		WebQueryEngine next = new WebQueryEngine();
+		next.useWebIndex(index);
+		engine = next;
+	}
+
+	/**
+	 * Reopens the index from disk and swaps it in.
+	 */
+	public synchronized void reload() throws IOException
+	{
+		long modified = sourceModified();
+		WebIndex index;
+		if (segmentDirectory != null)
+			index = IndexSegments.open(segmentDirectory);
+		else
+		{
+			try {
+				index = new MappedWebIndex(indexFile);
+			} catch (IOException e) {
+				// Not in the binary format; fall back to reading it into the heap.
+				index = (WebIndex) Index.load(indexFile);
+			}
+			if (index == null)
+				throw new IOException("Unable to load " + indexFile);
+		}
+		swapIndex(index);
+		loadedModified = modified;
+	}
+
+	/**
+	 * Returns the modification time of the file that changes when the index
+	 * does.
+	 */
+	private long sourceModified()
+	{
+		if (segmentDirectory != null)
+			return new File(segmentDirectory, IndexSegments.MANIFEST).lastModified();
+		return new File(indexFile).lastModified();
+	}
+
+	private void home(HttpExchange exchange) throws IOException
+	{
+		if (!exchange.getRequestURI().getPath().equals("/"))
+		{
+			sendError(exchange, 404, "Not found");
+			return;
+		}
+		Writer out = startResponse(exchange, 200, "text/html");
+		try {
+			out.write("<html><head><title>Web query</title></head><body>");
+			writeForm(out, "");
+			out.write("</body></html>");
+		} finally {
+			out.close();
+		}
+	}
+
+	private void reload(HttpExchange exchange) throws IOException
+	{
+		if (!exchange.getRequestMethod().equals("POST"))
+		{
+			sendError(exchange, 405, "Use POST to reload the index");
+			return;
+		}
+		try {
+			reload();
+		} catch (IOException e) {
+			sendError(exchange, 500, e.getMessage());
+			return;
+		}
+		Writer out = startResponse(exchange, 200, "text/plain");
+		try {
+			out.write("Reloaded\n");
+		} finally {
+			out.close();
+		}
+	}
+
+	private void search(HttpExchange exchange) throws IOException
+	{
+		Map<String, String> params;
+		try {
+			params = parseParams(exchange.getRequestURI().getRawQuery());
+		} catch (IllegalArgumentException e) {
+			sendError(exchange, 400, "Malformed parameters");
+			return;
+		}
+		String query = params.containsKey("q") ? params.get("q") : "";
+		boolean json = "json".equals(params.get("format"));
+		int page;
+		int size;
+		try {
+			page = params.containsKey("page") ? Integer.parseInt(params.get("page")) : 1;
+			size = params.containsKey("size") ? Integer.parseInt(params.get("size")) : WebQueryEngine.DEFAULT_RESULTS;
+		} catch (NumberFormatException e) {
+			sendError(exchange, 400, "page and size must be numbers");
+			return;
+		}
+		if (page < 1 || size < 1 || size > MAX_PAGE_SIZE)
+		{
+			sendError(exchange, 400, "page must be at least 1 and size between 1 and " + MAX_PAGE_SIZE);
+			return;
+		}
+
+		WebQueryEngine current = engine;
+		List<RankedSearcher.Result> shown;
+		int total;
+		try {
+			total = current.count(query);
+			long from = (long) (page - 1) * size;
+			if (from >= total)
+				shown = Collections.emptyList();
+			else
+			{
+				List<RankedSearcher.Result> results = current.rankedQuery(query, (int) Math.min(from + size, total));
+				shown = results.subList((int) Math.min(from, results.size()), results.size());
+			}
+		} catch (RuntimeException e) {
+			// The parser reports malformed queries with whatever it trips over.
+			sendError(exchange, 400, "Malformed query: " + query);
+			return;
+		}
+
+		Writer out = startResponse(exchange, 200, json ? "application/json" : "text/html");
+		try {
+			if (json)
+				writeJson(out, query, page, size, total, shown);
+			else
+				writeHtml(out, query, page, size, total, shown);
+		} finally {
+			out.close();
+		}
+	}
+
+	private void writeJson(Writer out, String query, int page, int size, int total, List<RankedSearcher.Result> results) throws IOException
+	{
+		out.write("{\"query\":" + jsonString(query) + ",\"total\":" + total
+				+ ",\"page\":" + page + ",\"size\":" + size + ",\"results\":[");
+		for (int i = 0; i < results.size(); i++)
+		{
+			RankedSearcher.Result result = results.get(i);
+			if (i > 0)
+				out.write(',');
+			out.write("{\"url\":" + jsonString(result.url) + ",\"score\":" + result.score + "}");
+		}
+		out.write("]}\n");
+	}
+
+	private void writeHtml(Writer out, String query, int page, int size, int total, List<RankedSearcher.Result> results) throws IOException
+	{
+		out.write("<html><head><title>" + html(query) + "</title></head><body>");
+		writeForm(out, query);
+		out.write("<p>" + total + " matching pages</p><ol start=\"" + ((page - 1) * size + 1) + "\">");
+		for (RankedSearcher.Result result : results)
+			out.write("<li><a href=\"" + html(result.url) + "\">" + html(result.url) + "</a></li>");
+		out.write("</ol><p>");
+		String base = "/search?q=" + URLEncoder.encode(query, "UTF-8") + "&amp;size=" + size + "&amp;page=";
+		if (page > 1)
+			out.write("<a href=\"" + base + (page - 1) + "\">Previous</a> ");
+		if ((long) page * size < total)
+			out.write("<a href=\"" + base + (page + 1) + "\">Next</a>");
+		out.write("</p></body></html>");
+	}
+
+	private static void writeForm(Writer out, String query) throws IOException
+	{
+		out.write("<form action=\"/search\"><input name=\"q\" size=\"60\" value=\"" + html(query)
+				+ "\"> <input type=\"submit\" value=\"Search\"></form>");
+	}
+
+	/**
+	 * Sends the response headers and returns a writer for a body of unknown
+	 * length, which is sent in chunks as it is written.
+	 */
+	private static Writer startResponse(HttpExchange exchange, int status, String contentType) throws IOException
+	{
+		exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=utf-8");
+		exchange.sendResponseHeaders(status, 0);
+		return new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8));
+	}
+
+	private static void sendError(HttpExchange exchange, int status, String message) throws IOException
+	{
+		Writer out = startResponse(exchange, status, "text/plain");
+		try {
+			out.write(message + "\n");
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Decodes the parameters of a query string.
+	 */
+	private static Map<String, String> parseParams(String rawQuery) throws UnsupportedEncodingException
+	{
+		HashMap<String, String> params = new HashMap<String, String>();
+		if (rawQuery == null)
+			return params;
+		for (String pair : rawQuery.split("&"))
+		{
+			int eq = pair.indexOf('=');
+			String name = eq < 0 ? pair : pair.substring(0, eq);
+			String value = eq < 0 ? "" : pair.substring(eq + 1);
+			params.put(URLDecoder.decode(name, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+		}
+		return params;
+	}
+
+	private static String html(String s)
+	{
+		StringBuilder str = new StringBuilder(s.length());
+		for (int i = 0; i < s.length(); i++)
+		{
+			char c = s.charAt(i);
+			switch (c)
+			{
+			case '<': str.append("&lt;"); break;
+			case '>': str.append("&gt;"); break;
+			case '&': str.append("&amp;"); break;
+			case '"': str.append("&quot;"); break;
+			case '\'': str.append("&#39;"); break;
+			default: str.append(c);
+			}
+		}
+		return str.toString();
+	}
+
+	private static String jsonString(String s)
+	{
+		StringBuilder str = new StringBuilder(s.length() + 2).append('"');
+		for (int i = 0; i < s.length(); i++)
+		{
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\')
+				str.append('\\').append(c);
+			else if (c < 0x20)
+				str.append(String.format("\\u%04x", (int) c));
+			else
+				str.append(c);
+		}
+		return str.append('"').toString();
+	}
+}
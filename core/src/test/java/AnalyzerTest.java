@@ -0,0 +1,157 @@
+import java.io.*;
+import java.util.*;
+import org.junit.*;
+import org.junit.rules.*;
+import static org.junit.Assert.*;
+
+/**
+ * An Analyzer must apply the stages it is described by, and an index must
+ * keep the analyzer it was built with when it is saved and opened again.
+ */
+public class AnalyzerTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static final String[] SPECS = {
+		"standard", "nfkc", "stop", "stem", "nfkc,stop", "nfkc,stem", "stop,stem", "nfkc,stop,stem"
+	};
+
+	@Test
+	public void stemsWithTheRulesOfTheSStemmer()
+	{
+		Analyzer stem = Analyzer.parse("stem");
+		String[][] cases = {
+			// "ies" -> "y", but not "eies" or "aies"
+			{ "ponies", "pony" }, { "cookies", "cooky" }, { "series", "sery" },
+			{ "zeies", "zeies" }, { "plaies", "plaies" }, { "ies", "ies" },
+			// "es" -> "e", but not "aes", "ees" or "oes"
+			{ "horses", "horse" }, { "boxes", "boxe" }, { "yes", "ye" },
+			{ "trees", "trees" }, { "toes", "toes" }, { "algaes", "algaes" },
+			// "s" -> "", but not "us" or "ss"
+			{ "cats", "cat" }, { "gas", "ga" }, { "its", "it" },
+			{ "bus", "bus" }, { "glass", "glass" },
+			// Too short, or no "s" at all
+			{ "is", "is" }, { "s", "s" }, { "cat", "cat" }, { "sis", "si" },
+			// Words are lower-cased first.
+			{ "PONIES", "pony" }, { "Cats", "cat" },
+		};
+		for (String[] c : cases)
+		{
+			assertEquals(c[0], c[1], stem.analyze(c[0]));
+			assertEquals(c[0], c[0].toLowerCase(Locale.ROOT), Analyzer.STANDARD.analyze(c[0]));
+		}
+	}
+
+	@Test
+	public void dropsStopwords()
+	{
+		Analyzer stop = Analyzer.parse("stop");
+		Analyzer stopStem = Analyzer.parse("stop,stem");
+		for (String word : Analyzer.STOPWORDS)
+		{
+			assertNull(word, stop.analyze(word));
+			assertNull(word, stop.analyze(word.toUpperCase(Locale.ROOT)));
+			// Stopwords are dropped before they could be stemmed.
+			assertNull(word, stopStem.analyze(word));
+			assertEquals(word, Analyzer.STANDARD.analyze(word));
+		}
+		assertEquals("thes", stop.analyze("thes"));
+		assertEquals("thi", Analyzer.parse("stem").analyze("this"));
+	}
+
+	@Test
+	public void normalizesToNfkc()
+	{
+		Analyzer nfkc = Analyzer.parse("nfkc");
+		// A ligature, full-width letters and a decomposed accent.
+		assertEquals("files", nfkc.normalize("\ufb01les"));
+		assertEquals("Wide", nfkc.normalize("\uff37\uff49\uff44\uff45"));
+		assertEquals("caf\u00e9", nfkc.normalize("cafe\u0301"));
+		assertEquals("\ufb01les", Analyzer.STANDARD.normalize("\ufb01les"));
+		char[] text = "\ufb01les".toCharArray();
+		assertArrayEquals("files".toCharArray(), nfkc.normalize(text, 0, text.length));
+		assertNull(nfkc.normalize("plain".toCharArray(), 0, 5));
+		assertNull(nfkc.normalize("caf\u00e9".toCharArray(), 0, 4));
+		assertNull(Analyzer.STANDARD.normalize(text, 0, text.length));
+	}
+
+	@Test
+	public void descriptionsRoundTrip()
+	{
+		for (String spec : SPECS)
+		{
+			Analyzer analyzer = Analyzer.parse(spec);
+			assertEquals(spec, analyzer.toString());
+			assertEquals(analyzer, Analyzer.parse(analyzer.toString()));
+			assertEquals(analyzer.hashCode(), Analyzer.parse(analyzer.toString()).hashCode());
+		}
+		// Stages may come in any order, with spaces; the description puts
+		// them in the order they run.
+		assertEquals("nfkc,stop,stem", Analyzer.parse(" stem, nfkc ,stop").toString());
+		assertEquals(Analyzer.STANDARD, Analyzer.parse(""));
+		assertEquals(Analyzer.STANDARD, new Analyzer(false, false, false));
+		assertFalse(Analyzer.parse("stem").equals(Analyzer.parse("stop")));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void unknownStagesAreRejected()
+	{
+		Analyzer.parse("nfkc,porter");
+	}
+
+	private static WebIndex newIndex(Analyzer analyzer)
+	{
+		WebIndex index = new WebIndex();
+		index.setAnalyzer(analyzer);
+		index.addPhraseToFile("file:/a.html", "The ponies and the CATS of the \ufb01les".toCharArray());
+		index.addPhraseToFile("file:/b.html", "A pony is in the glass house with a cat".toCharArray());
+		index.addPhraseToFile("file:/c.html", "café horses".toCharArray());
+		return index;
+	}
+
+	private static List<String> answers(WebIndex index, String[] queries)
+	{
+		WebQueryEngine engine = new WebQueryEngine();
+		engine.useWebIndex(index);
+		List<String> answers = new ArrayList<String>();
+		for (String query : queries)
+			answers.add(new TreeSet<Object>(engine.query(query)).toString());
+		return answers;
+	}
+
+	@Test
+	public void indexesKeepTheirAnalyzer() throws IOException
+	{
+		String[] queries = { "pony", "Ponies", "cat & pony", "\"ponies cats\"", "\"pony glass house\"",
+				"the", "file", "files", "caf\u00e9", "horse", "!cats" };
+		for (String spec : SPECS)
+		{
+			WebIndex index = newIndex(Analyzer.parse(spec));
+			File file = folder.newFile(spec + ".db");
+			index.save(file.getPath());
+			WebIndex loaded = (WebIndex) Index.load(file.getPath());
+			MappedWebIndex mapped = new MappedWebIndex(file.getPath());
+			assertEquals(spec, loaded.getAnalyzer().toString());
+			assertEquals(spec, mapped.getAnalyzer().toString());
+			List<String> expected = answers(index, queries);
+			assertEquals(spec, expected, answers(loaded, queries));
+			assertEquals(spec, expected, answers(mapped, queries));
+		}
+
+		// The queries are analyzed like the documents were.
+		List<String> full = answers(newIndex(Analyzer.parse("nfkc,stop,stem")), queries);
+		assertEquals("[file:/a.html, file:/b.html]", full.get(0));
+		assertEquals("[file:/a.html, file:/b.html]", full.get(1));
+		assertEquals("[file:/a.html, file:/b.html]", full.get(2));
+		assertEquals("[file:/a.html]", full.get(3));
+		assertEquals("[file:/b.html]", full.get(4));
+		assertEquals("[]", full.get(5));
+		assertEquals("[file:/a.html]", full.get(7));
+		assertEquals("[file:/c.html]", full.get(8));
+		List<String> standard = answers(newIndex(Analyzer.STANDARD), queries);
+		assertEquals("[file:/b.html]", standard.get(0));
+		assertEquals("[file:/a.html]", standard.get(1));
+		assertEquals("[file:/a.html, file:/b.html]", standard.get(5));
+		assertEquals("[]", standard.get(7));
+	}
+}
@@ -0,0 +1,50 @@
+import java.util.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class BloomFilterTest {
+	@Test
+	public void neverLosesAHashAndRarelyInventsOne()
+	{
+		int n = 10000;
+		BloomFilter filter = new BloomFilter(n * 8);
+		Random random = new Random(1);
+		long[] added = new long[n];
+		for (int i = 0; i < n; i++)
+		{
+			added[i] = VisitedSet.fingerprint("file:/site/p" + random.nextInt() + ".html");
+			filter.add(added[i]);
+		}
+		for (long hash : added)
+			assertTrue(filter.mightContain(hash));
+		int falsePositives = 0;
+		for (int i = 0; i < n; i++)
+			if (filter.mightContain(VisitedSet.fingerprint("file:/other/q" + i + ".html")))
+				falsePositives++;
+		// About 2% are expected.
+		assertTrue(falsePositives + " false positives", falsePositives < n / 20);
+	}
+
+	@Test
+	public void roundsItsSizeUpToAPowerOfTwo()
+	{
+		assertEquals(16, new BloomFilter(100).sizeInBytes());
+		assertEquals(1024, new BloomFilter(8192).sizeInBytes());
+		assertEquals(2048, new BloomFilter(8193).sizeInBytes());
+	}
+
+	@Test
+	public void visitedSetGrowsPastItsFirstTable()
+	{
+		VisitedSet visited = new VisitedSet();
+		for (int i = 0; i < 50000; i++)
+			assertTrue(visited.add("file:/site/p" + i + ".html"));
+		assertEquals(50000, visited.size());
+		for (int i = 0; i < 50000; i++)
+		{
+			assertTrue(visited.contains("file:/site/p" + i + ".html"));
+			assertFalse(visited.add("file:/site/p" + i + ".html"));
+			assertFalse(visited.contains("file:/site/q" + i + ".html"));
+		}
+	}
+}
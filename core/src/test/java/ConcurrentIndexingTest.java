@@ -0,0 +1,155 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * Documents added to a WebIndex from many threads at once must give the
+ * same postings as documents added one after another, although their ids
+ * reach the postings lists out of order.
+ */
+public class ConcurrentIndexingTest {
+	private static final int DOCS = 400;
+	private static final int THREADS = 8;
+
+	/**
+	 * Returns the text of each document, in two parts added separately.
+	 */
+	private static String[][] newTexts(long seed)
+	{
+		SyntheticCorpus corpus = new SyntheticCorpus(0, seed);
+		Random random = new Random(seed);
+		String[][] texts = new String[DOCS][2];
+		for (int doc = 0; doc < DOCS; doc++)
+		{
+			for (int part = 0; part < 2; part++)
+			{
+				StringBuffer text = new StringBuffer();
+				int words = 1 + random.nextInt(200);
+				for (int i = 0; i < words; i++)
+					text.append(corpus.nextWord(random)).append(' ');
+				texts[doc][part] = text.toString();
+			}
+		}
+		return texts;
+	}
+
+	private static String url(int doc)
+	{
+		return "file:/site/p" + doc + ".html";
+	}
+
+	private static void add(WebIndex index, int doc, String[][] texts)
+	{
+		for (int part = 0; part < 2; part++)
+		{
+			DocumentBuffer words = new DocumentBuffer(index.newTokenizer());
+			words.addPhrase(texts[doc][part].toCharArray());
+			index.addDocument(url(doc), words);
+		}
+	}
+
+	@Test(timeout = 60000)
+	public void concurrentAddsMatchSerialAdds() throws Exception
+	{
+		for (long seed = 1; seed <= 3; seed++)
+		{
+			final String[][] texts = newTexts(seed);
+			WebIndex serial = new WebIndex();
+			for (int doc = 0; doc < DOCS; doc++)
+				add(serial, doc, texts);
+
+			final WebIndex parallel = new WebIndex();
+			final List<Integer> order = new ArrayList<Integer>();
+			for (int doc = 0; doc < DOCS; doc++)
+				order.add(doc);
+			Collections.shuffle(order, new Random(seed));
+			final AtomicInteger next = new AtomicInteger();
+			final CountDownLatch start = new CountDownLatch(1);
+			ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			for (int t = 0; t < THREADS; t++)
+			{
+				futures.add(executor.submit(new Callable<Void>() {
+					public Void call() throws Exception {
+						start.await();
+						int i;
+						while ((i = next.getAndIncrement()) < DOCS)
+							add(parallel, order.get(i), texts);
+						return null;
+					}
+				}));
+			}
+			start.countDown();
+			for (Future<?> future : futures)
+				future.get();
+			executor.shutdown();
+
+			assertEquals(DOCS, parallel.getDocumentCount());
+			for (int doc = 0; doc < DOCS; doc++)
+				assertEquals(serial.getWordCount(serial.getDocumentId(url(doc))),
+						parallel.getWordCount(parallel.getDocumentId(url(doc))));
+			assertEquals(CrawlTestSupport.contents(serial), CrawlTestSupport.contents(parallel));
+			for (String word : parallel.getWords())
+				assertSorted(word, parallel.getPostings(word));
+		}
+	}
+
+	private static void assertSorted(String word, PostingsList postings)
+	{
+		for (int i = 0; i < postings.size(); i++)
+		{
+			assertTrue(word, postings.getFrequency(i) > 0);
+			if (i > 0)
+				assertTrue(word, postings.getDoc(i - 1) < postings.getDoc(i));
+			int[] positions = postings.getPositions(i);
+			for (int j = 1; j < postings.getFrequency(i); j++)
+				assertTrue(word, positions[j - 1] < positions[j]);
+		}
+	}
+
+	@Test
+	public void postingsListsAcceptDocumentsOutOfOrder()
+	{
+		Random random = new Random(5);
+		for (int round = 0; round < 100; round++)
+		{
+			int docs = 1 + random.nextInt(100);
+			List<Integer> order = new ArrayList<Integer>();
+			for (int doc = 0; doc < docs; doc++)
+				if (random.nextInt(3) > 0)
+					order.add(doc * 3);
+			Collections.shuffle(order, random);
+
+			// Each document gets its positions in two parts, the second after
+			// every other document has had its first.
+			PostingsList shuffled = new PostingsList();
+			for (int doc : order)
+				shuffled.add(doc, new int[] { 0, 2, 9 }, 2, doc);
+			for (int doc : order)
+				shuffled.add(doc, new int[] { 1, 5 }, 2, doc + 10);
+
+			Collections.sort(order);
+			PostingsList sorted = new PostingsList();
+			for (int doc : order)
+			{
+				sorted.add(doc, doc);
+				sorted.add(doc, doc + 2);
+				sorted.add(doc, doc + 11);
+				sorted.add(doc, doc + 15);
+			}
+
+			assertEquals(order.size(), shuffled.size());
+			assertSorted("round " + round, shuffled);
+			for (int i = 0; i < sorted.size(); i++)
+			{
+				assertEquals(sorted.getDoc(i), shuffled.getDoc(i));
+				assertEquals(4, shuffled.getFrequency(i));
+				assertEquals(i, shuffled.indexOf(sorted.getDoc(i)));
+				assertArrayEquals(Arrays.copyOf(sorted.getPositions(i), 4), Arrays.copyOf(shuffled.getPositions(i), 4));
+			}
+			assertEquals(-1, shuffled.indexOf(1));
+		}
+	}
+}
@@ -0,0 +1,131 @@
+import java.io.*;
+import java.util.*;
+import org.junit.*;
+import org.junit.rules.*;
+import static org.junit.Assert.*;
+
+/**
+ * The limits of the scheduler stop a crawl where they say, in every crawl
+ * mode.  The tree crawled has an index page linking to 5 pages in l1/,
+ * each linking to 3 pages in l2/, which link back to the index.
+ */
+public class CrawlLimitsTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static final String[] MODES = { "serial", "parallel", "virtual" };
+
+	private File site;
+	private String start;
+
+	@Before
+	public void writeTree() throws Exception
+	{
+		site = folder.newFolder("site");
+		StringBuffer index = new StringBuffer("<html><body>home");
+		for (int i = 0; i < 5; i++)
+		{
+			index.append(" <a href=\"l1/p" + i + ".html\">p" + i + "</a>");
+			StringBuffer page = new StringBuffer("<html><body>first level");
+			for (int j = 0; j < 3; j++)
+			{
+				page.append(" <a href=\"../l2/p" + i + "_" + j + ".html\">p" + i + "_" + j + "</a>");
+				CrawlTestSupport.write(site, "l2/p" + i + "_" + j + ".html",
+						"<html><body>second level <a href=\"../index.html\">home</a></body></html>");
+			}
+			CrawlTestSupport.write(site, "l1/p" + i + ".html", page.append("</body></html>").toString());
+		}
+		CrawlTestSupport.write(site, "index.html", index.append("</body></html>").toString());
+		start = CrawlTestSupport.url(new File(site, "index.html"));
+	}
+
+	/**
+	 * Crawls the tree into a new segment directory.
+	 * @return the URLs indexed
+	 */
+	private Set<String> crawl(String mode, String... limits) throws Exception
+	{
+		File segments = folder.newFolder();
+		ArrayList<String> args = new ArrayList<String>(Arrays.asList("-segments", segments.getPath(), "-mode", mode));
+		args.addAll(Arrays.asList(limits));
+		args.add(start);
+		String output = CrawlTestSupport.crawl(args.toArray(new String[0]));
+		Set<String> urls = CrawlTestSupport.urls(IndexSegments.open(segments.getPath()));
+		assertTrue(output, output.contains("Crawled " + urls.size() + " pages"));
+		return urls;
+	}
+
+	private Set<String> urls(String... paths)
+	{
+		TreeSet<String> urls = new TreeSet<String>();
+		for (String path : paths)
+			urls.add(CrawlTestSupport.url(new File(site, path)));
+		return urls;
+	}
+
+	private static int count(Set<String> urls, String directory)
+	{
+		int count = 0;
+		for (String url : urls)
+			if (url.contains("/" + directory + "/"))
+				count++;
+		return count;
+	}
+
+	@Test
+	public void withoutLimitsCrawlsEverything() throws Exception
+	{
+		for (String mode : MODES)
+			assertEquals(mode, 21, crawl(mode).size());
+	}
+
+	@Test
+	public void maxDepthStopsFollowingLinks() throws Exception
+	{
+		Set<String> expected = urls("index.html", "l1/p0.html", "l1/p1.html", "l1/p2.html", "l1/p3.html", "l1/p4.html");
+		for (String mode : MODES)
+		{
+			assertEquals(mode, expected, crawl(mode, "-maxdepth", "1"));
+			assertEquals(mode, urls("index.html"), crawl(mode, "-maxdepth", "0"));
+		}
+	}
+
+	@Test
+	public void maxPagesStopsTheCrawl() throws Exception
+	{
+		// Breadth first, the index and the first level come before the rest.
+		Set<String> first = crawl("serial", "-maxpages", "10");
+		assertEquals(10, first.size());
+		assertEquals(5, count(first, "l1"));
+		assertEquals(4, count(first, "l2"));
+		for (String mode : MODES)
+		{
+			Set<String> crawled = crawl(mode, "-maxpages", "8");
+			assertEquals(mode, 8, crawled.size());
+			assertTrue(mode, crawled.contains(start));
+		}
+		// Depth first, a second level page comes before most of the first.
+		Set<String> deep = crawl("serial", "-order", "dfs", "-maxpages", "3");
+		assertEquals(deep.toString(), 1, count(deep, "l1"));
+		assertEquals(deep.toString(), 1, count(deep, "l2"));
+	}
+
+	@Test
+	public void directoryQuotaLimitsEachDirectory() throws Exception
+	{
+		for (String mode : MODES)
+		{
+			Set<String> crawled = crawl(mode, "-dirquota", "2");
+			assertEquals(mode, 5, crawled.size());
+			assertEquals(mode, 2, count(crawled, "l1"));
+			assertEquals(mode, 2, count(crawled, "l2"));
+		}
+	}
+
+	@Test
+	public void spentTimeBudgetCrawlsNothing() throws Exception
+	{
+		for (String mode : MODES)
+			assertEquals(mode, 0, crawl(mode, "-time", "0").size());
+	}
+}
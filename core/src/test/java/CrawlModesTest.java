@@ -0,0 +1,111 @@
+import java.io.*;
+import java.util.*;
+import org.junit.*;
+import org.junit.rules.*;
+import static org.junit.Assert.*;
+
+/**
+ * Crawls of a tree of file: pages in serial, parallel and virtual-thread
+ * mode must build the same index.
+ */
+public class CrawlModesTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private String start;
+
+	@Before
+	public void writeCorpus() throws IOException
+	{
+		start = CrawlTestSupport.writeCorpus(folder.getRoot(), 300, 7);
+	}
+
+	private static List<String> list(String url)
+	{
+		return new LinkedList<String>(Collections.singletonList(url));
+	}
+
+	@Test
+	public void modesBuildTheSameIndex() throws Exception
+	{
+		WebCrawler serial = new WebCrawler();
+		serial.crawl(list(start));
+		WebCrawler parallel = new WebCrawler();
+		parallel.crawl(list(start), 4);
+		WebCrawler virtual = new WebCrawler();
+		virtual.crawlVirtual(list(start), 16);
+
+		// Not every page of the corpus is linked to.
+		assertTrue(serial.getPagesParsed() > 250);
+		assertEquals(serial.getPagesParsed(), parallel.getPagesParsed());
+		assertEquals(serial.getPagesParsed(), virtual.getPagesParsed());
+		Map<String, Map<String, List<Integer>>> expected = CrawlTestSupport.contents(serial.getWebIndex());
+		assertEquals(expected, CrawlTestSupport.contents(parallel.getWebIndex()));
+		assertEquals(expected, CrawlTestSupport.contents(virtual.getWebIndex()));
+	}
+
+	@Test
+	public void scannerAndSwingParsersBuildTheSameIndex() throws Exception
+	{
+		WebCrawler swing = new WebCrawler();
+		swing.crawl(list(start), 4);
+		WebCrawler scanner = new WebCrawler();
+		scanner.setParser(Crawler.newParser("scanner"));
+		scanner.crawl(list(start), 4);
+		assertEquals(CrawlTestSupport.contents(swing.getWebIndex()), CrawlTestSupport.contents(scanner.getWebIndex()));
+	}
+
+	/**
+	 * A crawler whose pages in one directory cannot be parsed.
+	 */
+	private static class FailingCrawler extends WebCrawler {
+		public List parse(String url) throws IOException {
+			if (url.contains("/d1/"))
+				throw new IllegalStateException("cannot parse " + url);
+			return super.parse(url);
+		}
+	}
+
+	@Test(timeout = 60000)
+	public void pageThatThrowsDoesNotEndTheCrawl() throws Exception
+	{
+		WebCrawler serial = new FailingCrawler();
+		serial.crawl(list(start));
+		WebCrawler parallel = new FailingCrawler();
+		parallel.crawl(list(start), 4);
+		WebCrawler virtual = new FailingCrawler();
+		virtual.crawlVirtual(list(start), 16);
+
+		// The 50 pages of d1 are lost, along with anything only they link to.
+		assertTrue(serial.getPagesParsed() > 0 && serial.getPagesParsed() <= 251);
+		assertFalse(serial.getWebIndex().getDocumentId(start) < 0);
+		assertEquals(serial.getPagesParsed(), parallel.getPagesParsed());
+		assertEquals(serial.getPagesParsed(), virtual.getPagesParsed());
+		assertEquals(CrawlTestSupport.urls(serial.getWebIndex()), CrawlTestSupport.urls(parallel.getWebIndex()));
+	}
+
+	@Test
+	public void linksTheCrawlerMayNotFollowAreSkipped() throws Exception
+	{
+		File site = folder.newFolder("links");
+		CrawlTestSupport.write(site, "index.html", "<html><body>home"
+				+ " <a href=\"mailto:someone@example.com\">mail</a>"
+				+ " <a href=\"javascript:void(0)\">script</a>"
+				+ " <a href=\"ftp://example.com/file.txt\">ftp</a>"
+				+ " <a href=\"b.html\">b</a></body></html>");
+		CrawlTestSupport.write(site, "b.html", "<html><body>bee</body></html>");
+		String index = CrawlTestSupport.url(new File(site, "index.html"));
+		Set<String> expected = new TreeSet<String>(Arrays.asList(index, CrawlTestSupport.url(new File(site, "b.html"))));
+		for (String parser : new String[] { "swing", "scanner" })
+		{
+			WebCrawler serial = new WebCrawler();
+			serial.setParser(Crawler.newParser(parser));
+			serial.crawl(list(index));
+			assertEquals(parser, expected, CrawlTestSupport.urls(serial.getWebIndex()));
+			WebCrawler parallel = new WebCrawler();
+			parallel.setParser(Crawler.newParser(parser));
+			parallel.crawl(list(index), 4);
+			assertEquals(parser, expected, CrawlTestSupport.urls(parallel.getWebIndex()));
+		}
+	}
+}
@@ -0,0 +1,127 @@
+import java.io.*;
+import java.util.*;
+import org.junit.*;
+import org.junit.rules.*;
+import static org.junit.Assert.*;
+
+/**
+ * The frontier and URLs reached of a crawl come back as they were at the
+ * last checkpoint, whatever was done after it.
+ */
+public class CrawlStateTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static String url(int i)
+	{
+		return "file:/site/d" + (i % 7) + "/p" + i + ".html";
+	}
+
+	private static void assertPolls(DiskQueue queue, int from, int to)
+	{
+		for (int i = from; i < to; i++)
+		{
+			QueuedUrl url = queue.poll();
+			assertNotNull("URL " + i, url);
+			assertEquals(url(i), url.url);
+			assertEquals(i % 5, url.depth);
+		}
+	}
+
+	@Test
+	public void diskQueueIsFirstInFirstOutAcrossSegments() throws Exception
+	{
+		File directory = folder.newFolder();
+		DiskQueue queue = new DiskQueue(directory, 0, 0, 0);
+		int count = DiskQueue.SEGMENT_URLS * 2 + 100;
+		for (int i = 0; i < count; i++)
+			queue.add(new QueuedUrl(url(i), i % 5));
+		assertEquals(count, queue.size());
+		assertEquals(2, queue.getNext());
+		assertPolls(queue, 0, count);
+		assertEquals(0, queue.size());
+		assertNull(queue.poll());
+	}
+
+	@Test
+	public void diskQueueReopensAtACheckpoint() throws Exception
+	{
+		File directory = folder.newFolder();
+		DiskQueue queue = new DiskQueue(directory, 0, 0, 0);
+		int count = DiskQueue.SEGMENT_URLS + 500;
+		for (int i = 0; i < count; i++)
+			queue.add(new QueuedUrl(url(i), i % 5));
+		assertPolls(queue, 0, 300);
+		queue.checkpoint();
+		int head = queue.getHead();
+		int headRead = queue.getHeadRead();
+		int next = queue.getNext();
+
+		// What happens after the checkpoint is lost.
+		assertPolls(queue, 300, 1000);
+		queue.add(new QueuedUrl("file:/site/lost.html", 0));
+		queue.checkpoint();
+
+		DiskQueue reopened = new DiskQueue(directory, head, headRead, next);
+		assertEquals(count - 300, reopened.size());
+		assertPolls(reopened, 300, count);
+		assertNull(reopened.poll());
+	}
+
+	@Test
+	public void visitedSetReadsBackItsLog() throws Exception
+	{
+		File log = new File(folder.getRoot(), "visited");
+		VisitedSet visited = new VisitedSet(log, 0);
+		for (int i = 0; i < 5000; i++)
+			assertTrue(visited.add(url(i)));
+		assertFalse(visited.add(url(17)));
+		long length = visited.checkpoint();
+		for (int i = 5000; i < 6000; i++)
+			visited.add(url(i));
+
+		VisitedSet reopened = new VisitedSet(log, length);
+		assertEquals(5000, reopened.size());
+		for (int i = 0; i < 5000; i++)
+			assertTrue(reopened.contains(url(i)));
+		for (int i = 5000; i < 6000; i++)
+			assertFalse(reopened.contains(url(i)));
+
+		// A checkpoint that did not finish is cut off.
+		visited.checkpoint();
+		reopened = new VisitedSet(log, length);
+		assertEquals(5000, reopened.size());
+		assertTrue(reopened.add(url(5000)));
+	}
+
+	@Test
+	public void crawlStateResumesFromItsLastCheckpoint() throws Exception
+	{
+		File directory = new File(folder.getRoot(), "crawl");
+		CrawlState state = new CrawlState(directory, false);
+		assertFalse(state.isResumed());
+		for (int i = 0; i < 1000; i++)
+		{
+			state.getVisited().add(url(i));
+			state.getFrontier().add(new QueuedUrl(url(i), i % 5));
+		}
+		assertPolls(state.getFrontier(), 0, 400);
+		state.checkpoint();
+		assertPolls(state.getFrontier(), 400, 500);
+		state.getVisited().add("file:/site/lost.html");
+
+		CrawlState resumed = new CrawlState(directory, true);
+		assertTrue(resumed.isResumed());
+		assertEquals(1000, resumed.getVisited().size());
+		assertFalse(resumed.getVisited().contains("file:/site/lost.html"));
+		assertEquals(600, resumed.getFrontier().size());
+		assertPolls(resumed.getFrontier(), 400, 1000);
+
+		CrawlState restarted = new CrawlState(directory, false);
+		assertFalse(restarted.isResumed());
+		assertEquals(0, restarted.getVisited().size());
+		assertEquals(0, restarted.getFrontier().size());
+		restarted.delete();
+		assertFalse(directory.exists());
+	}
+}
@@ -0,0 +1,128 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * Helpers for tests that crawl pages on disk and compare the indexes they
+ * build.
+ */
+public class CrawlTestSupport {
+	/**
+	 * Writes a page, creating the directories it is in.
+	 * @param dir The top of the site.
+	 * @param path The path of the page under dir.
+	 * @param html The contents of the page.
+	 * @return The page.
+	 */
+	public static File write(File dir, String path, String html) throws IOException
+	{
+		File file = new File(dir, path);
+		file.getParentFile().mkdirs();
+		Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try {
+			out.write(html);
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	/**
+	 * Returns the canonical file: URL of a file, as the crawler records it.
+	 */
+	public static String url(File file)
+	{
+		return UrlCanonicalizer.canonicalize(file.toURI().toString());
+	}
+
+	/**
+	 * Writes a SyntheticCorpus under dir.
+	 * @return The URL of its index.html, where a crawl of all of it starts.
+	 */
+	public static String writeCorpus(File dir, int pages, long seed) throws IOException
+	{
+		new SyntheticCorpus(pages, seed).write(dir);
+		return url(new File(dir, "index.html"));
+	}
+
+	/**
+	 * Returns what an index holds, independently of the ids its documents
+	 * were given: for each word, the URL of each live document containing
+	 * it, with its positions there.
+	 */
+	public static Map<String, Map<String, List<Integer>>> contents(WebIndex index)
+	{
+		TreeMap<String, Map<String, List<Integer>>> words = new TreeMap<String, Map<String, List<Integer>>>();
+		BitSet live = index.getLiveDocs();
+		for (String word : index.getWords())
+		{
+			PostingsList postings = index.getPostings(word);
+			TreeMap<String, List<Integer>> docs = new TreeMap<String, List<Integer>>();
+			for (int i = 0; i < postings.size(); i++)
+			{
+				int doc = postings.getDoc(i);
+				if (!live.get(doc))
+					continue;
+				ArrayList<Integer> positions = new ArrayList<Integer>();
+				int[] p = postings.getPositions(i);
+				for (int j = 0; j < postings.getFrequency(i); j++)
+					positions.add(p[j]);
+				docs.put(index.getUrl(doc), positions);
+			}
+			if (!docs.isEmpty())
+				words.put(word, docs);
+		}
+		return words;
+	}
+
+	/**
+	 * Runs WebCrawler.main() with the given arguments.
+	 * @return What it printed.
+	 */
+	public static String crawl(String... args) throws Exception
+	{
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		PrintStream out = System.out;
+		System.setOut(new PrintStream(output, true));
+		try {
+			WebCrawler.main(args);
+		} finally {
+			System.setOut(out);
+		}
+		return output.toString();
+	}
+
+	/**
+	 * Returns the contents of the index in a segment directory.
+	 */
+	public static Map<String, Map<String, List<Integer>>> segmentContents(File directory) throws Exception
+	{
+		IndexSegments segments = new IndexSegments(directory.getPath());
+		try {
+			return contents(segments.getWebIndex());
+		} finally {
+			segments.close();
+		}
+	}
+
+	/**
+	 * Returns the index a plain serial crawl builds.
+	 */
+	public static WebIndex crawlIndex(String url)
+	{
+		WebCrawler crawler = new WebCrawler();
+		crawler.crawl(new LinkedList<String>(Collections.singletonList(url)));
+		return crawler.getWebIndex();
+	}
+
+	/**
+	 * Returns the URLs of the live documents of an index.
+	 */
+	public static Set<String> urls(WebIndex index)
+	{
+		TreeSet<String> urls = new TreeSet<String>();
+		BitSet live = index.getLiveDocs();
+		for (int doc = live.nextSetBit(0); doc >= 0; doc = live.nextSetBit(doc + 1))
+			urls.add(index.getUrl(doc));
+		return urls;
+	}
+}
@@ -0,0 +1,170 @@
+import java.util.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * The iterators that evaluate query plans give the documents the BitSet
+ * evaluation of the query tree they replaced gives, however they are
+ * stepped and skipped.
+ */
+public class DocIdIteratorTest {
+	/**
+	 * Returns postings holding a random subset of [0, range) with about the
+	 * given density, some of it in runs so that advance() has long gaps to
+	 * gallop over.
+	 */
+	private static PostingsList postings(Random random, int range, double density)
+	{
+		PostingsList postings = new PostingsList();
+		for (int doc = 0; doc < range; doc++)
+		{
+			if (random.nextInt(200) == 0)
+				doc += random.nextInt(range / 4 + 1);
+			if (doc < range && random.nextDouble() < density)
+				postings.add(doc, 0);
+		}
+		return postings;
+	}
+
+	private static BitSet bits(PostingsList postings)
+	{
+		BitSet bits = new BitSet();
+		for (int i = 0; i < postings.size(); i++)
+			bits.set(postings.getDoc(i));
+		return bits;
+	}
+
+	/**
+	 * Walks an iterator with a random mix of nextDoc() and advance(), and
+	 * checks each document against the set it should iterate over.
+	 */
+	private static void assertIterates(BitSet expected, DocIdIterator it, Random random)
+	{
+		assertEquals(-1, it.docId());
+		int doc = -1;
+		while (true)
+		{
+			int next;
+			int got;
+			if (random.nextBoolean())
+			{
+				next = expected.nextSetBit(doc + 1);
+				got = it.nextDoc();
+			}
+			else
+			{
+				int target = doc + 1 + random.nextInt(random.nextBoolean() ? 4 : 2000);
+				next = expected.nextSetBit(target);
+				got = it.advance(target);
+			}
+			if (next < 0)
+				next = DocIdIterator.NO_MORE_DOCS;
+			assertEquals("after " + doc, next, got);
+			assertEquals(got, it.docId());
+			if (got == DocIdIterator.NO_MORE_DOCS)
+				return;
+			doc = got;
+		}
+	}
+
+	@Test
+	public void postingsIteratorGallops()
+	{
+		Random random = new Random(1);
+		for (int trial = 0; trial < 200; trial++)
+		{
+			PostingsList postings = postings(random, 20000, random.nextDouble() * random.nextDouble());
+			assertIterates(bits(postings), new PostingsIterator(postings), random);
+		}
+		PostingsIterator empty = new PostingsIterator(new PostingsList());
+		assertEquals(DocIdIterator.NO_MORE_DOCS, empty.advance(5));
+	}
+
+	@Test
+	public void operatorsMatchBitSets()
+	{
+		Random random = new Random(2);
+		for (int trial = 0; trial < 200; trial++)
+		{
+			int n = 2 + random.nextInt(3);
+			ArrayList<PostingsList> operands = new ArrayList<PostingsList>();
+			for (int i = 0; i < n; i++)
+				operands.add(postings(random, 20000, random.nextDouble() * random.nextDouble()));
+			BitSet and = bits(operands.get(0));
+			BitSet or = bits(operands.get(0));
+			for (int i = 1; i < n; i++)
+			{
+				and.and(bits(operands.get(i)));
+				or.or(bits(operands.get(i)));
+			}
+			ArrayList<DocIdIterator> iterators = new ArrayList<DocIdIterator>();
+			for (PostingsList p : operands)
+				iterators.add(new PostingsIterator(p));
+			assertIterates(and, new DocIdIterator.Conjunction(iterators), random);
+
+			iterators.clear();
+			for (PostingsList p : operands)
+				iterators.add(new PostingsIterator(p));
+			assertIterates(or, new DocIdIterator.Disjunction(iterators), random);
+
+			BitSet andNot = bits(operands.get(0));
+			andNot.andNot(bits(operands.get(1)));
+			assertIterates(andNot, new DocIdIterator.Exclusion(new PostingsIterator(operands.get(0)),
+					new PostingsIterator(operands.get(1))), random);
+		}
+	}
+
+	/**
+	 * Evaluates a tree on BitSets, one node at a time, as queries were
+	 * evaluated before they were compiled into plans.
+	 */
+	private static BitSet evaluate(WebQueryEngine.Tree tree, WebIndex index)
+	{
+		BitSet docs;
+		if (tree.data.token == WebQueryEngine.AND_TOKEN || tree.data.token == WebQueryEngine.OR_TOKEN)
+		{
+			docs = evaluate(tree.left, index);
+			if (tree.data.token == WebQueryEngine.AND_TOKEN)
+				docs.and(evaluate(tree.right, index));
+			else
+				docs.or(evaluate(tree.right, index));
+		}
+		else
+		{
+			ArrayList<String> words = new ArrayList<String>();
+			words.add(tree.data.token.repr);
+			if (tree.data.otherTokens != null)
+				for (WebQueryEngine.Token t : tree.data.otherTokens)
+					words.add(t.repr);
+			docs = index.getDocs(words.get(0));
+			for (String word : words)
+				docs.and(index.getDocs(word));
+			if (tree.isPhrase)
+				for (int doc = docs.nextSetBit(0); doc >= 0; doc = docs.nextSetBit(doc + 1))
+					if (!index.hasPhrase(doc, words, tree.slop))
+						docs.clear(doc);
+		}
+		return tree.negated ? index.complementDocs(docs) : docs;
+	}
+
+	@Test
+	public void plansMatchTheTreeEvaluation()
+	{
+		WebIndex index = QueryTestSupport.randomIndex(3000, 3);
+		WebQueryEngine engine = new WebQueryEngine();
+		engine.useWebIndex(index);
+		Random random = new Random(4);
+		for (int trial = 0; trial < 2000; trial++)
+		{
+			String query = QueryTestSupport.randomQuery(random, 3);
+			BitSet expected = evaluate(engine.parse(query), index);
+			assertEquals(query, expected, engine.queryDocs(engine.parse(query)));
+			// And through the iterator, which dense plans answer from bitmaps.
+			BitSet iterated = new BitSet();
+			DocIdIterator it = engine.compile(engine.parse(query)).iterator();
+			for (int doc = it.nextDoc(); doc != DocIdIterator.NO_MORE_DOCS; doc = it.nextDoc())
+				iterated.set(doc);
+			assertEquals(query, expected, iterated);
+		}
+	}
+}
@@ -0,0 +1,168 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import org.junit.*;
+import org.junit.rules.*;
+import static org.junit.Assert.*;
+
+/**
+ * DuplicateDetector finds exact duplicates by content hash and near
+ * duplicates by SimHash, and its banding finds every SimHash close enough.
+ */
+public class DuplicateDetectorTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Returns some text of the given number of words.
+	 */
+	private static String text(int words, long seed)
+	{
+		Random random = new Random(seed);
+		StringBuffer text = new StringBuffer();
+		for (int i = 0; i < words; i++)
+		{
+			text.append(' ');
+			for (int length = 3 + random.nextInt(5); length > 0; length--)
+				text.append((char) ('a' + random.nextInt(26)));
+		}
+		return text.toString();
+	}
+
+	private static DocumentBuffer buffer(String text)
+	{
+		DocumentBuffer words = new DocumentBuffer();
+		words.addPhrase(text.toCharArray());
+		return words;
+	}
+
+	@Test
+	public void findsExactDuplicates()
+	{
+		DuplicateDetector detector = new DuplicateDetector();
+		assertNull(detector.check("a", 1, 0));
+		assertEquals("a", detector.check("b", 1, 0));
+		assertNull(detector.check("c", 2, 0));
+		assertEquals(2, detector.size());
+		// A document checked again is not its own duplicate.
+		assertNull(detector.check("a", 1, 0));
+		detector.remove("a");
+		assertNull(detector.check("b", 1, 0));
+		assertEquals("b", detector.check("a", 1, 0));
+	}
+
+	@Test
+	public void comparesOnlyLongDocumentsBySimHash()
+	{
+		String text = text(100, 1);
+		String edited = text.replaceFirst(" [a-z]+$", " changed");
+		DocumentBuffer original = buffer(text);
+		DocumentBuffer copy = buffer(edited);
+		assertTrue(Long.bitCount(original.getSimHash() ^ copy.getSimHash()) <= DuplicateDetector.NEAR_DISTANCE);
+		DuplicateDetector detector = new DuplicateDetector();
+		assertNull(detector.check("a", original.getContentHash(), DuplicateDetector.simHash(original)));
+		assertEquals("a", detector.check("b", copy.getContentHash(), DuplicateDetector.simHash(copy)));
+		assertNull(detector.check("c", buffer(text(100, 2)).getContentHash(), DuplicateDetector.simHash(buffer(text(100, 2)))));
+
+		DocumentBuffer brief = buffer(text(DuplicateDetector.NEAR_MIN_WORDS - 1, 3));
+		assertEquals(0, DuplicateDetector.simHash(brief));
+	}
+
+	@Test
+	public void bandingFindsWhatComparingEveryPairWould()
+	{
+		Random random = new Random(4);
+		DuplicateDetector detector = new DuplicateDetector();
+		HashMap<String, Long> added = new HashMap<String, Long>();
+		ArrayList<Long> simHashes = new ArrayList<Long>();
+		for (int i = 0; i < 5000; i++)
+		{
+			long simHash;
+			if (simHashes.isEmpty() || random.nextBoolean())
+				simHash = random.nextLong();
+			else
+			{
+				// A few random bits away from a SimHash already seen.
+				simHash = simHashes.get(random.nextInt(simHashes.size()));
+				for (int flips = random.nextInt(DuplicateDetector.NEAR_DISTANCE + 3); flips > 0; flips--)
+					simHash ^= 1L << random.nextInt(64);
+			}
+			if (simHash == 0)
+				continue;
+			simHashes.add(simHash);
+			String url = "u" + i;
+			boolean near = false;
+			for (long other : added.values())
+				near |= Long.bitCount(other ^ simHash) <= DuplicateDetector.NEAR_DISTANCE;
+			String found = detector.check(url, i, simHash);
+			assertEquals(url, near, found != null);
+			if (found != null)
+				assertTrue(Long.bitCount(added.get(found) ^ simHash) <= DuplicateDetector.NEAR_DISTANCE);
+			else
+				added.put(url, simHash);
+			if (random.nextInt(10) == 0 && !added.isEmpty())
+			{
+				String removed = added.keySet().iterator().next();
+				detector.remove(removed);
+				added.remove(removed);
+			}
+		}
+		assertEquals(added.size(), detector.size());
+	}
+
+	/**
+	 * Copies the files of a directory tree.
+	 */
+	private static void copy(File from, File to) throws IOException
+	{
+		to.mkdirs();
+		for (File file : from.listFiles())
+		{
+			File target = new File(to, file.getName());
+			if (file.isDirectory())
+				copy(file, target);
+			else
+				Files.copy(file.toPath(), target.toPath());
+		}
+	}
+
+	@Test
+	public void recordsAMirroredTreeAsAliases() throws Exception
+	{
+		File site = folder.newFolder("site");
+		File docs = new File(site, "docs");
+		File mirror = new File(site, "mirror");
+		String docsStart = CrawlTestSupport.writeCorpus(docs, 40, 6);
+		copy(docs, mirror);
+		// A page of the mirror that differs in one word of a long text.
+		String text = text(200, 5);
+		CrawlTestSupport.write(docs, "long.html", "<html><body>" + text + "</body></html>");
+		CrawlTestSupport.write(mirror, "long.html", "<html><body>" + text.replaceFirst(" [a-z]+$", " changed") + "</body></html>");
+		String mirrorStart = CrawlTestSupport.url(new File(mirror, "index.html"));
+		CrawlTestSupport.write(site, "index.html", "<html><body><a href=\"docs/index.html\">docs</a>"
+				+ " <a href=\"docs/long.html\">long</a> <a href=\"mirror/index.html\">mirror</a>"
+				+ " <a href=\"mirror/long.html\">long</a></body></html>");
+		String start = CrawlTestSupport.url(new File(site, "index.html"));
+
+		Set<String> original = CrawlTestSupport.urls(CrawlTestSupport.crawlIndex(docsStart));
+		File segments = folder.newFolder("segments");
+		String output = CrawlTestSupport.crawl("-segments", segments.getPath(), "-dedupe", start);
+		int mirrored = original.size() + 1;
+		assertTrue(output, output.contains("Recorded " + mirrored + " duplicate pages as aliases"));
+
+		Set<String> indexed = CrawlTestSupport.urls(IndexSegments.open(segments.getPath()));
+		assertEquals(original.size() + 2, indexed.size());
+		assertTrue(indexed.containsAll(original));
+		Map<String, String> aliases = CrawlMetadata.load(new File(segments, "metadata").getPath()).getDuplicates();
+		assertEquals(mirrored, aliases.size());
+		String docsUrl = CrawlTestSupport.url(docs);
+		String mirrorUrl = CrawlTestSupport.url(mirror);
+		for (Map.Entry<String, String> alias : aliases.entrySet())
+			assertEquals(alias.getKey().replace(mirrorUrl, docsUrl), alias.getValue());
+
+		// A crawl without -dedupe indexes both trees.
+		File all = folder.newFolder("all");
+		CrawlTestSupport.crawl("-segments", all.getPath(), start);
+		assertEquals(2 * original.size() + 3, CrawlTestSupport.urls(IndexSegments.open(all.getPath())).size());
+	}
+}
@@ -0,0 +1,107 @@
+import java.io.*;
+import java.util.*;
+import javax.swing.text.*;
+import javax.swing.text.html.*;
+import javax.swing.text.html.parser.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * HtmlScanner reports the runs of text and the links of a document as the
+ * Swing parser does, skipping what the crawler does not index.
+ */
+public class HtmlScannerTest {
+	/**
+	 * Records the runs of text, each in brackets, and the href of each link.
+	 */
+	private static class Recorder extends HTMLEditorKit.ParserCallback {
+		ArrayList<String> text = new ArrayList<String>();
+		ArrayList<String> links = new ArrayList<String>();
+
+		public void handleText(char[] data, int pos) {
+			text.add(new String(data));
+		}
+
+		public void handleStartTag(HTML.Tag t, MutableAttributeSet a, int pos) {
+			if (t == HTML.Tag.A)
+				links.add((String) a.getAttribute(HTML.Attribute.HREF));
+		}
+	}
+
+	private static Recorder parse(HTMLEditorKit.Parser parser, String html) throws IOException
+	{
+		Recorder recorder = new Recorder();
+		parser.parse(new StringReader(html), recorder, true);
+		return recorder;
+	}
+
+	/**
+	 * Returns the words of the runs of text, as the crawler would index them.
+	 */
+	private static List<String> words(Recorder recorder)
+	{
+		ArrayList<String> words = new ArrayList<String>();
+		for (String run : recorder.text)
+			for (String word : run.trim().split("\\s+"))
+				if (word.length() > 0)
+					words.add(word);
+		return words;
+	}
+
+	@Test
+	public void decodesCharacterReferences() throws Exception
+	{
+		Recorder page = parse(new HtmlScanner(),
+				"<p>Fish &amp; chips &lt;3 &eacute;t&#233; &#x41;&bogus; AT&T &#0;</p>");
+		assertEquals(Arrays.asList("Fish & chips <3 été A&bogus; AT&T &#0;"), page.text);
+	}
+
+	@Test
+	public void skipsCommentsScriptsAndStyles() throws Exception
+	{
+		Recorder page = parse(new HtmlScanner(), "<html><head><title>T</title>"
+				+ "<style>p { color: red }</style>"
+				+ "<SCRIPT>if (a < b) document.write(\"<p>no</p>\")</SCRIPT></head>"
+				+ "<body><!-- hidden <b>text</b> --><p>shown</p> \n <p>too</p></body></html>");
+		assertEquals(Arrays.asList("T", "shown", "too"), page.text);
+	}
+
+	@Test
+	public void reportsTheHrefOfEachLink() throws Exception
+	{
+		Recorder page = parse(new HtmlScanner(), "<a href=\"x.html?a=1&amp;b=2\">X</a>"
+				+ "<A HREF=y.html>Y</A><a name=top>Top</a><a title='t' href = 'z.html#frag'>Z</a>"
+				+ "<img src=\"w.png\">");
+		assertEquals(Arrays.asList("x.html?a=1&b=2", "y.html", null, "z.html#frag"), page.links);
+		assertEquals(Arrays.asList("X", "Y", "Top", "Z"), page.text);
+	}
+
+	@Test
+	public void readsTagsAndTextLongerThanItsBuffer() throws Exception
+	{
+		StringBuffer href = new StringBuffer("long");
+		StringBuffer text = new StringBuffer();
+		for (int i = 0; i < HtmlScanner.BUFFER_SIZE; i++)
+		{
+			href.append('/').append(i % 10);
+			text.append("word").append(i).append(' ');
+		}
+		Recorder page = parse(new HtmlScanner(), "<p>" + text + "</p><a href=\"" + href + ".html\">end</a>");
+		assertEquals(Arrays.asList(href + ".html"), page.links);
+		assertEquals(Arrays.asList((text + "end").split(" ")), words(page));
+	}
+
+	@Test
+	public void findsTheSameWordsAndLinksAsTheSwingParser() throws Exception
+	{
+		SyntheticCorpus corpus = new SyntheticCorpus(20, 3);
+		for (int page = 0; page < 20; page++)
+		{
+			String html = corpus.generatePage(page);
+			Recorder scanned = parse(new HtmlScanner(), html);
+			Recorder swing = parse(new ParserDelegator(), html);
+			assertEquals(corpus.getPath(page), words(swing), words(scanned));
+			assertEquals(corpus.getPath(page), swing.links, scanned.links);
+		}
+	}
+}
@@ -0,0 +1,95 @@
+import java.io.*;
+import java.util.*;
+import org.junit.*;
+import org.junit.rules.*;
+import static org.junit.Assert.*;
+
+/**
+ * Indexes written by IndexWriter, or serialized, must read back with the
+ * same contents, and indexes serialized by the first version must still
+ * load.
+ */
+public class IndexFormatTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Returns an index of documents of words drawn from a SyntheticCorpus.
+	 */
+	private static WebIndex newIndex()
+	{
+		SyntheticCorpus corpus = new SyntheticCorpus(0, 3);
+		Random random = new Random(3);
+		WebIndex index = new WebIndex();
+		for (int doc = 0; doc < 200; doc++)
+		{
+			StringBuffer text = new StringBuffer();
+			int words = 1 + random.nextInt(random.nextInt(10) == 0 ? 2000 : 100);
+			for (int i = 0; i < words; i++)
+				text.append(corpus.nextWord(random)).append(' ');
+			index.addPhraseToFile("file:/site/p" + doc + ".html", text.toString().toCharArray());
+		}
+		return index;
+	}
+
+	@Test
+	public void binaryFormatRoundTrips() throws IOException
+	{
+		WebIndex index = newIndex();
+		File file = folder.newFile("index.db");
+		index.save(file.getPath());
+		WebIndex loaded = (WebIndex) Index.load(file.getPath());
+		assertEquals(index.getDocumentCount(), loaded.getDocumentCount());
+		for (int doc = 0; doc < index.getDocumentCount(); doc++)
+			assertEquals(index.getWordCount(doc), loaded.getWordCount(index.getDocumentId(loaded.getUrl(doc))));
+		assertEquals(CrawlTestSupport.contents(index), CrawlTestSupport.contents(loaded));
+	}
+
+	@Test
+	public void mappedIndexReadsTheBinaryFormat() throws IOException
+	{
+		WebIndex index = newIndex();
+		File file = folder.newFile("index.db");
+		index.save(file.getPath());
+		assertEquals(CrawlTestSupport.contents(index), CrawlTestSupport.contents(new MappedWebIndex(file.getPath())));
+	}
+
+	@Test
+	public void serializedFormatRoundTrips() throws IOException
+	{
+		WebIndex index = newIndex();
+		File file = folder.newFile("index.ser");
+		index.saveSerialized(file.getPath());
+		WebIndex loaded = (WebIndex) Index.load(file.getPath());
+		assertEquals(CrawlTestSupport.contents(index), CrawlTestSupport.contents(loaded));
+	}
+
+	@Test
+	public void firstVersionSerializedIndexLoads() throws IOException
+	{
+		// Serialized by the first version, from the phrases "The quick brown
+		// fox jumps over the lazy dog. " and "The dog sleeps. " in a.html and
+		// "A quick red fox. " in b.html.
+		File file = folder.newFile("baseline.ser");
+		InputStream in = getClass().getResourceAsStream("/baseline.ser");
+		try {
+			java.nio.file.Files.copy(in, file.toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			in.close();
+		}
+		WebIndex index = (WebIndex) Index.load(file.getPath());
+		assertNotNull(index);
+		assertEquals(2, index.getDocumentCount());
+		Map<String, Map<String, List<Integer>>> contents = CrawlTestSupport.contents(index);
+		assertEquals(Arrays.asList(1, 7, 10), contents.get("the").get("file:/site/a.html"));
+		assertEquals(Arrays.asList(9, 11), contents.get("dog").get("file:/site/a.html"));
+		assertEquals(Arrays.asList(4), contents.get("fox").get("file:/site/b.html"));
+		assertEquals(12, index.getWordCount(index.getDocumentId("file:/site/a.html")));
+
+		WebQueryEngine engine = new WebQueryEngine();
+		engine.useWebIndex(index);
+		assertEquals(new HashSet<String>(Arrays.asList("file:/site/a.html", "file:/site/b.html")), new HashSet<Object>(engine.query("fox")));
+		assertEquals(Collections.singleton("file:/site/a.html"), new HashSet<Object>(engine.query("\"lazy dog\"")));
+		assertEquals(Collections.singleton("file:/site/b.html"), new HashSet<Object>(engine.query("(quick & !dog)")));
+	}
+}
@@ -0,0 +1,50 @@
+import java.io.*;
+import java.util.*;
+import org.junit.*;
+import org.junit.rules.*;
+import static org.junit.Assert.*;
+
+/**
+ * A segment directory opened read-only with IndexSegments.open() sees the
+ * segments written to it, and is neither created nor merged by the reader.
+ */
+public class IndexSegmentsTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static WebIndex page(String url, String text)
+	{
+		WebIndex index = new WebIndex();
+		index.addPhraseToFile(url, text.toCharArray());
+		return index;
+	}
+
+	@Test
+	public void openDoesNotCreateAMissingDirectory() throws Exception
+	{
+		File missing = new File(folder.getRoot(), "missing");
+		try {
+			IndexSegments.open(missing.getPath());
+			fail("opened " + missing);
+		} catch (IOException e) {
+		}
+		assertFalse(missing.exists());
+	}
+
+	@Test
+	public void openSeesEachNewSegment() throws Exception
+	{
+		String directory = folder.newFolder("segments").getPath();
+		IndexSegments writer = new IndexSegments(directory);
+		writer.addSegment(page("file:/site/a.html", "the quick brown fox"), Collections.<String>emptyList());
+		Map<String, Map<String, List<Integer>>> before = CrawlTestSupport.contents(IndexSegments.open(directory));
+		assertEquals(Collections.singleton("file:/site/a.html"), before.get("fox").keySet());
+
+		writer.addSegment(page("file:/site/b.html", "a red fox"), Collections.<String>emptyList());
+		writer.addSegment(page("file:/site/a.html", "the lazy dog"), Collections.<String>emptyList());
+		writer.close();
+		Map<String, Map<String, List<Integer>>> after = CrawlTestSupport.contents(IndexSegments.open(directory));
+		assertEquals(Collections.singleton("file:/site/b.html"), after.get("fox").keySet());
+		assertEquals(Collections.singleton("file:/site/a.html"), after.get("dog").keySet());
+	}
+}
@@ -0,0 +1,43 @@
+import java.io.*;
+import java.util.*;
+import org.junit.*;
+import org.junit.rules.*;
+import static org.junit.Assert.*;
+
+/**
+ * Links written with "." and ".." segments or with a fragment reach the
+ * page they name, which is crawled and indexed once under its canonical
+ * URL.
+ */
+public class LinkCanonicalizationTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void crawlsEachPageOnceHoweverItIsLinked() throws Exception
+	{
+		File site = folder.newFolder("site");
+		CrawlTestSupport.write(site, "index.html", "<html><body>home"
+				+ " <a href=\"missing/../b.html\">b</a> <a href=\"b.html#frag\">b</a> <a href=\"./b.html\">b</a>"
+				+ " <a href=\"a/c.html#top\">c</a> <a href=\"a/./c.html\">c</a> <a href=\"#frag\">here</a>"
+				+ "</body></html>");
+		CrawlTestSupport.write(site, "b.html", "<html><body>bee <a href=\"a/../a/c.html#x\">c</a></body></html>");
+		CrawlTestSupport.write(site, "a/c.html", "<html><body>sea <a href=\"../b.html#top\">b</a>"
+				+ " <a href=\"../index.html\">home</a> <a href=\"c.html#self\">c</a></body></html>");
+		String start = CrawlTestSupport.url(new File(site, "index.html"));
+		Set<String> expected = new TreeSet<String>(Arrays.asList(start,
+				CrawlTestSupport.url(new File(site, "b.html")), CrawlTestSupport.url(new File(site, "a/c.html"))));
+
+		for (String mode : new String[] { "serial", "parallel", "virtual" })
+		{
+			File segments = folder.newFolder(mode);
+			String output = CrawlTestSupport.crawl("-segments", segments.getPath(), "-mode", mode, start + "#intro");
+			assertTrue(output, output.contains("Crawled 3 pages"));
+			WebIndex index = IndexSegments.open(segments.getPath());
+			assertEquals(mode, expected, CrawlTestSupport.urls(index));
+			assertEquals(mode, 3, index.getDocumentCount());
+			Map<String, Map<String, List<Integer>>> contents = CrawlTestSupport.contents(index);
+			assertEquals(mode, Collections.singleton(CrawlTestSupport.url(new File(site, "b.html"))), contents.get("bee").keySet());
+		}
+	}
+}
@@ -0,0 +1,106 @@
+import java.util.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * An LruCache must stay within its weight by evicting the least recently
+ * used entries, and count its hits and misses.
+ */
+public class LruCacheTest {
+	/**
+	 * Weighs a string by its length.
+	 */
+	private static LruCache<String, String> newCache(long maxWeight)
+	{
+		return new LruCache<String, String>(maxWeight,
+				new LruCache.Weigher<String, String>() {
+					public long weigh(String key, String value) {
+						return value.length();
+					}
+				});
+	}
+
+	@Test
+	public void evictsTheLeastRecentlyUsedEntriesToStayWithinItsWeight()
+	{
+		LruCache<String, String> cache = newCache(10);
+		cache.put("a", "aaaa");
+		cache.put("b", "bbbb");
+		assertEquals(8, cache.getWeight());
+		// Using a makes b the least recently used entry.
+		assertEquals("aaaa", cache.get("a"));
+		cache.put("c", "cccc");
+		assertNull(cache.get("b"));
+		assertEquals("aaaa", cache.get("a"));
+		assertEquals("cccc", cache.get("c"));
+		assertEquals(2, cache.size());
+		assertEquals(8, cache.getWeight());
+		assertEquals(1, cache.getEvictions());
+
+		// One heavy entry can push out several light ones.
+		cache.put("d", "dddddddddd");
+		assertEquals(1, cache.size());
+		assertEquals(10, cache.getWeight());
+		assertEquals(3, cache.getEvictions());
+	}
+
+	@Test
+	public void replacingAnEntryReweighsIt()
+	{
+		LruCache<String, String> cache = newCache(10);
+		cache.put("a", "aaaa");
+		cache.put("a", "aa");
+		assertEquals(1, cache.size());
+		assertEquals(2, cache.getWeight());
+		assertEquals("aa", cache.get("a"));
+	}
+
+	@Test
+	public void entriesHeavierThanTheCacheAreNotCached()
+	{
+		LruCache<String, String> cache = newCache(10);
+		cache.put("a", "aaaa");
+		cache.put("b", "bbbb");
+		cache.put("a", "aaaaaaaaaaa");
+		assertNull(cache.get("a"));
+		assertEquals("bbbb", cache.get("b"));
+		assertEquals(4, cache.getWeight());
+		assertEquals(0, cache.getEvictions());
+	}
+
+	@Test
+	public void countsHitsAndMisses()
+	{
+		LruCache<String, String> cache = newCache(10);
+		assertNull(cache.get("a"));
+		cache.put("a", "aaaa");
+		cache.get("a");
+		cache.get("a");
+		cache.get("b");
+		assertEquals(2, cache.getHits());
+		assertEquals(2, cache.getMisses());
+
+		// Clearing the cache keeps the counters.
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getWeight());
+		assertNull(cache.get("a"));
+		assertEquals(2, cache.getHits());
+		assertEquals(3, cache.getMisses());
+	}
+
+	@Test
+	public void indexChangesClearTheDocSetCache()
+	{
+		WebIndex index = new WebIndex();
+		index.addPhraseToFile("file:/a.html", "apple".toCharArray());
+		long version = index.getVersion();
+		LruCache<String, RoaringDocSet> docSets = index.getDocSetCache();
+		docSets.put("apple", RoaringDocSet.range(0, 1));
+		assertEquals(1, docSets.size());
+
+		index.addPhraseToFile("file:/b.html", "apple".toCharArray());
+		assertTrue(index.getVersion() != version);
+		assertEquals(0, docSets.size());
+	}
+}
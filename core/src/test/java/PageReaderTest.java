@@ -0,0 +1,167 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.charset.*;
+import java.util.*;
+import org.junit.*;
+import org.junit.rules.*;
+import static org.junit.Assert.*;
+
+/**
+ * PageReader decodes a page with the charset it declares, whether the file
+ * is read into a buffer or mapped, and hashes its bytes as a
+ * HashingInputStream does.
+ */
+public class PageReaderTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static final byte[] NO_BOM = {};
+	private static final byte[] UTF_8_BOM = { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF };
+	private static final byte[] UTF_16BE_BOM = { (byte) 0xFE, (byte) 0xFF };
+	private static final byte[] UTF_16LE_BOM = { (byte) 0xFF, (byte) 0xFE };
+
+	/**
+	 * Returns a page of about the given length, with a head and some text
+	 * that is not ASCII.
+	 */
+	private static String page(String head, int length)
+	{
+		StringBuffer page = new StringBuffer("<html><head>" + head + "</head><body>\n");
+		for (int i = 0; page.length() < length; i++)
+			page.append("<p>Café crème, naïve façade ").append(i).append("</p>\n");
+		return page.append("</body></html>\n").toString();
+	}
+
+	private File write(byte[] bom, String text, Charset charset) throws IOException
+	{
+		File file = folder.newFile();
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(bom);
+			out.write(text.getBytes(charset));
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	private static String readAll(Reader in) throws IOException
+	{
+		StringBuffer text = new StringBuffer();
+		char[] buffer = new char[4096];
+		int n;
+		while ((n = in.read(buffer)) >= 0)
+			text.append(buffer, 0, n);
+		return text.toString();
+	}
+
+	/**
+	 * Returns the hash a crawl reading the file through a HashingInputStream
+	 * computes.
+	 */
+	private static long streamHash(File file) throws IOException
+	{
+		HashingInputStream in = new HashingInputStream(new FileInputStream(file));
+		try {
+			readAll(new InputStreamReader(in, StandardCharsets.ISO_8859_1));
+		} finally {
+			in.close();
+		}
+		return in.getHash();
+	}
+
+	/**
+	 * Reads a page below and above MAP_THRESHOLD, with one reader as a
+	 * crawl would, and checks the text, charset and hash of each.
+	 */
+	private void check(PageReader reader, byte[] bom, String head, Charset written, Charset expected) throws IOException
+	{
+		for (int length : new int[] { 200, PageReader.MAP_THRESHOLD - 4096, PageReader.MAP_THRESHOLD * 3 })
+		{
+			String text = page(head, length);
+			File file = write(bom, text, written);
+			String message = written + " with " + head + ", " + file.length() + " bytes";
+			assertEquals(message, text, readAll(reader.read(file)));
+			assertEquals(message, expected, reader.getCharset());
+			assertEquals(message, streamHash(file), reader.getHash());
+		}
+	}
+
+	@Test
+	public void decodesByByteOrderMark() throws Exception
+	{
+		PageReader reader = new PageReader();
+		check(reader, UTF_8_BOM, "", StandardCharsets.UTF_8, StandardCharsets.UTF_8);
+		check(reader, UTF_16BE_BOM, "", StandardCharsets.UTF_16BE, StandardCharsets.UTF_16BE);
+		check(reader, UTF_16LE_BOM, "", StandardCharsets.UTF_16LE, StandardCharsets.UTF_16LE);
+		// The mark wins over a meta tag.
+		check(reader, UTF_8_BOM, "<meta charset=\"iso-8859-1\">", StandardCharsets.UTF_8, StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void decodesByMetaCharset() throws Exception
+	{
+		PageReader reader = new PageReader();
+		check(reader, NO_BOM, "<meta charset=\"ISO-8859-1\">", StandardCharsets.ISO_8859_1, StandardCharsets.ISO_8859_1);
+		check(reader, NO_BOM, "<META CHARSET=utf-8>", StandardCharsets.UTF_8, StandardCharsets.UTF_8);
+		check(reader, NO_BOM, "<meta http-equiv=\"Content-Type\" content=\"text/html; charset=windows-1252\">",
+				Charset.forName("windows-1252"), Charset.forName("windows-1252"));
+	}
+
+	@Test
+	public void decodesUndeclaredPagesAsAStreamWould() throws Exception
+	{
+		PageReader reader = new PageReader();
+		for (int length : new int[] { 200, PageReader.MAP_THRESHOLD * 3 })
+		{
+			File file = write(NO_BOM, page("<title>plain</title>", length), Charset.defaultCharset());
+			Reader in = new InputStreamReader(new FileInputStream(file));
+			try {
+				assertEquals(readAll(in), readAll(reader.read(file)));
+			} finally {
+				in.close();
+			}
+			assertEquals(Charset.defaultCharset(), reader.getCharset());
+			assertEquals(streamHash(file), reader.getHash());
+		}
+	}
+
+	@Test
+	public void readsEmptyFiles() throws Exception
+	{
+		PageReader reader = new PageReader();
+		File file = folder.newFile();
+		assertEquals("", readAll(reader.read(file)));
+		assertEquals(streamHash(file), reader.getHash());
+	}
+
+	private static ByteBuffer bytes(String s)
+	{
+		return ByteBuffer.wrap(s.getBytes(StandardCharsets.ISO_8859_1));
+	}
+
+	@Test
+	public void detectCharset() throws Exception
+	{
+		Charset fallback = StandardCharsets.US_ASCII;
+		ByteBuffer in = ByteBuffer.wrap(new byte[] { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF, 'x' });
+		assertEquals(StandardCharsets.UTF_8, PageReader.detectCharset(in, fallback));
+		assertEquals(3, in.position());
+		in = bytes("<html><meta charset='koi8-r'/>");
+		assertEquals(Charset.forName("KOI8-R"), PageReader.detectCharset(in, fallback));
+		assertEquals(0, in.position());
+
+		assertEquals(fallback, PageReader.detectCharset(bytes(""), fallback));
+		assertEquals(fallback, PageReader.detectCharset(bytes("<p>no meta tag</p>"), fallback));
+		assertEquals(fallback, PageReader.detectCharset(bytes("<meta name=\"charset\">"), fallback));
+		assertEquals(fallback, PageReader.detectCharset(bytes("<meta charset=\"no-such-charset\">"), fallback));
+		assertEquals(fallback, PageReader.detectCharset(bytes("<meta charset=\"b@d\">"), fallback));
+		// A page that could be read as ASCII is not UTF-16, whatever it says.
+		assertEquals(StandardCharsets.UTF_8, PageReader.detectCharset(bytes("<meta charset=utf-16>"), fallback));
+
+		// Only the start of a page is searched.
+		char[] padding = new char[PageReader.CHARSET_SCAN];
+		Arrays.fill(padding, ' ');
+		assertEquals(fallback, PageReader.detectCharset(bytes(new String(padding) + "<meta charset=utf-8>"), fallback));
+	}
+}
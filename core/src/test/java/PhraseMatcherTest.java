@@ -0,0 +1,88 @@
+import java.util.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * PhraseMatcher must agree with trying every combination of one position
+ * per word: the phrase matches if, once each position is shifted back by
+ * its word's offset in the phrase, some combination spans at most the
+ * slop.
+ */
+public class PhraseMatcherTest {
+	private static boolean matches(int slop, int[]... positions)
+	{
+		List<String> words = new ArrayList<String>();
+		for (int i = 0; i < positions.length; i++)
+			words.add("w" + i);
+		PhraseMatcher matcher = new PhraseMatcher(words, slop);
+		for (int i = 0; i < positions.length; i++)
+			matcher.set(i, positions[i], positions[i].length);
+		return matcher.matches();
+	}
+
+	private static boolean bruteForce(int slop, int[][] positions, int word, int min, int max)
+	{
+		if (word == positions.length)
+			return max - min <= slop;
+		for (int position : positions[word])
+		{
+			int shifted = position - word;
+			if (bruteForce(slop, positions, word + 1, Math.min(min, shifted), Math.max(max, shifted)))
+				return true;
+		}
+		return false;
+	}
+
+	@Test
+	public void exactPhrases()
+	{
+		// "a b" in "a b c a"
+		assertTrue(matches(0, new int[] {1, 4}, new int[] {2}));
+		// "b a" in "a b c a"
+		assertFalse(matches(0, new int[] {2}, new int[] {4}));
+		// "a c" in "a b c a"
+		assertFalse(matches(0, new int[] {1, 4}, new int[] {3}));
+		// A word with no positions never matches.
+		assertFalse(matches(5, new int[] {1}, new int[0]));
+	}
+
+	@Test
+	public void sloppyPhrases()
+	{
+		// "a c"~1 in "a b c": c is one position late.
+		assertFalse(matches(0, new int[] {1}, new int[] {3}));
+		assertTrue(matches(1, new int[] {1}, new int[] {3}));
+		// "c a" in "a b c": c at 3 stays at 3 and a at 1 shifts back to 0,
+		// so the words are 3 apart and only a slop of 3 matches.
+		assertFalse(matches(2, new int[] {3}, new int[] {1}));
+		assertTrue(matches(3, new int[] {3}, new int[] {1}));
+		// Three words, each one late: "a b c"~2 in "a x b y c".
+		assertFalse(matches(1, new int[] {1}, new int[] {3}, new int[] {5}));
+		assertTrue(matches(2, new int[] {1}, new int[] {3}, new int[] {5}));
+	}
+
+	@Test
+	public void agreesWithBruteForce()
+	{
+		Random random = new Random(12);
+		for (int round = 0; round < 20000; round++)
+		{
+			int words = 1 + random.nextInt(4);
+			int slop = random.nextInt(3) == 0 ? 0 : random.nextInt(6);
+			int[][] positions = new int[words][];
+			for (int i = 0; i < words; i++)
+			{
+				TreeSet<Integer> chosen = new TreeSet<Integer>();
+				int count = random.nextInt(5);
+				for (int j = 0; j < count; j++)
+					chosen.add(1 + random.nextInt(30));
+				positions[i] = new int[chosen.size()];
+				int j = 0;
+				for (int position : chosen)
+					positions[i][j++] = position;
+			}
+			assertEquals(Arrays.deepToString(positions) + "~" + slop,
+					bruteForce(slop, positions, 0, Integer.MAX_VALUE, Integer.MIN_VALUE), matches(slop, positions));
+		}
+	}
+}
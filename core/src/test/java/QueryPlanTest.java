@@ -0,0 +1,92 @@
+import java.util.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * Compiling a query tree flattens chains of one operator, orders the
+ * operands of a conjunction by cost and turns negated operands into set
+ * differences.
+ */
+public class QueryPlanTest {
+	private static WebIndex index;
+	private static WebQueryEngine engine;
+
+	@BeforeClass
+	public static void buildIndex()
+	{
+		index = QueryTestSupport.randomIndex(2000, 1);
+		engine = new WebQueryEngine();
+		engine.useWebIndex(index);
+	}
+
+	private static QueryPlan plan(String query)
+	{
+		return engine.compile(engine.parse(query));
+	}
+
+	private static long df(String word)
+	{
+		PostingsList postings = index.getPostings(word);
+		return postings == null ? 0 : postings.size();
+	}
+
+	@Test
+	public void wordsAreRarestLastInTheIndex()
+	{
+		String[] words = QueryTestSupport.WORDS;
+		for (int i = 1; i < words.length; i++)
+			assertTrue(words[i], df(words[i]) <= df(words[i - 1]));
+		assertTrue(index.isDense(df("apple")));
+		assertFalse(index.isDense(df("lemon")));
+	}
+
+	@Test
+	public void costsFollowDocumentFrequencies()
+	{
+		int docs = index.getDocumentCount();
+		assertEquals(df("fig"), plan("fig").cost());
+		assertEquals(0, plan("missing").cost());
+		assertEquals(Math.min(df("fig"), df("kiwi")), plan("(fig & kiwi)").cost());
+		assertEquals(Math.min(docs, df("fig") + df("kiwi")), plan("(fig | kiwi)").cost());
+		assertEquals(docs, plan("(apple | banana)").cost());
+		assertEquals(df("fig"), plan("(fig & !kiwi)").cost());
+		assertEquals(docs, plan("!fig").cost());
+		assertEquals(Math.min(df("fig"), df("kiwi")), plan("\"fig kiwi\"").cost());
+	}
+
+	@Test
+	public void conjunctionsAreFlattenedAndOrderedRarestFirst()
+	{
+		assertEquals("(lemon & fig & apple)", plan("(apple & (fig & lemon))").toString());
+		assertEquals("(lemon & fig & apple)", plan("((apple & lemon) & fig)").toString());
+		assertEquals("(kiwi & cherry & banana)", plan("banana cherry kiwi").toString());
+		assertEquals("(kiwi & (apple | lemon))", plan("((apple | lemon) & kiwi)").toString());
+		assertEquals("(apple | fig | lemon)", plan("(apple | (fig | lemon))").toString());
+		// A negated chain is an operand of its own.
+		assertEquals("(apple | !(fig | lemon))", plan("(apple | !(fig | lemon))").toString());
+	}
+
+	@Test
+	public void negatedOperandsBecomeDifferences()
+	{
+		assertEquals("(fig - kiwi)", plan("(fig & !kiwi)").toString());
+		assertEquals("(fig - (kiwi | lemon))", plan("((!kiwi & fig) & !lemon)").toString());
+		assertEquals("((lemon & fig) - apple)", plan("(fig & (lemon & !apple))").toString());
+		// Only a query with nothing positive is a complement.
+		assertEquals("!kiwi", plan("!kiwi").toString());
+		assertEquals("!(kiwi | lemon)", plan("(!kiwi & !lemon)").toString());
+		assertEquals("kiwi", plan("!!kiwi").toString());
+	}
+
+	@Test
+	public void planTypes()
+	{
+		assertTrue(plan("fig") instanceof QueryPlan.Term);
+		assertTrue(plan("\"fig kiwi\"~2") instanceof QueryPlan.Phrase);
+		assertEquals("\"fig kiwi\"~2", plan("\"fig kiwi\"~2").toString());
+		assertTrue(plan("(fig & kiwi)") instanceof QueryPlan.And);
+		assertTrue(plan("(fig | kiwi)") instanceof QueryPlan.Or);
+		assertTrue(plan("(fig & !kiwi)") instanceof QueryPlan.AndNot);
+		assertTrue(plan("!(fig & kiwi)") instanceof QueryPlan.Not);
+	}
+}
@@ -0,0 +1,83 @@
+import java.util.*;
+
+/**
+ * Helpers for tests that query a small random index.
+ */
+public class QueryTestSupport {
+	/**
+	 * The words of the random index, from most to least common.
+	 */
+	public static final String[] WORDS = {
+		"apple", "banana", "cherry", "damson", "elder", "fig",
+		"grape", "hazel", "ivy", "juniper", "kiwi", "lemon"
+	};
+
+	/**
+	 * Returns the URL of a document of the random index.
+	 */
+	public static String url(int doc)
+	{
+		return "file:/random/" + doc + ".html";
+	}
+
+	/**
+	 * Builds an index of random documents of 5 to 30 words.  Word i is
+	 * drawn with a weight of 1 / (i + 1)^3, so the first few words are in
+	 * most documents and the last few in under 1 in 64, which is where
+	 * QueryPlan stops treating a word as dense.
+	 */
+	public static WebIndex randomIndex(int docs, long seed)
+	{
+		Random random = new Random(seed);
+		double[] cumulative = new double[WORDS.length];
+		double total = 0;
+		for (int i = 0; i < WORDS.length; i++)
+			cumulative[i] = total += 1 / Math.pow(i + 1, 3);
+		WebIndex index = new WebIndex();
+		for (int doc = 0; doc < docs; doc++)
+		{
+			StringBuffer text = new StringBuffer();
+			for (int length = 5 + random.nextInt(26); length > 0; length--)
+			{
+				double r = random.nextDouble() * total;
+				int word = 0;
+				while (cumulative[word] < r)
+					word++;
+				text.append(WORDS[word]).append(' ');
+			}
+			index.addPhraseToFile(url(doc), text.toString().toCharArray());
+		}
+		return index;
+	}
+
+	/**
+	 * Returns a random query of words, word groups, phrases with and
+	 * without slop, negations, conjunctions and disjunctions.
+	 * @param depth The most operators nested.
+	 */
+	public static String randomQuery(Random random, int depth)
+	{
+		String query;
+		if (depth == 0 || random.nextInt(3) == 0)
+		{
+			String word = WORDS[random.nextInt(WORDS.length)];
+			switch (random.nextInt(4))
+			{
+			case 0:
+				query = word + " " + WORDS[random.nextInt(WORDS.length)];
+				break;
+			case 1:
+				query = "\"" + word + " " + WORDS[random.nextInt(WORDS.length)] + "\"";
+				if (random.nextBoolean())
+					query += "~" + random.nextInt(4);
+				break;
+			default:
+				query = word;
+			}
+		}
+		else
+			query = "(" + randomQuery(random, depth - 1) + (random.nextBoolean() ? " & " : " | ")
+					+ randomQuery(random, depth - 1) + ")";
+		return random.nextInt(4) == 0 ? "!" + query : query;
+	}
+}
@@ -0,0 +1,159 @@
+import java.util.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * The pages WAND returns are the best k a brute-force BM25 ranking of every
+ * match gives, ties going to the lower document id.
+ */
+public class RankedSearcherTest {
+	private static final double EPSILON = 1e-9;
+
+	/**
+	 * Collects the words of a tree that are not negated, which are the ones
+	 * scored.
+	 */
+	private static void scoredWords(WebQueryEngine.Tree tree, Set<String> words)
+	{
+		if (tree == null || tree.negated)
+			return;
+		if (tree.data.token.isOperator)
+		{
+			scoredWords(tree.left, words);
+			scoredWords(tree.right, words);
+			return;
+		}
+		words.add(tree.data.token.repr);
+		if (tree.data.otherTokens != null)
+			for (WebQueryEngine.Token t : tree.data.otherTokens)
+				words.add(t.repr);
+	}
+
+	/**
+	 * Scores every match of a query, best first.
+	 */
+	private static List<RankedSearcher.Result> bruteForce(WebQueryEngine engine, WebIndex index, String query)
+	{
+		RankedSearcher scorer = new RankedSearcher(index);
+		WebQueryEngine.Tree tree = engine.parse(query);
+		LinkedHashSet<String> words = new LinkedHashSet<String>();
+		scoredWords(tree, words);
+		BitSet matches = engine.queryDocs(tree);
+		ArrayList<RankedSearcher.Result> results = new ArrayList<RankedSearcher.Result>();
+		for (int doc = matches.nextSetBit(0); doc >= 0; doc = matches.nextSetBit(doc + 1))
+		{
+			double score = 0;
+			for (String word : words)
+			{
+				PostingsList postings = index.getPostings(word);
+				int slot = postings == null ? -1 : postings.indexOf(doc);
+				if (slot >= 0)
+					score += scorer.score(scorer.idf(postings.size()), postings.getFrequency(slot), doc);
+			}
+			results.add(new RankedSearcher.Result(doc, index.getUrl(doc), score));
+		}
+		Collections.sort(results, new Comparator<RankedSearcher.Result>() {
+			public int compare(RankedSearcher.Result a, RankedSearcher.Result b) {
+				int c = Double.compare(b.score, a.score);
+				return c != 0 ? c : Integer.compare(a.doc, b.doc);
+			}
+		});
+		return results;
+	}
+
+	/**
+	 * Checks the results of a query against the brute-force ranking.  Scores
+	 * are summed in different orders, so they are compared to within
+	 * EPSILON, and documents within EPSILON of the k-th score may come in
+	 * either order.
+	 */
+	private static void assertBestK(String query, int k, List<RankedSearcher.Result> expected, List<RankedSearcher.Result> actual)
+	{
+		String message = query + " k=" + k;
+		assertEquals(message, Math.min(k, expected.size()), actual.size());
+		HashMap<Integer, Double> scores = new HashMap<Integer, Double>();
+		for (RankedSearcher.Result result : expected)
+			scores.put(result.doc, result.score);
+		HashSet<Integer> returned = new HashSet<Integer>();
+		for (int i = 0; i < actual.size(); i++)
+		{
+			RankedSearcher.Result result = actual.get(i);
+			assertTrue(message + ": " + result + " does not match", scores.containsKey(result.doc));
+			assertEquals(message, scores.get(result.doc), result.score, EPSILON);
+			assertEquals(message, expected.get(i).score, result.score, EPSILON);
+			assertEquals(message, QueryTestSupport.url(result.doc), result.url);
+			if (i > 0)
+				assertTrue(message, result.score <= actual.get(i - 1).score);
+			returned.add(result.doc);
+		}
+		if (actual.isEmpty())
+			return;
+		double last = actual.get(actual.size() - 1).score;
+		for (RankedSearcher.Result result : expected)
+			if (result.score > last + EPSILON)
+				assertTrue(message + ": " + result + " is missing", returned.contains(result.doc));
+	}
+
+	@Test
+	public void matchesBruteForceRanking()
+	{
+		WebIndex index = QueryTestSupport.randomIndex(2000, 5);
+		WebQueryEngine engine = new WebQueryEngine();
+		engine.useWebIndex(index);
+		Random random = new Random(6);
+		for (int trial = 0; trial < 300; trial++)
+		{
+			String query = QueryTestSupport.randomQuery(random, 2);
+			List<RankedSearcher.Result> expected = bruteForce(engine, index, query);
+			for (int k : new int[] { 1, 10, 100, index.getDocumentCount() + 1 })
+				assertBestK(query, k, expected, engine.rankedQuery(query, k));
+		}
+	}
+
+	@Test
+	public void tiesGoToTheLowerDocument()
+	{
+		WebIndex index = new WebIndex();
+		for (int doc = 0; doc < 200; doc++)
+		{
+			String text;
+			if (doc % 10 == 3)
+				text = "apple banana cherry";
+			else if (doc % 10 == 7)
+				text = "banana cherry damson";
+			else
+				text = "cherry damson elder";
+			index.addPhraseToFile(QueryTestSupport.url(doc), text.toCharArray());
+		}
+		WebQueryEngine engine = new WebQueryEngine();
+		engine.useWebIndex(index);
+		for (String query : new String[] { "(apple | banana)", "banana", "(cherry & !apple)", "(banana | damson)" })
+		{
+			List<RankedSearcher.Result> expected = bruteForce(engine, index, query);
+			for (int k : new int[] { 1, 3, 25, 150, 500 })
+			{
+				List<RankedSearcher.Result> actual = engine.rankedQuery(query, k);
+				assertEquals(query + " k=" + k, Math.min(k, expected.size()), actual.size());
+				for (int i = 0; i < actual.size(); i++)
+				{
+					assertEquals(query + " k=" + k, expected.get(i).doc, actual.get(i).doc);
+					assertEquals(query + " k=" + k, expected.get(i).score, actual.get(i).score, 0);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void unscoredMatchesFillTheRest()
+	{
+		WebIndex index = QueryTestSupport.randomIndex(300, 7);
+		WebQueryEngine engine = new WebQueryEngine();
+		engine.useWebIndex(index);
+		List<RankedSearcher.Result> negated = engine.rankedQuery("!lemon", 1000);
+		assertEquals(engine.count("!lemon"), negated.size());
+		for (int i = 0; i < negated.size(); i++)
+			assertEquals(0, negated.get(i).score, 0);
+		assertEquals(0, engine.rankedQuery("missing", 10).size());
+		assertEquals(0, engine.rankedQuery("apple", 0).size());
+	}
+}
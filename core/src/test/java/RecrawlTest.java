@@ -0,0 +1,114 @@
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import org.junit.*;
+import org.junit.rules.*;
+import static org.junit.Assert.*;
+
+/**
+ * A crawl with -recrawl skips the files that have not changed since the
+ * crawl recorded in the metadata, and leaves the segments holding what a
+ * fresh crawl of the tree would.
+ */
+public class RecrawlTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void recrawlSkipsUnchangedFilesAndUpdatesTheRest() throws Exception
+	{
+		File site = folder.newFolder("site");
+		String segments = folder.newFolder("segments").getPath();
+		String start = CrawlTestSupport.writeCorpus(site, 60, 11);
+
+		CrawlTestSupport.crawl("-segments", segments, start);
+		Map<String, Map<String, List<Integer>>> first = CrawlTestSupport.segmentContents(new File(segments));
+		Set<String> reached = CrawlMetadata.load(new File(segments, "metadata").getPath()).getUrls();
+		assertEquals(CrawlTestSupport.contents(CrawlTestSupport.crawlIndex(start)), first);
+
+		String output = CrawlTestSupport.crawl("-segments", segments, "-recrawl", start);
+		assertTrue(output, output.contains("Crawled 0 pages"));
+		assertTrue(output, output.contains("Skipped " + reached.size() + " unchanged pages"));
+		assertEquals(first, CrawlTestSupport.segmentContents(new File(segments)));
+
+		// Change one page, touch another without changing it, delete a third.
+		ArrayList<String> pages = new ArrayList<String>();
+		for (String url : new TreeSet<String>(reached))
+			if (url.contains("/d0/p"))
+				pages.add(url);
+		File changed = new File(new URI(pages.get(0)));
+		File touched = new File(new URI(pages.get(1)));
+		File deleted = new File(new URI(pages.get(2)));
+		long later = changed.lastModified() + 60000;
+		CrawlTestSupport.write(site, "d0/" + changed.getName(), "<html><body>rewritten from scratch</body></html>");
+		assertTrue(changed.setLastModified(later));
+		assertTrue(touched.setLastModified(later));
+		assertTrue(deleted.delete());
+
+		output = CrawlTestSupport.crawl("-segments", segments, "-recrawl", start);
+		assertTrue(output, output.contains("Crawled 2 pages"));
+		assertTrue(output, output.contains("Skipped " + (reached.size() - 2) + " unchanged pages"));
+		Map<String, Map<String, List<Integer>>> updated = CrawlTestSupport.segmentContents(new File(segments));
+		assertEquals(CrawlTestSupport.contents(CrawlTestSupport.crawlIndex(start)), updated);
+		assertEquals(Collections.singletonMap(pages.get(0), Arrays.asList(1)), updated.get("rewritten"));
+	}
+
+	private static Set<Object> query(File segments, String query) throws IOException
+	{
+		WebQueryEngine engine = new WebQueryEngine();
+		engine.useWebIndex(IndexSegments.open(segments.getPath()));
+		return new HashSet<Object>(engine.query(query));
+	}
+
+	@Test
+	public void recrawlReindexesAliasesWhoseOriginalChanged() throws Exception
+	{
+		// The original may be reached before or after its alias, and may be
+		// changed or deleted.
+		for (int round = 0; round < 4; round++)
+		{
+			boolean aFirst = round % 2 == 0;
+			boolean delete = round >= 2;
+			File site = folder.newFolder("site" + round);
+			File segments = folder.newFolder("segments" + round);
+			CrawlTestSupport.write(site, "index.html", "<html><body>home"
+					+ (aFirst ? " <a href=\"a.html\">a</a> <a href=\"b.html\">b</a>"
+							: " <a href=\"b.html\">b</a> <a href=\"a.html\">a</a>")
+					+ "</body></html>");
+			CrawlTestSupport.write(site, "a.html", "<html><body>alpha beta</body></html>");
+			CrawlTestSupport.write(site, "b.html", "<html><body>alpha beta</body></html>");
+			String start = CrawlTestSupport.url(new File(site, "index.html"));
+			String a = CrawlTestSupport.url(new File(site, "a.html"));
+			String b = CrawlTestSupport.url(new File(site, "b.html"));
+			String original = aFirst ? a : b;
+			String alias = aFirst ? b : a;
+
+			CrawlTestSupport.crawl("-segments", segments.getPath(), "-dedupe", start);
+			String metadata = new File(segments, "metadata").getPath();
+			assertEquals(Collections.singletonMap(alias, original), CrawlMetadata.load(metadata).getDuplicates());
+			assertEquals(Collections.<Object>singleton(original), query(segments, "alpha"));
+
+			File file = new File(new URI(original));
+			if (delete)
+				assertTrue(file.delete());
+			else
+			{
+				long later = file.lastModified() + 60000;
+				CrawlTestSupport.write(site, file.getName(), "<html><body>gamma delta</body></html>");
+				assertTrue(file.setLastModified(later));
+			}
+			String output = CrawlTestSupport.crawl("-segments", segments.getPath(), "-recrawl", "-dedupe", start);
+			String message = "round " + round + ": " + output;
+			assertTrue(message, output.contains("Skipped 1 unchanged pages"));
+			assertEquals(message, Collections.<Object>singleton(alias), query(segments, "alpha"));
+			assertEquals(message, delete ? Collections.emptySet() : Collections.<Object>singleton(original),
+					query(segments, "gamma"));
+			assertTrue(message, CrawlMetadata.load(metadata).getDuplicates().isEmpty());
+
+			// Nothing is left stale for the next crawl.
+			output = CrawlTestSupport.crawl("-segments", segments.getPath(), "-recrawl", "-dedupe", start);
+			assertTrue(message, output.contains("Crawled 0 pages"));
+			assertEquals(message, Collections.<Object>singleton(alias), query(segments, "alpha"));
+		}
+	}
+}
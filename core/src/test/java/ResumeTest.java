@@ -0,0 +1,101 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import org.junit.*;
+import org.junit.rules.*;
+import static org.junit.Assert.*;
+
+/**
+ * A checkpointing crawl killed part way through, resumed with -resume,
+ * leaves the segments holding what an uninterrupted crawl would.
+ */
+public class ResumeTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * The process killed: a parallel crawl checkpointing every 100 ms that
+	 * halts, with no chance to clean up, once it has parsed some pages
+	 * after its first checkpoint.  Pages are slowed down so the crawl lasts
+	 * long enough to checkpoint.
+	 * Arguments: the segment directory and the starting URL.
+	 */
+	public static class KilledCrawl {
+		public static void main(String[] args) throws Exception
+		{
+			final File segments = new File(args[0]);
+			final File stateFile = new File(new File(segments, "crawl"), CrawlState.STATE);
+			final AtomicInteger afterCheckpoint = new AtomicInteger();
+			WebCrawler crawler = new WebCrawler() {
+				public List parse(String url) throws IOException {
+					if (stateFile.exists() && afterCheckpoint.incrementAndGet() > 40)
+						Runtime.getRuntime().halt(1);
+					try {
+						Thread.sleep(5);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					return super.parse(url);
+				}
+			};
+			String metadataFile = new File(segments, "metadata").getPath();
+			crawler.setMetadata(CrawlMetadata.load(metadataFile), false);
+			CrawlState state = new CrawlState(new File(segments, "crawl"), false);
+			crawler.setCheckpoints(state, new IndexSegments(segments.getPath()), metadataFile, 100);
+			crawler.crawl(new LinkedList<String>(Collections.singletonList(args[1])), 4);
+			// Finished without being killed.
+			System.exit(2);
+		}
+	}
+
+	private static int pagesCrawled(String output)
+	{
+		int at = output.indexOf("Crawled ");
+		assertTrue(output, at >= 0);
+		return Integer.parseInt(output.substring(at + "Crawled ".length(), output.indexOf(' ', at + "Crawled ".length())));
+	}
+
+	@Test
+	public void resumesAKilledCrawl() throws Exception
+	{
+		File site = folder.newFolder("site");
+		File segments = folder.newFolder("segments");
+		String start = CrawlTestSupport.writeCorpus(site, 400, 5);
+		WebIndex full = CrawlTestSupport.crawlIndex(start);
+
+		String classPath = System.getProperty("surefire.test.class.path", System.getProperty("java.class.path"));
+		File java = new File(new File(System.getProperty("java.home"), "bin"), "java");
+		Process process = new ProcessBuilder(java.getPath(), "-cp", classPath, KilledCrawl.class.getName(),
+				segments.getPath(), start).redirectErrorStream(true).redirectOutput(new File(folder.getRoot(), "killed.log")).start();
+		assertEquals("exit status of the killed crawl", 1, process.waitFor());
+		assertTrue(new File(new File(segments, "crawl"), CrawlState.STATE).exists());
+
+		String output = CrawlTestSupport.crawl("-segments", segments.getPath(), "-threads", "4", "-resume", start);
+		assertTrue(output, output.contains("Resuming with "));
+		int resumed = pagesCrawled(output);
+		assertTrue(output, resumed > 0 && resumed < full.getDocumentCount());
+		assertEquals(CrawlTestSupport.contents(full), CrawlTestSupport.segmentContents(segments));
+		assertFalse(new File(segments, "crawl").exists());
+	}
+
+	@Test
+	public void keepsTheStateOfACrawlStoppedByALimit() throws Exception
+	{
+		File site = folder.newFolder("site");
+		File segments = folder.newFolder("segments");
+		String start = CrawlTestSupport.writeCorpus(site, 200, 9);
+		WebIndex full = CrawlTestSupport.crawlIndex(start);
+
+		String output = CrawlTestSupport.crawl("-segments", segments.getPath(), "-checkpoint", "60", "-maxpages", "50", start);
+		assertEquals(output, 50, pagesCrawled(output));
+		assertTrue(output, output.contains("URLs left queued"));
+		assertTrue(new File(new File(segments, "crawl"), CrawlState.STATE).exists());
+		assertEquals(50, IndexSegments.open(segments.getPath()).getDocumentCount());
+
+		output = CrawlTestSupport.crawl("-segments", segments.getPath(), "-resume", start);
+		assertTrue(output, output.contains("Resuming with "));
+		assertEquals(output, full.getDocumentCount() - 50, pagesCrawled(output));
+		assertEquals(CrawlTestSupport.contents(full), CrawlTestSupport.segmentContents(segments));
+		assertFalse(new File(segments, "crawl").exists());
+	}
+}
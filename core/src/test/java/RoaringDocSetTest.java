@@ -0,0 +1,117 @@
+import java.util.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * RoaringDocSet must hold the same ids as a BitSet built the same way,
+ * whether its chunks are arrays or bitmaps, and its set operations must
+ * agree with BitSet's.
+ */
+public class RoaringDocSetTest {
+	/**
+	 * Returns a random set of ids over a few chunks, some sparse enough to be
+	 * arrays and some dense enough to be bitmaps.
+	 */
+	private static BitSet randomDocs(Random random)
+	{
+		BitSet docs = new BitSet();
+		int chunks = 1 + random.nextInt(4);
+		for (int chunk = 0; chunk < chunks; chunk++)
+		{
+			if (random.nextInt(4) == 0)
+				continue;
+			int base = chunk << 16;
+			int count = random.nextBoolean() ? random.nextInt(RoaringDocSet.ARRAY_LIMIT) : random.nextInt(40000);
+			for (int i = 0; i < count; i++)
+				docs.set(base + random.nextInt(1 << 16));
+		}
+		return docs;
+	}
+
+	private static BitSet toBitSet(RoaringDocSet set)
+	{
+		BitSet docs = new BitSet();
+		DocIdIterator it = set.iterator();
+		for (int doc = it.nextDoc(); doc != DocIdIterator.NO_MORE_DOCS; doc = it.nextDoc())
+			docs.set(doc);
+		return docs;
+	}
+
+	@Test
+	public void holdsTheIdsItWasBuiltFrom()
+	{
+		Random random = new Random(5);
+		for (int round = 0; round < 50; round++)
+		{
+			BitSet docs = randomDocs(random);
+			RoaringDocSet set = RoaringDocSet.of(docs);
+			assertEquals(docs.cardinality(), set.cardinality());
+			assertEquals(docs, toBitSet(set));
+			for (int i = 0; i < 1000; i++)
+			{
+				int doc = random.nextInt(4 << 16);
+				assertEquals(docs.get(doc), set.contains(doc));
+			}
+		}
+	}
+
+	@Test
+	public void setOperationsAgreeWithBitSet()
+	{
+		Random random = new Random(6);
+		for (int round = 0; round < 50; round++)
+		{
+			BitSet a = randomDocs(random);
+			BitSet b = randomDocs(random);
+			RoaringDocSet x = RoaringDocSet.of(a);
+			RoaringDocSet y = RoaringDocSet.of(b);
+
+			BitSet and = (BitSet) a.clone();
+			and.and(b);
+			BitSet or = (BitSet) a.clone();
+			or.or(b);
+			BitSet andNot = (BitSet) a.clone();
+			andNot.andNot(b);
+			assertEquals(and, toBitSet(x.and(y)));
+			assertEquals(and.cardinality(), x.and(y).cardinality());
+			assertEquals(or, toBitSet(x.or(y)));
+			assertEquals(or.cardinality(), x.or(y).cardinality());
+			assertEquals(andNot, toBitSet(x.andNot(y)));
+			assertEquals(andNot.cardinality(), x.andNot(y).cardinality());
+		}
+	}
+
+	@Test
+	public void advanceFindsTheNextIdAtOrAfterTheTarget()
+	{
+		Random random = new Random(7);
+		BitSet docs = randomDocs(random);
+		RoaringDocSet set = RoaringDocSet.of(docs);
+		int target = 0;
+		DocIdIterator it = set.iterator();
+		while (true)
+		{
+			int expected = docs.nextSetBit(target);
+			int doc = it.advance(target);
+			if (expected < 0)
+			{
+				assertEquals(DocIdIterator.NO_MORE_DOCS, doc);
+				break;
+			}
+			assertEquals(expected, doc);
+			target = doc + 1 + random.nextInt(5000);
+		}
+	}
+
+	@Test
+	public void rangeAndEmpty()
+	{
+		assertEquals(0, RoaringDocSet.empty().cardinality());
+		RoaringDocSet range = RoaringDocSet.range(65000, 140000);
+		assertEquals(75000, range.cardinality());
+		assertFalse(range.contains(64999));
+		assertTrue(range.contains(65000));
+		assertTrue(range.contains(139999));
+		assertFalse(range.contains(140000));
+	}
+}
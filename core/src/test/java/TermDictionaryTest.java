@@ -0,0 +1,92 @@
+import java.util.*;
+import java.util.concurrent.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * A TermDictionary must hand out one String per term, however many threads
+ * intern it at once and however often the table grows meanwhile.
+ */
+public class TermDictionaryTest {
+	@Test
+	public void internsTermsBySlice()
+	{
+		TermDictionary dictionary = new TermDictionary();
+		char[] chars = "xxapplexx".toCharArray();
+		assertNull(dictionary.get(chars, 2, 5));
+		String apple = dictionary.intern(chars, 2, 5);
+		assertEquals("apple", apple);
+		assertSame(apple, dictionary.intern("apple".toCharArray(), 0, 5));
+		assertSame(apple, dictionary.get("an apple".toCharArray(), 3, 5));
+		assertEquals(1, dictionary.size());
+		assertEquals("", dictionary.intern(chars, 0, 0));
+		assertEquals(2, dictionary.size());
+	}
+
+	@Test
+	public void growsAndKeepsEveryTerm()
+	{
+		TermDictionary dictionary = new TermDictionary();
+		Map<String, String> interned = new HashMap<String, String>();
+		for (int i = 0; i < 20000; i++)
+		{
+			String term = "t" + i;
+			interned.put(term, dictionary.intern(term.toCharArray(), 0, term.length()));
+		}
+		assertEquals(20000, dictionary.size());
+		for (Map.Entry<String, String> entry : interned.entrySet())
+		{
+			char[] chars = entry.getKey().toCharArray();
+			assertSame(entry.getValue(), dictionary.get(chars, 0, chars.length));
+		}
+	}
+
+	@Test(timeout = 60000)
+	public void concurrentThreadsShareOneStringPerTerm() throws Exception
+	{
+		final int threads = 8;
+		final int terms = 20000;
+		for (int round = 0; round < 5; round++)
+		{
+			final TermDictionary dictionary = new TermDictionary();
+			final CountDownLatch start = new CountDownLatch(1);
+			ExecutorService executor = Executors.newFixedThreadPool(threads);
+			List<Future<String[]>> futures = new ArrayList<Future<String[]>>();
+			for (int t = 0; t < threads; t++)
+			{
+				final long seed = round * threads + t;
+				futures.add(executor.submit(new Callable<String[]>() {
+					public String[] call() throws Exception {
+						// Every thread interns every term, in its own order,
+						// from chars of its own.
+						List<Integer> order = new ArrayList<Integer>();
+						for (int i = 0; i < terms; i++)
+							order.add(i);
+						Collections.shuffle(order, new Random(seed));
+						String[] seen = new String[terms];
+						start.await();
+						for (int i : order)
+						{
+							char[] chars = ("term" + i).toCharArray();
+							seen[i] = dictionary.intern(chars, 0, chars.length);
+						}
+						return seen;
+					}
+				}));
+			}
+			start.countDown();
+			String[] first = futures.get(0).get();
+			for (Future<String[]> future : futures)
+			{
+				String[] seen = future.get();
+				for (int i = 0; i < terms; i++)
+				{
+					assertEquals("term" + i, seen[i]);
+					assertSame(first[i], seen[i]);
+				}
+			}
+			executor.shutdown();
+			assertEquals(terms, dictionary.size());
+		}
+	}
+}
@@ -0,0 +1,106 @@
+import java.util.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * A Tokenizer must find the same terms as splitting the text into Strings
+ * and analyzing each, while reading only its slice of the chars it is given
+ * and leaving them as they were.
+ */
+public class TokenizerTest {
+	private static List<String> tokenize(Tokenizer tokenizer, char[] text, int offset, int length)
+	{
+		List<String> terms = new ArrayList<String>();
+		tokenizer.reset(text, offset, length);
+		for (String term = tokenizer.next(); term != null; term = tokenizer.next())
+			terms.add(term);
+		return terms;
+	}
+
+	/**
+	 * Splits text into runs of letters and analyzes each, one String at a
+	 * time.
+	 */
+	private static List<String> split(Analyzer analyzer, String text)
+	{
+		List<String> terms = new ArrayList<String>();
+		for (String word : analyzer.normalize(text).split("[^\\p{L}]+"))
+		{
+			if (word.length() == 0)
+				continue;
+			String term = analyzer.analyze(word);
+			if (term != null)
+				terms.add(term);
+		}
+		return terms;
+	}
+
+	@Test
+	public void tokenizesASliceInPlace()
+	{
+		char[] text = "skip THIS: Hello, wide-world! 42 times and skip".toCharArray();
+		char[] copy = text.clone();
+		Tokenizer tokenizer = new Tokenizer(new TermDictionary());
+		int offset = "skip THIS: ".length();
+		int length = "Hello, wide-world! 42 times and".length();
+		assertEquals(Arrays.asList("hello", "wide", "world", "times", "and"), tokenize(tokenizer, text, offset, length));
+		assertArrayEquals(copy, text);
+		// A slice may end inside a word.
+		assertEquals(Arrays.asList("hel"), tokenize(tokenizer, text, offset, 3));
+		assertEquals(Collections.<String>emptyList(), tokenize(tokenizer, text, 0, 0));
+		assertEquals(Collections.<String>emptyList(), tokenize(tokenizer, "  42 --- !".toCharArray(), 0, 10));
+	}
+
+	@Test
+	public void growsItsBufferForLongWords()
+	{
+		StringBuffer word = new StringBuffer();
+		for (int i = 0; i < 1000; i++)
+			word.append((char) ('a' + i % 26));
+		char[] text = ("short " + word.toString().toUpperCase() + " short").toCharArray();
+		Tokenizer tokenizer = new Tokenizer(new TermDictionary());
+		assertEquals(Arrays.asList("short", word.toString(), "short"), tokenize(tokenizer, text, 0, text.length));
+	}
+
+	@Test
+	public void returnsInternedTerms()
+	{
+		TermDictionary dictionary = new TermDictionary();
+		Tokenizer first = new Tokenizer(dictionary);
+		Tokenizer second = new Tokenizer(dictionary);
+		char[] text = "Apple apple APPLE".toCharArray();
+		List<String> a = tokenize(first, text, 0, text.length);
+		List<String> b = tokenize(second, "apple".toCharArray(), 0, 5);
+		assertEquals(3, a.size());
+		assertSame(a.get(0), a.get(1));
+		assertSame(a.get(0), a.get(2));
+		assertSame(a.get(0), b.get(0));
+		assertEquals(1, dictionary.size());
+	}
+
+	@Test
+	public void findsTheTermsOfTheAnalyzer()
+	{
+		String[] specs = { "standard", "stop", "stem", "nfkc,stop,stem" };
+		String[] pieces = { "The", "cats", "CATS", "ponies", "glasses", "bus",
+				"\ufb01les", "\uff37\uff49\uff44\uff45", "caf\u00e9", "cafe\u0301", "\u039f\u0394\u039f\u03a3", "is", "a",
+				"42", " ", "  ", "-", ", ", "\n", "\u0301" };
+		Random random = new Random(11);
+		for (String spec : specs)
+		{
+			Analyzer analyzer = Analyzer.parse(spec);
+			Tokenizer tokenizer = analyzer.newTokenizer(new TermDictionary());
+			for (int round = 0; round < 500; round++)
+			{
+				StringBuffer text = new StringBuffer();
+				int n = random.nextInt(20);
+				for (int i = 0; i < n; i++)
+					text.append(pieces[random.nextInt(pieces.length)]);
+				String s = text.toString();
+				// Surround the slice with letters that must not be read.
+				char[] chars = ("xx" + s + "yy").toCharArray();
+				assertEquals(spec + ": " + s, split(analyzer, s), tokenize(tokenizer, chars, 2, s.length()));
+			}
+		}
+	}
+}
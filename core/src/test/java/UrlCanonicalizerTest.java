@@ -0,0 +1,65 @@
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class UrlCanonicalizerTest {
+	private static void assertCanonical(String expected, String url)
+	{
+		assertEquals(url, expected, UrlCanonicalizer.canonicalize(url));
+		assertEquals("canonical form of " + expected, expected, UrlCanonicalizer.canonicalize(expected));
+	}
+
+	@Test
+	public void dropsFragments()
+	{
+		assertCanonical("http://example.com/a.html", "http://example.com/a.html#top");
+		assertCanonical("http://example.com/a.html?q=1", "http://example.com/a.html?q=1#");
+		assertCanonical("b.html", "b.html#frag");
+	}
+
+	@Test
+	public void lowerCasesSchemeAndHostAndDropsDefaultPorts()
+	{
+		assertCanonical("http://example.com/Path/A.html", "HTTP://Example.COM:80/Path/A.html");
+		assertCanonical("https://example.com/", "https://EXAMPLE.com:443");
+		assertCanonical("http://example.com:8080/", "http://example.com:8080");
+		assertCanonical("http://User@example.com/", "http://User@Example.com:");
+		assertCanonical("http://[::1]:8080/", "http://[::1]:8080/");
+	}
+
+	@Test
+	public void writesLocalFilesAsUrlDoes()
+	{
+		assertCanonical("file:/tmp/a.html", "file:///tmp/a.html");
+		assertCanonical("file:/tmp/a.html", "FILE://localhost/tmp/a.html");
+		assertCanonical("file://server/share/a.html", "file://server/share/a.html");
+	}
+
+	@Test
+	public void normalizesEscapes()
+	{
+		assertCanonical("http://example.com/~user/a-b.html", "http://example.com/%7euser/a%2Db.html");
+		assertCanonical("http://example.com/a%2Fb?x=%3D", "http://example.com/a%2fb?x=%3d");
+		assertCanonical("http://example.com/a%20b/%C3%A9t%C3%A9", "http://example.com/a b/été");
+		assertCanonical("http://example.com/100%25", "http://example.com/100%");
+		assertCanonical("http://example.com/%F0%9F%98%80", "http://example.com/😀");
+	}
+
+	@Test
+	public void removesDotSegments()
+	{
+		assertCanonical("file:/site/b.html", "file:/site/a/../b.html");
+		assertCanonical("file:/site/a/b.html", "file:/site/./a/./b.html");
+		assertCanonical("http://example.com/", "http://example.com/a/..");
+		assertCanonical("http://example.com/a/", "http://example.com/a/.");
+		assertCanonical("http://example.com/b", "http://example.com/../../b");
+		assertCanonical("http://example.com/a/b?p=../c", "http://example.com/a/./b?p=../c");
+		assertCanonical("http://example.com/a/..b/.c", "http://example.com/a/..b/.c");
+	}
+
+	@Test
+	public void leavesRelativeUrlsAlone()
+	{
+		assertCanonical("../a b.html", "../a b.html");
+		assertCanonical("mailto:someone@example.com", "mailto:someone@example.com");
+	}
+}
@@ -0,0 +1,76 @@
+import java.util.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * Queries answered from the result cache must get the same answers as
+ * queries evaluated afresh.
+ */
+public class WebQueryEngineTest {
+	@Test
+	public void cacheKeysDoNotDependOnTheDefaultLocale()
+	{
+		Locale locale = Locale.getDefault();
+		// In Turkish, "I".toLowerCase() is a dotless ı, which the analyzer
+		// does not produce from "I".
+		Locale.setDefault(new Locale("tr", "TR"));
+		try {
+			WebIndex index = new WebIndex();
+			index.addPhraseToFile("file:/dotted.html", "i".toCharArray());
+			index.addPhraseToFile("file:/dotless.html", "ı".toCharArray());
+			WebQueryEngine engine = new WebQueryEngine();
+			engine.useWebIndex(index);
+			assertEquals(Collections.singleton("file:/dotted.html"), new HashSet<Object>(engine.query("I")));
+			assertEquals(Collections.singleton("file:/dotless.html"), new HashSet<Object>(engine.query("ı")));
+		} finally {
+			Locale.setDefault(locale);
+		}
+	}
+
+	@Test
+	public void cacheKeysFollowTheAnalyzer()
+	{
+		// String.toLowerCase gives both queries a final ς; the analyzer
+		// lowers one character at a time and gives "ΟΔΟΣ" a σ.
+		String[][] orders = { { "ΟΔΟΣ", "οδος" }, { "οδος", "ΟΔΟΣ" } };
+		for (String[] order : orders)
+		{
+			WebIndex index = new WebIndex();
+			index.addPhraseToFile("file:/upper.html", "ΟΔΟΣ".toCharArray());
+			index.addPhraseToFile("file:/lower.html", "οδος".toCharArray());
+			WebQueryEngine engine = new WebQueryEngine();
+			engine.useWebIndex(index);
+			for (String q : order)
+			{
+				WebQueryEngine fresh = new WebQueryEngine();
+				fresh.useWebIndex(index);
+				assertEquals(q, new ArrayList<Object>(fresh.query(q)), new ArrayList<Object>(engine.query(q)));
+				assertEquals(q, fresh.rankedQuery(q, 10).toString(), engine.rankedQuery(q, 10).toString());
+			}
+			assertEquals(Collections.singletonList("file:/upper.html"), new ArrayList<Object>(engine.query("ΟΔΟΣ")));
+			assertEquals(Collections.singletonList("file:/lower.html"), new ArrayList<Object>(engine.query("οδος")));
+		}
+	}
+
+	@Test
+	public void cachedResultsAreDroppedWhenTheIndexChanges()
+	{
+		WebIndex index = new WebIndex();
+		index.addPhraseToFile("file:/a.html", "apple banana".toCharArray());
+		WebQueryEngine engine = new WebQueryEngine();
+		engine.useWebIndex(index);
+		assertEquals(Collections.singletonList("file:/a.html"), new ArrayList<Object>(engine.query("apple")));
+		assertEquals(1, engine.rankedQuery("apple", 10).size());
+		assertEquals(1, engine.getResultCache().size());
+		assertEquals(1, engine.getRankedResultCache().size());
+
+		DocumentBuffer doc = new DocumentBuffer();
+		doc.addPhrase("apple cherry".toCharArray());
+		index.addDocument("file:/b.html", doc);
+		assertEquals(new HashSet<Object>(Arrays.asList("file:/a.html", "file:/b.html")),
+				new HashSet<Object>(engine.query("apple")));
+		assertEquals(2, engine.rankedQuery("apple", 10).size());
+		assertEquals(1, engine.getResultCache().size());
+		assertEquals(1, engine.getRankedResultCache().size());
+	}
+}
@@ -0,0 +1,160 @@
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.regex.*;
+import org.junit.*;
+import org.junit.rules.*;
+import static org.junit.Assert.*;
+
+/**
+ * A WebQueryServer on a free port must answer queries with the same results
+ * as its engine, a page at a time, escape what it writes into HTML, and
+ * turn malformed queries away.
+ */
+public class WebQueryServerTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static final String ODD_URL = "file:/site/a&b<c>\"d'.html";
+	private static final Pattern URL = Pattern.compile("\"url\":\"((?:[^\"\\\\]|\\\\.)*)\"");
+
+	private WebQueryServer server;
+
+	@Before
+	public void startServer() throws IOException
+	{
+		WebIndex index = new WebIndex();
+		// Every page holds apple a different number of times, so no two
+		// score alike.
+		for (int doc = 0; doc < 25; doc++)
+		{
+			StringBuffer text = new StringBuffer();
+			for (int i = 0; i <= doc; i++)
+				text.append("apple ");
+			text.append("banana");
+			for (int i = 0; i < 25 - doc; i++)
+				text.append(" filler");
+			index.addPhraseToFile("file:/site/p" + doc + ".html", text.toString().toCharArray());
+		}
+		index.addPhraseToFile(ODD_URL, "cherry".toCharArray());
+		File file = folder.newFile("index.db");
+		index.save(file.getPath());
+		server = new WebQueryServer(file.getPath(), null);
+		server.start(0, 0);
+	}
+
+	@After
+	public void stopServer()
+	{
+		server.stop();
+	}
+
+	/**
+	 * Requests a path and returns the status followed by the body.
+	 */
+	private String[] get(String path) throws IOException
+	{
+		HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getPort() + path).openConnection();
+		try {
+			int status = connection.getResponseCode();
+			InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int n;
+			while ((n = in.read(buffer)) > 0)
+				body.write(buffer, 0, n);
+			in.close();
+			return new String[] { String.valueOf(status), new String(body.toByteArray(), StandardCharsets.UTF_8) };
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	private static List<String> jsonUrls(String json)
+	{
+		List<String> urls = new ArrayList<String>();
+		Matcher m = URL.matcher(json);
+		while (m.find())
+			urls.add(m.group(1).replace("\\\"", "\"").replace("\\\\", "\\"));
+		return urls;
+	}
+
+	private List<String> expectedUrls(String query, int from, int to)
+	{
+		List<String> urls = new ArrayList<String>();
+		List<RankedSearcher.Result> results = server.getEngine().rankedQuery(query, to);
+		for (int i = from; i < Math.min(to, results.size()); i++)
+			urls.add(results.get(i).url);
+		return urls;
+	}
+
+	@Test
+	public void answersJsonQueries() throws IOException
+	{
+		String[] response = get("/search?q=apple+%26+banana&format=json");
+		assertEquals("200", response[0]);
+		assertTrue(response[1], response[1].startsWith("{\"query\":\"apple & banana\",\"total\":25,\"page\":1,\"size\":20,"));
+		List<String> urls = jsonUrls(response[1]);
+		assertEquals(expectedUrls("apple & banana", 0, 20), urls);
+		// The page holding apple most often ranks first.
+		assertEquals("file:/site/p24.html", urls.get(0));
+	}
+
+	@Test
+	public void pagesThroughTheResults() throws IOException
+	{
+		List<String> all = new ArrayList<String>();
+		for (int page = 1; page <= 3; page++)
+		{
+			String[] response = get("/search?q=apple&format=json&size=10&page=" + page);
+			assertEquals("200", response[0]);
+			List<String> urls = jsonUrls(response[1]);
+			assertEquals(expectedUrls("apple", (page - 1) * 10, page * 10), urls);
+			all.addAll(urls);
+		}
+		assertEquals(25, all.size());
+		assertEquals(25, new HashSet<String>(all).size());
+
+		String[] beyond = get("/search?q=apple&format=json&size=10&page=4");
+		assertEquals("200", beyond[0]);
+		assertTrue(jsonUrls(beyond[1]).isEmpty());
+		assertEquals("400", get("/search?q=apple&size=" + (WebQueryServer.MAX_PAGE_SIZE + 1))[0]);
+		assertEquals("400", get("/search?q=apple&page=0")[0]);
+		assertEquals("400", get("/search?q=apple&page=two")[0]);
+	}
+
+	@Test
+	public void escapesUrlsAndQueriesInHtml() throws IOException
+	{
+		String[] response = get("/search?q=cherry+%7C+%3Cb%3E");
+		assertEquals("200", response[0]);
+		String html = response[1];
+		assertTrue(html, html.contains("<a href=\"file:/site/a&amp;b&lt;c&gt;&quot;d&#39;.html\">"
+				+ "file:/site/a&amp;b&lt;c&gt;&quot;d&#39;.html</a>"));
+		assertFalse(html, html.contains("<c>"));
+		assertFalse(html, html.contains("<b>"));
+		assertTrue(html, html.contains("value=\"cherry | &lt;b&gt;\""));
+
+		String[] json = get("/search?q=cherry&format=json");
+		assertEquals(Collections.singletonList(ODD_URL), jsonUrls(json[1]));
+	}
+
+	@Test
+	public void turnsMalformedQueriesAway() throws IOException
+	{
+		try {
+			server.getEngine().parseQuery("& apple", 0);
+			fail();
+		} catch (IllegalArgumentException e) {
+		}
+		String[] response = get("/search?q=%26+apple");
+		assertEquals("400", response[0]);
+		assertTrue(response[1], response[1].startsWith("Malformed query: & apple"));
+		assertEquals("400", get("/search?q=%22apple+%26+banana%22&format=json")[0]);
+		assertEquals("400", get("/search?q=%zz")[0]);
+
+		// The server still answers afterwards.
+		assertEquals("200", get("/search?q=apple")[0]);
+	}
+}
@@ -0,0 +1,133 @@
+import java.io.*;
+import java.util.*;
+import javax.swing.text.*;
+import javax.swing.text.html.*;
+import webquery.jmh.Fixture;
+
+/**
+ * The benchmarks' way into the unnamed package: see webquery.jmh.Fixture.
+ * The pages of the corpus are parsed with HtmlScanner once, when the
+ * fixture is created, so indexing is timed without parsing.
+ */
+public class BenchmarkFixture implements Fixture {
+	private SyntheticCorpus corpus;
+	private String[] files;
+	/**
+	 * The runs of text of each page, as HtmlScanner reports them.
+	 */
+	private char[][][] phrases;
+	private int phraseCount;
+	private WebIndex index;
+	private WebQueryEngine engine = new WebQueryEngine();
+
+	public void generate(int pages, long seed)
+	{
+		corpus = new SyntheticCorpus(pages, seed);
+		files = new String[pages];
+		phrases = new char[pages][][];
+		HtmlScanner scanner = new HtmlScanner();
+		for (int page = 0; page < pages; page++)
+		{
+			files[page] = "file:/corpus/" + corpus.getPath(page);
+			final ArrayList<char[]> text = new ArrayList<char[]>();
+			try {
+				scanner.parse(new StringReader(corpus.generatePage(page)), new HTMLEditorKit.ParserCallback() {
+					public void handleText(char[] data, int pos) {
+						text.add(data);
+					}
+				}, true);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			phrases[page] = text.toArray(new char[0][]);
+			phraseCount += phrases[page].length;
+		}
+	}
+
+	public int getPhraseCount()
+	{
+		return phraseCount;
+	}
+
+	public Object indexCorpus()
+	{
+		WebIndex index = new WebIndex();
+		for (int page = 0; page < files.length; page++)
+			for (char[] phrase : phrases[page])
+				index.addPhraseToFile(files[page], phrase);
+		return index;
+	}
+
+	public void useIndex()
+	{
+		if (index == null)
+			index = (WebIndex) indexCorpus();
+		engine.useWebIndex(index);
+	}
+
+	public long save(String filename, boolean serialized)
+	{
+		try {
+			if (serialized)
+				index.saveSerialized(filename);
+			else
+				index.save(filename);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return new File(filename).length();
+	}
+
+	public Object load(String filename)
+	{
+		return Index.load(filename);
+	}
+
+	public String[] queries(String workload, int count, long seed)
+	{
+		Random random = new Random(seed);
+		String[] queries = new String[count];
+		for (int i = 0; i < count; i++)
+		{
+			if (workload.equals("and"))
+				queries[i] = "(" + corpus.nextWord(random) + " & " + corpus.nextWord(random) + ")";
+			else if (workload.equals("or"))
+				queries[i] = "(" + corpus.nextWord(random) + " | " + corpus.nextWord(random) + ")";
+			else if (workload.equals("not"))
+				queries[i] = "(" + corpus.nextWord(random) + " & !" + corpus.nextWord(random) + ")";
+			else if (workload.equals("phrase"))
+				queries[i] = "\"" + nextPhrase(random) + "\"";
+			else
+				throw new IllegalArgumentException("Unknown workload: " + workload);
+		}
+		return queries;
+	}
+
+	/**
+	 * Returns two words next to each other in some phrase of the corpus.
+	 */
+	private String nextPhrase(Random random)
+	{
+		while (true)
+		{
+			char[][] page = phrases[random.nextInt(phrases.length)];
+			String[] words = new String(page[random.nextInt(page.length)]).trim().split("[^A-Za-z]+");
+			if (words.length < 2)
+				continue;
+			int i = random.nextInt(words.length - 1);
+			if (words[i].length() > 0 && words[i + 1].length() > 0)
+				return words[i].toLowerCase() + " " + words[i + 1].toLowerCase();
+		}
+	}
+
+	public Object parseQuery(String query)
+	{
+		return engine.parseQuery(query, 0);
+	}
+
+	public Object query(String query)
+	{
+		engine.getResultCache().clear();
+		return engine.query(query);
+	}
+}
@@ -0,0 +1,24 @@
+package webquery.jmh;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * The synthetic corpus the benchmarks run over, generated once per trial.
+ * The same pages and seed give the same corpus, so results from different
+ * runs and machines are comparable.
+ */
+@State(Scope.Benchmark)
+public class CorpusState {
+	@Param("1000")
+	public int pages;
+	@Param("42")
+	public long seed;
+
+	public Fixture fixture;
+
+	@Setup(Level.Trial)
+	public void generate()
+	{
+		fixture = Fixture.create(pages, seed);
+	}
+}
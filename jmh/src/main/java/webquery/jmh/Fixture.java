@@ -0,0 +1,76 @@
+package webquery.jmh;
+
+/**
+ * What the benchmarks time, done on the synthetic corpus.  The indexer and
+ * query engine are in the unnamed package, which code in a named package
+ * cannot refer to, while JMH only accepts benchmarks in a named package;
+ * so the benchmarks reach them through this interface, implemented by
+ * BenchmarkFixture in the unnamed package.  It has one implementation, so
+ * the JIT inlines each call and the time measured is that of the method
+ * the fixture calls.
+ */
+public interface Fixture {
+	/**
+	 * Generates a corpus and parses its pages into the phrases indexed.
+	 */
+	static Fixture create(int pages, long seed)
+	{
+		try {
+			Fixture fixture = (Fixture) Class.forName("BenchmarkFixture").getDeclaredConstructor().newInstance();
+			fixture.generate(pages, seed);
+			return fixture;
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("BenchmarkFixture is missing", e);
+		}
+	}
+
+	void generate(int pages, long seed);
+
+	/**
+	 * Returns the number of phrases in the corpus, each a run of text
+	 * between two tags.
+	 */
+	int getPhraseCount();
+
+	/**
+	 * Indexes every phrase of the corpus with WebIndex.addPhraseToFile()
+	 * into a new index.
+	 * @return the index
+	 */
+	Object indexCorpus();
+
+	/**
+	 * Indexes the corpus, if it was not already, and has the query engine
+	 * use the index.
+	 */
+	void useIndex();
+
+	/**
+	 * Saves the index with Index.save(), or with Index.saveSerialized().
+	 * @return the size of the file written
+	 */
+	long save(String filename, boolean serialized);
+
+	/**
+	 * Loads an index with Index.load().
+	 */
+	Object load(String filename);
+
+	/**
+	 * Returns queries over the corpus of one of the workloads "and", "or",
+	 * "not" and "phrase".  The words are drawn as the corpus draws them, and
+	 * each phrase is two words next to each other on some page.
+	 */
+	String[] queries(String workload, int count, long seed);
+
+	/**
+	 * Parses a query with WebQueryEngine.parseQuery().
+	 */
+	Object parseQuery(String query);
+
+	/**
+	 * Answers a query with WebQueryEngine.query(), after emptying its cache
+	 * of results so the query is evaluated.
+	 */
+	Object query(String query);
+}
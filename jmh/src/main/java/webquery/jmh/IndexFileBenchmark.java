@@ -0,0 +1,58 @@
+package webquery.jmh;
+
+import java.io.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * The time Index.save() and Index.load() take on the index of the corpus,
+ * in the binary format and with Java serialization.  The size of each file
+ * is printed when the trial starts.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IndexFileBenchmark {
+	@Param({"binary", "serialized"})
+	public String format;
+
+	private Fixture fixture;
+	private boolean serialized;
+	private File saved;
+	private File scratch;
+
+	@Setup(Level.Trial)
+	public void setUp(CorpusState corpus) throws IOException
+	{
+		fixture = corpus.fixture;
+		fixture.useIndex();
+		serialized = format.equals("serialized");
+		saved = File.createTempFile("index", ".db");
+		scratch = File.createTempFile("index", ".db");
+		long size = fixture.save(saved.getPath(), serialized);
+		System.out.println();
+		System.out.println(format + " index of " + corpus.pages + " pages: " + size + " bytes");
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		saved.delete();
+		scratch.delete();
+	}
+
+	@Benchmark
+	public long save()
+	{
+		return fixture.save(scratch.getPath(), serialized);
+	}
+
+	@Benchmark
+	public Object load()
+	{
+		return fixture.load(saved.getPath());
+	}
+}
@@ -0,0 +1,32 @@
+package webquery.jmh;
+
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * The throughput of WebIndex.addPhraseToFile(): each operation indexes the
+ * whole corpus into a new index, one phrase at a time.  The "phrases"
+ * counter gives the rate in phrases.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IndexingBenchmark {
+	/**
+	 * Counts the phrases indexed, reported as a rate beside the corpora.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Phrases {
+		public long phrases;
+	}
+
+	@Benchmark
+	public Object addPhraseToFile(CorpusState corpus, Phrases counter)
+	{
+		counter.phrases += corpus.fixture.getPhraseCount();
+		return corpus.fixture.indexCorpus();
+	}
+}
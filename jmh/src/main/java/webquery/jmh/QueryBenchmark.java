@@ -0,0 +1,57 @@
+package webquery.jmh;
+
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * The time WebQueryEngine takes to parse and to answer the queries of a
+ * workload: conjunctions, disjunctions, negations or phrases of words
+ * drawn from the corpus.  Each operation takes the next of QUERIES
+ * queries, so the time is an average over all of them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class QueryBenchmark {
+	/**
+	 * The number of distinct queries of each workload.
+	 */
+	public static final int QUERIES = 256;
+
+	@Param({"and", "or", "not", "phrase"})
+	public String workload;
+
+	private Fixture fixture;
+	private String[] queries;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setUp(CorpusState corpus)
+	{
+		fixture = corpus.fixture;
+		fixture.useIndex();
+		queries = fixture.queries(workload, QUERIES, corpus.seed);
+	}
+
+	private String nextQuery()
+	{
+		String query = queries[next];
+		next = (next + 1) % QUERIES;
+		return query;
+	}
+
+	@Benchmark
+	public Object parseQuery()
+	{
+		return fixture.parseQuery(nextQuery());
+	}
+
+	@Benchmark
+	public Object query()
+	{
+		return fixture.query(nextQuery());
+	}
+}